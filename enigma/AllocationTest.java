@@ -0,0 +1,206 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assume.*;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** Allocation budgets for the conversion hot path.  Each test measures
+ *  the bytes allocated by the current thread per converted character
+ *  and checks them against a budget, which may be overridden with the
+ *  system property enigma.alloc.NAME (for example,
+ *  make unit UNITFLAGS=-Denigma.alloc.main=64).
+ *  @author Florence Lau
+ */
+public class AllocationTest {
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Number of characters in generated messages. */
+    private static final int MESSAGE_LENGTH = 100_000;
+
+    /** Number of times each operation is run before measuring, so that
+     *  measurements reflect compiled code. */
+    private static final int WARMUP = 5;
+
+    /** Thread allocation counter. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /** Return the budget, in bytes per character, named NAME, whose
+     *  default is DEFAULTBUDGET. */
+    private static double budget(String name, double defaultBudget) {
+        return Double.parseDouble(System.getProperty("enigma.alloc." + name,
+                                                     "" + defaultBudget));
+    }
+
+    /** Check that the bytes allocated by the current thread since START
+     *  amount to at most the budget named NAME (default DEFAULTBUDGET)
+     *  for each of CHARS characters. */
+    private static void checkBudget(String name, double defaultBudget,
+                                    long start, long chars) {
+        double perChar =
+            (double) (THREADS.getCurrentThreadAllocatedBytes() - start)
+            / chars;
+        double budget = budget(name, defaultBudget);
+        assertTrue(String.format("%s allocates %.3f bytes/char "
+                                 + "(budget %.3f)", name, perChar, budget),
+                   perChar <= budget);
+    }
+
+    /** Return a random message of LENGTH upper-case letters and blanks
+     *  drawn with RANDOM. */
+    static String randomMessage(Random random, int length) {
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = random.nextInt(6) == 0
+                ? ' ' : (char) ('A' + random.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    @Test
+    public void testConvertInt() {
+        Machine machine = navalConfig().newMachine(SETTINGS);
+        for (int k = 0; k < WARMUP * MESSAGE_LENGTH; k += 1) {
+            machine.convert(k % 26);
+        }
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        for (int k = 0; k < MESSAGE_LENGTH; k += 1) {
+            machine.convert(k % 26);
+        }
+        checkBudget("convertInt", 0.01, start, MESSAGE_LENGTH);
+    }
+
+    @Test
+    public void testConvertString() {
+        Machine machine = navalConfig().newMachine(SETTINGS);
+        String msg = randomMessage(new Random(61), MESSAGE_LENGTH);
+        for (int k = 0; k < WARMUP; k += 1) {
+            machine.convert(msg);
+        }
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        machine.convert(msg);
+        checkBudget("convertString", 4, start, MESSAGE_LENGTH);
+    }
+
+    @Test
+    public void testRotor() {
+        Rotor rotor = new MovingRotor("I", new Permutation(NAVALA.get("I"),
+                                                           UPPER), "Q");
+        int sum = 0;
+        for (int k = 0; k < WARMUP * MESSAGE_LENGTH; k += 1) {
+            rotor.advance();
+            sum += rotor.convertForward(k % 26)
+                + rotor.convertBackward(k % 26);
+        }
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        for (int k = 0; k < MESSAGE_LENGTH; k += 1) {
+            rotor.advance();
+            sum += rotor.convertForward(k % 26)
+                + rotor.convertBackward(k % 26);
+            if (rotor.atNotch()) {
+                sum += 1;
+            }
+        }
+        checkBudget("rotor", 0.01, start, MESSAGE_LENGTH);
+        assertTrue(sum > 0);
+    }
+
+    @Test
+    public void testGroup() {
+        String msg = randomMessage(new Random(61), MESSAGE_LENGTH);
+        for (int k = 0; k < WARMUP; k += 1) {
+            Main.group(msg);
+        }
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        Main.group(msg);
+        checkBudget("group", 8, start, MESSAGE_LENGTH);
+    }
+
+    /** Write a settings line and LINES random message lines of
+     *  MESSAGE_LENGTH / 100 characters to FILE, returning the number of
+     *  message characters written. */
+    private static long writeInput(File file, int lines) throws IOException {
+        Random random = new Random(61);
+        try (PrintStream out = new PrintStream(file)) {
+            out.println(SETTINGS);
+            for (int k = 0; k < lines; k += 1) {
+                out.println(randomMessage(random, MESSAGE_LENGTH / 100));
+            }
+        }
+        return (long) lines * (MESSAGE_LENGTH / 100);
+    }
+
+    /** Return the number of characters in the message lines of the input
+     *  file INPUT. */
+    private static long messageChars(File input) throws IOException {
+        long result = 0;
+        try (Scanner in = new Scanner(input)) {
+            while (in.hasNextLine()) {
+                String line = in.nextLine();
+                if (!line.startsWith("*")) {
+                    result += line.length();
+                }
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        File testing = new File(System.getProperty("enigma.testing.dir",
+                                                   "../testing"), "correct");
+        File config = new File(testing, "default.conf");
+        assumeTrue("no test inputs in " + testing, config.exists());
+        File large = File.createTempFile("enigma", ".inp");
+        large.deleteOnExit();
+        File output = File.createTempFile("enigma", ".out");
+        output.deleteOnExit();
+        long chars = writeInput(large, 1000);
+        File[] inputs = testing.listFiles((dir, name) ->
+            name.endsWith(".inp")
+            && !new File(dir, name.replace(".inp", ".conf")).exists());
+        for (File input : inputs) {
+            chars += messageChars(input);
+        }
+        for (int k = 0; k < WARMUP; k += 1) {
+            Main.run(config.getPath(), large.getPath(), output.getPath());
+        }
+        long start = THREADS.getCurrentThreadAllocatedBytes();
+        Main.run(config.getPath(), large.getPath(), output.getPath());
+        for (File input : inputs) {
+            Main.run(config.getPath(), input.getPath(), output.getPath());
+        }
+        checkBudget("main", 32, start, chars);
+        for (File input : inputs) {
+            Main.run(config.getPath(), input.getPath(), output.getPath());
+            File expected = new File(testing, input.getName()
+                                     .replace(".inp", ".out"));
+            assertEquals(input.getName(), words(expected), words(output));
+        }
+    }
+
+    /** Return the contents of FILE with each run of whitespace replaced
+     *  by one blank, and with none at the ends. */
+    private static String words(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()))
+            .trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,277 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Batch processing of many input files with one parsed Config (Main's
+ *  --batch mode).  Files are converted concurrently on a fixed number of
+ *  threads, each file with its own machine, largest files first so that
+ *  no long file is left to run alone at the end.  A failure in one file
+ *  does not affect the others; all failures are reported together in a
+ *  summary on the standard error.
+ *  @author Florence Lau
+ */
+final class Batch {
+
+    /** A batch converting files with CONFIG, classifying message
+     *  characters with CHARS, into files in the directory OUTDIR, JOBS
+     *  files at a time.  Output is grouped text if CHUNKSIZE is 0 and
+     *  otherwise a container with CHUNKSIZE positions per chunk. */
+    Batch(Config config, CharTable chars, String outDir, int jobs,
+          int chunkSize) {
+        if (jobs < 1) {
+            throw error("number of jobs must be positive");
+        }
+        _config = config;
+        _chars = chars;
+        _outDir = Path.of(outDir);
+        _jobs = jobs;
+        _chunkSize = chunkSize;
+    }
+
+    /** Return the input files named by SPEC, which is either a directory
+     *  (meaning all regular files in it) or a glob pattern for the names
+     *  of files in a directory, such as "msgs/*.inp". */
+    static List<Path> inputs(String spec) {
+        Path path = Path.of(spec);
+        Path dir;
+        String glob;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            glob = "*";
+        } else {
+            dir = path.getParent() == null ? Path.of(".") : path.getParent();
+            glob = path.getFileName().toString();
+        }
+        List<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir,
+                                                                    glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    result.add(file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not list %s", spec);
+        }
+        if (result.isEmpty()) {
+            throw error("no input files match %s", spec);
+        }
+        return result;
+    }
+
+    /** Return the output file for the input file INPUT: its name, less
+     *  any compressed-file suffix, with .inp replaced by (or if there is
+     *  none, followed by) .out, in my output directory.  Input files may
+     *  be compressed (see Compression); output files are not. */
+    Path output(Path input) {
+        String name = input.getFileName().toString();
+        if (Compression.forName(name) != Compression.Format.NONE) {
+            name = name.substring(0, name.length() - 3);
+        }
+        if (name.endsWith(".inp")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        return _outDir.resolve(name + ".out");
+    }
+
+    /** Convert each of INPUTS, print a summary on the standard error,
+     *  and return the number of files that failed.  Files that would
+     *  have the same output file fail without being converted. */
+    int run(List<Path> inputs) {
+        try {
+            Files.createDirectories(_outDir);
+        } catch (IOException excp) {
+            throw error("could not create %s", _outDir);
+        }
+        List<Path> files = new ArrayList<>(inputs);
+        List<Long> sizes = new ArrayList<>();
+        for (Path file : files) {
+            sizes.add(size(file));
+        }
+        List<Integer> order = new ArrayList<>();
+        for (int k = 0; k < files.size(); k += 1) {
+            order.add(k);
+        }
+        order.sort(Comparator.comparing((Integer k) -> sizes.get(k))
+                   .reversed());
+        String[] clashes = clashes(files);
+        ExecutorService pool = Util.pool(_jobs, "enigma-batch");
+        List<Future<String>> results = new ArrayList<>();
+        try {
+            for (int k : order) {
+                Path file = files.get(k);
+                if (clashes[k] != null) {
+                    Metrics.recordError();
+                    results.add(CompletableFuture.completedFuture(clashes[k]));
+                } else {
+                    results.add(pool.submit(() -> convert(file)));
+                }
+            }
+            _files = files.size();
+            _failures = 0;
+            StringBuilder failed = new StringBuilder();
+            for (int i = 0; i < order.size(); i += 1) {
+                String problem = result(results.get(i));
+                if (problem != null) {
+                    _failures += 1;
+                    failed.append(String.format("  %s: %s%n",
+                                                files.get(order.get(i)),
+                                                problem));
+                }
+            }
+            System.err.printf("Batch: %d files, %d converted, %d failed%n%s",
+                              _files, _files - _failures, _failures,
+                              failed);
+            return _failures;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return an array whose Kth element describes the clash if FILES[K]
+     *  has the same output file as another of FILES, and is otherwise
+     *  null.  None of the clashing files is converted, since which of
+     *  them would be left in the output would depend on timing. */
+    private String[] clashes(List<Path> files) {
+        Map<Path, List<Integer>> byOutput = new HashMap<>();
+        for (int k = 0; k < files.size(); k += 1) {
+            byOutput.computeIfAbsent(output(files.get(k)),
+                                     p -> new ArrayList<>()).add(k);
+        }
+        String[] result = new String[files.size()];
+        for (Map.Entry<Path, List<Integer>> entry : byOutput.entrySet()) {
+            List<Integer> same = entry.getValue();
+            if (same.size() > 1) {
+                for (int k : same) {
+                    int other = same.get(same.get(0) == k ? 1 : 0);
+                    result[k] = String.format("output %s is also the "
+                                              + "output of %s",
+                                              entry.getKey(),
+                                              files.get(other));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Return the size of FILE in bytes, or 0 if it cannot be
+     *  determined. */
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException excp) {
+            return 0;
+        }
+    }
+
+    /** Return the value of RESULT, waiting for it if necessary, or a
+     *  description of the exception it threw. */
+    private static String result(Future<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        } catch (ExecutionException excp) {
+            return String.valueOf(excp.getCause());
+        }
+    }
+
+    /** Convert the file INPUT into its output file, returning null on
+     *  success and a description of the problem on failure.  The output
+     *  is written to a temporary file beside it and moved into place only
+     *  on success, so that a failed file leaves no partial output. */
+    private String convert(Path input) {
+        Path output = output(input);
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+        String problem = convert(input, temp);
+        try {
+            if (problem == null) {
+                Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } else {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException excp) {
+            Metrics.recordError();
+            return "could not write " + output;
+        }
+        return problem;
+    }
+
+    /** Convert the file INPUT into the file OUTPUT, returning null on
+     *  success and a description of the problem on failure. */
+    private String convert(Path input, Path output) {
+        try (Scanner in = new Scanner(
+                 Compression.open(Files.newInputStream(input)));
+             PrintStream out = new PrintStream(new BufferedOutputStream(
+                 Files.newOutputStream(output)))) {
+            Main.process(_config, _chars, in, out, _chunkSize);
+            if (out.checkError()) {
+                return "could not write output";
+            }
+            return null;
+        } catch (EnigmaException excp) {
+            Metrics.recordError();
+            return excp.getMessage();
+        } catch (NoSuchElementException excp) {
+            Metrics.recordError();
+            return "empty input";
+        } catch (IOException excp) {
+            Metrics.recordError();
+            return "could not open " + input;
+        }
+    }
+
+    /** Return the number of files in the last run. */
+    int files() {
+        return _files;
+    }
+
+    /** Return the number of files that failed in the last run. */
+    int failures() {
+        return _failures;
+    }
+
+    /** The configuration shared by all files. */
+    private final Config _config;
+
+    /** Classification of message characters. */
+    private final CharTable _chars;
+
+    /** Directory for output files. */
+    private final Path _outDir;
+
+    /** Number of files converted at once. */
+    private final int _jobs;
+
+    /** Positions per container chunk, or 0 for grouped text. */
+    private final int _chunkSize;
+
+    /** Number of files in the last run. */
+    private int _files;
+
+    /** Number of failures in the last run. */
+    private int _failures;
+}
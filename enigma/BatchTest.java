@@ -0,0 +1,140 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Florence Lau
+ */
+public class BatchTest {
+
+    /** Delete DIR and everything in it. */
+    private static void deleteAll(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files
+                     .sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void testRun() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        PrintStream err = System.err;
+        try {
+            Path in = Files.createDirectory(dir.resolve("in"));
+            Files.writeString(in.resolve("a.inp"),
+                              "* B BETA I II III AAAA\nHELLO WORLD\n");
+            Files.writeString(in.resolve("b.inp"),
+                              "* B BETA I II III AAAA\nILBDA AMTAZ\n"
+                              + "* B BETA I II III AAAA (AB)\nAB\n");
+            Files.writeString(in.resolve("bad.inp"),
+                              "* B BETA I II III AAAA\nHELLO\n"
+                              + "* B BETA I I III AAAA\nHELLO\n");
+            Files.writeString(in.resolve("empty.txt"), "");
+            System.setErr(new PrintStream(
+                Files.newOutputStream(dir.resolve("errs"))));
+            Config config = navalConfig();
+            Batch batch = new Batch(config, new CharTable(
+                config.alphabet(), CharTable.Policy.STRICT),
+                dir.resolve("out").toString(), 2, 0);
+            assertEquals(2, batch.run(Batch.inputs(in.toString())));
+            assertEquals(4, batch.files());
+            System.err.close();
+            assertEquals("ILBDA AMTAZ \n",
+                         Files.readString(dir.resolve("out/a.out")));
+            assertEquals("HELLO WORLD \nBD\n",
+                         Files.readString(dir.resolve("out/b.out")));
+            try (Stream<Path> outputs = Files.list(dir.resolve("out"))) {
+                assertEquals(2, outputs.count());
+            }
+            String summary = Files.readString(dir.resolve("errs"));
+            assertTrue(summary, summary.startsWith(
+                "Batch: 4 files, 2 converted, 2 failed"));
+            assertTrue(summary, summary.contains(
+                "bad.inp: no duplicate rotors allowed"));
+            assertTrue(summary, summary.contains("empty.txt: empty input"));
+        } finally {
+            System.setErr(err);
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        PrintStream err = System.err;
+        try {
+            Path in = Files.createDirectory(dir.resolve("in"));
+            for (String name : new String[] { "a", "a.inp", "b.inp" }) {
+                Files.writeString(in.resolve(name),
+                                  "* B BETA I II III AAAA\nHELLO WORLD\n");
+            }
+            System.setErr(new PrintStream(
+                Files.newOutputStream(dir.resolve("errs"))));
+            Config config = navalConfig();
+            Batch batch = new Batch(config, new CharTable(
+                config.alphabet(), CharTable.Policy.STRICT),
+                dir.resolve("out").toString(), 2, 0);
+            assertEquals(2, batch.run(Batch.inputs(in.toString())));
+            System.err.close();
+            assertFalse(Files.exists(dir.resolve("out/a.out")));
+            assertEquals("ILBDA AMTAZ \n",
+                         Files.readString(dir.resolve("out/b.out")));
+            String summary = Files.readString(dir.resolve("errs"));
+            assertTrue(summary, summary.startsWith(
+                "Batch: 3 files, 1 converted, 2 failed"));
+            assertTrue(summary, summary.contains(
+                in.resolve("a") + ": output " + dir.resolve("out/a.out")
+                + " is also the output of " + in.resolve("a.inp")));
+        } finally {
+            System.setErr(err);
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testInputs() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Files.writeString(dir.resolve("a.inp"), "");
+            Files.writeString(dir.resolve("b.inp"), "");
+            Files.writeString(dir.resolve("c.txt"), "");
+            Files.createDirectory(dir.resolve("d.inp"));
+            assertEquals(2, Batch.inputs(dir + "/*.inp").size());
+            assertEquals(3, Batch.inputs(dir.toString()).size());
+            try {
+                Batch.inputs(dir + "/*.conf");
+                fail("no error for empty match");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            deleteAll(dir);
+        }
+    }
+
+    @Test
+    public void testOutputName() {
+        Batch batch = new Batch(navalConfig(), null, "out", 1, 0);
+        assertEquals(Path.of("out", "msg.out"),
+                     batch.output(Path.of("in", "msg.inp")));
+        assertEquals(Path.of("out", "msg.txt.out"),
+                     batch.output(Path.of("in", "msg.txt")));
+        assertEquals(Path.of("out", "msg.out"),
+                     batch.output(Path.of("in", "msg.inp.gz")));
+    }
+}
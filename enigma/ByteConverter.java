@@ -0,0 +1,251 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion of raw bytes by a machine over the byte alphabet (see
+ *  Config.read), for Main's --binary mode.  The permutations of the
+ *  machine's rotors and plugboard are copied into byte arrays when the
+ *  converter is made, and the rotors other than the rightmost are
+ *  combined into a single table that is rebuilt only when one of them
+ *  moves (mostly from a second table of the rotors other than the two
+ *  rightmost, which move still less often).  Between such moves, only
+ *  the rightmost rotor's notch need be checked, so that converting a
+ *  byte usually takes six table lookups.
+ *  The result is the same as converting each byte with Machine.convert.
+ *  A converter must be remade when its machine is set up again.
+ *  @author Florence Lau
+ */
+final class ByteConverter {
+
+    /** Size of the buffers used to convert streams. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** Mask reducing an int modulo the alphabet size. */
+    private static final int MASK = Config.BYTE_SYMBOLS - 1;
+
+    /** A converter for MACHINE, which must have the byte alphabet and be
+     *  set up. */
+    ByteConverter(Machine machine) {
+        if (machine.alphabet().size() != Config.BYTE_SYMBOLS) {
+            throw error("machine does not have the byte alphabet");
+        }
+        _machine = machine;
+        _n = machine.numRotors();
+        _firstMoving = _n - machine.numPawls();
+        _forward = new byte[_n][];
+        _backward = new byte[_n][];
+        _notches = new boolean[_n][Config.BYTE_SYMBOLS];
+        _rotates = new boolean[_n];
+        _settings = new int[_n];
+        for (int k = 0; k < _n; k += 1) {
+            Rotor rotor = machine.rotor(k);
+            _forward[k] = table(rotor.permutation(), false);
+            _backward[k] = table(rotor.permutation(), true);
+            _rotates[k] = rotor.rotates();
+            for (int p = 0; p < Config.BYTE_SYMBOLS; p += 1) {
+                _notches[k][p] = rotor.notchAt(p);
+            }
+        }
+        Permutation plugboard = machine.plugboard();
+        if (plugboard == null) {
+            plugboard = new Permutation("", machine.alphabet());
+        }
+        _plugIn = table(plugboard, false);
+        _plugOut = table(plugboard, true);
+    }
+
+    /** Return the table of PERM, or of its inverse if INVERSE. */
+    private static byte[] table(Permutation perm, boolean inverse) {
+        byte[] result = new byte[Config.BYTE_SYMBOLS];
+        for (int p = 0; p < result.length; p += 1) {
+            result[p] = (byte) (inverse ? perm.invert(p) : perm.permute(p));
+        }
+        return result;
+    }
+
+    /** Convert the LEN bytes of BUF starting at OFF in place, advancing
+     *  my machine's rotors as Machine.convert would. */
+    void convert(byte[] buf, int off, int len) {
+        int last = _n - 1;
+        for (int k = 0; k < _n; k += 1) {
+            _settings[k] = _machine.rotor(k).setting();
+        }
+        combine(true);
+        byte[] plugIn = _plugIn, plugOut = _plugOut, middle = _middle;
+        byte[] lastForward = _forward[last], lastBackward = _backward[last];
+        boolean[] lastNotches = _notches[last];
+        boolean stepping = _firstMoving < last;
+        boolean lastRotates = _rotates[last] && _firstMoving <= last;
+        boolean quiet = quiet();
+        int s = _settings[last];
+        for (int i = off; i < off + len; i += 1) {
+            if (stepping && !(quiet && !lastNotches[s])) {
+                _settings[last] = s;
+                int moved = step();
+                if (moved < last) {
+                    combine(moved < last - 1);
+                }
+                s = _settings[last];
+                quiet = quiet();
+            } else if (lastRotates) {
+                s = (s + 1) & MASK;
+            }
+            int c = plugIn[buf[i] & MASK] & MASK;
+            c = (lastForward[(c + s) & MASK] - s) & MASK;
+            c = middle[c] & MASK;
+            c = (lastBackward[(c + s) & MASK] - s) & MASK;
+            buf[i] = plugOut[c];
+        }
+        _settings[last] = s;
+        for (int k = 1; k < _n; k += 1) {
+            _machine.rotor(k).restore(_settings[k]);
+        }
+    }
+
+    /** Convert the remaining bytes of BUF in place, advancing its
+     *  position to its limit. */
+    void convert(ByteBuffer buf) {
+        int len = buf.remaining();
+        if (buf.hasArray()) {
+            convert(buf.array(), buf.arrayOffset() + buf.position(), len);
+            buf.position(buf.limit());
+        } else {
+            byte[] chunk = new byte[Math.min(len, BUFFER_SIZE)];
+            while (buf.hasRemaining()) {
+                int n = Math.min(buf.remaining(), chunk.length);
+                int start = buf.position();
+                buf.get(chunk, 0, n);
+                convert(chunk, 0, n);
+                buf.put(start, chunk, 0, n);
+            }
+        }
+    }
+
+    /** Convert all of IN onto OUT, returning the number of bytes
+     *  converted.  OUT is flushed but not closed. */
+    long convert(InputStream in, OutputStream out) throws IOException {
+        byte[] buf = new byte[BUFFER_SIZE];
+        long total = 0;
+        for (int n = in.read(buf); n >= 0; n = in.read(buf)) {
+            long start = System.nanoTime();
+            convert(buf, 0, n);
+            Metrics.METRICS.recordMessage(n, System.nanoTime() - start);
+            out.write(buf, 0, n);
+            total += n;
+        }
+        out.flush();
+        return total;
+    }
+
+    /** Advance the rotors in _settings as Machine.convert does, and
+     *  return the leftmost slot whose rotor moved, or _n if none did. */
+    private int step() {
+        int last = _n - 1;
+        int moved = _n;
+        for (int k = _firstMoving; k < _n; k += 1) {
+            boolean advance;
+            if (k == last) {
+                advance = true;
+            } else if (k == _firstMoving) {
+                advance = _notches[k + 1][_settings[k + 1]];
+            } else {
+                advance = _notches[k][_settings[k]]
+                    || _notches[k + 1][_settings[k + 1]];
+            }
+            if (advance && _rotates[k]) {
+                _settings[k] = (_settings[k] + 1) & MASK;
+                moved = Math.min(moved, k);
+            }
+        }
+        return moved;
+    }
+
+    /** Return true iff, with the current _settings, the next step would
+     *  move no rotor but the rightmost unless the rightmost is at a
+     *  notch. */
+    private boolean quiet() {
+        int last = _n - 1;
+        for (int k = _firstMoving; k < last; k += 1) {
+            if (k != _firstMoving && _notches[k][_settings[k]]
+                || k + 1 != last && _notches[k + 1][_settings[k + 1]]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Rebuild _middle for the current settings of the rotors other
+     *  than the rightmost: forward through rotor _n - 2, through _inner,
+     *  and back through rotor _n - 2.  If INNER, first rebuild _inner:
+     *  forward through rotors _n - 3 to 1, back through the reflector,
+     *  and back through rotors 1 to _n - 3. */
+    private void combine(boolean inner) {
+        int mid = _n - 2;
+        if (mid == 0) {
+            int s = _settings[0];
+            for (int p = 0; p < Config.BYTE_SYMBOLS; p += 1) {
+                _middle[p] = (byte) (_backward[0][(p + s) & MASK] - s);
+            }
+            return;
+        }
+        if (inner) {
+            for (int p = 0; p < Config.BYTE_SYMBOLS; p += 1) {
+                int c = p;
+                for (int k = mid - 1; k > 0; k -= 1) {
+                    int s = _settings[k];
+                    c = (_forward[k][(c + s) & MASK] - s) & MASK;
+                }
+                for (int k = 0; k < mid; k += 1) {
+                    int s = _settings[k];
+                    c = (_backward[k][(c + s) & MASK] - s) & MASK;
+                }
+                _inner[p] = (byte) c;
+            }
+        }
+        int s = _settings[mid];
+        byte[] forward = _forward[mid], backward = _backward[mid];
+        for (int p = 0; p < Config.BYTE_SYMBOLS; p += 1) {
+            int c = (forward[(p + s) & MASK] - s) & MASK;
+            c = _inner[c] & MASK;
+            _middle[p] = (byte) (backward[(c + s) & MASK] - s);
+        }
+    }
+
+    /** The machine whose rotors I advance. */
+    private final Machine _machine;
+
+    /** Number of rotor slots. */
+    private final int _n;
+
+    /** Slot of the leftmost rotor with a pawl. */
+    private final int _firstMoving;
+
+    /** Tables of the permutations of the rotors in each slot, and of
+     *  their inverses. */
+    private final byte[][] _forward, _backward;
+
+    /** _notches[K][P] is true iff the rotor in slot K has a notch at
+     *  setting P. */
+    private final boolean[][] _notches;
+
+    /** True for slots whose rotors can move. */
+    private final boolean[] _rotates;
+
+    /** Tables of the plugboard and its inverse. */
+    private final byte[] _plugIn, _plugOut;
+
+    /** Current settings of the rotors, by slot. */
+    private final int[] _settings;
+
+    /** Combined table of the rotors other than the two rightmost. */
+    private final byte[] _inner = new byte[Config.BYTE_SYMBOLS];
+
+    /** Combined table of the rotors other than the rightmost. */
+    private final byte[] _middle = new byte[Config.BYTE_SYMBOLS];
+}
@@ -0,0 +1,265 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the ByteConverter class and the byte
+ *  configuration format.
+ *  @author Florence Lau
+ */
+public class ByteConverterTest {
+
+    /** Return the hexadecimal form of the bytes in BYTES. */
+    private static String hex(int[] bytes) {
+        StringBuilder result = new StringBuilder();
+        for (int b : bytes) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of the bytes drawn from RANDOM, an
+     *  involution without fixed points if REFLECT. */
+    private static int[] wiring(Random random, boolean reflect) {
+        int[] order = new int[Config.BYTE_SYMBOLS];
+        for (int k = 0; k < order.length; k += 1) {
+            order[k] = k;
+        }
+        for (int k = order.length - 1; k > 0; k -= 1) {
+            int j = random.nextInt(k + 1);
+            int t = order[k];
+            order[k] = order[j];
+            order[j] = t;
+        }
+        if (!reflect) {
+            return order;
+        }
+        int[] result = new int[order.length];
+        for (int k = 0; k < order.length; k += 2) {
+            result[order[k]] = order[k + 1];
+            result[order[k + 1]] = order[k];
+        }
+        return result;
+    }
+
+    /** Return a byte configuration with NROTORS slots and NPAWLS pawls,
+     *  with a reflector B, fixed rotors F1 ..., and moving rotors M1 ...
+     *  with NOTCHES notches each, drawn from RANDOM. */
+    private static Config config(Random random, int nRotors, int nPawls,
+                                 int notches) {
+        StringBuilder text = new StringBuilder();
+        text.append(String.format("bytes %d %d%n", nRotors, nPawls));
+        text.append("B R ").append(hex(wiring(random, true))).append('\n');
+        for (int k = 1; k < nRotors - nPawls; k += 1) {
+            text.append("F").append(k).append(" N ")
+                .append(hex(wiring(random, false))).append('\n');
+        }
+        for (int k = 1; k <= nPawls; k += 1) {
+            int[] positions = new int[notches];
+            for (int i = 0; i < notches; i += 1) {
+                positions[i] = random.nextInt(Config.BYTE_SYMBOLS);
+            }
+            String wires = hex(wiring(random, false));
+            text.append("M").append(k).append(" M").append(hex(positions))
+                .append(' ').append(wires, 0, 256).append('\n')
+                .append("    ").append(wires.substring(256)).append('\n');
+        }
+        return Config.read(new Scanner(text.toString()));
+    }
+
+    /** Return a settings line for a machine from config(), with random
+     *  settings and PAIRS plugboard pairs drawn from RANDOM. */
+    private static String settings(Random random, Config config,
+                                   int pairs) {
+        int nRotors = config.numRotors(), nPawls = config.numPawls();
+        StringBuilder result = new StringBuilder("* B");
+        for (int k = 1; k < nRotors - nPawls; k += 1) {
+            result.append(" F").append(k);
+        }
+        for (int k = 1; k <= nPawls; k += 1) {
+            result.append(" M").append(k);
+        }
+        int[] positions = new int[nRotors - 1];
+        for (int k = 0; k < positions.length; k += 1) {
+            positions[k] = random.nextInt(Config.BYTE_SYMBOLS);
+        }
+        result.append(' ').append(hex(positions));
+        int[] order = wiring(random, false);
+        for (int k = 0; k < pairs; k += 1) {
+            result.append(" (")
+                .append(hex(new int[] { order[2 * k], order[2 * k + 1] }))
+                .append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a machine for CONFIG set up by SETTINGS. */
+    private static Machine machine(Config config, String settings) {
+        Machine result = config.newMachine();
+        config.setUpBytes(result, settings);
+        return result;
+    }
+
+    /** Check that ByteConverter agrees with Machine.convert on random
+     *  machines with NROTORS slots, NPAWLS pawls and NOTCHES notches per
+     *  moving rotor. */
+    private static void checkEquivalent(int nRotors, int nPawls,
+                                        int notches) {
+        Random random = new Random(nRotors * 100 + nPawls * 10 + notches);
+        Config config = config(random, nRotors, nPawls, notches);
+        for (int trial = 0; trial < 4; trial += 1) {
+            String settings = settings(random, config, trial * 10);
+            byte[] data = new byte[5000 + random.nextInt(3000)];
+            random.nextBytes(data);
+            Machine slow = machine(config, settings);
+            byte[] expected = new byte[data.length];
+            for (int i = 0; i < data.length; i += 1) {
+                expected[i] = (byte) slow.convert(data[i] & 0xff);
+            }
+            Machine fast = machine(config, settings);
+            ByteConverter converter = new ByteConverter(fast);
+            byte[] actual = data.clone();
+            int split = random.nextInt(data.length);
+            converter.convert(actual, 0, split);
+            converter.convert(actual, split, data.length - split);
+            assertArrayEquals(settings, expected, actual);
+            assertArrayEquals(settings, slow.snapshot(null),
+                              fast.snapshot(null));
+        }
+    }
+
+    @Test
+    public void testEquivalence() {
+        checkEquivalent(5, 3, 1);
+        checkEquivalent(5, 3, 40);
+        checkEquivalent(4, 2, 2);
+        checkEquivalent(3, 1, 1);
+        checkEquivalent(3, 0, 0);
+        checkEquivalent(2, 1, 3);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Random random = new Random(7);
+        Config config = config(random, 5, 3, 2);
+        String settings = settings(random, config, 13);
+        byte[] data = new byte[200000];
+        random.nextBytes(data);
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        long n = new ByteConverter(machine(config, settings))
+            .convert(new ByteArrayInputStream(data), encrypted);
+        assertEquals(data.length, n);
+        assertFalse(Arrays.equals(data, encrypted.toByteArray()));
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        new ByteConverter(machine(config, settings))
+            .convert(new ByteArrayInputStream(encrypted.toByteArray()),
+                     decrypted);
+        assertArrayEquals(data, decrypted.toByteArray());
+    }
+
+    @Test
+    public void testByteBuffer() {
+        Random random = new Random(11);
+        Config config = config(random, 5, 3, 2);
+        String settings = settings(random, config, 5);
+        byte[] data = new byte[100000];
+        random.nextBytes(data);
+        byte[] expected = data.clone();
+        new ByteConverter(machine(config, settings))
+            .convert(expected, 0, expected.length);
+        ByteBuffer direct = ByteBuffer.allocateDirect(data.length + 10);
+        direct.position(10);
+        direct.put(data);
+        direct.position(10);
+        new ByteConverter(machine(config, settings)).convert(direct);
+        assertEquals(direct.limit(), direct.position());
+        byte[] actual = new byte[data.length];
+        direct.position(10);
+        direct.get(actual);
+        assertArrayEquals(expected, actual);
+    }
+
+    @Test
+    public void testConfigErrors() {
+        Random random = new Random(3);
+        String reflector = hex(wiring(random, true));
+        String[] bad = {
+            "bytes 2 1\nB R " + reflector.substring(2),
+            "bytes 2 1\nB R " + reflector.substring(4) + "zz",
+            "bytes 2 1\nB R " + reflector.substring(2) + "00",
+            "bytes 2 1\nB N1 " + reflector,
+            "bytes 2 1\nB X " + reflector,
+            "bytes 2 1\nB M0 " + reflector,
+        };
+        for (String text : bad) {
+            try {
+                Config.read(new Scanner(text));
+                fail("accepted " + text);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        Config config = config(random, 3, 1, 1);
+        String[] badSettings = {
+            "B F1 M1 0000", "* B F1 M1", "* B F1 M1 00", "* B F1 M1 0g00",
+            "* B F1 M1 0000 (0001) (0102)", "* B F1 M1 0000 (0000)",
+            "* B F1 M1 0000 (001)", "* M1 F1 B 0000",
+        };
+        for (String settings : badSettings) {
+            try {
+                machine(config, settings);
+                fail("accepted " + settings);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+        try {
+            TestUtils.navalConfig().setUpBytes(
+                TestUtils.navalConfig().newMachine(), "* B BETA III IV I 00");
+            fail("accepted a text configuration");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        Random random = new Random(5);
+        StringBuilder text = new StringBuilder("bytes 3 2\n");
+        text.append("B R ").append(hex(wiring(random, true))).append('\n');
+        text.append("M1 M00 ").append(hex(wiring(random, false)))
+            .append('\n');
+        text.append("M2 M80ff ").append(hex(wiring(random, false)))
+            .append('\n');
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File conf = new File(dir, "bytes.conf");
+        File input = new File(dir, "blob.bin");
+        File output = new File(dir, "blob.out");
+        File back = new File(dir, "blob.back");
+        Files.writeString(conf.toPath(), text);
+        byte[] data = new byte[300000];
+        random.nextBytes(data);
+        Files.write(input.toPath(), data);
+        String option = "--binary=* B M1 M2 7f80 (0a0b) (00ff)";
+        Main.run(option, conf.getPath(), input.getPath(), output.getPath());
+        Main.run(option, conf.getPath(), output.getPath(), back.getPath());
+        assertFalse(Arrays.equals(data, Files.readAllBytes(output.toPath())));
+        assertArrayEquals(data, Files.readAllBytes(back.toPath()));
+        for (File f : new File[] { conf, input, output, back, dir }) {
+            f.delete();
+        }
+    }
+}
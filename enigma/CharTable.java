@@ -0,0 +1,149 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A precomputed classification of input characters for message lines.
+ *  Each character either converts to a given alphabet index (possibly
+ *  after case folding), passes through to the output unchanged, is
+ *  dropped, or is an error.  A CharTable is immutable and may be shared
+ *  between threads.
+ *  @author Florence Lau
+ */
+final class CharTable {
+
+    /** What to do with characters outside the alphabet. */
+    enum Policy {
+        /** Drop blanks and reject everything else, as Machine.convert
+         *  does. */
+        STRICT,
+        /** Drop whitespace and copy everything else to the output. */
+        PASS,
+        /** Drop everything. */
+        DROP
+    }
+
+    /** Class of a character copied to the output unchanged. */
+    static final int PASS = -1;
+
+    /** Class of a character that is dropped. */
+    static final int DROP = -2;
+
+    /** Class of a character that is an error. */
+    static final int REJECT = -3;
+
+    /** Characters below this are always in the table. */
+    private static final int MIN_TABLE_SIZE = 128;
+
+    /** A table for messages in ALPHABET, treating characters outside it
+     *  according to POLICY.  Characters whose upper-case form (as by
+     *  Character.toUpperCase) is in ALPHABET convert as that form. */
+    CharTable(Alphabet alphabet, Policy policy) {
+        _alphabet = alphabet;
+        _policy = policy;
+        int size = MIN_TABLE_SIZE;
+        for (int i = 0; i < alphabet.size(); i += 1) {
+            char c = alphabet.toChar(i);
+            size = Math.max(size,
+                            Math.max(c, Character.toLowerCase(c)) + 1);
+        }
+        _classes = new int[size];
+        for (int c = 0; c < size; c += 1) {
+            _classes[c] = slowClass((char) c);
+        }
+    }
+
+    /** Return the policy named NAME ("strict", "pass" or "drop"). */
+    static Policy policy(String name) {
+        switch (name) {
+        case "strict":
+            return Policy.STRICT;
+        case "pass":
+            return Policy.PASS;
+        case "drop":
+            return Policy.DROP;
+        default:
+            throw error("unknown character policy: %s", name);
+        }
+    }
+
+    /** Return my policy for characters outside the alphabet. */
+    Policy policy() {
+        return _policy;
+    }
+
+    /** Return the alphabet index to which C converts, or PASS, DROP or
+     *  REJECT. */
+    int classify(char c) {
+        return c < _classes.length ? _classes[c] : slowClass(c);
+    }
+
+    /** Compute classify(C) without the table. */
+    private int slowClass(char c) {
+        if (_alphabet.contains(c)) {
+            return _alphabet.toInt(c);
+        }
+        char upper = Character.toUpperCase(c);
+        if (_alphabet.contains(upper)) {
+            return _alphabet.toInt(upper);
+        }
+        if (c == ' ') {
+            return DROP;
+        }
+        switch (_policy) {
+        case PASS:
+            return Character.isWhitespace(c) ? DROP : PASS;
+        case DROP:
+            return DROP;
+        default:
+            return REJECT;
+        }
+    }
+
+    /** Return MSG converted by MACHINE and grouped as by Main.group:
+     *  converted letters in groups of five, each followed by a blank,
+     *  with characters that pass through copied in place without being
+     *  counted in a group. */
+    String convert(Machine machine, String msg) {
+        int len = msg.length();
+        char[] result = new char[len + len / 5 + 1];
+        int n = 0;
+        int group = 0;
+        for (int i = 0; i < len; i += 1) {
+            char c = msg.charAt(i);
+            int k = classify(c);
+            if (k >= 0) {
+                if (n + 2 > result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                result[n] = _alphabet.toChar(machine.convert(k));
+                n += 1;
+                group += 1;
+                if (group == 5) {
+                    result[n] = ' ';
+                    n += 1;
+                    group = 0;
+                }
+            } else if (k == PASS) {
+                if (n + 1 > result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                result[n] = c;
+                n += 1;
+            } else if (k == REJECT) {
+                throw error("character not in alphabet");
+            }
+        }
+        return new String(result, 0, n);
+    }
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** The policy for other characters. */
+    private final Policy _policy;
+
+    /** Classes of characters 0 .. _classes.length - 1. */
+    private final int[] _classes;
+}
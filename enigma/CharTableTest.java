@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CharTable class.
+ *  @author Florence Lau
+ */
+public class CharTableTest {
+
+    /** A letter outside the naval alphabet, even when upper-cased. */
+    private static final char E_ACUTE = 0xe9;
+
+    /** A whitespace character other than blank, tab and newline. */
+    private static final char LINE_SEPARATOR = 0x2028;
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return the table for the naval alphabet with POLICY. */
+    private static CharTable table(CharTable.Policy policy) {
+        return new CharTable(navalConfig().alphabet(), policy);
+    }
+
+    /** Return MSG converted with a fresh machine and CHARS. */
+    private static String convert(CharTable chars, String msg) {
+        return chars.convert(navalConfig().newMachine(SETTINGS), msg);
+    }
+
+    @Test
+    public void testClassify() {
+        CharTable strict = table(CharTable.Policy.STRICT);
+        assertEquals(0, strict.classify('A'));
+        assertEquals(0, strict.classify('a'));
+        assertEquals(25, strict.classify('z'));
+        assertEquals(CharTable.DROP, strict.classify(' '));
+        assertEquals(CharTable.REJECT, strict.classify('\t'));
+        assertEquals(CharTable.REJECT, strict.classify('!'));
+        assertEquals(CharTable.REJECT, strict.classify(E_ACUTE));
+        CharTable pass = table(CharTable.Policy.PASS);
+        assertEquals(CharTable.PASS, pass.classify('!'));
+        assertEquals(CharTable.PASS, pass.classify(E_ACUTE));
+        assertEquals(CharTable.DROP, pass.classify('\t'));
+        assertEquals(CharTable.DROP, pass.classify(LINE_SEPARATOR));
+        CharTable drop = table(CharTable.Policy.DROP);
+        assertEquals(CharTable.DROP, drop.classify('!'));
+        assertEquals(7, drop.classify('h'));
+    }
+
+    @Test
+    public void testStrictMatchesMachine() {
+        CharTable strict = table(CharTable.Policy.STRICT);
+        Random random = new Random(61);
+        for (int k = 0; k < 20; k += 1) {
+            String msg = AllocationTest.randomMessage(random,
+                                                      random.nextInt(200));
+            if (k % 2 == 0) {
+                msg = msg.toLowerCase();
+            }
+            Machine machine = navalConfig().newMachine(SETTINGS);
+            assertEquals(Main.group(machine.convert(msg)),
+                         convert(strict, msg));
+        }
+        try {
+            convert(strict, "HELLO, WORLD");
+            fail("no error for comma");
+        } catch (EnigmaException excp) {
+            assertEquals("character not in alphabet", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testPassAndDrop() {
+        String plain = convert(table(CharTable.Policy.STRICT),
+                               "HELLO WORLD");
+        assertEquals("UPVGJ ZUNSG ", plain);
+        assertEquals("UPVGJ ,ZUNSG !?",
+                     convert(table(CharTable.Policy.PASS),
+                             "Hello,\tworld!?"));
+        assertEquals(plain, convert(table(CharTable.Policy.DROP),
+                                    "Hello,\tworld!?"));
+        assertEquals("!!!!!!!!", convert(table(CharTable.Policy.PASS),
+                                         "!!!!!!!!"));
+    }
+
+    @Test
+    public void testPolicyNames() {
+        assertEquals(CharTable.Policy.PASS, CharTable.policy("pass"));
+        try {
+            CharTable.policy("lenient");
+            fail("no error for unknown policy");
+        } catch (EnigmaException excp) {
+            assertEquals("unknown character policy: lenient",
+                         excp.getMessage());
+        }
+    }
+}
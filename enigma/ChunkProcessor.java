@@ -0,0 +1,63 @@
+package enigma;
+
+import java.nio.CharBuffer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/** A Flow.Processor that turns each chunk of type T it receives into
+ *  a chunk of characters for its subscribers.  Upstream items are
+ *  requested one at a time, and only after the previous result has been
+ *  accepted into the (bounded) downstream buffers, so a fast producer
+ *  cannot overrun a slow subscriber.
+ *  @author Florence Lau
+ */
+abstract class ChunkProcessor<T> extends SubmissionPublisher<CharBuffer>
+    implements Flow.Processor<T, CharBuffer> {
+
+    /** A processor delivering results on EXECUTOR, buffering at most
+     *  about BUFFERSIZE results for each subscriber. */
+    ChunkProcessor(Executor executor, int bufferSize) {
+        super(executor, bufferSize);
+    }
+
+    /** Return the characters produced from ITEM.  Returns null if
+     *  there is nothing to deliver. */
+    abstract CharBuffer process(T item);
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        _upstream = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(T item) {
+        CharBuffer result;
+        try {
+            result = process(item);
+        } catch (EnigmaException excp) {
+            _upstream.cancel();
+            closeExceptionally(excp);
+            return;
+        }
+        if (result != null && result.hasRemaining()) {
+            submit(result);
+        }
+        _upstream.request(1);
+    }
+
+    @Override
+    public void onError(Throwable excp) {
+        closeExceptionally(excp);
+    }
+
+    @Override
+    public void onComplete() {
+        close();
+    }
+
+    /** Subscription to my source. */
+    private Flow.Subscription _upstream;
+}
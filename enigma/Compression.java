@@ -0,0 +1,114 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/** Transparent compression of message streams.  Compressed input is
+ *  recognized by its first bytes, and compressed output is requested by
+ *  the name of the output file.  Two formats are supported: gzip (RFC
+ *  1952, including files of several concatenated members, as written by
+ *  ParallelGzipOutputStream) and zlib-wrapped deflate (RFC 1950).
+ *  @author Florence Lau
+ */
+final class Compression {
+
+    /** Compression formats. */
+    enum Format {
+        /** Uncompressed. */
+        NONE,
+        /** gzip, with file names ending in ".gz". */
+        GZIP,
+        /** zlib-wrapped deflate, with file names ending in ".zz". */
+        DEFLATE
+    }
+
+    /** Not instantiable. */
+    private Compression() {
+    }
+
+    /** First two bytes of a gzip member. */
+    private static final int GZIP_MAGIC = 0x1f8b;
+
+    /** Return the format of the data at the start of IN, which is left
+     *  unread. */
+    static Format detect(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = b0 < 0 ? -1 : in.read();
+        in.reset();
+        if (b1 < 0) {
+            return Format.NONE;
+        } else if ((b0 << 8 | b1) == GZIP_MAGIC) {
+            return Format.GZIP;
+        } else if (b0 == 0x78
+                   && (b1 == 0x01 || b1 == 0x5e || b1 == 0x9c || b1 == 0xda)) {
+            return Format.DEFLATE;
+        } else {
+            return Format.NONE;
+        }
+    }
+
+    /** Return a stream of the decompressed contents of IN, which is in
+     *  FORMAT. */
+    static InputStream decompress(InputStream in, Format format)
+        throws IOException {
+        switch (format) {
+        case GZIP:
+            return new GZIPInputStream(in, BUFFER_SIZE);
+        case DEFLATE:
+            return new InflaterInputStream(in);
+        default:
+            return in;
+        }
+    }
+
+    /** Return a stream of the contents of IN, decompressed if they are
+     *  in a compressed format. */
+    static InputStream open(InputStream in) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in,
+                                                               BUFFER_SIZE);
+        return decompress(buffered, detect(buffered));
+    }
+
+    /** Return the format requested by the file name NAME. */
+    static Format forName(String name) {
+        if (name.endsWith(".gz")) {
+            return Format.GZIP;
+        } else if (name.endsWith(".zz")) {
+            return Format.DEFLATE;
+        } else {
+            return Format.NONE;
+        }
+    }
+
+    /** Return a stream that compresses its contents in FORMAT onto OUT.
+     *  For gzip, if THREADS > 1, the contents are compressed as
+     *  independent members by THREADS threads at once.  Closing the
+     *  result finishes the compressed data and closes OUT. */
+    static OutputStream compress(OutputStream out, Format format,
+                                 int threads) throws IOException {
+        switch (format) {
+        case GZIP:
+            if (threads > 1) {
+                return new ParallelGzipOutputStream(out, threads);
+            }
+            return new GZIPOutputStream(out, BUFFER_SIZE);
+        case DEFLATE:
+            return new BufferedOutputStream(new DeflaterOutputStream(out),
+                                            BUFFER_SIZE);
+        default:
+            return out;
+        }
+    }
+
+    /** Size of compression buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+}
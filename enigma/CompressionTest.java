@@ -0,0 +1,144 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Compression and
+ *  ParallelGzipOutputStream classes.
+ *  @author Florence Lau
+ */
+public class CompressionTest {
+
+    /** Return DATA compressed in FORMAT with THREADS threads. */
+    private static byte[] compress(byte[] data, Compression.Format format,
+                                   int threads) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out =
+                 Compression.compress(bytes, format, threads)) {
+            out.write(data);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return the result of Compression.open on DATA, read fully. */
+    private static byte[] open(byte[] data) throws IOException {
+        try (InputStream in =
+                 Compression.open(new ByteArrayInputStream(data))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /** Return the format Compression.detect finds in DATA. */
+    private static Compression.Format detect(byte[] data)
+        throws IOException {
+        return Compression.detect(
+            new BufferedInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /** Sample text. */
+    private static final byte[] TEXT =
+        "* B BETA I II III AAAA\nHELLO WORLD\n"
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (Compression.Format format : Compression.Format.values()) {
+            byte[] packed = compress(TEXT, format, 1);
+            assertEquals(format, detect(packed));
+            assertArrayEquals(TEXT, open(packed));
+        }
+        assertEquals(Compression.Format.NONE, detect(new byte[0]));
+        assertEquals(Compression.Format.NONE, detect(new byte[] { 0x1f }));
+        assertArrayEquals(new byte[0], open(new byte[0]));
+    }
+
+    @Test
+    public void testForName() {
+        assertEquals(Compression.Format.GZIP,
+                     Compression.forName("out/msgs.out.gz"));
+        assertEquals(Compression.Format.DEFLATE,
+                     Compression.forName("msgs.zz"));
+        assertEquals(Compression.Format.NONE, Compression.forName("msgs"));
+    }
+
+    @Test
+    public void testParallelMembers() throws IOException {
+        byte[] data = new byte[300_000];
+        Random random = new Random(61);
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) ('A' + random.nextInt(26));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out =
+                 new ParallelGzipOutputStream(bytes, 4, 10_000)) {
+            for (int i = 0; i < data.length; i += 7777) {
+                out.write(data, i, Math.min(7777, data.length - i));
+                out.flush();
+            }
+            out.write('!');
+        }
+        byte[] packed = bytes.toByteArray();
+        try (InputStream in =
+                 new GZIPInputStream(new ByteArrayInputStream(packed))) {
+            byte[] result = in.readAllBytes();
+            assertEquals(data.length + 1, result.length);
+            assertEquals('!', result[data.length]);
+            for (int i = 0; i < data.length; i += 1) {
+                assertEquals(data[i], result[i]);
+            }
+        }
+        assertArrayEquals(new byte[0],
+                          open(compress(new byte[0],
+                                        Compression.Format.GZIP, 3)));
+    }
+
+    @Test
+    public void testMain() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        try {
+            Path config = dir.resolve("naval.conf");
+            Files.writeString(config, NAVAL_CONFIG);
+            Path input = dir.resolve("in.inp.gz");
+            Files.write(input, compress(TEXT, Compression.Format.GZIP, 1));
+            Path plain = dir.resolve("plain.out");
+            Path packed = dir.resolve("packed.out.gz");
+            Path deflated = dir.resolve("deflated.out.zz");
+            Main.run(config.toString(), input.toString(), plain.toString());
+            Main.run("--compress-threads=2", config.toString(),
+                     input.toString(), packed.toString());
+            Main.run(config.toString(), input.toString(),
+                     deflated.toString());
+            String expected = "ILBDA AMTAZ " + System.lineSeparator();
+            assertEquals(expected, Files.readString(plain));
+            assertEquals(expected, new String(open(Files.readAllBytes(packed)),
+                                              StandardCharsets.UTF_8));
+            assertEquals(expected,
+                         new String(open(Files.readAllBytes(deflated)),
+                                    StandardCharsets.UTF_8));
+            Files.delete(config);
+            Files.delete(input);
+            Files.delete(plain);
+            Files.delete(packed);
+            Files.delete(deflated);
+        } finally {
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** An immutable, parsed machine configuration.  A Config holds the
+ *  alphabet, the rotor counts, and the descriptions of all available
+ *  rotors, and can build any number of independent Machines from them,
+ *  so that one parsed configuration may be shared between threads.
+ *  @author Florence Lau
+ */
+final class Config {
+
+    /** Approximate heap bytes per entry of a hash-map-based table: the
+     *  entry itself, its share of the bucket array, and boxed values. */
+    private static final int TABLE_ENTRY_BYTES = 64;
+
+    /** Approximate heap bytes of an int[] table beyond its elements, and
+     *  of a Permutation beyond its tables. */
+    private static final int ARRAY_BYTES = 16, PERMUTATION_BYTES = 40;
+
+    /** Approximate fixed heap bytes per available rotor, excluding its
+     *  permutation's tables. */
+    private static final int ROTOR_BYTES = 160;
+
+    /** First word of a configuration for the byte alphabet. */
+    static final String BYTES = "bytes";
+
+    /** Number of characters in the byte alphabet. */
+    static final int BYTE_SYMBOLS = 256;
+
+    /** A configuration with alphabet ALPHABET, which is the byte
+     *  alphabet iff BINARY, NROTORS rotor slots, NPAWLS pawls, and
+     *  available rotors described by NAMES, TYPES, NOTCHES and PERMS
+     *  (parallel lists). */
+    private Config(Alphabet alphabet, boolean binary, int nRotors,
+                   int nPawls, List<String> names, List<Character> types,
+                   List<String> notches, List<Permutation> perms) {
+        _alphabet = alphabet;
+        _binary = binary;
+        _nRotors = nRotors;
+        _nPawls = nPawls;
+        _names = names.toArray(new String[0]);
+        _types = new char[types.size()];
+        for (int i = 0; i < _types.length; i += 1) {
+            _types[i] = types.get(i);
+        }
+        _notches = notches.toArray(new String[0]);
+        _perms = perms.toArray(new Permutation[0]);
+    }
+
+    /** Return the configuration read from the file named NAME. */
+    static Config read(String name) {
+        try {
+            return read(new Scanner(new File(name)));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the configuration described by the contents of CONFIG.
+     *  If its first word is BYTES rather than an alphabet, the alphabet
+     *  is the BYTE_SYMBOLS byte values, character K standing for the
+     *  byte K, and each rotor description has the form
+     *      NAME TYPE[NOTCHES] WIRING
+     *  where the notches, if any, are bytes written as pairs of
+     *  hexadecimal digits, and WIRING is the images of the bytes 0, 1,
+     *  ..., 255 under the rotor's permutation in the same form (512
+     *  digits, which may be split into several words). */
+    static Config read(Scanner config) {
+        try {
+            config.useDelimiter("[\\s\\t\\n]+");
+            String tempAlpha = config.next();
+            boolean binary = tempAlpha.equals(BYTES);
+            if (!binary && (tempAlpha.contains(" ") || tempAlpha.contains("*")
+                    || tempAlpha.contains("(") || tempAlpha.contains(")")
+                    || tempAlpha.matches(".*[a-z].*"))) {
+                throw error("alphabet contains invalid character");
+            }
+            Alphabet alphabet =
+                binary ? byteAlphabet() : new Alphabet(tempAlpha);
+            int nRotors, nPawls;
+            if (!config.hasNextInt()) {
+                throw error("missing number of rotors");
+            } else {
+                nRotors = config.nextInt();
+            }
+            if (!config.hasNextInt()) {
+                throw error("missing number of pawls");
+            } else {
+                nPawls = config.nextInt();
+            }
+            if (nPawls > nRotors) {
+                throw error("number of pawls cannot exceed number of rotors");
+            }
+            List<String> names = new ArrayList<>();
+            List<Character> types = new ArrayList<>();
+            List<String> notches = new ArrayList<>();
+            List<Permutation> perms = new ArrayList<>();
+            while (config.hasNext()) {
+                if (binary) {
+                    readByteRotor(config, alphabet, names, types, notches,
+                                  perms);
+                } else {
+                    readRotor(config, alphabet, names, types, notches,
+                              perms);
+                }
+            }
+            return new Config(alphabet, binary, nRotors, nPawls,
+                              names, types, notches, perms);
+        } catch (NoSuchElementException excp) {
+            throw error("configuration file truncated");
+        }
+    }
+
+    /** Read one rotor description from CONFIG over ALPHABET, appending
+     *  its name, type, notches and permutation to NAMES, TYPES, NOTCHES
+     *  and PERMS. */
+    private static void readRotor(Scanner config, Alphabet alphabet,
+                                  List<String> names, List<Character> types,
+                                  List<String> notches,
+                                  List<Permutation> perms) {
+        try {
+            String rotorName = config.next().toUpperCase();
+            String rotorTypeNotches = config.next().toUpperCase();
+            char rotorType = rotorTypeNotches.charAt(0);
+            String rotorNotches = "";
+            if (rotorType == 'M') {
+                rotorNotches = rotorTypeNotches.substring(1);
+            }
+            String rotorCycles = "";
+            String lastCycle = "";
+            while (config.hasNext("\\(\\S+")) {
+                lastCycle = config.next();
+                rotorCycles = rotorCycles + lastCycle + " ";
+            }
+            if (!lastCycle.endsWith(")")) {
+                throw error("cycles must end with parentheses");
+            }
+            Permutation myPermutation = new Permutation(rotorCycles, alphabet);
+            if (rotorType != 'M' && rotorType != 'N' && rotorType != 'R') {
+                throw error("invalid rotor type");
+            }
+            names.add(rotorName);
+            types.add(rotorType);
+            notches.add(rotorNotches);
+            perms.add(myPermutation);
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Read one rotor description in the byte format (see read) from
+     *  CONFIG over ALPHABET, appending its name, type, notches and
+     *  permutation to NAMES, TYPES, NOTCHES and PERMS. */
+    private static void readByteRotor(Scanner config, Alphabet alphabet,
+                                      List<String> names,
+                                      List<Character> types,
+                                      List<String> notches,
+                                      List<Permutation> perms) {
+        try {
+            String rotorName = config.next().toUpperCase();
+            String rotorTypeNotches = config.next().toUpperCase();
+            char rotorType = rotorTypeNotches.charAt(0);
+            if (rotorType != 'M' && rotorType != 'N' && rotorType != 'R') {
+                throw error("invalid rotor type");
+            }
+            StringBuilder rotorNotches = new StringBuilder();
+            if (rotorType == 'M') {
+                for (int b : hexBytes(rotorTypeNotches.substring(1))) {
+                    rotorNotches.append((char) b);
+                }
+            } else if (rotorTypeNotches.length() > 1) {
+                throw error("only moving rotors have notches");
+            }
+            StringBuilder wiring = new StringBuilder();
+            while (wiring.length() < 2 * BYTE_SYMBOLS) {
+                wiring.append(config.next());
+            }
+            int[] images = hexBytes(wiring.toString());
+            if (images.length != BYTE_SYMBOLS) {
+                throw error("wiring of rotor %s must have %d bytes",
+                            rotorName, BYTE_SYMBOLS);
+            }
+            names.add(rotorName);
+            types.add(rotorType);
+            notches.add(rotorNotches.toString());
+            perms.add(new Permutation(images, alphabet));
+        } catch (NoSuchElementException excp) {
+            throw error("bad rotor description");
+        }
+    }
+
+    /** Return the byte alphabet. */
+    private static Alphabet byteAlphabet() {
+        char[] chars = new char[BYTE_SYMBOLS];
+        for (int k = 0; k < BYTE_SYMBOLS; k += 1) {
+            chars[k] = (char) k;
+        }
+        return new Alphabet(new String(chars));
+    }
+
+    /** Return the bytes written in HEX as pairs of hexadecimal
+     *  digits. */
+    static int[] hexBytes(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw error("odd number of hexadecimal digits: %s", hex);
+        }
+        int[] result = new int[hex.length() / 2];
+        for (int k = 0; k < result.length; k += 1) {
+            int hi = Character.digit(hex.charAt(2 * k), 16);
+            int lo = Character.digit(hex.charAt(2 * k + 1), 16);
+            if (hi < 0 || lo < 0) {
+                throw error("bad hexadecimal digits: %s", hex);
+            }
+            result[k] = hi << 4 | lo;
+        }
+        return result;
+    }
+
+    /** Return true iff my alphabet is the byte alphabet (see read). */
+    boolean binary() {
+        return _binary;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _nRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _nPawls;
+    }
+
+    /** Return the number of available rotors. */
+    int numAvailableRotors() {
+        return _names.length;
+    }
+
+    /** Return the name of available rotor #K. */
+    String rotorName(int k) {
+        return _names[k];
+    }
+
+    /** Return the number of the available rotor named NAME, or -1 if
+     *  there is none. */
+    int rotorIndex(String name) {
+        for (int k = 0; k < _names.length; k += 1) {
+            if (_names[k].equals(name)) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Return an estimate of the heap memory, in bytes, taken by my
+     *  alphabet and permutation tables and the other data I hold.  The
+     *  alphabet is a pair of hash maps with one entry per character;
+     *  each permutation is a pair of int[] tables (images and inverse
+     *  images). */
+    long weight() {
+        int size = _alphabet.size();
+        long result = 2 * TABLE_ENTRY_BYTES * size;
+        result += _perms.length
+            * (PERMUTATION_BYTES + 2 * (ARRAY_BYTES + Integer.BYTES * size));
+        for (int i = 0; i < _names.length; i += 1) {
+            result += ROTOR_BYTES + 2 * (_names[i].length()
+                                         + _notches[i].length());
+        }
+        return result;
+    }
+
+    /** Return the SHA-256 hash, in hexadecimal, of a description of my
+     *  complete contents: alphabet, rotor counts, and the names, types,
+     *  notches and wirings of all available rotors.  Configurations that
+     *  build the same machines have the same digest, whatever the layout
+     *  of the text they were read from. */
+    String digest() {
+        StringBuilder text = new StringBuilder();
+        text.append(_binary ? BYTES : "text").append(' ')
+            .append(_alphabet.size()).append(':');
+        for (int p = 0; p < _alphabet.size(); p += 1) {
+            text.append(_alphabet.toChar(p));
+        }
+        text.append(' ').append(_nRotors).append(' ').append(_nPawls);
+        for (int i = 0; i < _names.length; i += 1) {
+            text.append('\n').append(_names[i]).append(' ')
+                .append(_types[i]).append(_notches[i].length()).append(':')
+                .append(_notches[i]).append(' ');
+            for (int p = 0; p < _alphabet.size(); p += 1) {
+                text.append(_perms[i].permute(p)).append(',');
+            }
+        }
+        return ConfigRegistry.digest(text.toString());
+    }
+
+    /** Return a fresh collection of all available rotors, each at its
+     *  0 setting.  Rotors are never shared between calls. */
+    Collection<Rotor> rotors() {
+        Collection<Rotor> result = new ArrayList<>();
+        for (int i = 0; i < _names.length; i += 1) {
+            switch (_types[i]) {
+            case 'M':
+                result.add(new MovingRotor(_names[i], _perms[i],
+                                           _notches[i]));
+                break;
+            case 'N':
+                result.add(new FixedRotor(_names[i], _perms[i]));
+                break;
+            default:
+                result.add(new Reflector(_names[i], _perms[i]));
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Return a new Machine with its own rotors, not yet set up. */
+    Machine newMachine() {
+        return new Machine(_alphabet, _nRotors, _nPawls, rotors());
+    }
+
+    /** Set M according to the specification given on SETTINGS,
+     *  which must have the format specified in the assignment. */
+    void setUp(Machine M, String settings) {
+        String problem = setUp(M, settings, true);
+        if (problem != null) {
+            throw error("%s", problem);
+        }
+    }
+
+    /** Return the message of the error that setUp(M, SETTINGS) would
+     *  report, or null if it would accept SETTINGS.  M, one of my
+     *  machines, is not changed. */
+    String settingsProblem(Machine M, String settings) {
+        return setUp(M, settings, false);
+    }
+
+    /** Check SETTINGS as for setUp(M, SETTINGS), returning the message
+     *  of the first error found, or null if there is none.  If APPLY,
+     *  also set up M as far as SETTINGS is found to be correct. */
+    private String setUp(Machine M, String settings, boolean apply) {
+        String[] settingsArray = settings.trim().split("\\s+");
+        String[] usedRotors = new String[_nRotors];
+        int settingsIndex = 0;
+        String plugb = "";
+        if (_nRotors > settingsArray.length - 1) {
+            return "number of rotors in settings line does "
+                    + "not match that of config";
+        }
+        if (!settingsArray[0].equals("*")) {
+            return "missing * in the settings line, wrong format";
+        }
+        for (int i = 1; i <= _nRotors; i++) {
+            usedRotors[i - 1] = settingsArray[i].toUpperCase();
+            settingsIndex = i + 1;
+        }
+        String problem = M.rotorsProblem(usedRotors);
+        if (problem != null) {
+            return problem;
+        } else if (apply) {
+            M.insertRotors(usedRotors);
+        }
+        if (settingsIndex > settingsArray.length - 1) {
+            return "missing rotor settings";
+        }
+        String rotorSettings = settingsArray[settingsIndex];
+        problem = M.settingProblem(rotorSettings);
+        if (problem != null) {
+            return problem;
+        } else if (apply) {
+            M.setRotors(rotorSettings);
+        }
+        if (settingsIndex < settingsArray.length - 1) {
+            for (int i = settingsIndex + 1; i < settingsArray.length; i++) {
+                String aCycle = settingsArray[i];
+                if (aCycle.startsWith("(") && aCycle.endsWith(")")
+                        && aCycle.length() == 4) {
+                    if (!plugb.contains(Character.toString(aCycle.charAt(1)))
+                            && !plugb.contains(Character.toString
+                            (aCycle.charAt(2)))) {
+                        plugb += aCycle;
+                    } else {
+                        return "duplicate character in "
+                                + "plugboard not allowed";
+                    }
+                    if (i != settingsArray.length - 1) {
+                        plugb += " ";
+                    }
+                } else {
+                    return "plugboard permutations must be in pairs";
+                }
+            }
+            problem = Permutation.cyclesProblem(plugb, _alphabet);
+            if (problem != null) {
+                return problem;
+            } else if (apply) {
+                M.setPlugboard(new Permutation(plugb, _alphabet));
+            }
+        }
+        return null;
+    }
+
+    /** Set M, which must be one of my machines for the byte alphabet,
+     *  according to SETTINGS, a settings line in which the rotor
+     *  settings and plugboard pairs are bytes written as pairs of
+     *  hexadecimal digits, as in "* B BETA III IV I 00a0ff (0a0b)". */
+    void setUpBytes(Machine M, String settings) {
+        if (!_binary) {
+            throw error("not a byte configuration");
+        }
+        String[] settingsArray = settings.trim().split("\\s+");
+        if (!settingsArray[0].equals("*")) {
+            throw error("missing * in the settings line, wrong format");
+        }
+        if (_nRotors > settingsArray.length - 1) {
+            throw error("number of rotors in settings line does "
+                    + "not match that of config");
+        }
+        String[] usedRotors = new String[_nRotors];
+        for (int i = 1; i <= _nRotors; i += 1) {
+            usedRotors[i - 1] = settingsArray[i].toUpperCase();
+        }
+        M.insertRotors(usedRotors);
+        if (_nRotors + 1 > settingsArray.length - 1) {
+            throw error("missing rotor settings");
+        }
+        int[] positions = hexBytes(settingsArray[_nRotors + 1]);
+        if (positions.length != _nRotors - 1) {
+            throw error("wrong number of settings");
+        }
+        for (int k = 1; k < _nRotors; k += 1) {
+            M.rotor(k).set(positions[k - 1]);
+        }
+        if (_nRotors + 2 < settingsArray.length) {
+            int[] images = new int[BYTE_SYMBOLS];
+            for (int k = 0; k < BYTE_SYMBOLS; k += 1) {
+                images[k] = k;
+            }
+            for (int i = _nRotors + 2; i < settingsArray.length; i += 1) {
+                String aCycle = settingsArray[i];
+                if (!aCycle.startsWith("(") || !aCycle.endsWith(")")
+                    || aCycle.length() != 6) {
+                    throw error("plugboard permutations must be in pairs");
+                }
+                int[] pair = hexBytes(aCycle.substring(1, 5));
+                if (images[pair[0]] != pair[0]
+                    || images[pair[1]] != pair[1] || pair[0] == pair[1]) {
+                    throw error("duplicate character in "
+                                + "plugboard not allowed");
+                }
+                images[pair[0]] = pair[1];
+                images[pair[1]] = pair[0];
+            }
+            M.setPlugboard(new Permutation(images, _alphabet));
+        }
+    }
+
+    /** Return a new Machine set up according to SETTINGS. */
+    Machine newMachine(String settings) {
+        Machine result = newMachine();
+        setUp(result, settings);
+        return result;
+    }
+
+    /** Alphabet used by all my machines. */
+    private final Alphabet _alphabet;
+
+    /** True iff _alphabet is the byte alphabet. */
+    private final boolean _binary;
+
+    /** Number of rotor slots. */
+    private final int _nRotors;
+
+    /** Number of pawls. */
+    private final int _nPawls;
+
+    /** Names of the available rotors. */
+    private final String[] _names;
+
+    /** Types ('M', 'N' or 'R') of the available rotors. */
+    private final char[] _types;
+
+    /** Notches of the available rotors ("" for non-moving rotors). */
+    private final String[] _notches;
+
+    /** Permutations of the available rotors in their 0 settings. */
+    private final Permutation[] _perms;
+}
@@ -0,0 +1,34 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event for reading a configuration file.
+ *  @author Florence Lau
+ */
+@Name("enigma.ConfigLoad")
+@Label("Enigma Configuration Load")
+@Category("Enigma")
+class ConfigEvent extends Event {
+
+    /** Name of the configuration file. */
+    @Label("File")
+    String file;
+
+    /** Number of rotors the configuration makes available. */
+    @Label("Available Rotors")
+    int rotors;
+
+    /** End timing and record this event, if enabled, for reading CONFIG
+     *  from the file named FILENAME. */
+    void commit(String fileName, Config config) {
+        end();
+        if (shouldCommit()) {
+            file = fileName;
+            rotors = config.numAvailableRotors();
+            commit();
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of parsed configurations, keyed by the SHA-256 hash of their
+ *  text, so that any number of configuration files (or copies of the
+ *  same file under different names) are each parsed only once while
+ *  they stay in the cache.  The cache is bounded by the total estimated
+ *  size of its Configs (see Config.weight) and evicts either the least
+ *  recently used or the least frequently used entry when full.  When
+ *  several threads ask for the same uncached configuration at once, one
+ *  of them parses it and the others wait for its result.
+ *  @author Florence Lau
+ */
+final class ConfigRegistry implements ConfigRegistryMBean {
+
+    /** Name under which a registry is registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=ConfigRegistry";
+
+    /** Eviction policies. */
+    enum Policy {
+        /** Evict the least recently used configuration. */
+        LRU,
+        /** Evict the least frequently used configuration, breaking ties
+         *  by recency. */
+        LFU
+    }
+
+    /** A cached configuration and its use statistics. */
+    private static final class Entry {
+        /** An entry for CONFIG. */
+        Entry(Config config) {
+            this.config = config;
+            this.weight = config.weight();
+        }
+
+        /** The configuration. */
+        final Config config;
+        /** Its estimated size in bytes. */
+        final long weight;
+        /** Number of times it has been requested. */
+        long uses;
+    }
+
+    /** A registry holding configurations whose total estimated size is
+     *  at most MAXWEIGHT bytes, evicting according to POLICY. */
+    ConfigRegistry(long maxWeight, Policy policy) {
+        if (maxWeight <= 0) {
+            throw error("cache size must be positive");
+        }
+        _maxWeight = maxWeight;
+        _policy = policy;
+    }
+
+    /** Return the configuration in the file FILE. */
+    Config load(Path file) {
+        String text;
+        try {
+            text = Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        return get(text);
+    }
+
+    /** Return the configuration described by TEXT, parsing it unless it
+     *  is cached or being parsed by another thread. */
+    Config get(String text) {
+        String key = digest(text);
+        CompletableFuture<Config> pending;
+        boolean loader = false;
+        synchronized (this) {
+            Entry entry = _entries.get(key);
+            if (entry != null) {
+                entry.uses += 1;
+                _hits += 1;
+                return entry.config;
+            }
+            pending = _loading.get(key);
+            if (pending == null) {
+                pending = new CompletableFuture<>();
+                _loading.put(key, pending);
+                loader = true;
+                _misses += 1;
+            } else {
+                _waits += 1;
+            }
+        }
+        if (loader) {
+            try {
+                Config config =
+                    Metrics.readConfig(new Scanner(text), "sha256:" + key);
+                add(key, config);
+                pending.complete(config);
+            } catch (RuntimeException | Error excp) {
+                pending.completeExceptionally(excp);
+            } finally {
+                synchronized (this) {
+                    _loading.remove(key);
+                }
+            }
+        }
+        try {
+            return pending.join();
+        } catch (CompletionException excp) {
+            if (excp.getCause() instanceof Error) {
+                throw (Error) excp.getCause();
+            }
+            throw (RuntimeException) excp.getCause();
+        }
+    }
+
+    /** Add CONFIG, whose key is KEY, evicting other entries as needed to
+     *  keep within my size limit.  A configuration larger than the limit
+     *  by itself is not cached. */
+    private synchronized void add(String key, Config config) {
+        Entry entry = new Entry(config);
+        entry.uses = 1;
+        if (entry.weight > _maxWeight) {
+            return;
+        }
+        while (_weight + entry.weight > _maxWeight) {
+            evict();
+        }
+        _entries.put(key, entry);
+        _weight += entry.weight;
+    }
+
+    /** Remove one entry according to my policy. */
+    private void evict() {
+        Iterator<Entry> entries = _entries.values().iterator();
+        Entry victim = entries.next();
+        if (_policy == Policy.LFU) {
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.uses < victim.uses) {
+                    victim = entry;
+                }
+            }
+        }
+        _entries.values().remove(victim);
+        _weight -= victim.weight;
+        _evictions += 1;
+    }
+
+    /** Return the SHA-256 hash of the UTF-8 encoding of TEXT, in
+     *  hexadecimal. */
+    static String digest(String text) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(
+                sha.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException excp) {
+            throw new AssertionError("SHA-256 is not available", excp);
+        }
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return _hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    @Override
+    public synchronized long getWaits() {
+        return _waits;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return _entries.size();
+    }
+
+    @Override
+    public synchronized long getWeight() {
+        return _weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return _maxWeight;
+    }
+
+    @Override
+    public synchronized String getSummary() {
+        return String.format("configs: %d cached (%d of %d bytes), "
+                             + "%d hits, %d misses, %d waits, "
+                             + "%d evictions%n",
+                             _entries.size(), _weight, _maxWeight, _hits,
+                             _misses, _waits, _evictions);
+    }
+
+    /** Register me with the platform MBean server under OBJECT_NAME,
+     *  replacing any registry registered before. */
+    void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register config registry: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Maximum total estimated size of cached configurations. */
+    private final long _maxWeight;
+
+    /** Eviction policy. */
+    private final Policy _policy;
+
+    /** Cached configurations by key, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Results of parses in progress, by key. */
+    private final Map<String, CompletableFuture<Config>> _loading =
+        new HashMap<>();
+
+    /** Total estimated size of _entries. */
+    private long _weight;
+
+    /** Statistics. */
+    private long _hits, _misses, _waits, _evictions;
+}
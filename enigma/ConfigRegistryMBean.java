@@ -0,0 +1,33 @@
+package enigma;
+
+/** The management interface of ConfigRegistry.
+ *  @author Florence Lau
+ */
+public interface ConfigRegistryMBean {
+
+    /** Return the number of requests answered from the cache. */
+    long getHits();
+
+    /** Return the number of requests that parsed a configuration. */
+    long getMisses();
+
+    /** Return the number of requests that waited for another request
+     *  to parse the same configuration. */
+    long getWaits();
+
+    /** Return the number of configurations evicted. */
+    long getEvictions();
+
+    /** Return the number of cached configurations. */
+    int getSize();
+
+    /** Return the total estimated size in bytes of the cached
+     *  configurations. */
+    long getWeight();
+
+    /** Return the limit on getWeight(). */
+    long getMaxWeight();
+
+    /** Return a human-readable summary of all the above. */
+    String getSummary();
+}
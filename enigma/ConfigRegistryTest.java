@@ -0,0 +1,145 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigRegistry class.
+ *  @author Florence Lau
+ */
+public class ConfigRegistryTest {
+
+    /** Return a variant of NAVAL_CONFIG that differs in its text (and so
+     *  in its hash) according to K. */
+    private static String variant(int k) {
+        return NAVAL_CONFIG + " X" + k + " N (AB)\n";
+    }
+
+    /** Estimated size of each variant. */
+    private static final long WEIGHT =
+        Config.read(new java.util.Scanner(variant(0))).weight();
+
+    @Test
+    public void testHitsAndMisses() {
+        ConfigRegistry registry =
+            new ConfigRegistry(10 * WEIGHT, ConfigRegistry.Policy.LRU);
+        Config first = registry.get(variant(0));
+        assertSame(first, registry.get(variant(0)));
+        assertSame(first, registry.get(new String(variant(0))));
+        assertNotSame(first, registry.get(variant(1)));
+        assertEquals(2, registry.getHits());
+        assertEquals(2, registry.getMisses());
+        assertEquals(2, registry.getSize());
+        assertEquals(2 * WEIGHT, registry.getWeight());
+        Machine m = first.newMachine("* B BETA I II III AAAA");
+        assertEquals("ILBDA AMTAZ", m.convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void testLruEviction() {
+        ConfigRegistry registry =
+            new ConfigRegistry(3 * WEIGHT, ConfigRegistry.Policy.LRU);
+        Config c0 = registry.get(variant(0));
+        registry.get(variant(1));
+        registry.get(variant(2));
+        registry.get(variant(0));
+        registry.get(variant(3));
+        assertEquals(1, registry.getEvictions());
+        assertEquals(3, registry.getSize());
+        assertTrue(registry.getWeight() <= registry.getMaxWeight());
+        long misses = registry.getMisses();
+        assertSame(c0, registry.get(variant(0)));
+        registry.get(variant(1));
+        assertEquals(misses + 1, registry.getMisses());
+    }
+
+    @Test
+    public void testLfuEviction() {
+        ConfigRegistry registry =
+            new ConfigRegistry(3 * WEIGHT, ConfigRegistry.Policy.LFU);
+        for (int k = 0; k < 3; k += 1) {
+            registry.get(variant(0));
+            registry.get(variant(1));
+        }
+        registry.get(variant(2));
+        registry.get(variant(3));
+        long misses = registry.getMisses();
+        registry.get(variant(0));
+        registry.get(variant(1));
+        registry.get(variant(3));
+        assertEquals(misses, registry.getMisses());
+        registry.get(variant(2));
+        assertEquals(misses + 1, registry.getMisses());
+    }
+
+    @Test
+    public void testWeightOfPermutations() {
+        long base = navalConfig().weight();
+        long perRotor = WEIGHT - base;
+        assertTrue(perRotor > 2 * Integer.BYTES * 26);
+        assertTrue(perRotor < 4 * Integer.BYTES * 26 + 400);
+    }
+
+    @Test
+    public void testOversized() {
+        ConfigRegistry registry =
+            new ConfigRegistry(WEIGHT / 2, ConfigRegistry.Policy.LRU);
+        assertNotNull(registry.get(variant(0)));
+        assertEquals(0, registry.getSize());
+        assertEquals(0, registry.getWeight());
+    }
+
+    @Test
+    public void testErrorsNotCached() {
+        ConfigRegistry registry =
+            new ConfigRegistry(10 * WEIGHT, ConfigRegistry.Policy.LRU);
+        for (int k = 0; k < 2; k += 1) {
+            try {
+                registry.get("ABC\n 5 3\n I MQ (AB\n");
+                fail("accepted bad configuration");
+            } catch (EnigmaException excp) {
+                assertEquals("cycles must end with parentheses",
+                             excp.getMessage());
+            }
+        }
+        assertEquals(2, registry.getMisses());
+        assertEquals(0, registry.getSize());
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        ConfigRegistry registry =
+            new ConfigRegistry(10 * WEIGHT, ConfigRegistry.Policy.LRU);
+        int nThreads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Config>> results = new ArrayList<>();
+            for (int k = 0; k < nThreads; k += 1) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return registry.get(variant(0));
+                }));
+            }
+            start.countDown();
+            Config first = results.get(0).get();
+            for (Future<Config> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, registry.getMisses());
+            assertEquals(nThreads - 1,
+                         registry.getHits() + registry.getWaits());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
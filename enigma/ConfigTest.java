@@ -0,0 +1,52 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.*;
+
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Config class.
+ *  @author Florence Lau
+ */
+public class ConfigTest {
+
+    /** Testing whether errors are thrown when they are supposed to be. */
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    @Test
+    public void testRead() {
+        Config config = navalConfig();
+        assertEquals(26, config.alphabet().size());
+        assertEquals(5, config.numRotors());
+        assertEquals(3, config.numPawls());
+        assertEquals(12, config.rotors().size());
+    }
+
+    @Test
+    public void testIndependentMachines() {
+        Config config = navalConfig();
+        Machine m1 = config.newMachine("* B BETA I II III AAAA");
+        assertEquals("ILBDA AMTAZ", m1.convert("HELLO WORLD"));
+        Machine m2 = config.newMachine("* B BETA I II III AAAA");
+        assertEquals("ILBDA AMTAZ", m2.convert("HELLO WORLD"));
+        assertEquals(m1.convert("HELLO"), m2.convert("HELLO"));
+    }
+
+    @Test
+    public void testBadRotorType() {
+        exception.expect(EnigmaException.class);
+        Config.read(new Scanner("AB 2 1 I Q (AB) R R (AB)"));
+    }
+
+    @Test
+    public void testDuplicatePlugboard() {
+        exception.expect(EnigmaException.class);
+        navalConfig().newMachine("* B BETA I II III AAAA (AB) (BC)");
+    }
+}
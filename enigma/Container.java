@@ -0,0 +1,110 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.Scanner;
+
+import static enigma.EnigmaException.*;
+
+/** Command-line tool for seekable containers (see ContainerWriter).
+ *  @author Florence Lau
+ */
+public final class Container {
+
+    /** Usage message. */
+    private static final String USAGE =
+        "usage: java enigma.Container CONFIG INPUT GROUPED CONTAINER "
+        + "[CHUNK]\n"
+        + "       java enigma.Container --read CONFIG CONTAINER FROM TO";
+
+    /** Perform the operation described by ARGS, which is one of
+     *      CONFIG INPUT GROUPED CONTAINER [CHUNK]
+     *  which packs GROUPED, the grouped output Main printed for the
+     *  input file INPUT (whose settings lines say how each message was
+     *  converted), into the container CONTAINER with CHUNK positions per
+     *  chunk, or
+     *      --read CONFIG CONTAINER FROM TO
+     *  which prints the messages in positions FROM..TO-1 of CONTAINER
+     *  converted back. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 5 && args[0].equals("--read")) {
+                read(Config.read(args[1]), args[2],
+                     parseLong(args[3]), parseLong(args[4]));
+            } else if (args.length == 4 || args.length == 5) {
+                pack(Config.read(args[0]), args[1], args[2], args[3],
+                     args.length == 5 ? chunkSize(args[4])
+                     : ContainerWriter.DEFAULT_CHUNK_SIZE);
+            } else {
+                throw error(USAGE);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Pack the grouped output in the file named GROUPED, which Main
+     *  produced from the input file named INPUT, into a new container
+     *  named CONTAINER with CHUNKSIZE positions per chunk, using machines
+     *  described by CONFIG.  The settings lines are taken from INPUT,
+     *  each of whose message lines has one line of GROUPED. */
+    static void pack(Config config, String input, String grouped,
+                     String container, int chunkSize) throws IOException {
+        try (Scanner settings = new Scanner(new File(input));
+             Scanner in = new Scanner(new File(grouped));
+             ContainerWriter out = new ContainerWriter(
+                 new FileOutputStream(container), config, chunkSize)) {
+            boolean first = true;
+            while (settings.hasNextLine()) {
+                String line = settings.nextLine();
+                if (first || line.startsWith("*")) {
+                    out.settings(line.toUpperCase());
+                } else if (in.hasNextLine()) {
+                    out.ciphertext(in.nextLine().toUpperCase());
+                } else {
+                    throw error("%s has fewer messages than %s", grouped,
+                                input);
+                }
+                first = false;
+            }
+            if (in.hasNextLine()) {
+                throw error("%s has more messages than %s", grouped, input);
+            }
+        }
+    }
+
+    /** Print positions FROM..TO-1 of the container named CONTAINER,
+     *  converted back with machines described by CONFIG. */
+    static void read(Config config, String container, long from, long to)
+        throws IOException {
+        try (ContainerReader in = new ContainerReader(container, config)) {
+            System.out.print(in.read(from, to));
+            System.out.flush();
+        }
+    }
+
+    /** Return the chunk size given by the decimal numeral S, which must
+     *  be positive and fit in an int. */
+    private static int chunkSize(String s) {
+        long size = parseLong(s);
+        if (size <= 0 || size > Integer.MAX_VALUE) {
+            throw error("bad chunk size: %s", s);
+        }
+        return (int) size;
+    }
+
+    /** Return the value of the decimal numeral S. */
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+}
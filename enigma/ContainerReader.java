@@ -0,0 +1,176 @@
+package enigma;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static enigma.EnigmaException.*;
+
+/** Random access to the messages in a container written by a
+ *  ContainerWriter (see there for the format).  Any range of positions
+ *  can be converted back by reading one index entry and the chunks
+ *  covering the range, without replaying the text before them.
+ *  @author Florence Lau
+ */
+class ContainerReader implements Closeable {
+
+    /** Longest range of positions that can be read at once (the
+     *  largest array length that virtual machines generally allow). */
+    static final long MAX_RANGE = Integer.MAX_VALUE - 8;
+
+    /** Number of positions read from the file at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A reader for the container in the file named NAME, whose machines
+     *  are described by CONFIG. */
+    ContainerReader(String name, Config config) throws IOException {
+        _file = new RandomAccessFile(name, "r");
+        _config = config;
+        boolean opened = false;
+        try {
+            if (_file.readInt() != ContainerWriter.MAGIC
+                || _file.readInt() != ContainerWriter.VERSION) {
+                throw error("%s is not a container", name);
+            }
+            _chunkSize = _file.readInt();
+            _file.seek(_file.length() - ContainerWriter.FOOTER_SIZE);
+            long sections = _file.readLong();
+            _indexOffset = _file.readLong();
+            _length = (sections - ContainerWriter.HEADER_SIZE) / 2;
+            _file.seek(sections);
+            int n = _file.readInt();
+            if (_chunkSize <= 0 || n < 0
+                || n > (_file.length() - sections) / Long.BYTES) {
+                throw error("%s is not a container", name);
+            }
+            _sectionStarts = new long[n];
+            _sectionSettings = new String[n];
+            for (int k = 0; k < n; k += 1) {
+                _sectionStarts[k] = _file.readLong();
+                _sectionSettings[k] = _file.readUTF();
+            }
+            opened = true;
+        } catch (IOException excp) {
+            throw error("%s is not a container", name);
+        } finally {
+            if (!opened) {
+                _file.close();
+            }
+        }
+    }
+
+    /** Return the number of positions (characters, including the
+     *  newlines ending each message line) in my text. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the number of positions per chunk. */
+    int chunkSize() {
+        return _chunkSize;
+    }
+
+    /** Return the stored (converted) text in positions FROM..TO-1. */
+    String ciphertext(long from, long to) throws IOException {
+        checkRange(from, to);
+        return new String(text(from, to));
+    }
+
+    /** Return the text in positions FROM..TO-1 converted back (that is,
+     *  the original messages, without whitespace, one per line). */
+    String read(long from, long to) throws IOException {
+        checkRange(from, to);
+        if (from == to) {
+            return "";
+        }
+        StringBuilder result = new StringBuilder((int) (to - from));
+        int chunk = (int) (from / _chunkSize);
+        _file.seek(_indexOffset + Integer.BYTES
+                   + (long) chunk * ContainerWriter.ENTRY_SIZE);
+        int section = _file.readInt();
+        long state = _file.readLong();
+        Machine machine = _config.newMachine(_sectionSettings[section]);
+        machine.restore(state);
+        Alphabet alphabet = machine.alphabet();
+        long start = (long) chunk * _chunkSize;
+        char[] text = text(start, to);
+        for (long p = start; p < to; p += 1) {
+            if (section + 1 < _sectionStarts.length
+                && _sectionStarts[section + 1] <= p) {
+                while (section + 1 < _sectionStarts.length
+                       && _sectionStarts[section + 1] <= p) {
+                    section += 1;
+                }
+                machine = _config.newMachine(_sectionSettings[section]);
+            }
+            char c = text[(int) (p - start)];
+            if (c != '\n') {
+                c = alphabet.toChar(machine.convert(alphabet.toInt(c)));
+            }
+            if (p >= from) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the stored characters in positions FROM..TO-1, reading
+     *  BUFFER_SIZE positions at a time. */
+    private char[] text(long from, long to) throws IOException {
+        checkSize(from, to);
+        char[] result = new char[(int) (to - from)];
+        byte[] bytes = new byte[2 * Math.min(result.length, BUFFER_SIZE)];
+        _file.seek(ContainerWriter.HEADER_SIZE + 2 * from);
+        for (int i = 0; i < result.length; i += BUFFER_SIZE) {
+            int n = Math.min(result.length - i, BUFFER_SIZE);
+            _file.readFully(bytes, 0, 2 * n);
+            for (int k = 0; k < n; k += 1) {
+                int hi = bytes[2 * k] & 0xff, lo = bytes[2 * k + 1] & 0xff;
+                result[i + k] = (char) ((hi << 8) | lo);
+            }
+        }
+        return result;
+    }
+
+    /** Check that FROM..TO-1 is a valid range of positions. */
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > _length || from > to) {
+            throw error("position out of range");
+        }
+        checkSize(from, to);
+    }
+
+    /** Check that FROM..TO-1 is short enough to read at once. */
+    private static void checkSize(long from, long to) {
+        if (to - from > MAX_RANGE) {
+            throw error("range of %d positions is too long to read at once"
+                        + " (at most %d)", to - from, MAX_RANGE);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        _file.close();
+    }
+
+    /** The container file. */
+    private final RandomAccessFile _file;
+
+    /** Configuration of my machines. */
+    private final Config _config;
+
+    /** Number of positions per chunk. */
+    private int _chunkSize;
+
+    /** Number of positions of text. */
+    private long _length;
+
+    /** File offset of the index. */
+    private long _indexOffset;
+
+    /** First position of each section. */
+    private long[] _sectionStarts;
+
+    /** Settings line of each section. */
+    private String[] _sectionSettings;
+}
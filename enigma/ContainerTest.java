@@ -0,0 +1,191 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ContainerWriter and
+ *  ContainerReader classes.
+ *  @author Florence Lau
+ */
+public class ContainerTest {
+
+    /** Lines of input, in the format Main accepts. */
+    private static final String[] INPUT = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "* C GAMMA VII IV VIII AJFC (BS) (ML) (UX)",
+        "",
+        "* B BETA I II III AAAA",
+        "* B BETA I II III AAAA",
+        "HELLO WORLD",
+    };
+
+    /** Return the plaintext of INPUT as stored in a container. */
+    private static String plaintext() {
+        StringBuilder result = new StringBuilder();
+        for (String line : INPUT) {
+            if (!line.startsWith("*")) {
+                result.append(line.replace(" ", "")).append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the expected ciphertext of INPUT as stored in a
+     *  container. */
+    private static String ciphertext() {
+        Config config = navalConfig();
+        Machine machine = null;
+        StringBuilder result = new StringBuilder();
+        for (String line : INPUT) {
+            if (line.startsWith("*")) {
+                machine = config.newMachine(line);
+            } else {
+                result.append(machine.convert(line).replace(" ", ""))
+                    .append('\n');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Write INPUT to a temporary container with CHUNKSIZE positions
+     *  per chunk, and return the file. */
+    private File write(int chunkSize) throws IOException {
+        File file = File.createTempFile("enigma", ".engc");
+        file.deleteOnExit();
+        try (ContainerWriter out = new ContainerWriter(
+                 new FileOutputStream(file), navalConfig(), chunkSize)) {
+            for (String line : INPUT) {
+                if (line.startsWith("*")) {
+                    out.settings(line);
+                } else {
+                    out.message(line);
+                }
+            }
+        }
+        return file;
+    }
+
+    @Test
+    public void testWholeContainer() throws IOException {
+        String plain = plaintext();
+        File file = write(7);
+        try (ContainerReader in =
+                 new ContainerReader(file.getPath(), navalConfig())) {
+            assertEquals(plain.length(), in.length());
+            assertEquals(7, in.chunkSize());
+            assertEquals(ciphertext(), in.ciphertext(0, in.length()));
+            assertEquals(plain, in.read(0, in.length()));
+        }
+    }
+
+    @Test
+    public void testRanges() throws IOException {
+        String plain = plaintext();
+        for (int chunkSize = 1; chunkSize < 20; chunkSize += 3) {
+            File file = write(chunkSize);
+            try (ContainerReader in =
+                     new ContainerReader(file.getPath(), navalConfig())) {
+                for (int from = 0; from < plain.length(); from += 1) {
+                    for (int to = from; to <= plain.length(); to += 5) {
+                        assertEquals(plain.substring(from, to),
+                                     in.read(from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDamaged() throws IOException {
+        for (int damage = 0; damage < 3; damage += 1) {
+            File file = write(7);
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                if (damage == 0) {
+                    out.writeInt(0);
+                } else {
+                    out.seek(out.length() - ContainerWriter.FOOTER_SIZE);
+                    out.seek(out.readLong());
+                    out.writeInt(damage == 1 ? -1 : Integer.MAX_VALUE);
+                }
+            }
+            try {
+                new ContainerReader(file.getPath(), navalConfig()).close();
+                fail("damaged container accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("is not a container"));
+            }
+        }
+    }
+
+    /** Write LINES to a new temporary file, and return the file. */
+    private static File temp(String... lines) throws IOException {
+        File file = File.createTempFile("enigma", ".txt");
+        file.deleteOnExit();
+        try (PrintStream out = new PrintStream(file)) {
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+        return file;
+    }
+
+    /** Return the lines Main prints for INPUT. */
+    private static String[] grouped() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Config config = navalConfig();
+        Main.process(config, new CharTable(config.alphabet(),
+                                           CharTable.Policy.STRICT),
+                     new Scanner(String.join("\n", INPUT)),
+                     new PrintStream(out, true), 0);
+        return out.toString().split("\\R", -1);
+    }
+
+    @Test
+    public void testPack() throws IOException {
+        String[] lines = grouped();
+        File input = temp(INPUT),
+            grouped = temp(Arrays.copyOf(lines, lines.length - 1));
+        File file = File.createTempFile("enigma", ".engc");
+        file.deleteOnExit();
+        Container.pack(navalConfig(), input.getPath(), grouped.getPath(),
+                       file.getPath(), 4);
+        try (ContainerReader in =
+                 new ContainerReader(file.getPath(), navalConfig())) {
+            assertEquals(ciphertext(), in.ciphertext(0, in.length()));
+            assertEquals(plaintext(), in.read(0, in.length()));
+        }
+    }
+
+    @Test
+    public void testPackMismatch() throws IOException {
+        String[] lines = grouped();
+        File input = temp(INPUT);
+        File file = File.createTempFile("enigma", ".engc");
+        file.deleteOnExit();
+        for (int n : new int[] { lines.length - 2, lines.length }) {
+            File grouped = temp(Arrays.copyOf(lines, n));
+            try {
+                Container.pack(navalConfig(), input.getPath(),
+                               grouped.getPath(), file.getPath(), 4);
+                fail("grouped output of another input accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Writes converted messages in the seekable container format.
+ *
+ *  A container is a header, the converted text, and a trailing index,
+ *  all written with DataOutput conventions (big-endian):
+ *  <pre>
+ *      header:   int MAGIC, int VERSION, int chunk size
+ *      text:     one char (2 bytes) per position; message lines have
+ *                their whitespace removed and end in '\n'
+ *      sections: int count, then for each settings line:
+ *                long first position, UTF settings line
+ *      index:    int count, then for each chunk of chunk-size positions:
+ *                int section, long Machine.snapshot() at the chunk start
+ *      footer:   long offset of sections, long offset of index
+ *  </pre>
+ *  Since index entries have a fixed size, a ContainerReader can find
+ *  the machine state at any position from one entry and then convert
+ *  from the start of a single chunk.
+ *  @author Florence Lau
+ */
+class ContainerWriter implements Closeable {
+
+    /** First four bytes of every container ("ENGC"). */
+    static final int MAGIC = 0x454e4743;
+
+    /** Version of the format written. */
+    static final int VERSION = 1;
+
+    /** Size of the header in bytes. */
+    static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+    /** Size of each index entry in bytes. */
+    static final int ENTRY_SIZE = Integer.BYTES + Long.BYTES;
+
+    /** Size of the footer in bytes. */
+    static final int FOOTER_SIZE = 2 * Long.BYTES;
+
+    /** Default number of positions per chunk. */
+    static final int DEFAULT_CHUNK_SIZE = 4096;
+
+    /** A writer producing a container on OUT for machines described by
+     *  CONFIG, with an index entry every CHUNKSIZE positions. */
+    ContainerWriter(OutputStream out, Config config, int chunkSize)
+        throws IOException {
+        if (chunkSize <= 0) {
+            throw error("chunk size must be positive");
+        }
+        _out = new DataOutputStream(new BufferedOutputStream(out));
+        _config = config;
+        _parser = new SettingsParser(config);
+        _chunkSize = chunkSize;
+        _out.writeInt(MAGIC);
+        _out.writeInt(VERSION);
+        _out.writeInt(chunkSize);
+    }
+
+    /** Start a new section whose machine is set up according to the
+     *  settings line SETTINGS. */
+    void settings(String settings) {
+        Machine machine =
+            _machine == null ? _config.newMachine() : _machine;
+        _parser.setUp(machine, settings);
+        _machine = machine;
+        /* Fail now, rather than at the first chunk, if the machine's
+         * state cannot be recorded in the index. */
+        _machine.snapshot();
+        _sectionStarts.add(_length);
+        _sectionSettings.add(settings.trim());
+    }
+
+    /** Convert the message line MSG with the current machine and append
+     *  the result. */
+    void message(String msg) throws IOException {
+        append(msg, true);
+    }
+
+    /** Append the already-converted message line MSG, advancing the
+     *  current machine as if it had converted MSG. */
+    void ciphertext(String msg) throws IOException {
+        append(msg, false);
+    }
+
+    /** Append the characters of the line MSG other than whitespace,
+     *  converting them iff CONVERT, and then a newline. */
+    private void append(String msg, boolean convert) throws IOException {
+        if (_machine == null) {
+            throw error("missing settings line");
+        }
+        Alphabet alphabet = _machine.alphabet();
+        for (int i = 0; i < msg.length(); i += 1) {
+            char c = msg.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                startPosition();
+                int converted = _machine.convert(alphabet.toInt(c));
+                _out.writeChar(convert ? alphabet.toChar(converted) : c);
+            }
+        }
+        startPosition();
+        _out.writeChar('\n');
+    }
+
+    /** Record an index entry if the next position starts a chunk, and
+     *  count the position. */
+    private void startPosition() throws IOException {
+        if (_length % _chunkSize == 0) {
+            _entryOut.writeInt(_sectionStarts.size() - 1);
+            _entryOut.writeLong(_machine.snapshot());
+            _numEntries += 1;
+        }
+        _length += 1;
+    }
+
+    /** Write the index and footer, and close my output. */
+    @Override
+    public void close() throws IOException {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        DataOutputStream sections = new DataOutputStream(table);
+        sections.writeInt(_sectionStarts.size());
+        for (int k = 0; k < _sectionStarts.size(); k += 1) {
+            sections.writeLong(_sectionStarts.get(k));
+            sections.writeUTF(_sectionSettings.get(k));
+        }
+        long sectionsOffset = HEADER_SIZE + 2 * _length;
+        long indexOffset = sectionsOffset + table.size();
+        table.writeTo(_out);
+        _out.writeInt(_numEntries);
+        _entries.writeTo(_out);
+        _out.writeLong(sectionsOffset);
+        _out.writeLong(indexOffset);
+        _out.close();
+    }
+
+    /** Destination of the container. */
+    private final DataOutputStream _out;
+
+    /** Configuration of my machines. */
+    private final Config _config;
+
+    /** Parses settings lines for _machine. */
+    private final SettingsParser _parser;
+
+    /** Number of positions per chunk. */
+    private final int _chunkSize;
+
+    /** Current machine, or null before the first settings line. */
+    private Machine _machine;
+
+    /** Number of positions written. */
+    private long _length;
+
+    /** First position of each section. */
+    private final List<Long> _sectionStarts = new ArrayList<>();
+
+    /** Settings line of each section. */
+    private final List<String> _sectionSettings = new ArrayList<>();
+
+    /** The packed index entries recorded so far. */
+    private final ByteArrayOutputStream _entries = new ByteArrayOutputStream();
+
+    /** Writes to _entries. */
+    private final DataOutputStream _entryOut = new DataOutputStream(_entries);
+
+    /** Number of index entries recorded. */
+    private int _numEntries;
+}
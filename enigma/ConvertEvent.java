@@ -0,0 +1,19 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event for converting one message line.
+ *  @author Florence Lau
+ */
+@Name("enigma.Convert")
+@Label("Enigma Convert")
+@Category("Enigma")
+class ConvertEvent extends Event {
+
+    /** Number of characters in the message. */
+    @Label("Length")
+    int length;
+}
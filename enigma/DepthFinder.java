@@ -0,0 +1,519 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A search of a corpus of converted messages for pairs "in depth":
+ *  converted with the same key stream, perhaps starting at different
+ *  points of it.  Where the originals of two such messages have the
+ *  same character at the same point of the key stream, so do their
+ *  conversions, so the two coincide, when aligned, more often than two
+ *  unrelated messages (the kappa test).  Comparing every pair at every
+ *  alignment is out of the question for a large corpus, so candidate
+ *  pairs and alignments are found by bucketing fingerprints: each
+ *  message is reduced, in parallel, to a few hashes of its GRAM-grams,
+ *  chosen by winnowing (the least in each WINDOW of consecutive
+ *  hashes), so that any stretch of at least GRAM + WINDOW - 1 characters
+ *  that two messages share yields a common hash whatever its position
+ *  in either.  Messages sharing a hash, at positions differing by D,
+ *  are a candidate pair at offset D, which is then checked by counting
+ *  the coincidences of the whole alignment.  It is reported if they
+ *  include a run of GRAM + WINDOW - 1 or more (which chance almost
+ *  never produces), or if those outside the longest run (which is what
+ *  made it a candidate) exceed what chance would give by at least a
+ *  given number of standard deviations.  Depths whose originals share
+ *  no such stretch (as stereotyped headers, addresses and signatures
+ *  provide) are not found; hashes shared by more than MAX_BUCKET
+ *  positions, which are more likely to be padding than evidence, are
+ *  ignored.
+ *  Messages are read from files as Main writes them, one per line, with
+ *  blanks ignored:
+ *      java enigma.DepthFinder [--threads=T] [--gram=K] [--window=W]
+ *                              [--min-z=Z] FILE...
+ *  prints the depths found, those with the longest runs first.
+ *  @author Florence Lau
+ */
+public final class DepthFinder {
+
+    /** Default length of the grams hashed. */
+    static final int DEFAULT_GRAM = 8;
+
+    /** Default number of consecutive gram hashes of which the least is
+     *  chosen. */
+    static final int DEFAULT_WINDOW = 8;
+
+    /** Default number of standard deviations above chance for a depth to
+     *  be reported. */
+    static final double DEFAULT_MIN_Z = 4.0;
+
+    /** Largest number of positions sharing a hash that are paired. */
+    static final int MAX_BUCKET = 64;
+
+    /** Number of messages fingerprinted or checked as one task. */
+    private static final int TASK_SIZE = 4096;
+
+    /** A pair of messages in depth. */
+    static final class Depth {
+        /** Messages number FIRST and SECOND, where character I of FIRST
+         *  and character I + OFFSET of SECOND were converted at the same
+         *  point of the key stream, aligned for OVERLAP characters of
+         *  which COINCIDENCES coincide, RUN of them consecutively, with
+         *  the others Z standard deviations more than chance. */
+        Depth(int first, int second, int offset, int overlap,
+              int coincidences, int run, double z) {
+            this.first = first;
+            this.second = second;
+            this.offset = offset;
+            this.overlap = overlap;
+            this.coincidences = coincidences;
+            this.run = run;
+            this.z = z;
+        }
+
+        /** Message numbers. */
+        final int first, second;
+        /** Offset of the second message's alignment. */
+        final int offset;
+        /** Number of characters aligned. */
+        final int overlap;
+        /** Number of aligned characters that coincide. */
+        final int coincidences;
+        /** Length of the longest run of coincidences. */
+        final int run;
+        /** Significance of the coincidences outside that run. */
+        final double z;
+    }
+
+    /** A finder using grams of GRAM characters, choosing one hash in
+     *  each WINDOW, and reporting depths MINZ or more standard deviations
+     *  above chance. */
+    DepthFinder(int gram, int window, double minZ) {
+        if (gram < 1 || window < 1) {
+            throw error("bad fingerprint parameters");
+        }
+        _gram = gram;
+        _window = window;
+        _minZ = minZ;
+    }
+
+    /** Add the messages in IN, one per line, ignoring blanks, noting
+     *  them as coming from the file named NAME.  Empty lines are
+     *  skipped. */
+    void read(String name, Reader in) throws IOException {
+        BufferedReader lines = new BufferedReader(in);
+        int source = _sources.size();
+        _sources.add(name);
+        int lineNumber = 0;
+        for (String line = lines.readLine(); line != null;
+             line = lines.readLine()) {
+            lineNumber += 1;
+            StringBuilder msg = new StringBuilder(line.length());
+            for (int i = 0; i < line.length(); i += 1) {
+                if (!Character.isWhitespace(line.charAt(i))) {
+                    msg.append(line.charAt(i));
+                }
+            }
+            if (msg.length() > 0) {
+                add(msg.toString(), source, lineNumber);
+            }
+        }
+    }
+
+    /** Add MSG as line LINENUMBER of source number SOURCE. */
+    private void add(String msg, int source, int lineNumber) {
+        if (_messages.size() == Integer.MAX_VALUE) {
+            throw error("too many messages");
+        }
+        int k = _messages.size();
+        if (k == _where.length) {
+            _where = Arrays.copyOf(_where, 2 * k);
+        }
+        _messages.add(msg);
+        _where[k] = (long) source << 32 | lineNumber;
+    }
+
+    /** Return the number of messages read. */
+    int size() {
+        return _messages.size();
+    }
+
+    /** Return message number K, without blanks. */
+    String message(int k) {
+        return _messages.get(k);
+    }
+
+    /** Return the file and line of message number K, as "FILE:LINE". */
+    String where(int k) {
+        long w = _where[k];
+        return _sources.get((int) (w >>> 32)) + ":" + (int) w;
+    }
+
+    /** Return the fingerprints of MSG for grams of GRAM characters, one
+     *  chosen in each WINDOW: the hash of each chosen gram in the upper
+     *  32 bits and its position in the lower, in order of position. */
+    static long[] fingerprints(String msg, int gram, int window) {
+        int n = msg.length() - gram + 1;
+        if (n <= 0) {
+            return new long[0];
+        }
+        int[] hashes = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            long h = 0xcbf29ce484222325L;
+            for (int j = i; j < i + gram; j += 1) {
+                h = (h ^ msg.charAt(j)) * 0x100000001b3L;
+            }
+            hashes[i] = (int) (Util.mix(h) >>> 32);
+        }
+        long[] result = new long[n / window + 2];
+        int count = 0;
+        int chosen = -1;
+        for (int end = Math.min(window, n); end <= n; end += 1) {
+            int start = Math.max(0, end - window);
+            if (chosen < start) {
+                chosen = start;
+                for (int i = start + 1; i < end; i += 1) {
+                    if (hashes[i] <= hashes[chosen]) {
+                        chosen = i;
+                    }
+                }
+            } else if (hashes[end - 1] <= hashes[chosen]) {
+                chosen = end - 1;
+            } else {
+                continue;
+            }
+            if (count == result.length) {
+                result = Arrays.copyOf(result, 2 * count);
+            }
+            result[count] = (long) hashes[chosen] << 32 | chosen;
+            count += 1;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /** Return the depths among my messages, found with THREADS threads,
+     *  those with the longest runs of coincidences first, and then the
+     *  most significant. */
+    List<Depth> find(int threads) {
+        if (threads < 1) {
+            throw error("number of threads must be positive");
+        }
+        ExecutorService pool = Util.pool(threads, "enigma-depth");
+        try {
+            int n = _messages.size();
+            long[][] prints = new long[n][];
+            long[] counts = new long[Character.MAX_VALUE + 1];
+            int nTasks = (int) (((long) n + TASK_SIZE - 1) / TASK_SIZE);
+            AtomicInteger next = new AtomicInteger();
+            List<Future<long[]>> workers = new ArrayList<>();
+            for (int w = 0; w < threads; w += 1) {
+                workers.add(pool.submit(() -> {
+                    long[] part = new long[Character.MAX_VALUE + 1];
+                    for (int t = next.getAndIncrement(); t < nTasks;
+                         t = next.getAndIncrement()) {
+                        int from = t * TASK_SIZE;
+                        fingerprint(from, Math.min(n, from + TASK_SIZE),
+                                    prints, part);
+                    }
+                    return part;
+                }));
+            }
+            for (Future<long[]> worker : workers) {
+                long[] part = worker.get();
+                for (int c = 0; c < counts.length; c += 1) {
+                    counts[c] += part[c];
+                }
+            }
+            double chance = chance(counts);
+            List<int[]> candidates = candidates(prints);
+            List<Future<List<Depth>>> checks = new ArrayList<>();
+            for (int lo = 0; lo < candidates.size(); lo += TASK_SIZE) {
+                List<int[]> part = candidates.subList(
+                    lo, Math.min(candidates.size(), lo + TASK_SIZE));
+                checks.add(pool.submit(() -> check(part, chance)));
+            }
+            List<Depth> result = new ArrayList<>();
+            for (Future<List<Depth>> check : checks) {
+                result.addAll(check.get());
+            }
+            result.sort((a, b) -> a.run != b.run ? b.run - a.run
+                        : Double.compare(b.z, a.z));
+            return result;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new AssertionError(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Store the fingerprints of messages FROM .. TO - 1 in PRINTS, and
+     *  add the number of times each character occurs in them to
+     *  COUNTS. */
+    private void fingerprint(int from, int to, long[][] prints,
+                             long[] counts) {
+        for (int k = from; k < to; k += 1) {
+            String msg = _messages.get(k);
+            prints[k] = fingerprints(msg, _gram, _window);
+            for (int i = 0; i < msg.length(); i += 1) {
+                counts[msg.charAt(i)] += 1;
+            }
+        }
+    }
+
+    /** Return the probability that two characters drawn at random from a
+     *  corpus with COUNTS of each character coincide. */
+    private static double chance(long[] counts) {
+        double total = 0, same = 0;
+        for (long count : counts) {
+            total += count;
+            same += (double) count * count;
+        }
+        return total == 0 ? 0.0 : same / (total * total);
+    }
+
+    /** Return the distinct candidate alignments found from the
+     *  fingerprints PRINTS of each message, as triples of first message,
+     *  second message and offset, with the first less than the
+     *  second. */
+    private static List<int[]> candidates(long[][] prints) {
+        int total = 0;
+        for (long[] p : prints) {
+            if (total + p.length < 0) {
+                throw error("corpus too large");
+            }
+            total += p.length;
+        }
+        long[] keys = new long[total];
+        int[] messages = new int[total], positions = new int[total];
+        int e = 0;
+        for (int k = 0; k < prints.length; k += 1) {
+            for (long print : prints[k]) {
+                keys[e] = (print & 0xffffffff00000000L) | e;
+                messages[e] = k;
+                positions[e] = (int) print;
+                e += 1;
+            }
+        }
+        Arrays.parallelSort(keys);
+        Set<Alignment> seen = new HashSet<>();
+        List<int[]> result = new ArrayList<>();
+        for (int lo = 0, hi; lo < total; lo = hi) {
+            hi = lo + 1;
+            while (hi < total && keys[hi] >>> 32 == keys[lo] >>> 32) {
+                hi += 1;
+            }
+            if (hi - lo > MAX_BUCKET) {
+                continue;
+            }
+            for (int i = lo; i < hi; i += 1) {
+                int a = (int) keys[i];
+                for (int j = i + 1; j < hi; j += 1) {
+                    int b = (int) keys[j];
+                    if (messages[a] == messages[b]) {
+                        continue;
+                    }
+                    int x = a, y = b;
+                    if (messages[x] > messages[y]) {
+                        x = b;
+                        y = a;
+                    }
+                    Alignment align =
+                        new Alignment(messages[x], messages[y],
+                                      positions[y] - positions[x]);
+                    if (seen.add(align)) {
+                        result.add(new int[] { align.first, align.second,
+                                               align.offset });
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A pair of messages and an offset, as a key. */
+    private static final class Alignment {
+        /** Messages FIRST and SECOND at offset OFFSET. */
+        Alignment(int first, int second, int offset) {
+            this.first = first;
+            this.second = second;
+            this.offset = offset;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Alignment)) {
+                return false;
+            }
+            Alignment other = (Alignment) obj;
+            return first == other.first && second == other.second
+                && offset == other.offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return (first * 31 + second) * 31 + offset;
+        }
+
+        /** Message numbers. */
+        private final int first, second;
+        /** Offset. */
+        private final int offset;
+    }
+
+    /** Return the depths among the CANDIDATES (as returned by
+     *  candidates), given that two random characters coincide with
+     *  probability CHANCE. */
+    private List<Depth> check(List<int[]> candidates, double chance) {
+        List<Depth> result = new ArrayList<>();
+        for (int[] c : candidates) {
+            String a = _messages.get(c[0]), b = _messages.get(c[1]);
+            int offset = c[2];
+            int start = Math.max(0, -offset);
+            int end = Math.min(a.length(), b.length() - offset);
+            int coincidences = 0, run = 0, longest = 0;
+            for (int i = start; i < end; i += 1) {
+                if (a.charAt(i) == b.charAt(i + offset)) {
+                    coincidences += 1;
+                    run += 1;
+                    longest = Math.max(longest, run);
+                } else {
+                    run = 0;
+                }
+            }
+            int overlap = end - start;
+            int rest = overlap - longest;
+            double sd = Math.sqrt(rest * chance * (1 - chance));
+            double z = sd == 0 ? 0
+                : (coincidences - longest - rest * chance) / sd;
+            if (longest >= _gram + _window - 1 || z >= _minZ) {
+                result.add(new Depth(c[0], c[1], offset, overlap,
+                                     coincidences, longest, z));
+            }
+        }
+        return result;
+    }
+
+    /** Return a line describing DEPTH. */
+    String describe(Depth depth) {
+        return String.format("%s %s offset %d overlap %d coincidences %d "
+                             + "run %d kappa %.4f z %.1f",
+                             where(depth.first), where(depth.second),
+                             depth.offset, depth.overlap,
+                             depth.coincidences, depth.run,
+                             (double) depth.coincidences / depth.overlap,
+                             depth.z);
+    }
+
+    /** Usage message. */
+    private static final String USAGE =
+        "Usage: java enigma.DepthFinder [--threads=T] [--gram=K] "
+        + "[--window=W] [--min-z=Z] FILE...";
+
+    /** Report the depths among the messages in the files named in ARGS
+     *  (see above). */
+    public static void main(String... args) {
+        try {
+            int threads = Runtime.getRuntime().availableProcessors();
+            int gram = DEFAULT_GRAM, window = DEFAULT_WINDOW;
+            double minZ = DEFAULT_MIN_Z;
+            List<String> files = new ArrayList<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String value = arg.substring(eq + 1);
+                switch (eq < 0 ? "" : arg.substring(0, eq)) {
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--gram":
+                    gram = Integer.parseInt(value);
+                    break;
+                case "--window":
+                    window = Integer.parseInt(value);
+                    break;
+                case "--min-z":
+                    minZ = Double.parseDouble(value);
+                    break;
+                default:
+                    if (arg.startsWith("--")) {
+                        throw error(USAGE);
+                    }
+                    files.add(arg);
+                    break;
+                }
+            }
+            if (files.isEmpty()) {
+                throw error(USAGE);
+            }
+            DepthFinder finder = new DepthFinder(gram, window, minZ);
+            for (String file : files) {
+                try (InputStream in = open(file)) {
+                    finder.read(file, new InputStreamReader(in));
+                } catch (IOException excp) {
+                    throw error("could not read %s", file);
+                }
+            }
+            List<Depth> depths = finder.find(threads);
+            for (Depth depth : depths) {
+                System.out.println(finder.describe(depth));
+            }
+            System.out.printf("# %d messages, %d depths%n", finder.size(),
+                              depths.size());
+            System.out.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME, decompressed if it is
+     *  compressed. */
+    private static InputStream open(String name) throws IOException {
+        BufferedInputStream in =
+            new BufferedInputStream(new FileInputStream(name));
+        Compression.Format format = Compression.detect(in);
+        return format == Compression.Format.NONE ? in
+            : Compression.decompress(in, format);
+    }
+
+    /** Length of the grams hashed. */
+    private final int _gram;
+
+    /** Number of consecutive gram hashes of which one is chosen. */
+    private final int _window;
+
+    /** Significance required of a depth. */
+    private final double _minZ;
+
+    /** Names of the files read. */
+    private final List<String> _sources = new ArrayList<>();
+
+    /** The messages, without blanks. */
+    private final List<String> _messages = new ArrayList<>();
+
+    /** Where each message came from: the number of its source in the
+     *  upper 32 bits and its line number in the lower, for each of
+     *  _messages. */
+    private long[] _where = new long[16];
+}
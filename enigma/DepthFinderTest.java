@@ -0,0 +1,107 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author Florence Lau
+ */
+public class DepthFinderTest {
+
+    /** A stereotyped header. */
+    private static final String HEADER = "FROMHIGHCOMMANDTOALLUNITS";
+
+    /** Bodies of messages. */
+    private static final String[] BODIES = {
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD",
+        "MADEOFSLIDINGFOLDINGROSEWOODNEATLYPUTITALLTOGETHER",
+        "INITSCASEITLAYCOMPACTLYFOLDEDINTONEARLYNOTHING",
+        "BUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLEDTHEJOINTS",
+    };
+
+    /** Return MSG converted by a naval machine set up by SETTINGS, after
+     *  converting SKIP other characters, grouped as by Main. */
+    private static String convert(String settings, int skip, String msg) {
+        Machine machine = navalConfig().newMachine(settings);
+        for (int i = 0; i < skip; i += 1) {
+            machine.convert(0);
+        }
+        return Main.group(machine.convert(msg)).trim();
+    }
+
+    @Test
+    public void testFingerprints() {
+        String shared = "QWERTYUIOPASDFGHJKLZ";
+        long[] a = DepthFinder.fingerprints("ABC" + shared, 5, 4);
+        long[] b = DepthFinder.fingerprints("XXXXXXXXX" + shared + "MN", 5, 4);
+        int common = 0;
+        for (long x : a) {
+            for (long y : b) {
+                if (x >>> 32 == y >>> 32) {
+                    assertEquals(6, (int) y - (int) x);
+                    common += 1;
+                }
+            }
+        }
+        assertTrue(common > 0);
+        assertEquals(0, DepthFinder.fingerprints("ABCD", 5, 4).length);
+        assertEquals(1, DepthFinder.fingerprints("ABCDE", 5, 4).length);
+    }
+
+    @Test
+    public void testFindsDepths() throws IOException {
+        StringWriter corpus = new StringWriter();
+        String reused = "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+        corpus.write(convert(reused, 0, HEADER + BODIES[0]) + "\n");
+        StringWriter keys = new StringWriter();
+        new KeySheet(navalConfig(), 10).write(keys, 300, 4, 1, true);
+        SplittableRandom random = new SplittableRandom(1);
+        String[] settings = keys.toString().split("\n");
+        for (String line : settings) {
+            String body = BODIES[random.nextInt(BODIES.length)];
+            corpus.write(convert(line, 0, HEADER + body) + "\n\n");
+        }
+        corpus.write(convert(reused, 0, HEADER + BODIES[1]) + "\n");
+        corpus.write(convert(reused, 7, HEADER.substring(7) + BODIES[2])
+                     + "\n");
+        DepthFinder finder = new DepthFinder(DepthFinder.DEFAULT_GRAM,
+                                             DepthFinder.DEFAULT_WINDOW,
+                                             DepthFinder.DEFAULT_MIN_Z);
+        finder.read("corpus", new StringReader(corpus.toString()));
+        assertEquals(settings.length + 3, finder.size());
+        List<DepthFinder.Depth> depths = finder.find(2);
+        assertEquals(3, depths.size());
+        int last = finder.size() - 1;
+        boolean[] found = new boolean[3];
+        for (DepthFinder.Depth depth : depths) {
+            assertTrue(depth.coincidences >= HEADER.length() - 7);
+            if (depth.first == 0 && depth.second == last - 1) {
+                assertEquals(0, depth.offset);
+                found[0] = true;
+            } else if (depth.first == 0 && depth.second == last) {
+                assertEquals(-7, depth.offset);
+                found[1] = true;
+            } else {
+                assertEquals(last - 1, depth.first);
+                assertEquals(last, depth.second);
+                assertEquals(-7, depth.offset);
+                found[2] = true;
+            }
+        }
+        assertTrue(found[0] && found[1] && found[2]);
+        assertEquals("corpus:" + (2 * settings.length + 3),
+                     finder.where(last));
+        assertTrue(finder.describe(depths.get(0))
+                   .matches("corpus:\\d+ corpus:\\d+ offset -?\\d+ .*"));
+    }
+}
@@ -0,0 +1,221 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Writer;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** When converted output is pushed to its destination.  A low-latency
+ *  policy flushes after every message line; a throughput policy buffers
+ *  large blocks and flushes only when a buffer fills and at the end; a
+ *  hybrid policy flushes when a buffer of a given size fills or when
+ *  output has waited a given time, whichever comes first.
+ *  @author Florence Lau
+ */
+final class FlushPolicy {
+
+    /** Kinds of policy. */
+    enum Kind {
+        /** Flush after each message. */
+        LATENCY,
+        /** Flush when the buffer fills and at the end. */
+        THROUGHPUT,
+        /** Flush when the buffer fills or after a delay. */
+        HYBRID
+    }
+
+    /** Buffer size for the throughput policy. */
+    static final int THROUGHPUT_BUFFER = 1 << 20;
+
+    /** Default buffer size for the hybrid policy. */
+    static final int DEFAULT_HYBRID_BUFFER = 1 << 16;
+
+    /** Default delay in milliseconds for the hybrid policy. */
+    static final int DEFAULT_HYBRID_DELAY = 50;
+
+    /** Buffer size for the low-latency policy. */
+    private static final int LATENCY_BUFFER = 1 << 13;
+
+    /** A policy of kind KIND, with the buffer size BUFFER and, for
+     *  HYBRID, the delay DELAYMILLIS. */
+    private FlushPolicy(Kind kind, int buffer, int delayMillis) {
+        _kind = kind;
+        _buffer = buffer;
+        _delayMillis = delayMillis;
+    }
+
+    /** Return the policy described by SPEC, one of
+     *      latency
+     *      throughput
+     *      hybrid[:MILLIS[:BYTES]]
+     *  where the hybrid policy waits at most MILLIS milliseconds (default
+     *  DEFAULT_HYBRID_DELAY) and buffers at most BYTES bytes (default
+     *  DEFAULT_HYBRID_BUFFER) before flushing. */
+    static FlushPolicy parse(String spec) {
+        String[] parts = spec.split(":", -1);
+        try {
+            switch (parts[0]) {
+            case "latency":
+                if (parts.length == 1) {
+                    return new FlushPolicy(Kind.LATENCY, LATENCY_BUFFER, 0);
+                }
+                break;
+            case "throughput":
+                if (parts.length == 1) {
+                    return new FlushPolicy(Kind.THROUGHPUT,
+                                           THROUGHPUT_BUFFER, 0);
+                }
+                break;
+            case "hybrid":
+                if (parts.length <= 3) {
+                    int delay = parts.length > 1
+                        ? Integer.parseInt(parts[1]) : DEFAULT_HYBRID_DELAY;
+                    int buffer = parts.length > 2
+                        ? Integer.parseInt(parts[2]) : DEFAULT_HYBRID_BUFFER;
+                    if (delay > 0 && buffer > 0) {
+                        return new FlushPolicy(Kind.HYBRID, buffer, delay);
+                    }
+                }
+                break;
+            default:
+                break;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through to the error below. */
+        }
+        throw error("bad flush policy: %s", spec);
+    }
+
+    /** Return my kind. */
+    Kind kind() {
+        return _kind;
+    }
+
+    /** Return true iff each message line should be handed on to the
+     *  output as soon as it is converted, rather than accumulated (true
+     *  except for the throughput policy). */
+    boolean eachMessage() {
+        return _kind != Kind.THROUGHPUT;
+    }
+
+    /** Return a PrintStream writing to OUT according to this policy.  Its
+     *  println flushes under the low-latency policy; under the others,
+     *  it must be flushed at the end. */
+    PrintStream wrap(OutputStream out) {
+        switch (_kind) {
+        case LATENCY:
+            return new PrintStream(new BufferedOutputStream(out, _buffer),
+                                   true);
+        case HYBRID:
+            return new PrintStream(new DelayedFlushStream(out, _buffer,
+                                                          _delayMillis),
+                                   false);
+        default:
+            return new PrintStream(new BufferedOutputStream(out, _buffer),
+                                   false);
+        }
+    }
+
+    /** Return a Writer that writes to OUT, which should have been made
+     *  by wrap, flushing only when OUT would or when flushed
+     *  explicitly. */
+    static Writer writer(PrintStream out) {
+        return new Writer() {
+            @Override
+            public void write(char[] cbuf, int off, int len) {
+                out.print(new String(cbuf, off, len));
+            }
+
+            @Override
+            public void flush() {
+                out.flush();
+            }
+
+            @Override
+            public void close() {
+                out.flush();
+            }
+        };
+    }
+
+    /** A buffered stream that also flushes when data has waited in its
+     *  buffer for a given time. */
+    private static final class DelayedFlushStream
+        extends BufferedOutputStream {
+
+        /** A stream writing to OUT through a buffer of SIZE bytes, in
+         *  which no data waits longer than about DELAYMILLIS
+         *  milliseconds. */
+        DelayedFlushStream(OutputStream out, int size, int delayMillis) {
+            super(out, size);
+            _delayMillis = delayMillis;
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            super.write(b);
+            scheduleFlush();
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len)
+            throws IOException {
+            super.write(b, off, len);
+            scheduleFlush();
+        }
+
+        @Override
+        public synchronized void flush() throws IOException {
+            _scheduled = false;
+            super.flush();
+        }
+
+        /** Arrange for a flush after my delay if there is buffered data
+         *  and none is arranged. */
+        private void scheduleFlush() {
+            if (count > 0 && !_scheduled) {
+                _scheduled = true;
+                TIMER.schedule(this::timedFlush, _delayMillis,
+                               TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /** Flush on behalf of the timer. */
+        private synchronized void timedFlush() {
+            if (_scheduled) {
+                try {
+                    flush();
+                } catch (IOException excp) {
+                    _scheduled = false;
+                }
+            }
+        }
+
+        /** Maximum delay before flushing. */
+        private final int _delayMillis;
+
+        /** True iff a timed flush is pending. */
+        private boolean _scheduled;
+    }
+
+    /** Thread running the timed flushes of all hybrid streams. */
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(
+            Util.daemons("enigma-flush"));
+
+    /** My kind. */
+    private final Kind _kind;
+
+    /** Buffer size. */
+    private final int _buffer;
+
+    /** Maximum delay for HYBRID. */
+    private final int _delayMillis;
+}
@@ -0,0 +1,139 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the FlushPolicy class.
+ *  @author Florence Lau
+ */
+public class FlushPolicyTest {
+
+    /** Input used throughout. */
+    private static final String INPUT =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n"
+        + "* B BETA III IV I AXLE\n"
+        + "HYIHL BKOML IUYDC MPPSF SZW\n";
+
+    @Test
+    public void testParse() {
+        assertEquals(FlushPolicy.Kind.LATENCY,
+                     FlushPolicy.parse("latency").kind());
+        assertEquals(FlushPolicy.Kind.THROUGHPUT,
+                     FlushPolicy.parse("throughput").kind());
+        assertEquals(FlushPolicy.Kind.HYBRID,
+                     FlushPolicy.parse("hybrid").kind());
+        assertEquals(FlushPolicy.Kind.HYBRID,
+                     FlushPolicy.parse("hybrid:10:4096").kind());
+        assertTrue(FlushPolicy.parse("latency").eachMessage());
+        assertFalse(FlushPolicy.parse("throughput").eachMessage());
+        for (String bad : new String[] { "", "fast", "latency:5",
+                                         "hybrid:0", "hybrid:x",
+                                         "hybrid:1:2:3" }) {
+            try {
+                FlushPolicy.parse(bad);
+                fail("accepted " + bad);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testLatency() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream out = FlushPolicy.parse("latency").wrap(sink);
+        out.println("ABCDE");
+        assertEquals("ABCDE" + System.lineSeparator(), sink.toString());
+    }
+
+    @Test
+    public void testThroughput() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream out = FlushPolicy.parse("throughput").wrap(sink);
+        for (int k = 0; k < 1000; k += 1) {
+            out.println("ABCDE FGHIJ");
+        }
+        assertEquals(0, sink.size());
+        out.flush();
+        assertEquals(1000 * ("ABCDE FGHIJ".length()
+                             + System.lineSeparator().length()),
+                     sink.size());
+    }
+
+    @Test
+    public void testHybridSize() {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream out = FlushPolicy.parse("hybrid:60000:16").wrap(sink);
+        out.print("ABCDE");
+        assertEquals(0, sink.size());
+        out.print("FGHIJKLMNOPQRSTUVWXYZ");
+        assertTrue(sink.size() > 0);
+    }
+
+    @Test
+    public void testHybridDelay() throws InterruptedException {
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        PrintStream out = FlushPolicy.parse("hybrid:10").wrap(sink);
+        out.println("ABCDE");
+        assertEquals(0, sink.size());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (sink.size() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(sink.toString().startsWith("ABCDE"));
+        out.println("FGHIJ");
+        deadline = System.currentTimeMillis() + 5000;
+        while (!sink.toString().contains("FGHIJ")
+               && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(sink.toString().contains("FGHIJ"));
+    }
+
+    @Test
+    public void testOutputUnchanged() {
+        Config config = navalConfig();
+        CharTable chars =
+            new CharTable(config.alphabet(), CharTable.Policy.STRICT);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        Main.process(config, chars, new Scanner(INPUT),
+                     new PrintStream(plain), 0);
+        for (String spec : new String[] { "latency", "throughput",
+                                          "hybrid:1000:8" }) {
+            FlushPolicy policy = FlushPolicy.parse(spec);
+            ByteArrayOutputStream sink = new ByteArrayOutputStream();
+            PrintStream out = policy.wrap(sink);
+            Main.process(config, chars, new Scanner(INPUT), out, 0);
+            out.flush();
+            assertEquals(spec, plain.toString(), sink.toString());
+
+            sink.reset();
+            out = policy.wrap(sink);
+            Pipeline pipeline =
+                new Pipeline(config, chars, new StringReader(INPUT),
+                             FlushPolicy.writer(out), 2, 16);
+            pipeline.handOnEachLine(policy.eachMessage());
+            pipeline.run();
+            assertEquals(spec, plain.toString(), sink.toString());
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        long[] values = { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 };
+        assertEquals(5, Workload.percentile(values, 50));
+        assertEquals(10, Workload.percentile(values, 99));
+        assertEquals(0, Workload.percentile(new long[0], 50));
+    }
+}
@@ -0,0 +1,375 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion of a file that grows by appending, as it grows (Main's
+ *  --follow).  Each call of poll converts what has been appended to the
+ *  input since the last, appends the result to the output, and then
+ *  saves the progress made in a small state file: the number of input
+ *  bytes consumed, the length of the output, the current settings line
+ *  and the rotor settings.  A follower made later with the same files
+ *  resumes from there, without reading the input consumed, after
+ *  cutting the output back to the length saved (which discards
+ *  anything written after the last save by a run that was stopped).
+ *  Without a state file, a follower starts at the beginning of the
+ *  input with an empty output.
+ *
+ *  In text mode, the input is converted a line at a time, as by
+ *  Main.process, and a line is converted only once its newline has
+ *  been appended.  In binary mode (for byte configurations), every byte
+ *  is converted as soon as it appears, by a ByteConverter.  Input is
+ *  read in buffers of fixed size, so that memory use does not grow with
+ *  the input, except to hold the longest line.
+ *  @author Florence Lau
+ */
+final class Follower {
+
+    /** Default time between polls, in milliseconds. */
+    static final long DEFAULT_LATENCY = 200;
+
+    /** Size of input and output buffers. */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    /** First four bytes of a state file ("ENGF"). */
+    private static final int MAGIC = 0x454e4746;
+
+    /** A follower converting INPUT onto OUTPUT with machines built from
+     *  CONFIG, keeping its state in STATE.  If BINARYSETTINGS is null,
+     *  the input is text, whose characters are classified by CHARS;
+     *  otherwise, CONFIG must have the byte alphabet, and the input is
+     *  converted as bytes by a machine set up by BINARYSETTINGS (see
+     *  Config.setUpBytes). */
+    Follower(Config config, CharTable chars, String binarySettings,
+             Path input, Path output, Path state) {
+        _config = config;
+        _chars = chars;
+        _binarySettings = binarySettings;
+        _inputName = input;
+        _stateName = state;
+        _machine = config.newMachine();
+        _parser = binarySettings == null ? new SettingsParser(config) : null;
+        try {
+            _input = FileChannel.open(input, StandardOpenOption.READ);
+            _output = FileChannel.open(output, StandardOpenOption.CREATE,
+                                       StandardOpenOption.WRITE);
+            long outputLength = 0;
+            int[] settings = null;
+            try (InputStream in = Files.newInputStream(state)) {
+                DataInputStream data =
+                    new DataInputStream(new BufferedInputStream(in));
+                if (data.readInt() != MAGIC
+                    || !data.readUTF().equals(config.digest())
+                    || data.readBoolean() != (binarySettings != null)) {
+                    throw error("%s is not a state file for this "
+                                + "configuration and mode", state);
+                }
+                _offset = data.readLong();
+                outputLength = data.readLong();
+                String line = data.readUTF();
+                _settingsLine = line.isEmpty() ? null : line;
+                settings = new int[data.readInt()];
+                if (settings.length != config.numRotors() - 1) {
+                    throw error("%s is not a state file for this "
+                                + "configuration and mode", state);
+                }
+                for (int k = 0; k < settings.length; k += 1) {
+                    settings[k] = data.readInt();
+                }
+            } catch (NoSuchFileException excp) {
+                _settingsLine = null;
+            }
+            if (_offset > _input.size()) {
+                throw error("%s was truncated", input);
+            } else if (outputLength > _output.size()) {
+                throw error("%s was truncated", output);
+            }
+            _output.truncate(outputLength);
+            _output.position(outputLength);
+            if (binarySettings != null) {
+                config.setUpBytes(_machine, binarySettings);
+                _bytes = new ByteConverter(_machine);
+            } else if (_settingsLine != null) {
+                _parser.setUp(_machine, _settingsLine);
+            }
+            _committed = new int[config.numRotors() - 1];
+            if (_settingsLine != null || binarySettings != null) {
+                if (settings != null) {
+                    _machine.restore(settings);
+                }
+                _machine.snapshot(_committed);
+            }
+        } catch (IOException excp) {
+            close();
+            throw error("could not open %s: %s", input, excp.getMessage());
+        } catch (EnigmaException excp) {
+            close();
+            throw excp;
+        }
+    }
+
+    /** Return the number of input bytes consumed. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Convert what has been appended to the input since the last call,
+     *  save my state if anything was converted, and return the number of
+     *  input bytes consumed.  If the input contains an error, the state
+     *  is saved as of the line before it, the machine is returned to
+     *  that state, and the error thrown. */
+    long poll() {
+        long start = _offset;
+        try {
+            long size = _input.size();
+            if (size < _offset) {
+                throw error("%s was truncated", _inputName);
+            }
+            if (_bytes != null) {
+                pollBytes(size);
+            } else {
+                pollLines(size);
+            }
+        } catch (IOException excp) {
+            rollBack();
+            throw error("could not convert %s: %s", _inputName,
+                        excp.getMessage());
+        } catch (RuntimeException excp) {
+            rollBack();
+            throw excp;
+        } finally {
+            if (_offset > start) {
+                save();
+            }
+        }
+        return _offset - start;
+    }
+
+    /** Convert the input bytes from _offset up to SIZE. */
+    private void pollBytes(long size) throws IOException {
+        while (_offset < size) {
+            _inBuf.clear();
+            if (size - _offset < _inBuf.capacity()) {
+                _inBuf.limit((int) (size - _offset));
+            }
+            int n = _input.read(_inBuf, _offset);
+            if (n <= 0) {
+                break;
+            }
+            _bytes.convert(_inBuf.array(), 0, n);
+            _inBuf.flip();
+            while (_inBuf.hasRemaining()) {
+                _output.write(_inBuf);
+            }
+            _offset += n;
+            _machine.snapshot(_committed);
+        }
+    }
+
+    /** Convert the complete input lines from _offset up to SIZE. */
+    private void pollLines(long size) throws IOException {
+        long position = _offset;
+        int len = 0;
+        byte[] bytes = _inBuf.array();
+        try {
+            while (position < size) {
+                _inBuf.clear();
+                int n = _input.read(_inBuf, position);
+                if (n <= 0) {
+                    break;
+                }
+                n = (int) Math.min(n, size - position);
+                for (int i = 0; i < n; i += 1) {
+                    if (bytes[i] != '\n') {
+                        if (len == _line.length) {
+                            _line = Arrays.copyOf(_line, 2 * len);
+                        }
+                        _line[len] = bytes[i];
+                        len += 1;
+                        continue;
+                    }
+                    if (len > 0 && _line[len - 1] == '\r') {
+                        len -= 1;
+                    }
+                    line(new String(_line, 0, len, CHARSET));
+                    len = 0;
+                    _offset = position + i + 1;
+                    _machine.snapshot(_committed);
+                }
+                position += n;
+            }
+        } finally {
+            writeOutput();
+        }
+    }
+
+    /** Convert LINE, the next complete line of the input. */
+    private void line(String line) throws IOException {
+        if (_settingsLine == null || line.startsWith("*")) {
+            String settings = line.toUpperCase();
+            Metrics.setUp(_parser, _machine, settings);
+            _settingsLine = settings;
+            return;
+        }
+        byte[] result = (Metrics.convert(_chars, _machine, line)
+                         + LINE_SEPARATOR).getBytes(CHARSET);
+        if (result.length > _outBuf.remaining()) {
+            writeOutput();
+        }
+        if (result.length > _outBuf.remaining()) {
+            _output.write(ByteBuffer.wrap(result));
+        } else {
+            _outBuf.put(result);
+        }
+    }
+
+    /** Return the machine to its state after the last input consumed,
+     *  undoing the effects of a line that was rejected part way through
+     *  (a message converts its characters up to the first bad one, and
+     *  a settings line may insert rotors before a bad setting). */
+    private void rollBack() {
+        if (_bytes != null) {
+            _machine.restore(_committed);
+        } else if (_settingsLine != null) {
+            _parser.setUp(_machine, _settingsLine);
+            _machine.restore(_committed);
+        }
+    }
+
+    /** Write out the contents of the output buffer. */
+    private void writeOutput() throws IOException {
+        _outBuf.flip();
+        while (_outBuf.hasRemaining()) {
+            _output.write(_outBuf);
+        }
+        _outBuf.clear();
+    }
+
+    /** Force the output to storage and then replace the state file with
+     *  one describing my current state, so that the state file never
+     *  describes output that was not written. */
+    private void save() {
+        Path temp = _stateName.resolveSibling(_stateName.getFileName()
+                                              + ".tmp");
+        try {
+            _output.force(false);
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                DataOutputStream data =
+                    new DataOutputStream(new BufferedOutputStream(out));
+                data.writeInt(MAGIC);
+                data.writeUTF(_config.digest());
+                data.writeBoolean(_binarySettings != null);
+                data.writeLong(_offset);
+                data.writeLong(_output.position());
+                data.writeUTF(_settingsLine == null ? "" : _settingsLine);
+                data.writeInt(_committed.length);
+                for (int s : _committed) {
+                    data.writeInt(s);
+                }
+                data.flush();
+            }
+            Files.move(temp, _stateName, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not save %s: %s", _stateName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Poll every LATENCY milliseconds until the thread is
+     *  interrupted. */
+    void follow(long latency) {
+        if (latency <= 0) {
+            throw error("follow latency must be positive");
+        }
+        while (!Thread.currentThread().isInterrupted()) {
+            poll();
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** Close my files. */
+    void close() {
+        try {
+            if (_input != null) {
+                _input.close();
+            }
+            if (_output != null) {
+                _output.close();
+            }
+        } catch (IOException excp) {
+            throw error("could not close files: %s", excp.getMessage());
+        }
+    }
+
+    /** Character set in which Main reads and writes messages. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Line separator written after each converted message. */
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    /** Configuration of the machine. */
+    private final Config _config;
+
+    /** Classification of message characters (text mode). */
+    private final CharTable _chars;
+
+    /** Settings line for binary mode, or null in text mode. */
+    private final String _binarySettings;
+
+    /** Names of the input and state files. */
+    private final Path _inputName, _stateName;
+
+    /** The machine. */
+    private final Machine _machine;
+
+    /** Parser of settings lines (text mode). */
+    private final SettingsParser _parser;
+
+    /** Converter of bytes (binary mode). */
+    private ByteConverter _bytes;
+
+    /** The input and output. */
+    private FileChannel _input, _output;
+
+    /** Input buffer. */
+    private final ByteBuffer _inBuf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Output buffer. */
+    private final ByteBuffer _outBuf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** The line being read. */
+    private byte[] _line = new byte[256];
+
+    /** Number of input bytes consumed. */
+    private long _offset;
+
+    /** The rotor settings after the last input consumed, which are
+     *  what a state file records. */
+    private int[] _committed;
+
+    /** The current settings line, or null if none has been read. */
+    private String _settingsLine;
+}
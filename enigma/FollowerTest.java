@@ -0,0 +1,223 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Follower class.
+ *  @author Florence Lau
+ */
+public class FollowerTest {
+
+    /** Messages appended to the input, in pieces that end in the middle
+     *  of lines. */
+    private static final String[] PIECES = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\nFROM HIS SHOULDER",
+        " HIAWATHA\r\nTOOK THE CAMERA OF ROSEWOOD\n",
+        "\nMADE OF SLIDING FOLDING ROSEWOOD\n* B BETA I II III AAAA\n",
+        "NEATLY PUT IT ALL TOGETHER\nIN ITS CA",
+        "SE IT LAY COMPACTLY\n",
+    };
+
+    /** Return the output of Main.process for the messages TEXT. */
+    private static String expected(String text) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Config config = navalConfig();
+        Main.process(config, new CharTable(config.alphabet(),
+                                           CharTable.Policy.STRICT),
+                     new Scanner(text), new PrintStream(out, true), 0);
+        return out.toString();
+    }
+
+    /** Return a follower of INPUT onto OUTPUT with state in STATE, for
+     *  naval text. */
+    private static Follower follower(Path input, Path output, Path state) {
+        Config config = navalConfig();
+        return new Follower(config, new CharTable(config.alphabet(),
+                                                  CharTable.Policy.STRICT),
+                            null, input, output, state);
+    }
+
+    /** Append TEXT to FILE. */
+    private static void append(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(Charset.defaultCharset()),
+                    StandardOpenOption.APPEND);
+    }
+
+    /** Return the contents of FILE. */
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), Charset.defaultCharset());
+    }
+
+    @Test
+    public void testAppendsAndRestarts() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out"),
+            state = dir.resolve("out.state");
+        Files.write(input, new byte[0]);
+        try {
+            Follower follower = follower(input, output, state);
+            assertEquals(0, follower.poll());
+            assertFalse(Files.exists(state));
+            String text = "";
+            for (int k = 0; k < PIECES.length; k += 1) {
+                append(input, PIECES[k]);
+                text += PIECES[k];
+                follower.poll();
+                String done = text.substring(0, text.lastIndexOf('\n') + 1);
+                assertEquals(done.length(), follower.offset());
+                assertEquals(expected(done), read(output));
+                if (k == 2) {
+                    follower.close();
+                    follower = follower(input, output, state);
+                    assertEquals(done.length(), follower.offset());
+                }
+            }
+            follower.close();
+
+            append(output, "GARBAGE FROM A KILLED RUN");
+            append(input, "NOTHING\n");
+            text += "NOTHING\n";
+            follower = follower(input, output, state);
+            assertTrue(follower.poll() > 0);
+            assertEquals(expected(text), read(output));
+            follower.close();
+
+            Files.write(input, PIECES[0].getBytes(Charset.defaultCharset()));
+            try {
+                follower(input, output, state);
+                fail("truncated input accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().endsWith("was truncated"));
+            }
+        } finally {
+            for (Path file : new Path[] { input, output, state }) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testBadLine() throws IOException {
+        Path dir = Files.createTempDirectory("enigma-follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out"),
+            state = dir.resolve("out.state");
+        String good = PIECES[0] + "\nGOOD\n", after = good + "AFTER\n";
+        String[] bad = { "BAD 1", "* B BETA III IV I AX1E" };
+        try {
+            for (String line : bad) {
+                Files.write(input, (good + line + "\nGOOD\n")
+                            .getBytes(Charset.defaultCharset()));
+                Follower follower = follower(input, output, state);
+                try {
+                    follower.poll();
+                    fail("bad line accepted");
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                } finally {
+                    follower.close();
+                }
+                follower = follower(input, output, state);
+                assertEquals(good.length(), follower.offset());
+                assertEquals(expected(good), read(output));
+                Files.write(input, after.getBytes(Charset.defaultCharset()));
+                follower.poll();
+                follower.close();
+                assertEquals(expected(after), read(output));
+
+                Files.delete(output);
+                Files.delete(state);
+                Files.write(input, (good + line + "\nGOOD\n")
+                            .getBytes(Charset.defaultCharset()));
+                follower = follower(input, output, state);
+                try {
+                    follower.poll();
+                    fail("bad line accepted");
+                } catch (EnigmaException excp) {
+                    /* Expected. */
+                }
+                Files.write(input, after.getBytes(Charset.defaultCharset()));
+                follower.poll();
+                follower.close();
+                assertEquals(expected(after), read(output));
+                Files.delete(output);
+                Files.delete(state);
+            }
+        } finally {
+            for (Path file : new Path[] { input, output, state }) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        StringBuilder conf = new StringBuilder("bytes 3 2\nB R ");
+        for (int k = 0; k < Config.BYTE_SYMBOLS; k += 1) {
+            conf.append(String.format("%02x", k ^ 1));
+        }
+        conf.append("\nM1 M0080 ");
+        for (int k = 0; k < Config.BYTE_SYMBOLS; k += 1) {
+            conf.append(String.format("%02x", (k * 37 + 11) & 0xff));
+        }
+        conf.append("\nM2 Mff ");
+        for (int k = 0; k < Config.BYTE_SYMBOLS; k += 1) {
+            conf.append(String.format("%02x", (k * 101 + 5) & 0xff));
+        }
+        Config config = Config.read(new Scanner(conf.toString()));
+        String settings = "* B M1 M2 7ff0 (0a0b)";
+        byte[] data = new byte[3 * Follower.BUFFER_SIZE + 17];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 7 + i / 300);
+        }
+        Path dir = Files.createTempDirectory("enigma-follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out"),
+            state = dir.resolve("state");
+        Files.write(input, new byte[0]);
+        try {
+            int[] cuts = { 1, 1000, Follower.BUFFER_SIZE + 3, data.length };
+            int last = 0;
+            for (int cut : cuts) {
+                Files.write(input, Arrays.copyOfRange(data, last, cut),
+                            StandardOpenOption.APPEND);
+                Follower follower = new Follower(config, null, settings,
+                                                 input, output, state);
+                assertEquals(last, follower.offset());
+                assertEquals(cut - last, follower.poll());
+                follower.close();
+                last = cut;
+            }
+            Machine machine = config.newMachine();
+            config.setUpBytes(machine, settings);
+            new ByteConverter(machine).convert(data, 0, data.length);
+            assertArrayEquals(data, Files.readAllBytes(output));
+            try {
+                follower(input, output, state);
+                fail("state file for binary mode accepted in text mode");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            for (Path file : new Path[] { input, output, state }) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,1036 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A differential fuzzer, checking the optimized ways of converting
+ *  messages (engines) against Machine.convert, the reference.  Each case
+ *  is a random configuration, settings line and message, generated
+ *  deterministically from a seed and the case number, with the edge
+ *  cases that the engines treat specially made likely: few or many
+ *  pawls, no notches, adjacent notches or a notch at every position,
+ *  fixed rotors in pawled slots, empty and full plugboards, tiny
+ *  alphabets and the byte alphabet.  Every case is one that Config.read
+ *  and Config.setUp (or setUpBytes) accept, so a case the reference
+ *  rejects is reported as a failure of its own.  A case on which an
+ *  engine differs from the reference is shrunk, by removing plugboard
+ *  pairs, notches, rotors and message symbols, and by zeroing settings
+ *  and wirings, for as long as the engine still differs, and reported
+ *  with the configuration, settings line and message that remain.
+ *      java enigma.Fuzzer [--cases=N] [--case=K] [--seed=S]
+ *                         [--threads=T] [--length=L] [--engines=E,...]
+ *  checks cases 0 .. N - 1 (or just case K) for seed S, on T threads,
+ *  with messages of up to L symbols, against the engines named E (by
+ *  default, all those built in; a name containing "." is that of a class
+ *  in this package implementing Engine, with a constructor taking no
+ *  arguments), and prints any failures and the throughput of each
+ *  engine.  It exits with status 1 if there were failures.
+ *  @author Florence Lau
+ */
+public final class Fuzzer {
+
+    /** Default number of cases. */
+    static final int DEFAULT_CASES = 1000;
+
+    /** Default maximum message length. */
+    static final int DEFAULT_LENGTH = 2000;
+
+    /** Largest number of failures reported (others are only counted). */
+    static final int MAX_REPORTED = 20;
+
+    /** Largest number of reported failures shrunk for each engine. */
+    static final int MAX_SHRUNK = 3;
+
+    /** Messages of up to this many symbols are shrunk one symbol at a
+     *  time; longer ones are halved. */
+    private static final int SHORT_MESSAGE = 64;
+
+    /** Name under which the reference is reported. */
+    static final String REFERENCE = "reference";
+
+    /** A way of converting messages, to be checked against the
+     *  reference. */
+    interface Engine {
+        /** Return true iff I can convert messages for machines built from
+         *  CONFIG. */
+        boolean supports(Config config);
+
+        /** Return MESSAGE, a sequence of alphabet indices, converted by a
+         *  machine built from CONFIG and set up by SETTINGS. */
+        int[] convert(Config config, String settings, int[] message);
+    }
+
+    /** The engines built in, by name. */
+    static final Map<String, Engine> ENGINES = builtIn();
+
+    /** Return the engines built in, by name. */
+    private static Map<String, Engine> builtIn() {
+        Map<String, Engine> result = new LinkedHashMap<>();
+        result.put("parser", new ParserEngine());
+        result.put("pipeline", new PipelineEngine());
+        result.put("tables", new TableEngine());
+        result.put("bytes", new ByteEngine());
+        return Collections.unmodifiableMap(result);
+    }
+
+    /** Conversion by a machine set up by a SettingsParser, with its
+     *  messages converted by a CharTable, as Main converts them. */
+    private static final class ParserEngine implements Engine {
+        @Override
+        public boolean supports(Config config) {
+            return !config.binary();
+        }
+
+        @Override
+        public int[] convert(Config config, String settings, int[] message) {
+            Machine machine = config.newMachine();
+            new SettingsParser(config).setUp(machine, settings);
+            CharTable chars =
+                new CharTable(config.alphabet(), CharTable.Policy.STRICT);
+            Alphabet alpha = config.alphabet();
+            return indices(alpha,
+                           chars.convert(machine, text(alpha, message)));
+        }
+    }
+
+    /** Conversion by a Pipeline with small buffers, so that the message
+     *  is divided between many of them. */
+    private static final class PipelineEngine implements Engine {
+        @Override
+        public boolean supports(Config config) {
+            return !config.binary();
+        }
+
+        @Override
+        public int[] convert(Config config, String settings, int[] message) {
+            Alphabet alpha = config.alphabet();
+            StringWriter out = new StringWriter();
+            String input = settings + "\n" + text(alpha, message) + "\n";
+            new Pipeline(config, new CharTable(alpha, CharTable.Policy.STRICT),
+                         new StringReader(input), out, 2, 61).run();
+            return indices(alpha, out.toString());
+        }
+    }
+
+    /** Conversion by the conjugates of the rotors' permutations (see
+     *  Permutation.conjugate), stepping the rotors by a formulation of
+     *  Machine's rule of its own: every rotor in a pawled slot decides
+     *  whether to move from the settings before any moves, the rightmost
+     *  always moving, the leftmost when the rotor to its right is at a
+     *  notch, and the others when either they or that rotor are. */
+    private static final class TableEngine implements Engine {
+        @Override
+        public boolean supports(Config config) {
+            return true;
+        }
+
+        @Override
+        public int[] convert(Config config, String settings, int[] message) {
+            Machine machine = setUp(config, settings);
+            int n = machine.numRotors(), first = n - machine.numPawls();
+            int size = machine.alphabet().size();
+            Rotor[] rotors = new Rotor[n];
+            int[] s = new int[n];
+            for (int k = 0; k < n; k += 1) {
+                rotors[k] = machine.rotor(k);
+                s[k] = rotors[k].setting();
+            }
+            Permutation plugboard = machine.plugboard();
+            boolean[] moves = new boolean[n];
+            int[] result = new int[message.length];
+            for (int i = 0; i < message.length; i += 1) {
+                for (int k = first; k < n; k += 1) {
+                    moves[k] = k == n - 1
+                        || rotors[k + 1].notchAt(s[k + 1])
+                        || k > first && rotors[k].notchAt(s[k]);
+                }
+                for (int k = first; k < n; k += 1) {
+                    if (moves[k] && rotors[k].rotates()) {
+                        s[k] = (s[k] + 1) % size;
+                    }
+                }
+                int c = message[i];
+                if (plugboard != null) {
+                    c = plugboard.permute(c);
+                }
+                for (int k = n - 1; k > 0; k -= 1) {
+                    c = rotors[k].permutation().conjugate(s[k]).permute(c);
+                }
+                c = rotors[0].permutation().invert(c);
+                for (int k = 1; k < n; k += 1) {
+                    c = rotors[k].permutation().conjugate(s[k]).invert(c);
+                }
+                if (plugboard != null) {
+                    c = plugboard.invert(c);
+                }
+                result[i] = c;
+            }
+            return result;
+        }
+    }
+
+    /** Conversion by a ByteConverter, given the message in pieces of
+     *  varying size. */
+    private static final class ByteEngine implements Engine {
+        /** Sizes of the pieces, used in turn. */
+        private static final int[] PIECES = { 1, 2, 3, 61, 1000, 4096 };
+
+        @Override
+        public boolean supports(Config config) {
+            return config.binary();
+        }
+
+        @Override
+        public int[] convert(Config config, String settings, int[] message) {
+            ByteConverter converter =
+                new ByteConverter(setUp(config, settings));
+            byte[] buf = new byte[message.length];
+            for (int i = 0; i < buf.length; i += 1) {
+                buf[i] = (byte) message[i];
+            }
+            int off = 0;
+            for (int p = 0; off < buf.length; p += 1) {
+                int len = Math.min(PIECES[p % PIECES.length],
+                                   buf.length - off);
+                converter.convert(buf, off, len);
+                off += len;
+            }
+            int[] result = new int[buf.length];
+            for (int i = 0; i < buf.length; i += 1) {
+                result[i] = buf[i] & 0xff;
+            }
+            return result;
+        }
+    }
+
+    /** Return a new machine built from CONFIG and set up by SETTINGS, as
+     *  Config.setUp or (for the byte alphabet) Config.setUpBytes would. */
+    static Machine setUp(Config config, String settings) {
+        Machine result = config.newMachine();
+        if (config.binary()) {
+            config.setUpBytes(result, settings);
+        } else {
+            config.setUp(result, settings);
+        }
+        return result;
+    }
+
+    /** Return MESSAGE converted by Machine.convert on a machine built from
+     *  CONFIG and set up by SETTINGS. */
+    static int[] reference(Config config, String settings, int[] message) {
+        Machine machine = setUp(config, settings);
+        int[] result = new int[message.length];
+        for (int i = 0; i < message.length; i += 1) {
+            result[i] = machine.convert(message[i]);
+        }
+        return result;
+    }
+
+    /** Return the characters of ALPHA with the indices in MESSAGE. */
+    static String text(Alphabet alpha, int[] message) {
+        char[] result = new char[message.length];
+        for (int i = 0; i < message.length; i += 1) {
+            result[i] = alpha.toChar(message[i]);
+        }
+        return new String(result);
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT, skipping
+     *  whitespace. */
+    static int[] indices(Alphabet alpha, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** A rotor of a generated configuration. */
+    static final class RotorSpec {
+        /** A rotor named NAME of type TYPE ('M', 'N' or 'R'), with notches
+         *  at the positions NOTCHES, in increasing order, and the
+         *  permutation mapping each K to IMAGES[K]. */
+        RotorSpec(String name, char type, int[] notches, int[] images) {
+            this.name = name;
+            this.type = type;
+            this.notches = notches;
+            this.images = images;
+        }
+
+        /** Name. */
+        final String name;
+        /** Type. */
+        final char type;
+        /** Notch positions. */
+        final int[] notches;
+        /** Wiring. */
+        final int[] images;
+    }
+
+    /** A generated case: a configuration, a settings line and a message,
+     *  held in a form that is easily shrunk. */
+    static final class Case {
+        /** Return a copy of me that may be changed without changing me
+         *  (the RotorSpecs, which never change, are shared). */
+        Case copy() {
+            Case result = new Case();
+            result.chars = chars;
+            result.size = size;
+            result.numRotors = numRotors;
+            result.numPawls = numPawls;
+            result.rotors = new ArrayList<>(rotors);
+            result.slots = slots.clone();
+            result.positions = positions.clone();
+            result.plugs = new ArrayList<>(plugs);
+            result.message = message.clone();
+            return result;
+        }
+
+        /** Return true iff I use the byte alphabet. */
+        boolean binary() {
+            return chars == null;
+        }
+
+        /** Return symbol number K as written in my configuration. */
+        String symbol(int k) {
+            return binary() ? String.format("%02x", k)
+                : String.valueOf(chars.charAt(k));
+        }
+
+        /** Return the text of my configuration. */
+        String config() {
+            StringBuilder result = new StringBuilder();
+            result.append(binary() ? "bytes" : chars).append('\n')
+                .append(' ').append(numRotors).append(' ').append(numPawls)
+                .append('\n');
+            for (RotorSpec rotor : rotors) {
+                result.append(' ').append(rotor.name).append(' ')
+                    .append(rotor.type);
+                for (int p : rotor.notches) {
+                    result.append(symbol(p));
+                }
+                if (binary()) {
+                    for (int k = 0; k < size; k += 1) {
+                        if (k % 32 == 0) {
+                            result.append("\n  ");
+                        }
+                        result.append(symbol(rotor.images[k]));
+                    }
+                } else {
+                    appendCycles(result, rotor.images);
+                }
+                result.append('\n');
+            }
+            return result.toString();
+        }
+
+        /** Append the cycles of the permutation mapping each K to
+         *  IMAGES[K] to TEXT, including those of one character. */
+        private void appendCycles(StringBuilder text, int[] images) {
+            boolean[] done = new boolean[size];
+            for (int k = 0; k < size; k += 1) {
+                if (!done[k]) {
+                    text.append(" (");
+                    for (int p = k; !done[p]; p = images[p]) {
+                        text.append(chars.charAt(p));
+                        done[p] = true;
+                    }
+                    text.append(')');
+                }
+            }
+        }
+
+        /** Return my settings line. */
+        String settings() {
+            StringBuilder result = new StringBuilder("*");
+            for (int r : slots) {
+                result.append(' ').append(rotors.get(r).name);
+            }
+            result.append(' ');
+            for (int p : positions) {
+                result.append(symbol(p));
+            }
+            for (int[] pair : plugs) {
+                result.append(" (").append(symbol(pair[0]))
+                    .append(symbol(pair[1])).append(')');
+            }
+            return result.toString();
+        }
+
+        /** Return my message as written in the configuration's
+         *  symbols. */
+        String messageText() {
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < message.length; i += 1) {
+                if (binary() && i > 0) {
+                    result.append(' ');
+                }
+                result.append(symbol(message[i]));
+            }
+            return result.toString();
+        }
+
+        /** Characters of the alphabet, or null for the byte alphabet. */
+        String chars;
+        /** Size of the alphabet. */
+        int size;
+        /** Number of slots and pawls. */
+        int numRotors, numPawls;
+        /** Available rotors. */
+        List<RotorSpec> rotors;
+        /** Index in rotors of the rotor in each slot. */
+        int[] slots;
+        /** Settings of the rotors in slots 1 .. numRotors - 1. */
+        int[] positions;
+        /** Plugboard pairs. */
+        List<int[]> plugs;
+        /** Message, as alphabet indices. */
+        int[] message;
+    }
+
+    /** Return the case generated from RANDOM with a message of up to
+     *  LENGTH symbols. */
+    static Case generate(SplittableRandom random, int length) {
+        Case c = new Case();
+        if (random.nextInt(8) == 0) {
+            c.size = Config.BYTE_SYMBOLS;
+        } else {
+            int[] pool = shuffle(random, Workload.ALPHABET_POOL.length());
+            c.size = 2 + random.nextInt(pool.length - 1);
+            StringBuilder chars = new StringBuilder();
+            for (int k = 0; k < c.size; k += 1) {
+                chars.append(Workload.ALPHABET_POOL.charAt(pool[k]));
+            }
+            c.chars = chars.toString();
+        }
+        c.numRotors = 2 + random.nextInt(6);
+        c.numPawls = random.nextInt(c.numRotors);
+        int first = c.numRotors - c.numPawls;
+        List<RotorSpec> used = new ArrayList<>();
+        used.add(rotor(random, c.size, 'R', 0));
+        for (int k = 1; k < c.numRotors; k += 1) {
+            char type = k >= first && random.nextInt(8) != 0 ? 'M' : 'N';
+            used.add(rotor(random, c.size, type, k));
+        }
+        int spares = random.nextInt(3);
+        c.rotors = new ArrayList<>();
+        for (int k = 0; k < spares; k += 1) {
+            c.rotors.add(rotor(random, c.size, "MNR".charAt(random.nextInt(3)),
+                               c.numRotors + k));
+        }
+        c.rotors.addAll(used);
+        int[] order = shuffle(random, c.rotors.size());
+        List<RotorSpec> catalog = new ArrayList<>();
+        c.slots = new int[c.numRotors];
+        for (int k = 0; k < order.length; k += 1) {
+            catalog.add(c.rotors.get(order[k]));
+            if (order[k] >= spares) {
+                c.slots[order[k] - spares] = k;
+            }
+        }
+        c.rotors = catalog;
+        c.positions = new int[c.numRotors - 1];
+        if (random.nextInt(8) != 0) {
+            for (int k = 0; k < c.positions.length; k += 1) {
+                c.positions[k] = random.nextInt(c.size);
+            }
+        }
+        int[] symbols = shuffle(random, c.size);
+        int pairs;
+        switch (random.nextInt(4)) {
+        case 0:
+            pairs = 0;
+            break;
+        case 1:
+            pairs = c.size / 2;
+            break;
+        default:
+            pairs = random.nextInt(c.size / 2 + 1);
+            break;
+        }
+        c.plugs = new ArrayList<>();
+        for (int k = 0; k < pairs; k += 1) {
+            c.plugs.add(new int[] { symbols[2 * k], symbols[2 * k + 1] });
+        }
+        c.message = new int[1 + random.nextInt(length)];
+        boolean same = random.nextInt(8) == 0;
+        for (int i = 0; i < c.message.length; i += 1) {
+            c.message[i] = same && i > 0 ? c.message[0]
+                : random.nextInt(c.size);
+        }
+        return c;
+    }
+
+    /** Return a rotor of type TYPE for an alphabet of SIZE symbols,
+     *  generated from RANDOM and named for NUMBER. */
+    private static RotorSpec rotor(SplittableRandom random, int size,
+                                   char type, int number) {
+        int[] images = shuffle(random, size);
+        if (type == 'R' && random.nextInt(4) != 0) {
+            int[] pairs = shuffle(random, size);
+            for (int k = 0; k + 1 < size; k += 2) {
+                images[pairs[k]] = pairs[k + 1];
+                images[pairs[k + 1]] = pairs[k];
+            }
+            if (size % 2 != 0) {
+                images[pairs[size - 1]] = pairs[size - 1];
+            }
+        } else if (random.nextInt(8) == 0) {
+            images = Util.identity(size);
+        }
+        int[] notches = new int[0];
+        if (type == 'M') {
+            int p = random.nextInt(size);
+            switch (random.nextInt(6)) {
+            case 0:
+                break;
+            case 1:
+                notches = Util.identity(size);
+                break;
+            case 2:
+                notches = new int[] { p };
+                break;
+            case 3:
+                notches = p + 1 < size ? new int[] { p, p + 1 }
+                    : new int[] { 0, p };
+                break;
+            default:
+                notches = shuffle(random, size);
+                notches = Arrays.copyOf(notches,
+                                        1 + random.nextInt(size));
+                Arrays.sort(notches);
+                break;
+            }
+        }
+        return new RotorSpec("R" + number, type, notches, images);
+    }
+
+    /** Return a random permutation of 0 .. N - 1 from RANDOM. */
+    private static int[] shuffle(SplittableRandom random, int n) {
+        int[] result = Util.identity(n);
+        for (int k = n - 1; k > 0; k -= 1) {
+            int j = random.nextInt(k + 1);
+            int t = result[k];
+            result[k] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    /** Return the random source for case NUMBER of SEED. */
+    static SplittableRandom random(long seed, long number) {
+        return new SplittableRandom(seed + number * 0x9e3779b97f4a7c15L);
+    }
+
+    /** A case on which an engine differed from the reference, or that the
+     *  reference rejected. */
+    static final class Failure {
+        /** A failure of the engine named ENGINE on case NUMBER, shrunk to
+         *  CASE (or not, if SHRUNK is false), described by DETAIL. */
+        Failure(String engine, long number, Case shrunkCase, boolean shrunk,
+                String detail) {
+            this.engine = engine;
+            this.number = number;
+            this.shrunkCase = shrunkCase;
+            this.shrunk = shrunk;
+            this.detail = detail;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: case %d (%s): %s%n%s%s%n%s%n",
+                                 engine, number,
+                                 shrunk ? "shrunk" : "not shrunk", detail,
+                                 shrunkCase.config(), shrunkCase.settings(),
+                                 shrunkCase.messageText());
+        }
+
+        /** Name of the engine, or REFERENCE. */
+        final String engine;
+        /** Case number. */
+        final long number;
+        /** The case, after shrinking. */
+        final Case shrunkCase;
+        /** True iff the case was shrunk. */
+        final boolean shrunk;
+        /** What went wrong. */
+        final String detail;
+    }
+
+    /** Order of failures in reports: by case number, and for the same
+     *  case, by engine name. */
+    private static final Comparator<Failure> FAILURE_ORDER =
+        Comparator.comparingLong((Failure f) -> f.number)
+        .thenComparing(f -> f.engine);
+
+    /** A fuzzer checking ENGINES, by name, with messages of up to LENGTH
+     *  symbols. */
+    Fuzzer(Map<String, Engine> engines, int length) {
+        if (length < 1) {
+            throw error("message length must be positive");
+        }
+        _engines = new LinkedHashMap<>(engines);
+        _length = length;
+        _symbols.put(REFERENCE, new LongAdder());
+        _nanos.put(REFERENCE, new LongAdder());
+        for (String name : engines.keySet()) {
+            _symbols.put(name, new LongAdder());
+            _nanos.put(name, new LongAdder());
+        }
+    }
+
+    /** Check cases FROM .. FROM + COUNT - 1 of SEED on THREADS threads,
+     *  returning the MAX_REPORTED failures with the lowest case numbers,
+     *  in order of case number, the first MAX_SHRUNK of each engine
+     *  shrunk.  The result does not depend on THREADS. */
+    List<Failure> run(long seed, long from, long count, int threads) {
+        if (threads < 1) {
+            throw error("number of threads must be positive");
+        }
+        PriorityQueue<Failure> found =
+            new PriorityQueue<>(MAX_REPORTED + 1, FAILURE_ORDER.reversed());
+        AtomicLong next = new AtomicLong(from);
+        ExecutorService pool = Util.pool(threads, "enigma-fuzz");
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int k = 0; k < threads; k += 1) {
+                workers.add(pool.submit(() -> {
+                    for (long n = next.getAndIncrement(); n < from + count;
+                         n = next.getAndIncrement()) {
+                        check(seed, n, found);
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new AssertionError(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        List<Failure> result = new ArrayList<>(found);
+        result.sort(FAILURE_ORDER);
+        Map<String, Integer> shrunk = new HashMap<>();
+        for (int i = 0; i < result.size(); i += 1) {
+            Failure f = result.get(i);
+            Engine engine = _engines.get(f.engine);
+            if (engine != null
+                && shrunk.merge(f.engine, 1, Integer::sum) <= MAX_SHRUNK) {
+                Case small = shrink(engine, f.shrunkCase);
+                result.set(i, new Failure(f.engine, f.number, small, true,
+                                          failure(engine, small)));
+            }
+        }
+        return result;
+    }
+
+    /** Check case NUMBER of SEED, adding any failures to FOUND. */
+    private void check(long seed, long number, Queue<Failure> found) {
+        Case c = generate(random(seed, number), _length);
+        _cases.increment();
+        Config config;
+        int[] expected;
+        try {
+            config = Config.read(new Scanner(c.config()));
+            long start = System.nanoTime();
+            expected = reference(config, c.settings(), c.message);
+            count(REFERENCE, c.message.length, start);
+        } catch (RuntimeException excp) {
+            fail(found, new Failure(REFERENCE, number, c, false,
+                                    "rejected: " + excp.getMessage()));
+            return;
+        }
+        for (Map.Entry<String, Engine> entry : _engines.entrySet()) {
+            Engine engine = entry.getValue();
+            if (!engine.supports(config)) {
+                continue;
+            }
+            long start = System.nanoTime();
+            String detail = difference(engine, config, c, expected);
+            count(entry.getKey(), c.message.length, start);
+            if (detail != null) {
+                fail(found, new Failure(entry.getKey(), number, c, false,
+                                        detail));
+            }
+        }
+    }
+
+    /** Record that the engine NAME converted SYMBOLS symbols in the time
+     *  since START (from System.nanoTime). */
+    private void count(String name, int symbols, long start) {
+        _nanos.get(name).add(System.nanoTime() - start);
+        _symbols.get(name).add(symbols);
+    }
+
+    /** Record FAILURE in FOUND, a heap (latest first) of the
+     *  MAX_REPORTED earliest failures. */
+    private void fail(Queue<Failure> found, Failure failure) {
+        _failures.increment();
+        synchronized (found) {
+            found.add(failure);
+            if (found.size() > MAX_REPORTED) {
+                found.poll();
+            }
+        }
+    }
+
+    /** Return a description of the first difference between ENGINE's
+     *  conversion of the message of C, with CONFIG built from it, and
+     *  EXPECTED, or null if there is none. */
+    private static String difference(Engine engine, Config config, Case c,
+                                     int[] expected) {
+        int[] actual;
+        try {
+            actual = engine.convert(config, c.settings(), c.message.clone());
+        } catch (RuntimeException excp) {
+            return "threw " + excp;
+        }
+        int i = firstDifference(expected, actual);
+        if (i < 0) {
+            return null;
+        } else if (i < Math.min(expected.length, actual.length)) {
+            return String.format("symbol %d is %s, not %s", i,
+                                 c.symbol(actual[i]), c.symbol(expected[i]));
+        } else {
+            return String.format("%d symbols, not %d", actual.length,
+                                 expected.length);
+        }
+    }
+
+    /** Return the first index at which EXPECTED and ACTUAL differ (which
+     *  may be the length of the shorter), or -1 if they are equal. */
+    private static int firstDifference(int[] expected, int[] actual) {
+        int n = Math.min(expected.length, actual.length);
+        for (int i = 0; i < n; i += 1) {
+            if (expected[i] != actual[i]) {
+                return i;
+            }
+        }
+        return expected.length == actual.length ? -1 : n;
+    }
+
+    /** Return the description of ENGINE's failure on C, or null if C is
+     *  not a case the reference accepts, or ENGINE supports, or on which
+     *  ENGINE fails. */
+    static String failure(Engine engine, Case c) {
+        Config config;
+        int[] expected;
+        try {
+            config = Config.read(new Scanner(c.config()));
+            expected = reference(config, c.settings(), c.message);
+        } catch (RuntimeException excp) {
+            return null;
+        }
+        if (!engine.supports(config)) {
+            return null;
+        }
+        return difference(engine, config, c, expected);
+    }
+
+    /** Return the smallest case I can find, starting from C, on which
+     *  ENGINE fails. */
+    static Case shrink(Engine engine, Case c) {
+        c = truncate(engine, c);
+        boolean smaller = true;
+        while (smaller) {
+            smaller = false;
+            for (Case d : candidates(c)) {
+                if (failure(engine, d) != null) {
+                    c = truncate(engine, d);
+                    smaller = true;
+                    break;
+                }
+            }
+        }
+        return c;
+    }
+
+    /** Return C, on which ENGINE fails, with its message cut short after
+     *  the first symbol that ENGINE converts wrongly, if that still
+     *  fails. */
+    private static Case truncate(Engine engine, Case c) {
+        int[] expected, actual;
+        try {
+            Config config = Config.read(new Scanner(c.config()));
+            expected = reference(config, c.settings(), c.message);
+            actual = engine.convert(config, c.settings(), c.message.clone());
+        } catch (RuntimeException excp) {
+            return c;
+        }
+        int i = firstDifference(expected, actual);
+        if (i < 0 || i + 1 >= c.message.length) {
+            return c;
+        }
+        Case d = c.copy();
+        d.message = Arrays.copyOf(c.message, i + 1);
+        return failure(engine, d) != null ? d : c;
+    }
+
+    /** Return the cases slightly simpler than C to try in shrinking it,
+     *  most drastic first. */
+    private static List<Case> candidates(Case c) {
+        List<Case> result = new ArrayList<>();
+        for (int k = c.numRotors - 1; k > 0 && c.numRotors > 2; k -= 1) {
+            Case d = c.copy();
+            d.numRotors -= 1;
+            if (k >= c.numRotors - c.numPawls) {
+                d.numPawls -= 1;
+            }
+            d.slots = remove(c.slots, k);
+            d.positions = remove(c.positions, k - 1);
+            result.add(d);
+        }
+        for (int r = c.rotors.size() - 1; r >= 0; r -= 1) {
+            int slot = indexOf(c.slots, r);
+            if (slot < 0) {
+                Case d = c.copy();
+                d.rotors.remove(r);
+                for (int k = 0; k < d.slots.length; k += 1) {
+                    if (d.slots[k] > r) {
+                        d.slots[k] -= 1;
+                    }
+                }
+                result.add(d);
+            }
+        }
+        if (c.message.length > SHORT_MESSAGE) {
+            Case d = c.copy();
+            d.message = Arrays.copyOfRange(c.message, c.message.length / 2,
+                                           c.message.length);
+            result.add(d);
+        } else if (c.message.length > 1) {
+            Case d = c.copy();
+            d.message = Arrays.copyOfRange(c.message, 1, c.message.length);
+            result.add(d);
+        }
+        for (int k = c.plugs.size() - 1; k >= 0; k -= 1) {
+            Case d = c.copy();
+            d.plugs.remove(k);
+            result.add(d);
+        }
+        for (int k : c.slots) {
+            RotorSpec rotor = c.rotors.get(k);
+            if (rotor.notches.length > 0) {
+                result.add(replace(c, k, new RotorSpec(rotor.name, rotor.type,
+                                                       new int[0],
+                                                       rotor.images)));
+            }
+            for (int j = 0; rotor.notches.length > 1
+                     && j < rotor.notches.length; j += 1) {
+                int[] notches = remove(rotor.notches, j);
+                result.add(replace(c, k, new RotorSpec(rotor.name, rotor.type,
+                                                       notches,
+                                                       rotor.images)));
+            }
+            int[] identity = Util.identity(c.size);
+            if (!Arrays.equals(rotor.images, identity)) {
+                result.add(replace(c, k, new RotorSpec(rotor.name, rotor.type,
+                                                       rotor.notches,
+                                                       identity)));
+            }
+        }
+        for (int k = 0; k < c.positions.length; k += 1) {
+            if (c.positions[k] != 0) {
+                Case d = c.copy();
+                d.positions[k] = 0;
+                result.add(d);
+            }
+        }
+        for (int i = 0; i < c.message.length && i < SHORT_MESSAGE; i += 1) {
+            if (c.message[i] != 0) {
+                Case d = c.copy();
+                d.message[i] = 0;
+                result.add(d);
+            }
+        }
+        return result;
+    }
+
+    /** Return a copy of C with available rotor #K replaced by ROTOR. */
+    private static Case replace(Case c, int k, RotorSpec rotor) {
+        Case result = c.copy();
+        result.rotors.set(k, rotor);
+        return result;
+    }
+
+    /** Return A without its element #K. */
+    private static int[] remove(int[] a, int k) {
+        int[] result = new int[a.length - 1];
+        System.arraycopy(a, 0, result, 0, k);
+        System.arraycopy(a, k + 1, result, k, a.length - k - 1);
+        return result;
+    }
+
+    /** Return the first index of X in A, or -1 if there is none. */
+    private static int indexOf(int[] a, int x) {
+        for (int k = 0; k < a.length; k += 1) {
+            if (a[k] == x) {
+                return k;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the number of cases checked. */
+    long cases() {
+        return _cases.sum();
+    }
+
+    /** Return the number of failures found, including those not
+     *  reported. */
+    long failures() {
+        return _failures.sum();
+    }
+
+    /** Return the number of symbols converted by the engine NAME (or
+     *  REFERENCE). */
+    long symbols(String name) {
+        return _symbols.get(name).sum();
+    }
+
+    /** Return the throughput of the engine NAME (or REFERENCE), in
+     *  symbols per second of the time spent in it, counting the time to
+     *  set up its machine. */
+    double throughput(String name) {
+        long nanos = _nanos.get(name).sum();
+        return nanos == 0 ? 0.0 : _symbols.get(name).sum() * 1e9 / nanos;
+    }
+
+    /** Return the engines named in the comma-separated list NAMES (see
+     *  main), by name. */
+    static Map<String, Engine> engines(String names) {
+        Map<String, Engine> result = new LinkedHashMap<>();
+        for (String name : names.split(",")) {
+            if (ENGINES.containsKey(name)) {
+                result.put(name, ENGINES.get(name));
+            } else if (name.contains(".")) {
+                try {
+                    Object engine = Class.forName(name)
+                        .getDeclaredConstructor().newInstance();
+                    if (!(engine instanceof Engine)) {
+                        throw error("%s is not an engine", name);
+                    }
+                    result.put(name, (Engine) engine);
+                } catch (ReflectiveOperationException excp) {
+                    throw error("could not load engine %s", name);
+                }
+            } else {
+                throw error("unknown engine: %s", name);
+            }
+        }
+        return result;
+    }
+
+    /** Usage message. */
+    private static final String USAGE =
+        "Usage: java enigma.Fuzzer [--cases=N] [--case=K] [--seed=S] "
+        + "[--threads=T] [--length=L] [--engines=E,...]";
+
+    /** Run the cases described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            long seed = 0, from = 0, count = DEFAULT_CASES;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int length = DEFAULT_LENGTH;
+            Map<String, Engine> engines = ENGINES;
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                String value = arg.substring(eq + 1);
+                switch (eq < 0 ? arg : arg.substring(0, eq)) {
+                case "--cases":
+                    count = Long.parseLong(value);
+                    break;
+                case "--case":
+                    from = Long.parseLong(value);
+                    count = 1;
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--length":
+                    length = Integer.parseInt(value);
+                    break;
+                case "--engines":
+                    engines = engines(value);
+                    break;
+                default:
+                    throw error(USAGE);
+                }
+            }
+            Fuzzer fuzzer = new Fuzzer(engines, length);
+            for (Failure failure : fuzzer.run(seed, from, count, threads)) {
+                System.out.println(failure);
+            }
+            System.out.printf("%d cases, %d failures%n", fuzzer.cases(),
+                              fuzzer.failures());
+            List<String> names = new ArrayList<>();
+            names.add(REFERENCE);
+            names.addAll(engines.keySet());
+            for (String name : names) {
+                System.out.printf("%-12s %12d symbols %14.0f symbols/s%n",
+                                  name, fuzzer.symbols(name),
+                                  fuzzer.throughput(name));
+            }
+            System.out.flush();
+            if (fuzzer.failures() == 0) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+        }
+        System.exit(1);
+    }
+
+    /** The engines checked, by name. */
+    private final Map<String, Engine> _engines;
+
+    /** Maximum message length. */
+    private final int _length;
+
+    /** Number of cases checked. */
+    private final LongAdder _cases = new LongAdder();
+
+    /** Number of failures found. */
+    private final LongAdder _failures = new LongAdder();
+
+    /** Symbols converted by each engine, by name. */
+    private final Map<String, LongAdder> _symbols = new LinkedHashMap<>();
+
+    /** Time spent in each engine, in nanoseconds, by name. */
+    private final Map<String, LongAdder> _nanos = new LinkedHashMap<>();
+
+}
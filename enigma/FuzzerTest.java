@@ -0,0 +1,110 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the Fuzzer class.
+ *  @author Florence Lau
+ */
+public class FuzzerTest {
+
+    /** An engine that converts as the reference does, except that it
+     *  ignores the plugboard. */
+    private static final class NoPlugboard implements Fuzzer.Engine {
+        @Override
+        public boolean supports(Config config) {
+            return true;
+        }
+
+        @Override
+        public int[] convert(Config config, String settings, int[] message) {
+            Machine machine = Fuzzer.setUp(config, settings);
+            machine.setPlugboard(new Permutation("", config.alphabet()));
+            int[] result = new int[message.length];
+            for (int i = 0; i < message.length; i += 1) {
+                result[i] = machine.convert(message[i]);
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testGenerate() {
+        for (long n = 0; n < 200; n += 1) {
+            Fuzzer.Case c = Fuzzer.generate(Fuzzer.random(7, n), 50);
+            Fuzzer.Case d = Fuzzer.generate(Fuzzer.random(7, n), 50);
+            assertEquals(c.config(), d.config());
+            assertEquals(c.settings(), d.settings());
+            Config config = Config.read(new Scanner(c.config()));
+            assertEquals(c.binary(), config.binary());
+            int[] output = Fuzzer.reference(config, c.settings(), c.message);
+            assertEquals(c.message.length, output.length);
+        }
+    }
+
+    @Test
+    public void testEnginesAgree() {
+        Fuzzer fuzzer = new Fuzzer(Fuzzer.ENGINES, 200);
+        List<Fuzzer.Failure> failures = fuzzer.run(1, 0, 150, 2);
+        assertEquals(failures.toString(), 0, fuzzer.failures());
+        assertEquals(150, fuzzer.cases());
+        for (String name : Fuzzer.ENGINES.keySet()) {
+            assertTrue(name, fuzzer.symbols(name) > 0);
+        }
+        assertEquals(fuzzer.symbols(Fuzzer.REFERENCE),
+                     fuzzer.symbols("tables"));
+    }
+
+    @Test
+    public void testShrink() {
+        Map<String, Fuzzer.Engine> engines =
+            Collections.singletonMap("broken", new NoPlugboard());
+        Fuzzer fuzzer = new Fuzzer(engines, 500);
+        List<Fuzzer.Failure> failures = fuzzer.run(3, 0, 40, 1);
+        assertTrue(fuzzer.failures() > 0);
+        Fuzzer.Failure first = failures.get(0);
+        assertEquals("broken", first.engine);
+        assertTrue(first.shrunk);
+        Fuzzer.Case c = first.shrunkCase;
+        assertEquals(2, c.numRotors);
+        assertEquals(1, c.plugs.size());
+        assertEquals(2, c.rotors.size());
+        assertEquals(1, c.message.length);
+        assertNotNull(Fuzzer.failure(new NoPlugboard(), c));
+        assertTrue(first.toString().contains(c.settings()));
+    }
+
+    @Test
+    public void testReportIndependentOfThreads() {
+        Map<String, Fuzzer.Engine> engines =
+            Collections.singletonMap("broken", new NoPlugboard());
+        Fuzzer serial = new Fuzzer(engines, 50);
+        List<Fuzzer.Failure> expected = serial.run(3, 0, 200, 1);
+        assertTrue(serial.failures() > Fuzzer.MAX_REPORTED);
+        assertEquals(Fuzzer.MAX_REPORTED, expected.size());
+        for (int threads = 2; threads <= 8; threads *= 2) {
+            Fuzzer parallel = new Fuzzer(engines, 50);
+            List<Fuzzer.Failure> failures = parallel.run(3, 0, 200, threads);
+            assertEquals(serial.failures(), parallel.failures());
+            assertEquals(expected.toString(), failures.toString());
+        }
+    }
+
+    @Test
+    public void testEngineNames() {
+        assertEquals(Fuzzer.ENGINES.keySet(),
+                     Fuzzer.engines("parser,pipeline,tables,bytes").keySet());
+        try {
+            Fuzzer.engines("nonesuch");
+            fail("unknown engine accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
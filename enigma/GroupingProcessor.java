@@ -0,0 +1,51 @@
+package enigma;
+
+import java.nio.CharBuffer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/** A Flow.Processor that formats a stream of converted text the way
+ *  Main prints it: on each line, whitespace is removed and the
+ *  remaining characters are put in groups of five separated by blanks.
+ *  Lines end with '\n'.  Groups may span chunk boundaries.
+ *  @author Florence Lau
+ */
+class GroupingProcessor extends ChunkProcessor<CharBuffer> {
+
+    /** A processor delivering results on EXECUTOR, buffering at most
+     *  about BUFFERSIZE results for each subscriber. */
+    GroupingProcessor(Executor executor, int bufferSize) {
+        super(executor, bufferSize);
+    }
+
+    /** A processor delivering results asynchronously on the common
+     *  pool. */
+    GroupingProcessor() {
+        this(ForkJoinPool.commonPool(),
+             MachineProcessor.DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    CharBuffer process(CharBuffer item) {
+        CharBuffer result =
+            CharBuffer.allocate(item.remaining() + item.remaining() / 5 + 1);
+        while (item.hasRemaining()) {
+            char c = item.get();
+            if (c == '\n') {
+                result.put(c);
+                _column = 0;
+            } else if (!Character.isWhitespace(c)) {
+                result.put(c);
+                _column += 1;
+                if (_column % 5 == 0) {
+                    result.put(' ');
+                }
+            }
+        }
+        return result.flip();
+    }
+
+    /** Number of characters so far on the current line. */
+    private int _column;
+}
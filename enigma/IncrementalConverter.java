@@ -0,0 +1,236 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The conversion of a document that is edited, kept up to date by
+ *  converting again only what an edit changes.  Characters of the
+ *  document that are in the machine's alphabet (after case folding, as
+ *  by CharTable) are converted, each advancing the machine; all others
+ *  are copied unchanged, so that the output has the same length as the
+ *  document and each output character corresponds to the document
+ *  character at the same position.  The machine state before a document
+ *  position depends only on the number of characters converted before
+ *  it, so I keep checkpoints of it, one for about every INTERVAL
+ *  characters.  An edit (the replacement of a range of the document)
+ *  that leaves the number of characters converted unchanged, as does
+ *  any replacement of letters by as many letters, changes no key after
+ *  it: only the replaced range is converted again, starting from the
+ *  nearest checkpoint before it.  Any other edit shifts the key
+ *  stream under the rest of the document, which is then converted again
+ *  to the end from that checkpoint.
+ *  @author Florence Lau
+ */
+final class IncrementalConverter {
+
+    /** Default number of characters between checkpoints. */
+    static final int DEFAULT_INTERVAL = 4096;
+
+    /** A converter of documents by MACHINE, which must be set up, from
+     *  its current state, with a checkpoint for about every INTERVAL
+     *  characters.  The document is initially empty.  MACHINE's state
+     *  is changed by my conversions. */
+    IncrementalConverter(Machine machine, int interval) {
+        if (interval < 1) {
+            throw error("checkpoint interval must be positive");
+        }
+        _machine = machine;
+        _interval = interval;
+        _chars = new CharTable(machine.alphabet(), CharTable.Policy.PASS);
+        _stateSize = machine.numRotors() - 1;
+        _positions = new int[16];
+        _states = new int[16 * _stateSize];
+        _count = 1;
+        _snapshot = machine.snapshot(null);
+        System.arraycopy(_snapshot, 0, _states, 0, _stateSize);
+    }
+
+    /** Return the document. */
+    String document() {
+        return _document.toString();
+    }
+
+    /** Return the conversion of the document. */
+    String output() {
+        return _output.toString();
+    }
+
+    /** Return the length of the document (and of its conversion). */
+    int length() {
+        return _document.length();
+    }
+
+    /** Return the number of characters converted so far, counting those
+     *  converted again after edits and those converted only to advance
+     *  the machine. */
+    long converted() {
+        return _converted;
+    }
+
+    /** Return the number of checkpoints held. */
+    int checkpoints() {
+        return _count;
+    }
+
+    /** Replace the document's characters START .. END - 1 by TEXT, and
+     *  bring the output up to date. */
+    void replace(int start, int end, CharSequence text) {
+        if (start < 0 || start > end || end > _document.length()) {
+            throw error("bad edit range: %d-%d", start, end);
+        }
+        boolean sameKeys = keys(_document, start, end)
+            == keys(text, 0, text.length());
+        _document.replace(start, end, text.toString());
+        int j = checkpoint(start);
+        restore(j);
+        if (sameKeys) {
+            shift(j + 1, start, end, text.length() - (end - start));
+            int next = j + 1, last = _positions[j];
+            for (int p = _positions[j]; p < start; p += 1) {
+                if (p - last >= _interval) {
+                    insert(next, p);
+                    next += 1;
+                    last = p;
+                }
+                if (_chars.classify(_document.charAt(p)) >= 0) {
+                    _machine.convert(0);
+                    _converted += 1;
+                }
+            }
+            StringBuilder window = new StringBuilder(text.length());
+            for (int p = start; p < start + text.length(); p += 1) {
+                if (p - last >= _interval) {
+                    insert(next, p);
+                    next += 1;
+                    last = p;
+                }
+                window.append(convert(_document.charAt(p)));
+            }
+            _output.replace(start, end, window.toString());
+        } else {
+            _count = j + 1;
+            _output.setLength(_positions[j]);
+            int last = _positions[j];
+            for (int p = _positions[j]; p < _document.length(); p += 1) {
+                if (p - last >= _interval) {
+                    insert(_count, p);
+                    last = p;
+                }
+                _output.append(convert(_document.charAt(p)));
+            }
+        }
+    }
+
+    /** Append TEXT to the document. */
+    void append(CharSequence text) {
+        replace(_document.length(), _document.length(), text);
+    }
+
+    /** Return the number of characters of TEXT in START .. END - 1 that
+     *  are converted. */
+    private int keys(CharSequence text, int start, int end) {
+        int result = 0;
+        for (int p = start; p < end; p += 1) {
+            if (_chars.classify(text.charAt(p)) >= 0) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the conversion of C by the machine, advancing it if C is
+     *  converted. */
+    private char convert(char c) {
+        int k = _chars.classify(c);
+        if (k < 0) {
+            return c;
+        }
+        _converted += 1;
+        return _machine.alphabet().toChar(_machine.convert(k));
+    }
+
+    /** Return the number of the last checkpoint at or before document
+     *  position P. */
+    private int checkpoint(int p) {
+        int j = Arrays.binarySearch(_positions, 0, _count, p);
+        return j >= 0 ? j : -j - 2;
+    }
+
+    /** Set the machine to the state saved at checkpoint J. */
+    private void restore(int j) {
+        System.arraycopy(_states, j * _stateSize, _snapshot, 0, _stateSize);
+        _machine.restore(_snapshot);
+    }
+
+    /** Insert a checkpoint of the machine's state at document position
+     *  P as checkpoint number J, which must keep the checkpoints in
+     *  order of position. */
+    private void insert(int j, int p) {
+        if (_count == _positions.length) {
+            _positions = Arrays.copyOf(_positions, 2 * _count);
+            _states = Arrays.copyOf(_states, 2 * _count * _stateSize);
+        }
+        System.arraycopy(_positions, j, _positions, j + 1, _count - j);
+        System.arraycopy(_states, j * _stateSize, _states,
+                         (j + 1) * _stateSize, (_count - j) * _stateSize);
+        _machine.snapshot(_snapshot);
+        _positions[j] = p;
+        System.arraycopy(_snapshot, 0, _states, j * _stateSize, _stateSize);
+        _count += 1;
+    }
+
+    /** Adjust checkpoints J and after for the replacement of document
+     *  positions START .. END - 1 by text whose length differs by DELTA
+     *  and which converts the same number of characters: those inside
+     *  the replaced range are dropped (replace then adds new ones as it
+     *  converts the replacement) and those after it moved. */
+    private void shift(int j, int start, int end, int delta) {
+        int n = j;
+        for (int i = j; i < _count; i += 1) {
+            if (_positions[i] > start && _positions[i] < end) {
+                continue;
+            }
+            _positions[n] = _positions[i] + delta;
+            System.arraycopy(_states, i * _stateSize, _states, n * _stateSize,
+                             _stateSize);
+            n += 1;
+        }
+        _count = n;
+    }
+
+    /** The machine. */
+    private final Machine _machine;
+
+    /** Number of characters between checkpoints. */
+    private final int _interval;
+
+    /** Classification of document characters. */
+    private final CharTable _chars;
+
+    /** Number of ints in a machine state. */
+    private final int _stateSize;
+
+    /** Scratch space for a machine state. */
+    private final int[] _snapshot;
+
+    /** The document. */
+    private final StringBuilder _document = new StringBuilder();
+
+    /** Its conversion. */
+    private final StringBuilder _output = new StringBuilder();
+
+    /** Document position of each checkpoint, in increasing order; the
+     *  first is 0. */
+    private int[] _positions;
+
+    /** Machine state (as by Machine.snapshot) before the document
+     *  position of each checkpoint, _stateSize ints each. */
+    private int[] _states;
+
+    /** Number of checkpoints. */
+    private int _count;
+
+    /** Number of characters converted. */
+    private long _converted;
+}
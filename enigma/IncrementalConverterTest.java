@@ -0,0 +1,135 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.util.SplittableRandom;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the IncrementalConverter class.
+ *  @author Florence Lau
+ */
+public class IncrementalConverterTest {
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Characters from which documents are made. */
+    private static final String CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabc ,.\n";
+
+    /** Return DOC converted in full by a fresh machine, copying
+     *  characters not in the alphabet. */
+    private static String convert(String doc) {
+        Machine machine = navalConfig().newMachine(SETTINGS);
+        StringBuilder result = new StringBuilder();
+        for (char c : doc.toCharArray()) {
+            char u = Character.toUpperCase(c);
+            if (machine.alphabet().contains(u)) {
+                int k = machine.convert(machine.alphabet().toInt(u));
+                result.append(machine.alphabet().toChar(k));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return a random text of LENGTH characters from RANDOM. */
+    private static String text(SplittableRandom random, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return result.toString();
+    }
+
+    /** Return a new converter with checkpoints every INTERVAL
+     *  characters. */
+    private static IncrementalConverter converter(int interval) {
+        return new IncrementalConverter(navalConfig().newMachine(SETTINGS),
+                                        interval);
+    }
+
+    @Test
+    public void testRandomEdits() {
+        SplittableRandom random = new SplittableRandom(3);
+        IncrementalConverter conv = converter(16);
+        conv.append(text(random, 500));
+        assertEquals(convert(conv.document()), conv.output());
+        for (int n = 0; n < 500; n += 1) {
+            int start = random.nextInt(conv.length() + 1);
+            int end = start + random.nextInt(conv.length() - start + 1) / 4;
+            String text;
+            switch (random.nextInt(4)) {
+            case 0:
+                text = "";
+                break;
+            case 1:
+                text = conv.document().substring(start, end).toLowerCase();
+                break;
+            case 2:
+                text = conv.document().substring(start, end)
+                    .replaceAll("[A-Z]", "Q") + " .";
+                break;
+            default:
+                text = text(random, random.nextInt(20));
+                break;
+            }
+            conv.replace(start, end, text);
+            assertEquals(convert(conv.document()), conv.output());
+        }
+        assertTrue(conv.checkpoints() > 1);
+    }
+
+    @Test
+    public void testWork() {
+        SplittableRandom random = new SplittableRandom(4);
+        IncrementalConverter conv = converter(1000);
+        String doc = text(random, 200000);
+        conv.append(doc);
+        long converted = conv.converted();
+        String letters = doc.substring(100500, 100510);
+        conv.replace(100500, 100510, letters.replaceAll("[A-Za-z]", "Q"));
+        assertTrue(conv.converted() - converted <= 1010);
+        converted = conv.converted();
+        conv.replace(100500, 100500, "  ");
+        assertTrue(conv.converted() - converted <= 1000);
+        converted = conv.converted();
+        conv.replace(100500, 100500, "X");
+        assertTrue(conv.converted() - converted > 80000);
+        assertEquals(convert(conv.document()), conv.output());
+        assertEquals(200003, conv.output().length());
+    }
+
+    @Test
+    public void testLargeEdit() {
+        SplittableRandom random = new SplittableRandom(5);
+        IncrementalConverter conv = converter(1000);
+        String doc = text(random, 200000);
+        conv.append(doc);
+        int checkpoints = conv.checkpoints();
+        String middle = doc.substring(500, 199500);
+        conv.replace(500, 199500, middle.replaceAll("[A-Za-z]", "Q"));
+        assertTrue(conv.checkpoints() >= checkpoints - 1);
+        long converted = conv.converted();
+        String letters = doc.substring(199000, 199010);
+        conv.replace(199000, 199010, letters.replaceAll("[A-Za-z]", "Z"));
+        assertTrue(conv.converted() - converted <= 1010);
+        assertEquals(convert(conv.document()), conv.output());
+    }
+
+    @Test
+    public void testBadRange() {
+        IncrementalConverter conv = converter(10);
+        conv.append("HELLO");
+        try {
+            conv.replace(3, 6, "");
+            fail("bad range accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A generator of key sheets: random settings lines for machines built
+ *  from a configuration, in the form Config.setUp accepts (or, for the
+ *  byte alphabet, Config.setUpBytes).  Each line has a reflector in the
+ *  first slot, distinct fixed rotors in the slots without pawls and
+ *  distinct other rotors, fixed or moving, in those with them (the
+ *  arrangements Config.setUp accepts), a random setting, and a
+ *  given number of disjoint plugboard pairs, written in a canonical
+ *  order (each pair in alphabet order, and the pairs in order of their
+ *  first characters), so that two lines are the same only if their
+ *  settings are.  Lines are generated in blocks of BLOCK, each from its
+ *  own SplittableRandom stream derived from the seed and the block
+ *  number, so that blocks may be generated in parallel and the output
+ *  depends only on the seed.  Optionally, lines already written are
+ *  skipped, which is checked with a Bloom filter: no line is written
+ *  twice, at the cost of skipping about one unwritten line in a hundred
+ *  that the filter mistakes for a written one.
+ *      java enigma.KeySheet CONFIG COUNT [--seed=S] [--threads=T]
+ *                           [--plugs=N] [--unique] [--output=FILE]
+ *  writes COUNT lines for CONFIG generated from seed S by T threads,
+ *  each with N plugboard pairs (by default, DEFAULT_PLUGS or as many as
+ *  the alphabet allows), with no line repeated if --unique, to FILE (by
+ *  default, the standard output).
+ *  @author Florence Lau
+ */
+public final class KeySheet {
+
+    /** Number of lines generated from each random stream. */
+    static final int BLOCK = 4096;
+
+    /** Default number of plugboard pairs. */
+    static final int DEFAULT_PLUGS = 10;
+
+    /** Bits of Bloom filter per line written. */
+    static final int BITS_PER_LINE = 10;
+
+    /** Number of bits of the Bloom filter set for each line. */
+    static final int PROBES = 7;
+
+    /** A set of 64-bit hashes, which may report that it contains a hash
+     *  that was never added, but never the opposite. */
+    static final class Bloom {
+        /** A filter for about EXPECTED hashes. */
+        Bloom(long expected) {
+            long words = Math.max(1, expected * BITS_PER_LINE / 64 + 1);
+            _bits = new long[(int) Math.min(words, Integer.MAX_VALUE - 8)];
+        }
+
+        /** Add HASH, returning false if I appear to contain it
+         *  already. */
+        boolean add(long hash) {
+            long step = Util.mix(hash) | 1;
+            long nbits = 64L * _bits.length;
+            boolean added = false;
+            for (int k = 0; k < PROBES; k += 1) {
+                long bit = Math.floorMod(hash + k * step, nbits);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                if ((_bits[word] & mask) == 0) {
+                    _bits[word] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+
+        /** The bits. */
+        private final long[] _bits;
+    }
+
+    /** A generator of settings lines for machines built from CONFIG, with
+     *  PLUGS plugboard pairs each. */
+    KeySheet(Config config, int plugs) {
+        _binary = config.binary();
+        _alphabet = config.alphabet();
+        _size = _alphabet.size();
+        if (plugs < 0 || 2 * plugs > _size) {
+            throw error("bad number of plugboard pairs: %d", plugs);
+        }
+        _plugs = plugs;
+        _numRotors = config.numRotors();
+        _firstMoving = Math.max(1, _numRotors - config.numPawls());
+        List<String> reflectors = new ArrayList<>();
+        List<String> rotors = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        for (Rotor rotor : config.rotors()) {
+            if (rotor.reflecting()) {
+                reflectors.add(rotor.name());
+            } else if (rotor.rotates()) {
+                moving.add(rotor.name());
+            } else {
+                rotors.add(rotor.name());
+            }
+        }
+        _numFixed = rotors.size();
+        rotors.addAll(moving);
+        if (reflectors.isEmpty()) {
+            throw error("configuration has no reflector");
+        } else if (_numFixed < _firstMoving - 1) {
+            throw error("configuration has too few fixed rotors");
+        } else if (rotors.size() < _numRotors - 1) {
+            throw error("configuration has too few rotors");
+        }
+        _reflectors = reflectors.toArray(new String[0]);
+        _rotors = rotors.toArray(new String[0]);
+    }
+
+    /** Return the number of distinct lines I may generate (which may be
+     *  infinite, if it is too large for a double). */
+    double distinct() {
+        double result = _reflectors.length;
+        result *= arrangements(_numFixed, _firstMoving - 1);
+        result *= arrangements(_rotors.length - (_firstMoving - 1),
+                               _numRotors - _firstMoving);
+        result *= Math.pow(_size, _numRotors - 1);
+        double pairings = arrangements(_size, 2 * _plugs);
+        for (int k = 1; k <= _plugs; k += 1) {
+            pairings /= 2 * k;
+        }
+        return result * pairings;
+    }
+
+    /** Return the number of ways of arranging K of N things in order. */
+    private static double arrangements(int n, int k) {
+        double result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result *= n - i;
+        }
+        return result;
+    }
+
+    /** The lines of one block, with their hashes. */
+    private static final class Block {
+        /** Text of the lines, each ending in a newline. */
+        private char[] text;
+        /** Index in text just past the end of each line. */
+        private final int[] ends = new int[BLOCK];
+        /** Hash of each line. */
+        private final long[] hashes = new long[BLOCK];
+    }
+
+    /** Return block number NUMBER of the lines for SEED. */
+    private Block block(long seed, long number) {
+        SplittableRandom random =
+            new SplittableRandom(seed + number * 0x9e3779b97f4a7c15L);
+        int[] reflectors = Util.identity(_reflectors.length);
+        int[] fixed = Util.identity(_numFixed);
+        int[] pawled = new int[_rotors.length - (_firstMoving - 1)];
+        int[] symbols = Util.identity(_size);
+        int[] pairs = new int[2 * _plugs];
+        Block result = new Block();
+        StringBuilder text = new StringBuilder(BLOCK * 64);
+        for (int i = 0; i < BLOCK; i += 1) {
+            int start = text.length();
+            text.append('*');
+            draw(random, reflectors, 1);
+            text.append(' ').append(_reflectors[reflectors[0]]);
+            draw(random, fixed, _firstMoving - 1);
+            for (int k = 0; k < _firstMoving - 1; k += 1) {
+                text.append(' ').append(_rotors[fixed[k]]);
+            }
+            int n = 0;
+            for (int k = _firstMoving - 1; k < _numFixed; k += 1) {
+                pawled[n] = fixed[k];
+                n += 1;
+            }
+            for (int k = _numFixed; k < _rotors.length; k += 1) {
+                pawled[n] = k;
+                n += 1;
+            }
+            draw(random, pawled, _numRotors - _firstMoving);
+            for (int k = 0; k < _numRotors - _firstMoving; k += 1) {
+                text.append(' ').append(_rotors[pawled[k]]);
+            }
+            text.append(' ');
+            for (int k = 1; k < _numRotors; k += 1) {
+                symbol(text, random.nextInt(_size));
+            }
+            draw(random, symbols, 2 * _plugs);
+            for (int k = 0; k < _plugs; k += 1) {
+                int a = symbols[2 * k], b = symbols[2 * k + 1];
+                int j = k;
+                while (j > 0 && pairs[2 * j - 2] > Math.min(a, b)) {
+                    pairs[2 * j] = pairs[2 * j - 2];
+                    pairs[2 * j + 1] = pairs[2 * j - 1];
+                    j -= 1;
+                }
+                pairs[2 * j] = Math.min(a, b);
+                pairs[2 * j + 1] = Math.max(a, b);
+            }
+            for (int k = 0; k < _plugs; k += 1) {
+                text.append(" (");
+                symbol(text, pairs[2 * k]);
+                symbol(text, pairs[2 * k + 1]);
+                text.append(')');
+            }
+            result.hashes[i] = hash(text, start);
+            text.append('\n');
+            result.ends[i] = text.length();
+        }
+        result.text = new char[text.length()];
+        text.getChars(0, text.length(), result.text, 0);
+        return result;
+    }
+
+    /** Put a random choice of K of the elements of A, in random order, in
+     *  A[0 .. K-1], using RANDOM.  A remains a permutation of its
+     *  elements. */
+    private static void draw(SplittableRandom random, int[] a, int k) {
+        for (int i = 0; i < k; i += 1) {
+            int j = i + random.nextInt(a.length - i);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /** Append alphabet symbol number K to TEXT, as a character or, for
+     *  the byte alphabet, as two hexadecimal digits. */
+    private void symbol(StringBuilder text, int k) {
+        if (_binary) {
+            text.append(Character.forDigit(k >> 4, 16))
+                .append(Character.forDigit(k & 0xf, 16));
+        } else {
+            text.append(_alphabet.toChar(k));
+        }
+    }
+
+    /** Return the hash of the characters of TEXT from START on. */
+    private static long hash(StringBuilder text, int start) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = start; i < text.length(); i += 1) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return Util.mix(h);
+    }
+
+    /** Write COUNT lines generated from SEED to OUT, one per line, with
+     *  blocks generated by THREADS threads, skipping lines already
+     *  written if UNIQUE.  The lines written are the same for any number
+     *  of threads.  OUT is flushed but not closed. */
+    void write(Writer out, long count, long seed, int threads,
+               boolean unique) throws IOException {
+        if (threads < 1) {
+            throw error("number of threads must be positive");
+        }
+        if (unique && count > distinct() / 2) {
+            throw error("too few distinct settings lines (%.0f) for %d "
+                        + "unique ones", distinct(), count);
+        }
+        Bloom written = unique ? new Bloom(count) : null;
+        ExecutorService pool = Util.pool(threads, "enigma-keysheet");
+        try {
+            Deque<Future<Block>> pending = new ArrayDeque<>();
+            long next = 0;
+            while (count > 0) {
+                while (pending.size() < 2 * threads) {
+                    long number = next;
+                    pending.add(pool.submit(() -> block(seed, number)));
+                    next += 1;
+                }
+                Block block = pending.removeFirst().get();
+                for (int i = 0; i < BLOCK && count > 0; i += 1) {
+                    if (written == null || written.add(block.hashes[i])) {
+                        int start = i == 0 ? 0 : block.ends[i - 1];
+                        out.write(block.text, start, block.ends[i] - start);
+                        count -= 1;
+                    }
+                }
+            }
+            out.flush();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            throw new AssertionError(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Usage message. */
+    private static final String USAGE =
+        "Usage: java enigma.KeySheet CONFIG COUNT [--seed=S] [--threads=T] "
+        + "[--plugs=N] [--unique] [--output=FILE]";
+
+    /** Write the key sheet described by ARGS (see above). */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2) {
+                throw error(USAGE);
+            }
+            Config config = Config.read(args[0]);
+            long count = Long.parseLong(args[1]);
+            long seed = 0;
+            int threads = Runtime.getRuntime().availableProcessors();
+            int plugs = Math.min(DEFAULT_PLUGS, config.alphabet().size() / 2);
+            boolean unique = false;
+            String output = null;
+            for (int k = 2; k < args.length; k += 1) {
+                String arg = args[k];
+                int eq = arg.indexOf('=');
+                String value = arg.substring(eq + 1);
+                switch (eq < 0 ? arg : arg.substring(0, eq)) {
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--plugs":
+                    plugs = Integer.parseInt(value);
+                    break;
+                case "--unique":
+                    unique = true;
+                    break;
+                case "--output":
+                    output = value;
+                    break;
+                default:
+                    throw error(USAGE);
+                }
+            }
+            KeySheet sheet = new KeySheet(config, plugs);
+            try (OutputStream out = output == null ? null
+                     : new FileOutputStream(output)) {
+                Writer writer = new BufferedWriter(
+                    new OutputStreamWriter(out == null ? System.out : out),
+                    1 << 16);
+                sheet.write(writer, count, seed, threads, unique);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** True iff the settings are for the byte alphabet. */
+    private final boolean _binary;
+
+    /** The alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of plugboard pairs in each line. */
+    private final int _plugs;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** First slot for a moving rotor. */
+    private final int _firstMoving;
+
+    /** Names of the available reflectors. */
+    private final String[] _reflectors;
+
+    /** Names of the other available rotors: the _numFixed fixed ones,
+     *  then the moving ones. */
+    private final String[] _rotors;
+
+    /** Number of fixed rotors (other than reflectors). */
+    private final int _numFixed;
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Scanner;
+import java.util.Set;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Florence Lau
+ */
+public class KeySheetTest {
+
+    /** A configuration with only 32 distinct settings lines without
+     *  plugboard pairs. */
+    private static final String SMALL_CONFIG =
+        "ABCD 3 1 B R (AB) (CD) C R (AC) (BD) I N (ABCD) II M (AB) (CD)";
+
+    /** Return COUNT lines for CONFIG with PLUGS pairs, generated from
+     *  SEED by THREADS threads, unique if UNIQUE. */
+    private static String[] lines(Config config, int plugs, long count,
+                                  long seed, int threads, boolean unique)
+        throws IOException {
+        StringWriter out = new StringWriter();
+        new KeySheet(config, plugs).write(out, count, seed, threads, unique);
+        return out.toString().split("\n");
+    }
+
+    @Test
+    public void testValidLines() throws IOException {
+        Config config = navalConfig();
+        Machine machine = config.newMachine();
+        String[] lines = lines(config, 10, 5000, 1, 2, false);
+        assertEquals(5000, lines.length);
+        for (String line : lines) {
+            assertNull(line, config.settingsProblem(machine, line));
+            assertEquals(line, 17, line.split(" ").length);
+        }
+        for (String line : lines) {
+            String[] words = line.split(" ");
+            for (int k = 7; k < words.length; k += 1) {
+                assertTrue(line, words[k].charAt(1) < words[k].charAt(2));
+                assertTrue(line, k == 7
+                           || words[k - 1].charAt(1) < words[k].charAt(1));
+            }
+        }
+    }
+
+    @Test
+    public void testReproducible() throws IOException {
+        Config config = navalConfig();
+        String[] one = lines(config, 3, 10000, 5, 1, true);
+        String[] three = lines(config, 3, 10000, 5, 3, true);
+        assertArrayEquals(one, three);
+        assertNotEquals(one[0], lines(config, 3, 1, 6, 1, true)[0]);
+        assertEquals(one.length, new HashSet<>(Arrays.asList(one))
+                     .size());
+    }
+
+    @Test
+    public void testUnique() throws IOException {
+        Config config = Config.read(new Scanner(SMALL_CONFIG));
+        KeySheet sheet = new KeySheet(config, 0);
+        assertEquals(32.0, sheet.distinct(), 0.0);
+        Set<String> seen = new HashSet<>();
+        for (String line : lines(config, 0, 16, 2, 1, true)) {
+            assertTrue(line, seen.add(line));
+        }
+        assertEquals(16, seen.size());
+        seen.clear();
+        for (String line : lines(config, 0, 100, 2, 1, false)) {
+            seen.add(line);
+        }
+        assertTrue(seen.size() < 100);
+        try {
+            lines(config, 0, 17, 2, 1, true);
+            fail("too many unique lines accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        assertEquals(32.0 * 6, new KeySheet(config, 1).distinct(), 0.0);
+        assertEquals(32.0 * 3, new KeySheet(config, 2).distinct(), 0.0);
+    }
+
+    @Test
+    public void testFixedRotorsInPawledSlots() throws IOException {
+        Config config = Config.read(new Scanner(
+            "ABCD 3 2 B R (AB) (CD) F N (ABCD) M MA (AC) (BD)"));
+        Machine machine = config.newMachine();
+        assertNull(config.settingsProblem(machine, "* B F M AA"));
+        KeySheet sheet = new KeySheet(config, 0);
+        assertEquals(32.0, sheet.distinct(), 0.0);
+        Set<String> seen = new HashSet<>();
+        for (String line : lines(config, 0, 16, 4, 1, true)) {
+            assertNull(line, config.settingsProblem(machine, line));
+            seen.add(line.substring(0, 7));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("* B F M", "* B M F")),
+                     seen);
+    }
+
+    @Test
+    public void testBytes() throws IOException {
+        StringBuilder text = new StringBuilder("bytes 3 2");
+        String[] rotors = { "R R", "F N", "M M00ff" };
+        for (int r = 0; r < rotors.length; r += 1) {
+            text.append('\n').append(rotors[r]).append(' ');
+            for (int k = 0; k < Config.BYTE_SYMBOLS; k += 1) {
+                text.append(String.format("%02x", k ^ (r + 1)));
+            }
+        }
+        try {
+            new KeySheet(Config.read(new Scanner(text.toString()
+                .replace("bytes 3 2", "bytes 4 2"))), 0);
+            fail("too few rotors accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        Config config = Config.read(new Scanner(text.toString()));
+        Set<String> orders = new HashSet<>();
+        for (String line : lines(config, 1, 100, 3, 1, true)) {
+            orders.add(line.substring(0, 7));
+            config.setUpBytes(config.newMachine(), line);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("* R F M", "* R M F")),
+                     orders);
+        config = Config.read(new Scanner(text.toString()
+                                         .replace("bytes 3 2", "bytes 3 1")));
+        for (String line : lines(config, 2, 100, 3, 1, true)) {
+            assertTrue(line, line.matches("\\* R F M [0-9a-f]{4}"
+                                          + "( \\([0-9a-f]{4}\\)){2}"));
+            config.setUpBytes(config.newMachine(), line);
+        }
+    }
+
+    @Test
+    public void testBloom() {
+        KeySheet.Bloom bloom = new KeySheet.Bloom(1000);
+        int mistaken = 0;
+        for (long h = 0; h < 1000; h += 1) {
+            if (!bloom.add(h * 0x9e3779b97f4a7c15L)) {
+                mistaken += 1;
+            }
+        }
+        assertTrue(mistaken < 50);
+        for (long h = 0; h < 1000; h += 1) {
+            assertFalse(bloom.add(h * 0x9e3779b97f4a7c15L));
+        }
+    }
+}
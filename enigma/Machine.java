@@ -19,6 +19,19 @@ class Machine {
         _numRotors = numRotors;
         _pawls = pawls;
         _allRotors = allRotors;
+        _available = allRotors.toArray(new Rotor[0]);
+        myRotors.ensureCapacity(numRotors);
+        long span = 1;
+        for (int k = 1; k < numRotors && span > 0; k += 1) {
+            span = Long.MAX_VALUE / alpha.size() >= span
+                ? span * alpha.size() : -1;
+        }
+        _snapshotFits = span > 0;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -35,8 +48,27 @@ class Machine {
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
     void insertRotors(String[] rotors) {
+        String problem = rotorsProblem(rotors);
+        if (problem != null) {
+            throw error("%s", problem);
+        }
+        myRotors.clear();
+        noPlugboard = true;
+        _setupId = 0;
+        for (int i = 0; i < rotors.length; i++) {
+            for (Rotor aRotor : _allRotors) {
+                if (aRotor.name().equals(rotors[i])) {
+                    myRotors.add(aRotor);
+                }
+            }
+        }
+    }
+
+    /** Return the message of the error that insertRotors(ROTORS) would
+     *  report, or null if it would accept ROTORS.  Changes nothing. */
+    String rotorsProblem(String[] rotors) {
         if (rotors.length != _numRotors) {
-            throw error("wrong number of rotors");
+            return "wrong number of rotors";
         }
         ArrayList<String> rotorsAdded = new ArrayList<>();
         for (int i = 0; i < rotors.length; i++) {
@@ -45,50 +77,184 @@ class Machine {
                 if (rotorName.equals(rotors[i])) {
                     if (i == 0) {
                         if (!aRotor.reflecting()) {
-                            throw error("first rotor is not the reflector");
+                            return "first rotor is not the reflector";
                         }
                     }
                     if (rotorsAdded.contains(rotorName)) {
-                        throw error("no duplicate rotors allowed");
+                        return "no duplicate rotors allowed";
                     }
-                    if (aRotor.rotates() && (i + 1) < _pawls) {
-                        throw error("moving rotor is placed to the left of"
-                                + " a fixed rotor");
+                    if (aRotor.rotates() && i < _numRotors - _pawls) {
+                        return "moving rotor is placed to the left of"
+                                + " a fixed rotor";
                     }
-                    myRotors.add(aRotor);
                     rotorsAdded.add(rotors[i]);
                 }
             }
             if (!rotorsAdded.contains(rotors[i])) {
-                throw error("invalid rotor");
+                return "invalid rotor";
             }
         }
+        return null;
     }
 
     /** Set my rotors according to SETTING, which must be a string of four
      *  upper-case letters. The first letter refers to the leftmost
      *  rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        String problem = settingProblem(setting);
+        if (problem != null) {
+            throw error("%s", problem);
+        }
+        for (int i = 1; (i - 1) < setting.length(); i++) {
+            Rotor curr = myRotors.get(i);
+            curr.set(setting.charAt(i - 1));
+        }
+    }
+
+    /** Return the message of the error that setRotors(SETTING) would
+     *  report, or null if it would accept SETTING.  Changes nothing. */
+    String settingProblem(String setting) {
         if (setting.length() != numRotors() - 1) {
-            throw error("wrong number of settings");
-        } else {
-            for (int i = 1; (i - 1) < setting.length(); i++) {
-                Rotor curr = myRotors.get(i);
-                curr.set(setting.charAt(i - 1));
+            return "wrong number of settings";
+        }
+        for (int i = 0; i < setting.length(); i += 1) {
+            if (!_alphabet.contains(setting.charAt(i))) {
+                return "cannot set to a position that is not in the "
+                    + "alphabet";
+            }
+        }
+        return null;
+    }
+
+    /** Set up my rotor slots, rotor settings and plugboard at once,
+     *  discarding any previous setup.  Slot K receives rotor #ROTORS[K]
+     *  of the available rotors (numbered in the iteration order of the
+     *  collection given to my constructor) and, for K > 0, the setting
+     *  SETTINGS[K - 1].  PLUGBOARD is null for none.  Nothing is checked
+     *  and nothing is allocated: the arguments must describe a setup that
+     *  insertRotors, setRotors and setPlugboard would accept. */
+    void reset(int[] rotors, int[] settings, Permutation plugboard) {
+        myRotors.clear();
+        for (int k = 0; k < _numRotors; k += 1) {
+            Rotor rotor = _available[rotors[k]];
+            myRotors.add(rotor);
+            if (k > 0) {
+                rotor.restore(settings[k - 1]);
             }
         }
+        _plugboard = plugboard;
+        noPlugboard = plugboard == null;
+        _setupId = 0;
+    }
+
+    /** Return the rotor in slot K (0 is the reflector). */
+    Rotor rotor(int k) {
+        return myRotors.get(k);
+    }
+
+    /** Return my plugboard, or null if I have none. */
+    Permutation plugboard() {
+        return noPlugboard ? null : _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         _plugboard = plugboard;
         noPlugboard = false;
+        _setupId = 0;
+    }
+
+    /** Return the settings of my rotors (other than the reflector)
+     *  packed into a long, the first rotor's setting being the most
+     *  significant digit in base alphabet size.  The result describes
+     *  my state completely, given my rotors and plugboard.  Requires
+     *  that alphabet size ** (numRotors() - 1) fits in a long. */
+    long snapshot() {
+        if (!_snapshotFits) {
+            throw error("machine state does not fit in a long");
+        }
+        long result = 0;
+        int size = _alphabet.size();
+        for (int k = 1; k < _numRotors; k += 1) {
+            result = result * size + myRotors.get(k).setting();
+        }
+        return result;
+    }
+
+    /** Restore the rotor settings saved as SNAPSHOT by snapshot() on a
+     *  machine with the same rotors.  SNAPSHOT is not checked. */
+    void restore(long snapshot) {
+        int size = _alphabet.size();
+        for (int k = _numRotors - 1; k > 0; k -= 1) {
+            myRotors.get(k).restore((int) (snapshot % size));
+            snapshot /= size;
+        }
+    }
+
+    /** Return the settings of my rotors (other than the reflector), from
+     *  left to right, in RESULT, which must have at least numRotors() - 1
+     *  elements, or in a new array if RESULT is null. Returns the array
+     *  used. */
+    int[] snapshot(int[] result) {
+        if (result == null) {
+            result = new int[_numRotors - 1];
+        }
+        for (int k = 1; k < _numRotors; k += 1) {
+            result[k - 1] = myRotors.get(k).setting();
+        }
+        return result;
+    }
+
+    /** Restore the rotor settings saved in SNAPSHOT by snapshot(int[])
+     *  on a machine with the same rotors.  SNAPSHOT is not checked. */
+    void restore(int[] snapshot) {
+        for (int k = 1; k < _numRotors; k += 1) {
+            myRotors.get(k).restore(snapshot[k - 1]);
+        }
+    }
+
+    /** Return a hash of my complete state: the names of my rotors, the
+     *  mapping of my plugboard, and my rotor settings.  Machines in the
+     *  same state have the same id, whether or not they are the same
+     *  objects. */
+    long stateId() {
+        long h = setupId();
+        for (int k = 1; k < _numRotors; k += 1) {
+            h = Util.mix(h + myRotors.get(k).setting());
+        }
+        return h;
+    }
+
+    /** Return a hash of my rotor names and plugboard mapping. */
+    private long setupId() {
+        if (_setupId == 0) {
+            long h = Util.mix(_numRotors);
+            for (Rotor rotor : myRotors) {
+                h = Util.mix(h + rotor.name().hashCode());
+            }
+            if (!noPlugboard) {
+                for (int i = 0; i < _alphabet.size(); i += 1) {
+                    h = Util.mix(h + _plugboard.permute(i));
+                }
+            }
+            _setupId = h == 0 ? 1 : h;
+        }
+        return _setupId;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine.  If I have a tracer, C is offered to it. */
     int convert(int c) {
+        if (_tracer != null) {
+            return tracedConvert(c);
+        }
+        advance();
+        return permute(c);
+    }
+
+    /** Advance my rotors as for converting a character. */
+    private void advance() {
         int firstMovingRotor = numRotors() - numPawls();
         for (int advanceIndex = firstMovingRotor;
              advanceIndex < numRotors(); advanceIndex += 1) {
@@ -107,6 +273,11 @@ class Machine {
                 }
             }
         }
+    }
+
+    /** Return the result of passing C through the plugboard, the rotors
+     *  and back, without advancing. */
+    private int permute(int c) {
         if (!noPlugboard) {
             c = _plugboard.permute(c);
         }
@@ -126,21 +297,72 @@ class Machine {
         return c;
     }
 
+    /** As for convert(C), but recording C's path in _tracer if it is
+     *  selected. */
+    private int tracedConvert(int c) {
+        advance();
+        if (!_tracer.select(c)) {
+            return permute(c);
+        }
+        int[] path = _tracer.path();
+        path[0] = c;
+        if (!noPlugboard) {
+            c = _plugboard.permute(c);
+        }
+        path[1] = c;
+        int n = 2;
+        for (int k = _numRotors - 1; k > 0; k -= 1) {
+            c = myRotors.get(k).convertForward(c);
+            path[n] = c;
+            n += 1;
+        }
+        for (int k = 0; k < _numRotors; k += 1) {
+            c = myRotors.get(k).convertBackward(c);
+            path[n] = c;
+            n += 1;
+        }
+        if (!noPlugboard) {
+            c = _plugboard.invert(c);
+        }
+        path[n] = c;
+        _tracer.record(this);
+        return c;
+    }
+
+    /** Record the characters I convert from now on in TRACER, which
+     *  must be for machines like me, or stop recording them if TRACER is
+     *  null (see Tracer). */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+    }
+
+    /** Return the number of the available rotor in slot K, counting in
+     *  the iteration order of the collection given to my
+     *  constructor. */
+    int rotorNumber(int k) {
+        Rotor rotor = myRotors.get(k);
+        for (int i = 0; i < _available.length; i += 1) {
+            if (_available[i] == rotor) {
+                return i;
+            }
+        }
+        throw error("rotor %s is not available", rotor.name());
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
         msg = msg.toUpperCase();
+        char[] result = new char[msg.length()];
         for (int i = 0; i < msg.length(); i++) {
             if (msg.charAt(i) == ' ') {
-                result += " ";
+                result[i] = ' ';
             } else {
                 int convertedInt = convert(_alphabet.toInt(msg.charAt(i)));
-                char letterToAdd = _alphabet.toChar(convertedInt);
-                result += Character.toString(letterToAdd);
+                result[i] = _alphabet.toChar(convertedInt);
             }
         }
-        return result;
+        return new String(result);
     }
 
     /** Common alphabet of my rotors. */
@@ -155,6 +377,9 @@ class Machine {
     /** Collection of all available rotors I have. */
     private Collection<Rotor> _allRotors;
 
+    /** The available rotors, in the order of _allRotors. */
+    private final Rotor[] _available;
+
     /** Array list of my rotors. */
     private ArrayList<Rotor> myRotors = new ArrayList<>();
 
@@ -163,4 +388,13 @@ class Machine {
 
     /** Variable for whether I have a plugboard. */
     private boolean noPlugboard = true;
+
+    /** True iff my rotor settings can be packed into a long. */
+    private final boolean _snapshotFits;
+
+    /** Cached value of setupId(), or 0 if not yet computed. */
+    private long _setupId;
+
+    /** Recorder of the paths of characters I convert, or null. */
+    private Tracer _tracer;
 }
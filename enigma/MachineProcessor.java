@@ -0,0 +1,73 @@
+package enigma;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Flow;
+
+/** A Flow.Processor that converts chunks of text with a configured
+ *  Machine.  Items may be CharBuffers or ByteBuffers (whose bytes are
+ *  taken as ISO-8859-1 characters).  Each item is converted as it
+ *  arrives; the machine carries its rotor state from one chunk to the
+ *  next, so a message may be split anywhere.  Lower-case letters are
+ *  converted as upper case and whitespace is passed through unchanged,
+ *  as for Machine.convert(String).  Attach a GroupingProcessor to get
+ *  output in the groups of five that Main prints.
+ *  @author Florence Lau
+ */
+class MachineProcessor extends ChunkProcessor<Buffer> {
+
+    /** Default number of results buffered for each subscriber. */
+    static final int DEFAULT_BUFFER_SIZE = Flow.defaultBufferSize();
+
+    /** A processor that converts with MACHINE, delivering results on
+     *  EXECUTOR and buffering at most about BUFFERSIZE results for each
+     *  subscriber. */
+    MachineProcessor(Machine machine, Executor executor, int bufferSize) {
+        super(executor, bufferSize);
+        _machine = machine;
+        _alphabet = machine.alphabet();
+    }
+
+    /** A processor that converts with MACHINE, delivering results
+     *  asynchronously on the common pool. */
+    MachineProcessor(Machine machine) {
+        this(machine, ForkJoinPool.commonPool(), DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    CharBuffer process(Buffer item) {
+        CharBuffer result = CharBuffer.allocate(item.remaining());
+        if (item instanceof ByteBuffer) {
+            ByteBuffer bytes = (ByteBuffer) item;
+            while (bytes.hasRemaining()) {
+                result.put(convert((char) (bytes.get() & 0xff)));
+            }
+        } else {
+            CharBuffer chars = (CharBuffer) item;
+            while (chars.hasRemaining()) {
+                result.put(convert(chars.get()));
+            }
+        }
+        return result.flip();
+    }
+
+    /** Return the conversion of C, advancing my machine if C is not
+     *  whitespace. */
+    private char convert(char c) {
+        if (Character.isWhitespace(c)) {
+            return c;
+        }
+        c = Character.toUpperCase(c);
+        return _alphabet.toChar(_machine.convert(_alphabet.toInt(c)));
+    }
+
+    /** The machine performing my conversions. */
+    private final Machine _machine;
+
+    /** The alphabet of _machine. */
+    private final Alphabet _alphabet;
+}
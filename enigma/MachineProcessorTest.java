@@ -0,0 +1,174 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the MachineProcessor and
+ *  GroupingProcessor classes.
+ *  @author Florence Lau
+ */
+public class MachineProcessorTest {
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** A subscriber that collects everything it receives and requests
+     *  items one at a time. */
+    private static class Collector implements Flow.Subscriber<CharBuffer> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(CharBuffer item) {
+            _text.append(item);
+            _subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable excp) {
+            _result.completeExceptionally(excp);
+        }
+
+        @Override
+        public void onComplete() {
+            _result.complete(_text.toString());
+        }
+
+        /** Subscription I request from. */
+        private Flow.Subscription _subscription;
+        /** Text received so far. */
+        private final StringBuilder _text = new StringBuilder();
+        /** Completed with all text received. */
+        private final CompletableFuture<String> _result =
+            new CompletableFuture<>();
+    }
+
+    /** Return the output of passing MSG in chunks of CHUNK characters
+     *  through a MachineProcessor, and then through a GroupingProcessor
+     *  if GROUPED. If BYTES, send ByteBuffers rather than CharBuffers. */
+    private String run(String msg, int chunk, boolean grouped,
+                       boolean bytes) throws Exception {
+        MachineProcessor machine =
+            new MachineProcessor(navalConfig().newMachine(SETTINGS));
+        Collector collector = new Collector();
+        if (grouped) {
+            GroupingProcessor grouping = new GroupingProcessor();
+            machine.subscribe(grouping);
+            grouping.subscribe(collector);
+        } else {
+            machine.subscribe(collector);
+        }
+        try (SubmissionPublisher<java.nio.Buffer> source =
+                 new SubmissionPublisher<>()) {
+            source.subscribe(machine);
+            for (int i = 0; i < msg.length(); i += chunk) {
+                String part =
+                    msg.substring(i, Math.min(msg.length(), i + chunk));
+                source.submit(bytes
+                    ? ByteBuffer.wrap(part.getBytes(StandardCharsets.UTF_8))
+                    : CharBuffer.wrap(part));
+            }
+        }
+        return collector._result.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testChunkBoundaries() throws Exception {
+        String msg = "From his shoulder Hiawatha\nTook the camera of rosewood";
+        String expected = navalConfig().newMachine(SETTINGS)
+            .convert("FROM HIS SHOULDER HIAWATHA")
+            + "\n" + navalConfig().newMachine(SETTINGS)
+            .convert("FROMHISSHOULDERHIAWATHATOOK THE CAMERA OF ROSEWOOD")
+            .substring(23);
+        for (int chunk = 1; chunk < 12; chunk += 1) {
+            assertEquals(expected, run(msg, chunk, false, false));
+            assertEquals(expected, run(msg, chunk, false, true));
+        }
+    }
+
+    @Test
+    public void testGrouping() throws Exception {
+        String msg = "From his shoulder Hiawatha\nTook the camera of rosewood";
+        String out = run(msg, 3, false, false);
+        String[] lines = out.split("\n");
+        String expected = Main.group(lines[0]) + "\n" + Main.group(lines[1]);
+        for (int chunk = 1; chunk < 12; chunk += 1) {
+            assertEquals(expected, run(msg, chunk, true, false));
+        }
+    }
+
+    @Test
+    public void testError() throws Exception {
+        try {
+            run("HELLO 1", 2, false, false);
+            fail("non-alphabet character accepted");
+        } catch (ExecutionException excp) {
+            assertTrue(excp.getCause() instanceof EnigmaException);
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        MachineProcessor machine = new MachineProcessor(
+            navalConfig().newMachine(SETTINGS), ForkJoinPool.commonPool(), 2);
+        Collector collector = new Collector() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    _held = subscription;
+                }
+
+                @Override
+                public void onNext(CharBuffer item) {
+                }
+            };
+        machine.subscribe(collector);
+        AtomicLong requested = new AtomicLong();
+        machine.onSubscribe(new Flow.Subscription() {
+                public void request(long n) {
+                    requested.addAndGet(n);
+                }
+                public void cancel() { }
+            });
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> {
+            for (int i = 0; i < 100; i += 1) {
+                machine.onNext(CharBuffer.wrap("ABCDE"));
+            }
+            machine.onComplete();
+        });
+        try {
+            producer.get(300, TimeUnit.MILLISECONDS);
+            fail("producer was not held back by a subscriber without demand");
+        } catch (TimeoutException excp) {
+            assertTrue(requested.get() < 10);
+        }
+        while (_held == null) {
+            Thread.yield();
+        }
+        _held.request(Long.MAX_VALUE);
+        producer.get(5, TimeUnit.SECONDS);
+        assertEquals(101, requested.get());
+    }
+
+    /** Subscription held by the subscriber in testBackpressure. */
+    private volatile Flow.Subscription _held;
+}
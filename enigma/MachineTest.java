@@ -52,6 +52,35 @@ public class MachineTest {
         return new Machine(UPPER, 5, 3, allRotors);
     }
 
+    /** Return a machine with the naval rotors, NUMROTORS slots and PAWLS
+     *  pawls. */
+    private static Machine navalMachine(int numRotors, int pawls) {
+        return Config.read(new java.util.Scanner(NAVAL_CONFIG.replace(
+            " 5 3\n", String.format(" %d %d%n", numRotors, pawls))))
+            .newMachine();
+    }
+
+    @Test
+    public void testMovingRotorSlots() {
+        String misplaced =
+            "moving rotor is placed to the left of a fixed rotor";
+        Machine m = navalMachine(4, 1);
+        assertNull(m.rotorsProblem(new String[] {"B", "BETA", "GAMMA", "I"}));
+        assertEquals(misplaced,
+                     m.rotorsProblem(new String[] {"B", "BETA", "I", "II"}));
+        assertEquals(misplaced, m.rotorsProblem(
+            new String[] {"B", "I", "BETA", "GAMMA"}));
+        m = navalMachine(3, 2);
+        assertNull(m.rotorsProblem(new String[] {"B", "I", "II"}));
+        assertNull(m.rotorsProblem(new String[] {"B", "BETA", "I"}));
+        assertNull(m.rotorsProblem(new String[] {"B", "I", "BETA"}));
+        m = navalMachine(5, 2);
+        assertNull(m.rotorsProblem(
+            new String[] {"B", "BETA", "GAMMA", "I", "II"}));
+        assertEquals(misplaced, m.rotorsProblem(
+            new String[] {"B", "BETA", "I", "II", "III"}));
+    }
+
     @Test
     public void testConvertLetter() {
         Machine myMachine = makeMyMachine();
@@ -97,4 +126,43 @@ public class MachineTest {
         myMachine3.setRotors("AAAA");
         assertEquals(myMachine3.convert("Hello world"), "ILBDA AMTAZ");
     }
+
+    @Test
+    public void testSnapshotRestore() {
+        Machine m = makeMyMachine();
+        m.insertRotors(new String[] {"reflectorB", "beta", "r3", "r4", "r1"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(YF) (ZH)", UPPER));
+        long start = m.snapshot();
+        int[] startArray = m.snapshot((int[]) null);
+        long startId = m.stateId();
+        String first = m.convert("FROM HIS SHOULDER HIAWATHA");
+        assertNotEquals(start, m.snapshot());
+        assertNotEquals(startId, m.stateId());
+        m.restore(start);
+        assertEquals(startId, m.stateId());
+        assertEquals(first, m.convert("FROM HIS SHOULDER HIAWATHA"));
+        m.restore(startArray);
+        assertEquals(start, m.snapshot());
+        assertEquals(first, m.convert("FROM HIS SHOULDER HIAWATHA"));
+    }
+
+    @Test
+    public void testStateIdCanonical() {
+        Machine m1 = makeMyMachine();
+        Machine m2 = makeMyMachine();
+        String[] rotors = {"reflectorB", "beta", "r1", "r2", "r3"};
+        m1.insertRotors(rotors);
+        m2.insertRotors(rotors);
+        m1.setRotors("AAAA");
+        m2.setRotors("AAAZ");
+        assertEquals(m1.snapshot() + 25, m2.snapshot());
+        m2.convert("A");
+        assertEquals(m1.snapshot(), m2.snapshot());
+        assertEquals(m1.stateId(), m2.stateId());
+        m2.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        assertNotEquals(m1.stateId(), m2.stateId());
+        m1.setPlugboard(new Permutation("(EP) (QA)", UPPER));
+        assertEquals(m1.stateId(), m2.stateId());
+    }
 }
@@ -1,13 +1,23 @@
 package enigma;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
 
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
+import java.nio.file.Path;
+
+import java.util.Arrays;
 import java.util.Scanner;
-import java.util.Collection;
 
 import static enigma.EnigmaException.*;
 
@@ -17,44 +27,311 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, which consists of options (each starting
+     *  with "--") followed by 1 to 3 file names.
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options:
+     *    --container[=N]  Write the output as a seekable container (see
+     *                     ContainerWriter) with N positions per chunk,
+     *                     rather than as grouped text.
+     *    --stats          Print a summary of conversion metrics on the
+     *                     standard error at the end of the run.
+     *    --jmx            Register the metrics as a JMX MBean (see
+     *                     Metrics).
+     *    --batch          Batch mode: the arguments are instead CONFIG
+     *                     INPUTS OUTDIR, where INPUTS is a directory or a
+     *                     glob pattern naming input files, each of which
+     *                     is processed as above into a file of the same
+     *                     name (with .inp replaced by .out) in OUTDIR.
+     *                     Files are processed concurrently, and failures
+     *                     are summarized at the end (see Batch).
+     *    --jobs=N         In batch mode, process N files at once
+     *                     (default: the number of processors).
+     *    --pipeline[=N]   Read, convert and write on separate threads
+     *                     connected by rings of N buffers each (see
+     *                     Pipeline).  This is the default when the
+     *                     input or output is compressed.
+     *    --compress-threads=N  Compress gzip output as independent
+     *                     members on N threads at once.
+     *    --chars=POLICY   Treatment of characters in messages that are
+     *                     not in the alphabet (even when upper-cased):
+     *                     strict (the default) ignores blanks and rejects
+     *                     the rest, pass copies them to the output
+     *                     (except whitespace, which is ignored), and drop
+     *                     ignores them all (see CharTable).
+     *    --flush=POLICY   When to flush the output: latency flushes after
+     *                     each message, throughput only when a large
+     *                     buffer fills and at the end, and
+     *                     hybrid[:MS[:BYTES]] when a buffer of BYTES
+     *                     fills or output has waited MS milliseconds (see
+     *                     FlushPolicy).  By default, output is flushed as
+     *                     by the underlying stream.
+     *    --result-cache[=BYTES]  Cache converted message lines, keyed by
+     *                     configuration, settings line, rotor settings and
+     *                     message, holding at most BYTES bytes of them in
+     *                     memory (see ResultCache).
+     *    --result-dir=DIR Also keep cached results in DIR, where they
+     *                     are found by later runs (implies
+     *                     --result-cache).
+     *    --no-result-cache  Disable the result cache, whatever other
+     *                     options say.
+     *    --binary=SETTINGS  Binary mode: CONFIG must describe a machine
+     *                     over the byte alphabet (see Config.read),
+     *                     which is set up by the settings line SETTINGS
+     *                     (see Config.setUpBytes) and then converts every
+     *                     byte of the input, which is not decompressed,
+     *                     split into lines or grouped (see
+     *                     ByteConverter).
+     *    --trace[=SPEC]   Record the paths of the characters selected by
+     *                     SPEC through the machine, and print them on
+     *                     the standard error at the end (see
+     *                     Tracer.parse).
+     *    --trace-file=FILE  Write the trace to FILE instead, to be
+     *                     rendered by "java enigma.Tracer FILE" (implies
+     *                     --trace).
+     *    --validate[=N]   Before converting, check every line of INPUT,
+     *                     which must be named, with N threads (by default,
+     *                     one per processor), and report all bad lines
+     *                     rather than stopping at the first (see
+     *                     Validator).
+     *    --follow[=MS]    Follow mode: convert INPUT and OUTPUT, which
+     *                     must be named, and then keep converting what is
+     *                     appended to INPUT, checking every MS
+     *                     milliseconds (default 200), until killed (see
+     *                     Follower).  Progress is saved after each batch,
+     *                     and a later run resumes from it.  Text input is
+     *                     converted a complete line at a time; with
+     *                     --binary, every byte is converted.
+     *    --follow-state=FILE  Save the progress of follow mode in FILE
+     *                     (default: OUTPUT.state) (implies --follow).
+     *
+     *  Input compressed with gzip or deflate is recognized and
+     *  decompressed, and output to a file whose name ends in .gz or .zz
+     *  is compressed (see Compression). */
     public static void main(String... args) {
+        Main main = null;
         try {
-            new Main(args).process();
+            main = new Main(args);
+            main.process();
             return;
         } catch (EnigmaException excp) {
+            Metrics.recordError();
             System.err.printf("Error: %s%n", excp.getMessage());
+        } finally {
+            if (main != null && main._stats) {
+                System.err.print(Metrics.METRICS.getSummary());
+                if (main._results != null) {
+                    System.err.print(main._results.getSummary());
+                }
+            }
         }
         System.exit(1);
     }
 
+    /** Process ARGS as for main, but throw an EnigmaException on an
+     *  error instead of exiting, and close the output file, if any. */
+    static void run(String... args) {
+        Main main = new Main(args);
+        try {
+            main.process();
+        } finally {
+            if (main._output != null && main._output != System.out) {
+                main._output.close();
+            }
+        }
+    }
+
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int nOptions = 0;
+        while (nOptions < args.length && args[nOptions].startsWith("--")) {
+            setOption(args[nOptions]);
+            nOptions += 1;
+        }
+        args = Arrays.copyOfRange(args, nOptions, args.length);
+        if (_buffers != 0 && (_batch || _chunkSize > 0)) {
+            throw error("--pipeline cannot be used with --batch "
+                        + "or --container");
+        }
+        if (_binarySettings != null
+            && (_batch || _chunkSize > 0 || _buffers != 0)) {
+            throw error("--binary cannot be used with --batch, "
+                        + "--container or --pipeline");
+        }
+        if (_noResultCache) {
+            _resultCache = 0;
+        }
+        if (_resultCache > 0
+            && (_batch || _chunkSize > 0 || _buffers != 0
+                || _binarySettings != null)) {
+            throw error("--result-cache cannot be used with --batch, "
+                        + "--container, --pipeline or --binary");
+        }
+        if (_traceSpec != null
+            && (_batch || _chunkSize > 0 || _buffers != 0
+                || _binarySettings != null || _resultCache > 0)) {
+            throw error("--trace cannot be used with --batch, --container, "
+                        + "--pipeline, --binary or --result-cache");
+        }
+        if (_validate > 0 && (_batch || _binarySettings != null)) {
+            throw error("--validate cannot be used with --batch "
+                        + "or --binary");
+        }
+        if (_follow > 0
+            && (_batch || _chunkSize > 0 || _buffers != 0
+                || _resultCache > 0 || _traceSpec != null || _validate > 0)) {
+            throw error("--follow cannot be used with --batch, --container, "
+                        + "--pipeline, --result-cache, --trace or "
+                        + "--validate");
+        }
+        if (_batch) {
+            if (args.length != 3) {
+                throw error("--batch requires CONFIG INPUTS OUTDIR");
+            }
+            _configName = args[0];
+            _config = getInput(args[0]);
+            _batchInputs = args[1];
+            _batchOutputs = args[2];
+            return;
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
+        _configName = args[0];
         _config = getInput(args[0]);
 
+        if (_follow > 0) {
+            openFollow(args);
+            return;
+        }
+        if (_binarySettings != null) {
+            openBinary(args);
+            return;
+        }
 
-        if (args.length > 1) {
-            _input = getInput(args[1]);
-        } else {
-            _input = new Scanner(System.in);
+        if (_validate > 0) {
+            if (args.length < 2) {
+                throw error("--validate requires an input file");
+            }
+            _inputName = args[1];
         }
+        InputStream input = getMessages(args.length > 1 ? args[1] : null);
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
+        } else if (_flush != null) {
+            _output = _flush.wrap(new FileOutputStream(FileDescriptor.out));
         } else {
             _output = System.out;
         }
+
+        if ((_compressedInput || _compressedOutput != null)
+            && _chunkSize == 0 && _buffers == 0 && _resultCache == 0) {
+            _buffers = Pipeline.DEFAULT_BUFFERS;
+        }
+        if (_buffers != 0) {
+            _reader = new InputStreamReader(input);
+        } else {
+            _input = new Scanner(input);
+        }
+    }
+
+    /** Set the option specified by OPTION (see comment on main). */
+    private void setOption(String option) {
+        if (option.equals("--container")) {
+            _chunkSize = ContainerWriter.DEFAULT_CHUNK_SIZE;
+        } else if (option.startsWith("--container=")) {
+            _chunkSize = parseInt(option.substring(12));
+        } else if (option.equals("--stats")) {
+            _stats = true;
+        } else if (option.equals("--batch")) {
+            _batch = true;
+        } else if (option.startsWith("--jobs=")) {
+            _jobs = parseInt(option.substring(7));
+        } else if (option.equals("--pipeline")) {
+            _buffers = Pipeline.DEFAULT_BUFFERS;
+        } else if (option.startsWith("--pipeline=")) {
+            _buffers = parseInt(option.substring(11));
+        } else if (option.startsWith("--compress-threads=")) {
+            _compressThreads = parseInt(option.substring(19));
+        } else if (option.startsWith("--chars=")) {
+            _chars = CharTable.policy(option.substring(8));
+        } else if (option.startsWith("--flush=")) {
+            _flush = FlushPolicy.parse(option.substring(8));
+        } else if (option.startsWith("--binary=")) {
+            _binarySettings = option.substring(9);
+        } else if (option.equals("--result-cache")) {
+            _resultCache = ResultCache.DEFAULT_MAX_WEIGHT;
+        } else if (option.startsWith("--result-cache=")) {
+            _resultCache = parseLong(option.substring(15));
+        } else if (option.startsWith("--result-dir=")) {
+            _resultDir = Path.of(option.substring(13));
+            if (_resultCache == 0) {
+                _resultCache = ResultCache.DEFAULT_MAX_WEIGHT;
+            }
+        } else if (option.equals("--no-result-cache")) {
+            _noResultCache = true;
+        } else if (option.equals("--trace")) {
+            _traceSpec = "";
+        } else if (option.startsWith("--trace=")) {
+            _traceSpec = option.substring(8);
+        } else if (option.startsWith("--trace-file=")) {
+            _traceFile = option.substring(13);
+            if (_traceSpec == null) {
+                _traceSpec = "";
+            }
+        } else if (option.equals("--validate")) {
+            _validate = Runtime.getRuntime().availableProcessors();
+        } else if (option.startsWith("--validate=")) {
+            _validate = parseInt(option.substring(11));
+            if (_validate <= 0) {
+                throw error("--validate needs at least one thread");
+            }
+        } else if (option.equals("--follow")) {
+            _follow = Follower.DEFAULT_LATENCY;
+        } else if (option.startsWith("--follow=")) {
+            _follow = parseInt(option.substring(9));
+            if (_follow <= 0) {
+                throw error("--follow needs a positive latency");
+            }
+        } else if (option.startsWith("--follow-state=")) {
+            _followState = Path.of(option.substring(15));
+            if (_follow == 0) {
+                _follow = Follower.DEFAULT_LATENCY;
+            }
+        } else if (option.equals("--jmx")) {
+            Metrics.register();
+            _jmx = true;
+        } else {
+            throw error("unknown option: %s", option);
+        }
+    }
+
+    /** Return the value of the decimal numeral S. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return the value of the decimal numeral S, which may exceed the
+     *  range of an int. */
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
     }
 
     /** Return a Scanner reading from the file named NAME. */
@@ -66,189 +343,403 @@ public final class Main {
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a stream of the messages in the file named NAME, or on
+     *  the standard input if NAME is null, decompressed if they are
+     *  compressed (see Compression). */
+    private InputStream getMessages(String name) {
+        try {
+            InputStream raw =
+                name == null ? System.in : new FileInputStream(name);
+            BufferedInputStream in = new BufferedInputStream(raw);
+            Compression.Format format = Compression.detect(in);
+            _compressedInput = format != Compression.Format.NONE;
+            return Compression.decompress(in, format);
+        } catch (IOException excp) {
+            throw error("could not open %s", name == null ? "input" : name);
+        }
+    }
+
+    /** Open the raw input and output for binary mode, named by ARGS[1]
+     *  and ARGS[2] if present, and otherwise the standard input and
+     *  output. */
+    private void openBinary(String[] args) {
+        String name = args.length > 1 ? args[1] : null;
+        try {
+            _binaryInput =
+                name == null ? System.in : new FileInputStream(name);
+            name = args.length > 2 ? args[2] : null;
+            _binaryOutput = name == null
+                ? new FileOutputStream(FileDescriptor.out)
+                : new FileOutputStream(name);
+        } catch (IOException excp) {
+            throw error("could not open %s", name == null ? "input" : name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME, compressing
+     *  if NAME ends in a compressed-file suffix (see Compression). */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            Compression.Format format = Compression.forName(name);
+            if (format == Compression.Format.NONE) {
+                if (_flush != null) {
+                    return _flush.wrap(new FileOutputStream(name));
+                }
+                return new PrintStream(new File(name));
+            }
+            if (_chunkSize > 0) {
+                throw error("containers cannot be compressed");
+            }
+            _compressedOutput = Compression.compress(
+                new FileOutputStream(name), format, _compressThreads);
+            if (_flush != null) {
+                return _flush.wrap(_compressedOutput);
+            }
+            return new PrintStream(_compressedOutput);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
+    /** Record the input and output files for follow mode, named by
+     *  ARGS[1] and ARGS[2], and the state file. */
+    private void openFollow(String[] args) {
+        if (args.length != 3) {
+            throw error("--follow requires INPUT and OUTPUT files");
+        }
+        if (Compression.forName(args[2]) != Compression.Format.NONE) {
+            throw error("--follow output cannot be compressed");
+        }
+        _followInput = Path.of(args[1]);
+        _followOutput = Path.of(args[2]);
+        if (_followState == null) {
+            _followState = Path.of(args[2] + ".state");
+        }
+    }
+
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
+     *  results to _output.  In batch mode, apply it instead to each of
+     *  the files named by _batchInputs (see Batch). */
     private void process() {
-        myMachine = readConfig();
-        setUp(myMachine, _input.nextLine().toUpperCase());
-        while (_input.hasNextLine()) {
-            String nextMsgLine = _input.nextLine().toUpperCase();
-            if (nextMsgLine.startsWith("*")) {
-                myMachine = new Machine(_alphabet, nRotors,
-                        nPawls, availRotors);
-                setUp(myMachine, nextMsgLine);
-            } else {
-                printMessageLine(myMachine.convert(nextMsgLine));
+        _machineConfig = Metrics.readConfig(_config, _configName);
+        if (_follow > 0) {
+            processFollow();
+            return;
+        } else if (_binarySettings != null) {
+            processBinary();
+            return;
+        } else if (_machineConfig.binary()) {
+            throw error("byte configurations require --binary");
+        }
+        CharTable chars = new CharTable(_machineConfig.alphabet(), _chars);
+        if (_inputName != null) {
+            validate(chars);
+        }
+        if (_batchInputs != null) {
+            Batch batch = new Batch(_machineConfig, chars, _batchOutputs,
+                                    _jobs, _chunkSize);
+            if (batch.run(Batch.inputs(_batchInputs)) > 0) {
+                throw error("%d of %d files failed", batch.failures(),
+                            batch.files());
             }
+            return;
+        }
+        if (_resultCache > 0) {
+            _results = new ResultCache(_machineConfig, _resultCache,
+                                       _resultDir);
+            if (_jmx) {
+                _results.register();
+            }
+        }
+        if (_traceSpec != null) {
+            _tracer = Tracer.parse(_traceSpec, _machineConfig);
         }
-    }
-
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
         try {
-            _config.useDelimiter("[\\s\\t\\n]+");
-            String tempAlpha = _config.next();
-            if (tempAlpha.contains(" ") || tempAlpha.contains("*")
-                    || tempAlpha.contains("(") || tempAlpha.contains(")")
-                    || tempAlpha.matches(".*[a-z].*")) {
-                throw error("alphabet contains invalid character");
-            }
-            _alphabet = new Alphabet(tempAlpha);
-            if (!_config.hasNextInt()) {
-                throw error("missing number of rotors");
+            if (_reader != null) {
+                Writer output = _flush == null
+                    ? new OutputStreamWriter(_output)
+                    : FlushPolicy.writer(_output);
+                Pipeline pipeline =
+                    new Pipeline(_machineConfig, chars, _reader, output,
+                                 _buffers, Pipeline.DEFAULT_BUFFER_SIZE);
+                pipeline.handOnEachLine(_flush != null
+                                        && _flush.eachMessage());
+                pipeline.run();
             } else {
-                nRotors = _config.nextInt();
+                process(_machineConfig, chars, _results, _tracer, _input,
+                        _output, _chunkSize);
             }
-            if (!_config.hasNextInt()) {
-                throw error("missing number of pawls");
-            } else {
-                nPawls = _config.nextInt();
+        } finally {
+            if (_results != null) {
+                _results.close();
             }
-            if (nPawls > nRotors) {
-                throw error("number of pawls cannot exceed number of rotors");
+            if (_tracer != null) {
+                writeTrace();
             }
-            while (_config.hasNext()) {
-                availRotors.add(readRotor());
+            if (_compressedOutput != null) {
+                _output.close();
+            } else if (_flush != null) {
+                _output.flush();
             }
-            return new Machine(_alphabet, nRotors, nPawls, availRotors);
-        } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+        }
+        if ((_compressedOutput != null || _flush != null)
+            && _output.checkError()) {
+            throw error("could not write output");
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
+    /** Check the messages in the file named _inputName for
+     *  _machineConfig, whose characters are classified by CHARS,
+     *  reporting any bad lines on the standard error and then throwing
+     *  an exception. */
+    private void validate(CharTable chars) {
+        Validator.Report report = new Validator(_machineConfig, chars)
+            .check(Path.of(_inputName), _validate);
+        if (report.count() == 0) {
+            return;
+        }
+        for (Validator.Problem problem : report.problems()) {
+            System.err.printf("Error: %s:%d: %s%n", _inputName,
+                              problem.line, problem.message);
+        }
+        throw error("%s failed validation (bad lines: %d)", _inputName,
+                    report.count());
+    }
+
+    /** Write _tracer to _traceFile, or render it on the standard error
+     *  if there is no _traceFile. */
+    private void writeTrace() {
+        if (_traceFile == null) {
+            _tracer.render(System.err);
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(_traceFile)) {
+            _tracer.save(out);
+        } catch (IOException excp) {
+            throw error("could not write %s", _traceFile);
+        }
+    }
+
+    /** Set up a machine from _machineConfig according to _binarySettings
+     *  and convert _binaryInput onto _binaryOutput with it. */
+    private void processBinary() {
+        Machine machine = _machineConfig.newMachine();
+        _machineConfig.setUpBytes(machine, _binarySettings);
         try {
-            String rotorName = _config.next().toUpperCase();
-            String rotorTypeNotches = _config.next().toUpperCase();
-            char rotorType = rotorTypeNotches.charAt(0);
-            String rotorNotches = "";
-            if (rotorType == 'M') {
-                for (int i = 1; i < rotorTypeNotches.length(); i++) {
-                    rotorNotches +=
-                            Character.toString(rotorTypeNotches.charAt(i));
-                }
-            }
-            String rotorCycles = "";
-            String lastCycle = "";
-            while (_config.hasNext("\\(\\S+")) {
-                lastCycle = _config.next();
-                rotorCycles = rotorCycles + lastCycle + " ";
-            }
-            if (!lastCycle.endsWith(")")) {
-                throw error("cycles must end with parentheses");
-            }
-            Permutation myPermutation = new Permutation(rotorCycles, _alphabet);
-            if (rotorType == 'M') {
-                return new MovingRotor(rotorName, myPermutation, rotorNotches);
-            } else if (rotorType == 'N') {
-                return new FixedRotor(rotorName, myPermutation);
-            } else if (rotorType == 'R') {
-                return new Reflector(rotorName, myPermutation);
+            new ByteConverter(machine).convert(_binaryInput, _binaryOutput);
+        } catch (IOException excp) {
+            throw error("could not convert input: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert _followInput onto _followOutput as it grows, saving
+     *  progress in _followState (see Follower), until interrupted. */
+    private void processFollow() {
+        if (_binarySettings == null && _machineConfig.binary()) {
+            throw error("byte configurations require --binary");
+        }
+        CharTable chars = _binarySettings == null
+            ? new CharTable(_machineConfig.alphabet(), _chars) : null;
+        Follower follower =
+            new Follower(_machineConfig, chars, _binarySettings,
+                         _followInput, _followOutput, _followState);
+        try {
+            follower.follow(_follow);
+        } finally {
+            follower.close();
+        }
+    }
+
+    /** Apply CONFIG to the messages in INPUT, sending the results to
+     *  OUTPUT, as grouped text if CHUNKSIZE is 0 and otherwise as a
+     *  container with CHUNKSIZE positions per chunk.  The characters of
+     *  messages are classified by CHARS (see CharTable). */
+    static void process(Config config, CharTable chars, Scanner input,
+                        PrintStream output, int chunkSize) {
+        process(config, chars, null, null, input, output, chunkSize);
+    }
+
+    /** As for process(CONFIG, CHARS, INPUT, OUTPUT, CHUNKSIZE), but
+     *  taking converted message lines from RESULTS, and adding them to
+     *  it, unless RESULTS is null, and recording the paths of characters
+     *  in TRACER unless it is null.  RESULTS and TRACER must be for
+     *  CONFIG, and are not used for containers. */
+    static void process(Config config, CharTable chars, ResultCache results,
+                        Tracer tracer, Scanner input, PrintStream output,
+                        int chunkSize) {
+        if (chunkSize > 0) {
+            processContainer(config, input, output, chunkSize);
+            return;
+        }
+        SettingsParser settings = new SettingsParser(config);
+        Machine machine = config.newMachine();
+        machine.setTracer(tracer);
+        String settingsLine = input.nextLine().toUpperCase();
+        Metrics.setUp(settings, machine, settingsLine);
+        String key = results == null
+            ? null : ResultCache.normalize(settingsLine);
+        while (input.hasNextLine()) {
+            String nextMsgLine = input.nextLine();
+            if (nextMsgLine.startsWith("*")) {
+                settingsLine = nextMsgLine.toUpperCase();
+                Metrics.setUp(settings, machine, settingsLine);
+                key = results == null
+                    ? null : ResultCache.normalize(settingsLine);
+            } else if (results == null) {
+                output.println(Metrics.convert(chars, machine, nextMsgLine));
             } else {
-                throw error("invalid rotor type");
-            }
-        } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
-        }
-    }
-
-    /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
-        String[] settingsArray = settings.trim().split("\\s+");
-        String[] usedRotors = new String[nRotors];
-        int settingsIndex = 0;
-        String plugb = "";
-        if (nRotors > settingsArray.length - 1) {
-            throw error("number of rotors in settings line does "
-                    + "not match that of config");
-        }
-        if (!settingsArray[0].equals("*")) {
-            throw error("missing * in the settings line, wrong format");
-        }
-        for (int i = 1; i <= nRotors; i++) {
-            usedRotors[i - 1] = settingsArray[i].toUpperCase();
-            settingsIndex = i + 1;
-        }
-        M.insertRotors(usedRotors);
-        if (settingsIndex > settingsArray.length - 1) {
-            throw error("missing rotor settings");
-        }
-        String rotorSettings = settingsArray[settingsIndex];
-        M.setRotors(rotorSettings);
-        if (settingsIndex < settingsArray.length - 1) {
-            for (int i = settingsIndex + 1; i < settingsArray.length; i++) {
-                String aCycle = settingsArray[i];
-                if (aCycle.startsWith("(") && aCycle.endsWith(")")
-                        && aCycle.length() == 4) {
-                    if (!plugb.contains(Character.toString(aCycle.charAt(1)))
-                            && !plugb.contains(Character.toString
-                            (aCycle.charAt(2)))) {
-                        plugb += aCycle;
-                    } else {
-                        throw error("duplicate character in "
-                                + "plugboard not allowed");
-                    }
-                    if (i != settingsArray.length - 1) {
-                        plugb += " ";
-                    }
+                output.println(results.convert(chars, machine, key,
+                                               nextMsgLine));
+            }
+        }
+    }
+
+    /** Apply CONFIG to the messages in INPUT as for process(), writing
+     *  the results to OUTPUT as a container with CHUNKSIZE positions per
+     *  chunk. */
+    private static void processContainer(Config config, Scanner input,
+                                         PrintStream output, int chunkSize) {
+        try (ContainerWriter out =
+                 new ContainerWriter(output, config, chunkSize)) {
+            out.settings(input.nextLine().toUpperCase());
+            while (input.hasNextLine()) {
+                String nextMsgLine = input.nextLine().toUpperCase();
+                if (nextMsgLine.startsWith("*")) {
+                    out.settings(nextMsgLine);
                 } else {
-                    throw error("plugboard permutations must be in pairs");
+                    out.message(nextMsgLine);
                 }
             }
-            Permutation plugbPerm = new Permutation(plugb, _alphabet);
-            M.setPlugboard(plugbPerm);
+        } catch (IOException excp) {
+            throw error("could not write output");
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        msg = msg.replaceAll("\\s", "");
-        char[] msgArray = msg.toCharArray();
-        String result = "";
-        for (int i = 0; i < msgArray.length; i++) {
-            result += msgArray[i];
-            if ((i + 1) % 5 == 0) {
-                result += " ";
+    /** Return MSG with its whitespace removed, in groups of five
+     *  separated by blanks (except that the last group may have fewer
+     *  letters). */
+    static String group(String msg) {
+        StringBuilder result = new StringBuilder(msg.length() + 8);
+        int n = 0;
+        for (int i = 0; i < msg.length(); i++) {
+            char c = msg.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result.append(c);
+                n += 1;
+                if (n % 5 == 0) {
+                    result.append(' ');
+                }
             }
         }
-        _output.println(result);
+        return result.toString();
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
-
     /** Source of input messages. */
     private Scanner _input;
 
+    /** Source of input messages in pipeline mode. */
+    private Reader _reader;
+
+    /** True iff the input messages are compressed. */
+    private boolean _compressedInput;
+
+    /** The compressing stream under _output, if the output is to be
+     *  compressed; otherwise null. */
+    private OutputStream _compressedOutput;
+
+    /** Treatment of characters outside the alphabet in messages. */
+    private CharTable.Policy _chars = CharTable.Policy.STRICT;
+
+    /** Limit on the memory held by the result cache, or 0 if there is
+     *  none. */
+    private long _resultCache;
+
+    /** Directory for the on-disk tier of the result cache, or null. */
+    private Path _resultDir;
+
+    /** True iff --no-result-cache was given. */
+    private boolean _noResultCache;
+
+    /** The result cache, or null if there is none. */
+    private ResultCache _results;
+
+    /** The selection of characters to trace (see Tracer.parse), or null
+     *  if there is to be no trace. */
+    private String _traceSpec;
+
+    /** File to which the trace is written, or null. */
+    private String _traceFile;
+
+    /** The trace, or null if there is none. */
+    private Tracer _tracer;
+
+    /** Number of threads checking the input before conversion, or 0 if
+     *  it is not checked. */
+    private int _validate;
+
+    /** Name of the input file, if it is to be checked. */
+    private String _inputName;
+
+    /** True iff --jmx was given. */
+    private boolean _jmx;
+
+    /** In binary mode, the settings line; otherwise null. */
+    private String _binarySettings;
+
+    /** In follow mode, the time between polls of the input in
+     *  milliseconds; otherwise 0. */
+    private long _follow;
+
+    /** In follow mode, the input, output and state files. */
+    private Path _followInput, _followOutput, _followState;
+
+    /** In binary mode, the input. */
+    private InputStream _binaryInput;
+
+    /** In binary mode, the output. */
+    private OutputStream _binaryOutput;
+
+    /** When to flush the output, or null to leave it to the output
+     *  stream. */
+    private FlushPolicy _flush;
+
+    /** Number of threads compressing gzip output. */
+    private int _compressThreads = 1;
+
+    /** Number of buffers in each ring in pipeline mode, or 0 if not in
+     *  pipeline mode. */
+    private int _buffers;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
     /** Source of machine configuration. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
-    /** Collection of available rotors this machine can use. */
-    private Collection<Rotor> availRotors = new ArrayList<>();
+    /** The parsed contents of _config. */
+    private Config _machineConfig;
+
+    /** Positions per chunk when writing a container, or 0 to write
+     *  grouped text. */
+    private int _chunkSize;
+
+    /** True iff a summary of metrics is to be printed at the end. */
+    private boolean _stats;
+
+    /** True iff --batch was given. */
+    private boolean _batch;
 
-    /** Number of rotors this machine has. */
-    private int nRotors;
+    /** In batch mode, the directory or glob naming the input files;
+     *  otherwise null. */
+    private String _batchInputs;
 
-    /** Number of pawls this machine has. */
-    private int nPawls;
+    /** In batch mode, the directory for output files. */
+    private String _batchOutputs;
 
-    /** The current machine in use. */
-    private Machine myMachine;
+    /** Number of files processed at once in batch mode. */
+    private int _jobs = Runtime.getRuntime().availableProcessors();
 }
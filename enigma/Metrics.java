@@ -0,0 +1,249 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Scanner;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and latency histograms for conversions, shared by all
+ *  machines in this JVM.  Counts are kept in striped LongAdders and are
+ *  updated once per message or settings line, never per character, so
+ *  they are always on.  The same operations are also reported as Java
+ *  Flight Recorder events (see ConfigEvent, SetUpEvent and
+ *  ConvertEvent), which cost nothing unless a recording enables them.
+ *  @author Florence Lau
+ */
+final class Metrics implements MetricsMBean {
+
+    /** Name under which METRICS is registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** Exclusive upper bounds on message length of the size buckets. */
+    private static final int[] SIZE_BUCKETS = { 16, 256, 4096, 65536 };
+
+    /** Number of latency buckets (powers of two of nanoseconds). */
+    private static final int LATENCY_BUCKETS = 40;
+
+    /** The metrics for this JVM. */
+    static final Metrics METRICS = new Metrics();
+
+    /** The single instance, METRICS. */
+    private Metrics() {
+        _latency = new LongAdder[SIZE_BUCKETS.length + 1][LATENCY_BUCKETS];
+        for (LongAdder[] row : _latency) {
+            for (int i = 0; i < row.length; i += 1) {
+                row[i] = new LongAdder();
+            }
+        }
+    }
+
+    /** Register METRICS with the platform MBean server, if not already
+     *  done. */
+    static synchronized void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!ManagementFactory.getPlatformMBeanServer()
+                .isRegistered(name)) {
+                ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(METRICS, name);
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the configuration read from the file named NAME, recording
+     *  the time taken. */
+    static Config readConfig(String name) {
+        ConfigEvent event = new ConfigEvent();
+        event.begin();
+        Config result = Config.read(name);
+        event.commit(name, result);
+        return result;
+    }
+
+    /** Return the configuration read from CONFIG, which came from the
+     *  file named NAME, recording the time taken. */
+    static Config readConfig(Scanner config, String name) {
+        ConfigEvent event = new ConfigEvent();
+        event.begin();
+        Config result = Config.read(config);
+        event.commit(name, result);
+        return result;
+    }
+
+    /** Set up MACHINE according to SETTINGS with PARSER (see
+     *  SettingsParser.setUp), recording the settings change. */
+    static void setUp(SettingsParser parser, Machine machine,
+                      String settings) {
+        SetUpEvent event = new SetUpEvent();
+        event.begin();
+        parser.setUp(machine, settings);
+        METRICS._settingsChanges.increment();
+        if (event.shouldCommit()) {
+            event.settings = settings;
+            event.commit();
+        }
+    }
+
+    /** Return MSG converted by MACHINE and grouped, classifying its
+     *  characters by CHARS (see CharTable.convert), recording the
+     *  conversion. */
+    static String convert(CharTable chars, Machine machine, String msg) {
+        ConvertEvent event = new ConvertEvent();
+        event.begin();
+        long start = System.nanoTime();
+        String result = chars.convert(machine, msg);
+        METRICS.recordMessage(msg.length(), System.nanoTime() - start);
+        if (event.shouldCommit()) {
+            event.length = msg.length();
+            event.commit();
+        }
+        return result;
+    }
+
+    /** Record an error. */
+    static void recordError() {
+        METRICS._errors.increment();
+    }
+
+    /** Record the conversion of a message of LENGTH characters that took
+     *  NANOS nanoseconds. */
+    void recordMessage(int length, long nanos) {
+        _messages.increment();
+        _characters.add(length);
+        int size = 0;
+        while (size < SIZE_BUCKETS.length && length >= SIZE_BUCKETS[size]) {
+            size += 1;
+        }
+        int latency = 63 - Long.numberOfLeadingZeros(Math.max(1, nanos));
+        _latency[size][Math.min(latency, LATENCY_BUCKETS - 1)].increment();
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSettingsChanges() {
+        return _settingsChanges.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return _errors.sum();
+    }
+
+    @Override
+    public int[] getSizeBuckets() {
+        return SIZE_BUCKETS.clone();
+    }
+
+    @Override
+    public long[][] getLatencyHistogram() {
+        long[][] result = new long[_latency.length][LATENCY_BUCKETS];
+        for (int s = 0; s < _latency.length; s += 1) {
+            for (int i = 0; i < LATENCY_BUCKETS; i += 1) {
+                result[s][i] = _latency[s][i].sum();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String getSummary() {
+        StringBuilder result = new StringBuilder();
+        result.append(String.format("characters converted: %d%n"
+                                    + "messages:             %d%n"
+                                    + "settings changes:     %d%n"
+                                    + "errors:               %d%n",
+                                    getCharactersConverted(), getMessages(),
+                                    getSettingsChanges(), getErrors()));
+        long[][] histogram = getLatencyHistogram();
+        for (int s = 0; s < histogram.length; s += 1) {
+            long n = 0;
+            for (long count : histogram[s]) {
+                n += count;
+            }
+            if (n == 0) {
+                continue;
+            }
+            result.append(String.format("messages of %s chars: %d, "
+                                        + "latency p50 < %s, p99 < %s%n",
+                                        sizeRange(s), n,
+                                        quantile(histogram[s], n, 0.5),
+                                        quantile(histogram[s], n, 0.99)));
+        }
+        return result.toString();
+    }
+
+    /** Return a description of the lengths in size bucket S. */
+    private static String sizeRange(int s) {
+        int low = s == 0 ? 0 : SIZE_BUCKETS[s - 1];
+        if (s == SIZE_BUCKETS.length) {
+            return low + "+";
+        }
+        return low + "-" + (SIZE_BUCKETS[s] - 1);
+    }
+
+    /** Return the upper bound of the latency bucket containing the Q
+     *  quantile of the N samples in HISTOGRAM, as a readable string. */
+    private static String quantile(long[] histogram, long n, double q) {
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        int i;
+        for (i = 0; i < histogram.length - 1; i += 1) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                break;
+            }
+        }
+        double nanos = Math.pow(2, i + 1);
+        if (nanos < 1e3) {
+            return String.format("%.0fns", nanos);
+        } else if (nanos < 1e6) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+    }
+
+    @Override
+    public void reset() {
+        _characters.reset();
+        _messages.reset();
+        _settingsChanges.reset();
+        _errors.reset();
+        for (LongAdder[] row : _latency) {
+            for (LongAdder count : row) {
+                count.reset();
+            }
+        }
+    }
+
+    /** Number of characters converted. */
+    private final LongAdder _characters = new LongAdder();
+
+    /** Number of messages converted. */
+    private final LongAdder _messages = new LongAdder();
+
+    /** Number of settings lines processed. */
+    private final LongAdder _settingsChanges = new LongAdder();
+
+    /** Number of errors. */
+    private final LongAdder _errors = new LongAdder();
+
+    /** Latency histogram for each size bucket. */
+    private final LongAdder[][] _latency;
+}
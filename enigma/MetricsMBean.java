@@ -0,0 +1,34 @@
+package enigma;
+
+/** The management interface of Metrics.
+ *  @author Florence Lau
+ */
+public interface MetricsMBean {
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of message lines converted. */
+    long getMessages();
+
+    /** Return the number of settings lines processed. */
+    long getSettingsChanges();
+
+    /** Return the number of errors reported. */
+    long getErrors();
+
+    /** Return the upper bounds (exclusive) on message length of the
+     *  message-size buckets, the last being unbounded. */
+    int[] getSizeBuckets();
+
+    /** Return the latency histogram: element [S][L] is the number of
+     *  messages in size bucket S whose conversion took between 2**L and
+     *  2**(L+1) - 1 nanoseconds. */
+    long[][] getLatencyHistogram();
+
+    /** Return a human-readable summary of all the above. */
+    String getSummary();
+
+    /** Set all counts to 0. */
+    void reset();
+}
@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import static enigma.TestUtils.*;
+import static enigma.Metrics.METRICS;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Florence Lau
+ */
+public class MetricsTest {
+
+    @Test
+    public void testCounters() {
+        METRICS.reset();
+        Config config = navalConfig();
+        Machine machine = config.newMachine();
+        Metrics.setUp(new SettingsParser(config), machine,
+                      "* B BETA I II III AAAA");
+        CharTable chars = new CharTable(config.alphabet(),
+                                        CharTable.Policy.STRICT);
+        assertEquals("ILBDA AMTAZ ",
+                     Metrics.convert(chars, machine, "HELLO WORLD"));
+        Metrics.convert(chars, machine, "");
+        Metrics.recordError();
+        assertEquals(1, METRICS.getSettingsChanges());
+        assertEquals(2, METRICS.getMessages());
+        assertEquals(11, METRICS.getCharactersConverted());
+        assertEquals(1, METRICS.getErrors());
+        long total = 0;
+        for (long count : METRICS.getLatencyHistogram()[0]) {
+            total += count;
+        }
+        assertEquals(2, total);
+        assertTrue(METRICS.getSummary().contains("messages of 0-15 chars: 2"));
+    }
+
+    @Test
+    public void testHistogramBuckets() {
+        METRICS.reset();
+        METRICS.recordMessage(15, 1);
+        METRICS.recordMessage(16, 1000);
+        METRICS.recordMessage(1 << 20, Long.MAX_VALUE);
+        long[][] histogram = METRICS.getLatencyHistogram();
+        assertEquals(1, histogram[0][0]);
+        assertEquals(1, histogram[1][9]);
+        assertEquals(1, histogram[histogram.length - 1][39]);
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        Metrics.register();
+        Metrics.register();
+        METRICS.reset();
+        METRICS.recordMessage(3, 100);
+        assertEquals(3L, ManagementFactory.getPlatformMBeanServer()
+                     .getAttribute(new ObjectName(Metrics.OBJECT_NAME),
+                                   "CharactersConverted"));
+    }
+}
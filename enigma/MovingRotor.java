@@ -14,6 +14,12 @@ class MovingRotor extends Rotor {
         super(name, perm);
         _notches = notches;
         _permutation = perm;
+        _atNotch = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            if (perm.alphabet().contains(notches.charAt(i))) {
+                _atNotch[perm.alphabet().toInt(notches.charAt(i))] = true;
+            }
+        }
     }
 
     @Override
@@ -26,11 +32,13 @@ class MovingRotor extends Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
-        char c = alphabet().toChar(setting());
-        if (_notches.contains(Character.toString(c))) {
-            return true;
-        }
-        return false;
+        return _atNotch[setting()];
+    }
+
+    @Override
+    /** Returns true iff I would be at a notch in setting POSN. */
+    boolean notchAt(int posn) {
+        return _atNotch[posn];
     }
 
     @Override
@@ -47,6 +55,9 @@ class MovingRotor extends Rotor {
     /** My notches. */
     private String _notches;
 
+    /** Element K is true iff I have a notch at setting K. */
+    private final boolean[] _atNotch;
+
     /** The permutation implemented by this rotor in its 0 position. */
     private Permutation _permutation;
 
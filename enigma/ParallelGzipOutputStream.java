@@ -0,0 +1,146 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/** An output stream that gzips its contents in blocks, compressing
+ *  several blocks at once on a pool of threads.  Each block becomes an
+ *  independent gzip member; the members are written in order, so the
+ *  result is a valid multi-member gzip file that GZIPInputStream (or
+ *  gunzip) reads as the concatenation of the blocks.  At most two blocks
+ *  per thread are in flight at once.
+ *  @author Florence Lau
+ */
+class ParallelGzipOutputStream extends OutputStream {
+
+    /** Default number of uncompressed bytes per member. */
+    static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /** A stream writing to OUT with THREADS compressing threads. */
+    ParallelGzipOutputStream(OutputStream out, int threads) {
+        this(out, threads, DEFAULT_BLOCK_SIZE);
+    }
+
+    /** A stream writing to OUT with THREADS compressing threads and
+     *  members of BLOCKSIZE uncompressed bytes. */
+    ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+        _out = out;
+        _maxPending = 2 * threads;
+        _block = new byte[blockSize];
+        _pool = Util.pool(threads, "enigma-gzip");
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (_length == _block.length) {
+            submit();
+        }
+        _block[_length] = (byte) b;
+        _length += 1;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (_length == _block.length) {
+                submit();
+            }
+            int n = Math.min(len, _block.length - _length);
+            System.arraycopy(b, off, _block, _length, n);
+            _length += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Writes pending members, but does not end the current block, so
+     *  that flushing does not produce small members. */
+    @Override
+    public void flush() throws IOException {
+        while (!_pending.isEmpty() && _pending.peek().isDone()) {
+            writeNext();
+        }
+        _out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (_closed) {
+            return;
+        }
+        _closed = true;
+        try {
+            if (_length > 0 || _pending.isEmpty()) {
+                submit();
+            }
+            while (!_pending.isEmpty()) {
+                writeNext();
+            }
+        } finally {
+            _pool.shutdownNow();
+            _out.close();
+        }
+    }
+
+    /** Start compressing the current block, first writing the oldest
+     *  member if too many are in flight. */
+    private void submit() throws IOException {
+        if (_pending.size() >= _maxPending) {
+            writeNext();
+        }
+        byte[] block = _block;
+        int length = _length;
+        _pending.add(_pool.submit(() -> gzip(block, length)));
+        _block = new byte[block.length];
+        _length = 0;
+    }
+
+    /** Wait for the oldest member and write it. */
+    private void writeNext() throws IOException {
+        try {
+            _out.write(_pending.remove().get());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted");
+        } catch (ExecutionException excp) {
+            throw new IOException(excp.getCause());
+        }
+    }
+
+    /** Return the first LENGTH bytes of BLOCK as a gzip member. */
+    private static byte[] gzip(byte[] block, int length) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(length / 3);
+        try (GZIPOutputStream gz = new GZIPOutputStream(result)) {
+            gz.write(block, 0, length);
+        }
+        return result.toByteArray();
+    }
+
+    /** Destination of the compressed data. */
+    private final OutputStream _out;
+
+    /** Maximum number of members in flight. */
+    private final int _maxPending;
+
+    /** Compressing threads. */
+    private final ExecutorService _pool;
+
+    /** Members being compressed, oldest first. */
+    private final ArrayDeque<Future<byte[]>> _pending = new ArrayDeque<>();
+
+    /** The block being filled. */
+    private byte[] _block;
+
+    /** Number of bytes in _block. */
+    private int _length;
+
+    /** True once closed. */
+    private boolean _closed;
+}
@@ -1,29 +1,50 @@
 package enigma;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import static enigma.EnigmaException.*;
 
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  Besides applying a permutation to
+ *  single values, it provides whole-permutation operations (composition,
+ *  inverse, powers, conjugation by a shift, and cycle structure), which
+ *  work on tables of images.  The permutations they return are interned:
+ *  while an equal permutation over the same alphabet made by one of them
+ *  is among the most recent MAX_INTERNED, it is returned instead of a new
+ *  one.  Permutations are immutable and may be shared between threads;
+ *  their caches of derived permutations are published safely.
  *  @author Florence Lau
  */
 class Permutation {
 
+    /** Number of derived permutations kept for sharing. */
+    static final int MAX_INTERNED = 4096;
+
     /** Set this Permutation to that specified by CYCLES, a string in the
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters not
      *  included in any cycle map to themselves. Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
+        _permutation = new int[alphabet.size()];
+        reversedPerm = new int[alphabet.size()];
         if (cycles.length() == 0) {
             for (int i2 = 0; i2 < _alphabet.size(); i2 += 1) {
-                _permutation.put(i2, i2);
-                reversedPerm = _permutation;
-                mapsToItself = true;
+                _permutation[i2] = i2;
+                reversedPerm[i2] = i2;
             }
         } else {
+            String problem = cyclesProblem(cycles, alphabet);
+            if (problem != null) {
+                throw error("%s", problem);
+            }
+            Arrays.fill(_permutation, -1);
             cycles = cycles.replaceAll("\\s+", "");
             cycles = cycles.replaceAll("\\(", "");
             String[] splitCycles = cycles.split("\\)");
@@ -31,6 +52,71 @@ class Permutation {
                 addCycle(cycle);
             }
         }
+        mapsToItself = hasFixedPoint(_permutation);
+    }
+
+    /** Return the message of the error that the constructor would report
+     *  for CYCLES and ALPHABET, or null if there is none. */
+    static String cyclesProblem(String cycles, Alphabet alphabet) {
+        if (cycles.length() == 0) {
+            return null;
+        }
+        cycles = cycles.replaceAll("\\s+", "");
+        cycles = cycles.replaceAll("\\(", "");
+        for (String cycle : cycles.split("\\)")) {
+            if (cycle.length() == 0) {
+                return "empty cycle in permutation";
+            }
+            for (int i = 0; i < cycle.length(); i += 1) {
+                if (!alphabet.contains(cycle.charAt(i))) {
+                    return i == 0 && cycle.length() > 1
+                        ? "character is not in alphabet"
+                        : "character not in alphabet";
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Set this Permutation to the one mapping each K to IMAGES[K], over
+     *  ALPHABET, which must have IMAGES.length characters.  Each index
+     *  must appear in IMAGES exactly once. */
+    Permutation(int[] images, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (images.length != alphabet.size()) {
+            throw error("wrong number of images in permutation");
+        }
+        _permutation = images.clone();
+        reversedPerm = new int[images.length];
+        Arrays.fill(reversedPerm, -1);
+        for (int k = 0; k < images.length; k += 1) {
+            int image = images[k];
+            if (image < 0 || image >= images.length
+                || reversedPerm[image] >= 0) {
+                throw error("images do not form a permutation");
+            }
+            reversedPerm[image] = k;
+        }
+        mapsToItself = hasFixedPoint(_permutation);
+    }
+
+    /** The permutation of ALPHABET whose table of images is IMAGES and
+     *  that of its inverse INVERSE, which are not checked or copied. */
+    private Permutation(int[] images, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        _permutation = images;
+        reversedPerm = inverse;
+        mapsToItself = hasFixedPoint(images);
+    }
+
+    /** Return true iff some K has IMAGES[K] == K. */
+    private static boolean hasFixedPoint(int[] images) {
+        for (int k = 0; k < images.length; k += 1) {
+            if (images[k] == k) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
@@ -41,23 +127,22 @@ class Permutation {
         while (i < lastIndex) {
             char curr = cycle.charAt(i);
             if (_alphabet.contains(curr)) {
-                _permutation.put(charToInt(curr),
-                        charToInt(cycle.charAt(i + 1)));
+                _permutation[charToInt(curr)] =
+                        charToInt(cycle.charAt(i + 1));
                 i += 1;
             } else {
                 throw error("character is not in alphabet");
             }
         }
-        _permutation.put(charToInt(cycle.charAt(lastIndex)),
-                charToInt(cycle.charAt(0)));
+        _permutation[charToInt(cycle.charAt(lastIndex))] =
+                charToInt(cycle.charAt(0));
         for (int i2 = 0; i2 < size(); i2 += 1) {
-            if (!_permutation.containsKey(i2)) {
-                _permutation.put(i2, i2);
-                mapsToItself = true;
+            if (_permutation[i2] < 0) {
+                _permutation[i2] = i2;
             }
         }
-        for (int i3 : _permutation.keySet()) {
-            reversedPerm.put(_permutation.get(i3), i3);
+        for (int i3 = 0; i3 < size(); i3 += 1) {
+            reversedPerm[_permutation[i3]] = i3;
         }
     }
 
@@ -78,24 +163,24 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return _permutation.get(wrap(p));
+        return _permutation[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return reversedPerm.get(wrap(c));
+        return reversedPerm[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        return intToChar(_permutation.get(charToInt(p)));
+        return intToChar(_permutation[charToInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     int invert(char c) {
-        return intToChar(reversedPerm.get(charToInt(c)));
+        return intToChar(reversedPerm[charToInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -109,8 +194,182 @@ class Permutation {
         return mapsToItself;
     }
 
+    /** Return a copy of my table of images: element K is permute(K). */
+    int[] images() {
+        return _permutation.clone();
+    }
+
+    /** Return the composition of this permutation with OTHER, which must
+     *  have my alphabet, applying OTHER first: the permutation mapping
+     *  each P to permute(OTHER.permute(P)). */
+    Permutation compose(Permutation other) {
+        if (other._alphabet != _alphabet) {
+            throw error("permutations have different alphabets");
+        }
+        int[] images = new int[size()];
+        for (int p = 0; p < images.length; p += 1) {
+            images[p] = _permutation[other._permutation[p]];
+        }
+        return intern(images, _alphabet);
+    }
+
+    /** Return the inverse of this permutation. */
+    Permutation inverse() {
+        Permutation result = _inversePerm;
+        if (result == null) {
+            result = intern(reversedPerm.clone(), _alphabet);
+            _inversePerm = result;
+        }
+        return result;
+    }
+
+    /** Return this permutation applied K times (its inverse applied -K
+     *  times if K is negative). */
+    Permutation power(int k) {
+        int[] images = new int[size()];
+        for (int[] cycle : cycles()) {
+            int shift = k % cycle.length;
+            if (shift < 0) {
+                shift += cycle.length;
+            }
+            for (int i = 0; i < cycle.length; i += 1) {
+                images[cycle[i]] = cycle[(i + shift) % cycle.length];
+            }
+        }
+        return intern(images, _alphabet);
+    }
+
+    /** Return the conjugate of this permutation by a shift of S: the
+     *  permutation mapping each P to permute(P + S) - S, modulo the
+     *  alphabet size, which is what a rotor with this permutation does
+     *  at setting S (see Rotor.convertForward).  The conjugates are
+     *  cached, so that each is usually computed once (threads racing to
+     *  compute one get the same interned result). */
+    Permutation conjugate(int s) {
+        s = wrap(s);
+        AtomicReferenceArray<Permutation> conjugates = _conjugates;
+        if (conjugates == null) {
+            synchronized (this) {
+                if (_conjugates == null) {
+                    _conjugates = new AtomicReferenceArray<>(size());
+                }
+                conjugates = _conjugates;
+            }
+        }
+        Permutation result = conjugates.get(s);
+        if (result == null) {
+            int[] images = new int[size()];
+            for (int p = 0; p < images.length; p += 1) {
+                images[p] = wrap(_permutation[wrap(p + s)] - s);
+            }
+            result = intern(images, _alphabet);
+            conjugates.set(s, result);
+        }
+        return result;
+    }
+
+    /** Return the cycles of this permutation, including those of length
+     *  1, each starting with its least element, in order of their first
+     *  elements.  Cycle C maps C[K] to C[K + 1] and its last element to
+     *  C[0]. */
+    int[][] cycles() {
+        List<int[]> result = new ArrayList<>();
+        boolean[] seen = new boolean[size()];
+        int[] cycle = new int[size()];
+        for (int start = 0; start < size(); start += 1) {
+            int n = 0;
+            for (int p = start; !seen[p]; p = _permutation[p]) {
+                seen[p] = true;
+                cycle[n] = p;
+                n += 1;
+            }
+            if (n > 0) {
+                result.add(Arrays.copyOf(cycle, n));
+            }
+        }
+        return result.toArray(new int[0][]);
+    }
+
+    /** Return the lengths of my cycles (see cycles()), longest first. */
+    int[] cycleType() {
+        int[][] cycles = cycles();
+        int[] result = new int[cycles.length];
+        for (int k = 0; k < cycles.length; k += 1) {
+            result[k] = -cycles[k].length;
+        }
+        Arrays.sort(result);
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = -result[k];
+        }
+        return result;
+    }
+
+    /** Return the permutation of ALPHABET whose table of images is
+     *  IMAGES, which must form a permutation and is not copied: an
+     *  interned one equal to it if there is one, and otherwise a new one,
+     *  which is interned. */
+    private static Permutation intern(int[] images, Alphabet alphabet) {
+        Key key = new Key(images, alphabet);
+        synchronized (INTERNED) {
+            Permutation result = INTERNED.get(key);
+            if (result == null) {
+                int[] inverse = new int[images.length];
+                for (int p = 0; p < images.length; p += 1) {
+                    inverse[images[p]] = p;
+                }
+                result = new Permutation(images, inverse, alphabet);
+                INTERNED.put(key, result);
+            }
+            return result;
+        }
+    }
+
+    /** The key of an interned permutation. */
+    private static final class Key {
+        /** The key of the permutation of ALPHABET whose images are
+         *  IMAGES. */
+        Key(int[] images, Alphabet alphabet) {
+            this.images = images;
+            this.alphabet = alphabet;
+            this.hash = 31 * System.identityHashCode(alphabet)
+                + Arrays.hashCode(images);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return other.alphabet == alphabet && other.hash == hash
+                && Arrays.equals(other.images, images);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /** Table of images. */
+        final int[] images;
+        /** Alphabet permuted. */
+        final Alphabet alphabet;
+        /** Hash code. */
+        final int hash;
+    }
+
+    /** Interned permutations, least recently used first. */
+    private static final LinkedHashMap<Key, Permutation> INTERNED =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<Key, Permutation> eldest) {
+                return size() > MAX_INTERNED;
+            }
+        };
+
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
+    private final Alphabet _alphabet;
 
     /** Return the character C converted into its corresponding integer. */
     int charToInt(char c) {
@@ -123,12 +382,20 @@ class Permutation {
     }
 
     /** Variable for whether this permutation is a derangement. */
-    private boolean mapsToItself = false;
+    private final boolean mapsToItself;
 
-    /** HashMap of each character mapping in this permutation. */
-    private HashMap<Integer, Integer> _permutation = new HashMap<>();
+    /** Table of each character mapping in this permutation. */
+    private final int[] _permutation;
 
     /** Reversed mapping of this permutation. */
-    private HashMap<Integer, Integer> reversedPerm = new HashMap<>();
+    private final int[] reversedPerm;
+
+    /** The interned inverse of this permutation, or null if not yet
+     *  computed. */
+    private volatile Permutation _inversePerm;
+
+    /** Cached conjugates by shift (see conjugate), or null if none has
+     *  been computed. */
+    private volatile AtomicReferenceArray<Permutation> _conjugates;
 }
 
@@ -6,6 +6,13 @@ import org.junit.rules.ExpectedException;
 import org.junit.rules.Timeout;
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static enigma.TestUtils.*;
 
 /** The suite of all JUnit tests for the Permutation class.
@@ -71,4 +78,87 @@ public class PermutationTest {
                 + "(N)", UPPER);
     }
 
+    @Test
+    public void testAlgebra() {
+        Permutation p = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) "
+                + "(DFG) (IV) (JZ) (S)", UPPER);
+        Permutation q = new Permutation("(AB) (CD)", UPPER);
+        Permutation pq = p.compose(q);
+        Permutation inv = p.inverse();
+        for (int i = 0; i < 26; i += 1) {
+            assertEquals(p.permute(q.permute(i)), pq.permute(i));
+            assertEquals(p.invert(i), inv.permute(i));
+            assertEquals(i, p.compose(inv).permute(i));
+            assertEquals(p.permute(p.permute(p.permute(i))),
+                         p.power(3).permute(i));
+            assertEquals(p.invert(p.invert(i)), p.power(-2).permute(i));
+        }
+        assertSame(p.power(0), p.compose(inv));
+        assertSame(p.power(60), p.power(0));
+        assertSame(inv, p.inverse());
+        assertSame(pq, p.compose(q));
+        assertArrayEquals(new int[] { 10, 4, 4, 3, 2, 2, 1 },
+                          p.cycleType());
+        int[][] cycles = q.cycles();
+        assertEquals(24, cycles.length);
+        assertArrayEquals(new int[] { 0, 1 }, cycles[0]);
+        assertArrayEquals(new int[] { 2, 3 }, cycles[1]);
+        assertArrayEquals(new int[] { 4 }, cycles[2]);
+    }
+
+    @Test
+    public void testConjugate() {
+        Permutation p = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) "
+                + "(DFG) (IV) (JZ) (S)", UPPER);
+        Rotor rotor = new MovingRotor("I", p, "Q");
+        for (int s = 0; s < 26; s += 1) {
+            rotor.set(s);
+            Permutation c = p.conjugate(s);
+            for (int i = 0; i < 26; i += 1) {
+                assertEquals(rotor.convertForward(i), c.permute(i));
+                assertEquals(rotor.convertBackward(i), c.invert(i));
+            }
+            assertSame(c, p.conjugate(s + 26));
+            assertArrayEquals(p.cycleType(), c.cycleType());
+        }
+        exception.expect(EnigmaException.class);
+        p.compose(new Permutation("", new Alphabet("AB")));
+    }
+
+    @Test
+    public void testSharedBetweenThreads() throws Exception {
+        Permutation p = new Permutation("(AELTPHQXRU) (BKNW) (CMOY) "
+                + "(DFG) (IV) (JZ) (S)", UPPER);
+        int nThreads = 4;
+        ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Permutation[]>> results = new ArrayList<>();
+            for (int k = 0; k < nThreads; k += 1) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    Permutation[] derived = new Permutation[27];
+                    for (int s = 0; s < 26; s += 1) {
+                        derived[s] = p.conjugate(s);
+                    }
+                    derived[26] = p.inverse();
+                    return derived;
+                }));
+            }
+            start.countDown();
+            Permutation[] first = results.get(0).get();
+            for (Future<Permutation[]> result : results) {
+                Permutation[] derived = result.get();
+                for (int s = 0; s < derived.length; s += 1) {
+                    assertSame(first[s], derived[s]);
+                }
+            }
+            for (int i = 0; i < 26; i += 1) {
+                assertEquals(i, first[26].permute(p.permute(i)));
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
 }
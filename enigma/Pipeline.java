@@ -0,0 +1,388 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** A three-stage version of Main's conversion loop (Main's --pipeline
+ *  mode).  A reader thread fills buffers from the input, the calling
+ *  thread converts them, and a writer thread writes the grouped output,
+ *  so that reading and writing overlap with conversion.  Each stage hands
+ *  buffers to the next through a bounded queue, and buffers are returned
+ *  to the stage that fills them when emptied, so a fixed set of buffers
+ *  is reused throughout and a slow stage makes the others wait rather
+ *  than consume memory.  Lines, and the machine's state, carry across
+ *  buffer boundaries.  The output is the same as Main's, except that
+ *  when a line is longer than a buffer and contains an error, the part
+ *  of its output before the error may already have been written.
+ *  @author Florence Lau
+ */
+final class Pipeline {
+
+    /** Default number of buffers in each of the input and output
+     *  rings. */
+    static final int DEFAULT_BUFFERS = 4;
+
+    /** Default size of each buffer in characters. */
+    static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    /** A buffer of characters passed between stages. */
+    private static final class Chunk {
+        /** A chunk of SIZE characters. */
+        Chunk(int size) {
+            chars = new char[size];
+        }
+
+        /** The characters. */
+        final char[] chars;
+        /** Number of valid characters, or END at end of input. */
+        int length;
+    }
+
+    /** Line terminators other than carriage return and newline
+     *  recognized by Scanner.nextLine. */
+    private static final char NEXT_LINE = 0x85, LINE_SEPARATOR = 0x2028,
+        PARAGRAPH_SEPARATOR = 0x2029;
+
+    /** Chunk length marking the end of the input or output. */
+    private static final int END = -1;
+
+    /** A pipeline converting the messages read from INPUT with machines
+     *  built from CONFIG, classifying their characters with CHARS, and
+     *  writing the results to OUTPUT, with BUFFERS buffers of BUFFERSIZE
+     *  characters in each of its input and output rings. */
+    Pipeline(Config config, CharTable chars, Reader input, Writer output,
+             int buffers, int bufferSize) {
+        if (buffers < 1 || bufferSize < 1) {
+            throw error("pipeline buffers must be positive");
+        }
+        _config = config;
+        _chars = chars;
+        _input = input;
+        _output = output;
+        _alphabet = config.alphabet();
+        _emptyIn = new ArrayBlockingQueue<>(buffers);
+        _fullIn = new ArrayBlockingQueue<>(buffers + 1);
+        _emptyOut = new ArrayBlockingQueue<>(buffers);
+        _fullOut = new ArrayBlockingQueue<>(buffers + 1);
+        for (int k = 0; k < buffers; k += 1) {
+            _emptyIn.add(new Chunk(bufferSize));
+            _emptyOut.add(new Chunk(bufferSize));
+        }
+    }
+
+    /** If ON, hand the output of each message line to the writer as
+     *  soon as it is converted, rather than when a buffer fills, so that
+     *  a flushing output (see FlushPolicy) sees each line promptly. */
+    void handOnEachLine(boolean on) {
+        _eachLine = on;
+    }
+
+    /** Convert all of my input, returning when all the output has been
+     *  written (but not closed). */
+    void run() {
+        Thread reader = new Thread(this::read, "enigma-reader");
+        Thread writer = new Thread(this::write, "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        try {
+            convert();
+        } catch (EnigmaException excp) {
+            if (_lineOutput >= 0) {
+                _out.length = _lineOutput;
+            }
+            throw excp;
+        } finally {
+            reader.interrupt();
+            try {
+                finishOutput();
+                writer.join();
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            }
+        }
+        if (_writeFailed) {
+            throw error("could not write output");
+        }
+    }
+
+    /** The reader stage: fill empty input chunks and pass them on until
+     *  the end of the input. */
+    private void read() {
+        try {
+            while (true) {
+                Chunk chunk = _emptyIn.take();
+                int n = _input.read(chunk.chars);
+                while (n == 0) {
+                    n = _input.read(chunk.chars);
+                }
+                chunk.length = n;
+                _fullIn.put(chunk);
+                if (n < 0) {
+                    return;
+                }
+            }
+        } catch (IOException excp) {
+            _readFailed = true;
+            Chunk end = new Chunk(0);
+            end.length = END;
+            _fullIn.add(end);
+        } catch (InterruptedException excp) {
+            return;
+        }
+    }
+
+    /** The writer stage: write full output chunks and return them until
+     *  the end of the output.  After a write fails, chunks are discarded
+     *  so that the conversion stage is not blocked. */
+    private void write() {
+        while (true) {
+            Chunk chunk;
+            try {
+                chunk = _fullOut.take();
+            } catch (InterruptedException excp) {
+                return;
+            }
+            if (chunk.length == END) {
+                try {
+                    _output.flush();
+                } catch (IOException excp) {
+                    _writeFailed = true;
+                }
+                return;
+            }
+            if (!_writeFailed) {
+                try {
+                    _output.write(chunk.chars, 0, chunk.length);
+                } catch (IOException excp) {
+                    _writeFailed = true;
+                }
+            }
+            chunk.length = 0;
+            _emptyOut.add(chunk);
+        }
+    }
+
+    /** The conversion stage: convert each input chunk in turn. */
+    private void convert() {
+        SettingsParser parser = new SettingsParser(_config);
+        _machine = _config.newMachine();
+        _parser = parser;
+        _out = take(_emptyOut);
+        while (true) {
+            Chunk chunk = take(_fullIn);
+            if (chunk.length == END) {
+                break;
+            }
+            for (int i = 0; i < chunk.length; i += 1) {
+                accept(chunk.chars[i]);
+            }
+            _emptyIn.add(chunk);
+        }
+        if (_readFailed) {
+            throw error("could not read input");
+        }
+        if (!_atLineStart) {
+            endLine();
+        }
+        if (_firstLine) {
+            throw error("empty input");
+        }
+    }
+
+    /** Process the input character C. */
+    private void accept(char c) {
+        if (_skipNewline) {
+            _skipNewline = false;
+            if (c == '\n') {
+                return;
+            }
+        }
+        switch (c) {
+        case '\r':
+            _skipNewline = true;
+            endLine();
+            return;
+        case '\n': case NEXT_LINE: case LINE_SEPARATOR:
+        case PARAGRAPH_SEPARATOR:
+            endLine();
+            return;
+        default:
+            break;
+        }
+        if (_atLineStart) {
+            _atLineStart = false;
+            _inSettings = _firstLine || c == '*';
+            _lineLength = 0;
+            _group = 0;
+            _lineStart = System.nanoTime();
+            _lineOutput = _out.length;
+        }
+        _lineLength += 1;
+        if (_inSettings) {
+            _settings.append(c);
+            return;
+        }
+        int k = _chars.classify(c);
+        if (k >= 0) {
+            emit(_alphabet.toChar(_machine.convert(k)));
+            _group += 1;
+            if (_group == 5) {
+                emit(' ');
+                _group = 0;
+            }
+        } else if (k == CharTable.PASS) {
+            emit(c);
+        } else if (k == CharTable.REJECT) {
+            throw error("character not in alphabet");
+        }
+    }
+
+    /** Finish the current line. */
+    private void endLine() {
+        if (_atLineStart) {
+            _inSettings = _firstLine;
+            _lineLength = 0;
+            _lineStart = System.nanoTime();
+            _lineOutput = _out.length;
+        }
+        if (_inSettings) {
+            Metrics.setUp(_parser, _machine,
+                          _settings.toString().toUpperCase());
+            _settings.setLength(0);
+        } else {
+            Metrics.METRICS.recordMessage(_lineLength,
+                                          System.nanoTime() - _lineStart);
+            for (int k = 0; k < NEWLINE.length(); k += 1) {
+                emit(NEWLINE.charAt(k));
+            }
+            if (_eachLine) {
+                passOn(_out);
+                _out = take(_emptyOut);
+            }
+        }
+        _atLineStart = true;
+        _firstLine = false;
+    }
+
+    /** Append C to the output. */
+    private void emit(char c) {
+        if (_out.length == _out.chars.length) {
+            passOn(_out);
+            _out = take(_emptyOut);
+            _lineOutput = -1;
+        }
+        _out.chars[_out.length] = c;
+        _out.length += 1;
+    }
+
+    /** Hand the current output chunk, if not empty, and then the end
+     *  marker to the writer. */
+    private void finishOutput() throws InterruptedException {
+        if (_out != null && _out.length > 0) {
+            _fullOut.put(_out);
+        }
+        Chunk end = new Chunk(0);
+        end.length = END;
+        _fullOut.put(end);
+    }
+
+    /** Hand CHUNK to the writer. */
+    private void passOn(Chunk chunk) {
+        try {
+            _fullOut.put(chunk);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Return the next chunk from QUEUE, waiting if necessary. */
+    private static Chunk take(BlockingQueue<Chunk> queue) {
+        try {
+            return queue.take();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+    }
+
+    /** Line separator written after each message line. */
+    private static final String NEWLINE = System.lineSeparator();
+
+    /** The configuration of my machine. */
+    private final Config _config;
+
+    /** Classification of message characters. */
+    private final CharTable _chars;
+
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Source of input. */
+    private final Reader _input;
+
+    /** Destination of output. */
+    private final Writer _output;
+
+    /** Input chunks ready to be filled, and filled ones. */
+    private final BlockingQueue<Chunk> _emptyIn, _fullIn;
+
+    /** Output chunks ready to be filled, and filled ones. */
+    private final BlockingQueue<Chunk> _emptyOut, _fullOut;
+
+    /** Set when reading fails. */
+    private volatile boolean _readFailed;
+
+    /** Set when writing fails. */
+    private volatile boolean _writeFailed;
+
+    /** True iff each message line is handed to the writer when
+     *  converted. */
+    private boolean _eachLine;
+
+    /** The machine converting messages. */
+    private Machine _machine;
+
+    /** Parser for the settings lines. */
+    private SettingsParser _parser;
+
+    /** The output chunk being filled. */
+    private Chunk _out;
+
+    /** The settings line read so far. */
+    private final StringBuilder _settings = new StringBuilder();
+
+    /** True iff the next character starts a line. */
+    private boolean _atLineStart = true;
+
+    /** True iff no line has been completed. */
+    private boolean _firstLine = true;
+
+    /** True iff the current line is a settings line. */
+    private boolean _inSettings;
+
+    /** True iff the previous character was a carriage return. */
+    private boolean _skipNewline;
+
+    /** Characters in the current line so far. */
+    private int _lineLength;
+
+    /** Letters in the current output group. */
+    private int _group;
+
+    /** Position in _out at which the current line's output starts, or
+     *  -1 if some of it has been passed to the writer. */
+    private int _lineOutput = -1;
+
+    /** Time at which the current line started. */
+    private long _lineStart;
+}
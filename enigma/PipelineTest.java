@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Florence Lau
+ */
+public class PipelineTest {
+
+    /** Return the strict CharTable for CONFIG. */
+    private static CharTable strict(Config config) {
+        return new CharTable(config.alphabet(), CharTable.Policy.STRICT);
+    }
+
+    /** Return the output of Main.process on INPUT with the naval
+     *  configuration. */
+    private static String expected(String input) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes);
+        Config config = navalConfig();
+        Main.process(config, strict(config), new Scanner(input), out, 0);
+        out.flush();
+        return bytes.toString();
+    }
+
+    /** Return the output of a pipeline with BUFFERS buffers of SIZE
+     *  characters on INPUT with the naval configuration. */
+    private static String piped(String input, int buffers, int size) {
+        StringWriter out = new StringWriter();
+        Config config = navalConfig();
+        new Pipeline(config, strict(config), new StringReader(input), out,
+                     buffers, size).run();
+        return out.toString();
+    }
+
+    /** Check that pipelines of various shapes agree with Main.process on
+     *  INPUT. */
+    private static void check(String input) {
+        String expected = expected(input);
+        for (int size : new int[] { 1, 2, 3, 7, 64, 1 << 16 }) {
+            for (int buffers : new int[] { 1, 2, 4 }) {
+                assertEquals(String.format("%d x %d", buffers, size),
+                             expected, piped(input, buffers, size));
+            }
+        }
+    }
+
+    @Test
+    public void testSimple() {
+        check("* B BETA I II III AAAA\nHELLO WORLD\n");
+        check("* B BETA I II III AAAA\nhello world");
+        check("* B BETA I II III AAAA\r\nHELLO\r\n\r\nWORLD\rAGAIN\n");
+        check("* B BETA I II III AAAA\n\n\nHELLO\n\n");
+    }
+
+    @Test
+    public void testSettingsChanges() {
+        check("* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+              + "FROM HIS SHOULDER HIAWATHA\n"
+              + "TOOK THE CAMERA OF ROSEWOOD\n"
+              + "* C GAMMA VIII VI V ZZZZ (AB)\n"
+              + "MADE OF SLIDING FOLDING ROSEWOOD\n"
+              + "* B BETA I II III AAAA\n"
+              + "  \n");
+    }
+
+    @Test
+    public void testLong() {
+        Random random = new Random(61);
+        StringBuilder input = new StringBuilder();
+        for (int k = 0; k < 50; k += 1) {
+            input.append(String.format("* B BETA I II III %c%c%c%c%n",
+                                       'A' + random.nextInt(26),
+                                       'A' + random.nextInt(26),
+                                       'A' + random.nextInt(26),
+                                       'A' + random.nextInt(26)));
+            for (int n = random.nextInt(4); n >= 0; n -= 1) {
+                input.append(AllocationTest.randomMessage(
+                    random, random.nextInt(300))).append('\n');
+            }
+        }
+        check(input.toString());
+    }
+
+    @Test
+    public void testErrors() {
+        String input = "* B BETA I II III AAAA\nHELLO\nWORLD\nBAD!\nMORE\n";
+        StringWriter out = new StringWriter();
+        try {
+            Config config = navalConfig();
+            new Pipeline(config, strict(config), new StringReader(input),
+                         out, 2, 64).run();
+            fail("no error for bad character");
+        } catch (EnigmaException excp) {
+            assertEquals("character not in alphabet", excp.getMessage());
+        }
+        assertEquals(expected("* B BETA I II III AAAA\nHELLO\nWORLD\n"),
+                     out.toString());
+        try {
+            piped("", 2, 4);
+            fail("no error for empty input");
+        } catch (EnigmaException excp) {
+            assertEquals("empty input", excp.getMessage());
+        }
+        try {
+            piped("* B BETA I I III AAAA\nHELLO\n", 2, 4);
+            fail("no error for bad settings");
+        } catch (EnigmaException excp) {
+            assertEquals("no duplicate rotors allowed", excp.getMessage());
+        }
+    }
+}
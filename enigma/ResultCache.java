@@ -0,0 +1,325 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.LinkedHashMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** A cache of converted message lines (Main's --result-cache), for
+ *  traffic in which the same messages are converted under the same
+ *  settings many times.  A result depends on the configuration, the
+ *  settings line, the machine's rotor settings when the message starts
+ *  (which differ for each message after the first following a settings
+ *  line), the treatment of characters outside the alphabet and the
+ *  message itself, so it is keyed by a SHA-256 hash of all of them, and
+ *  holds both the converted line and the rotor settings after it, which
+ *  are restored on a hit so that the machine advances exactly as if the
+ *  message had been converted.  Results are held in memory up to a
+ *  given total size, least recently used first out, and optionally also
+ *  in a ResultLog on disk, which outlives the process.
+ *  @author Florence Lau
+ */
+final class ResultCache implements ResultCacheMBean, AutoCloseable {
+
+    /** Name under which a cache is registered with JMX. */
+    static final String OBJECT_NAME = "enigma:type=ResultCache";
+
+    /** Default limit on the size of the in-memory tier. */
+    static final long DEFAULT_MAX_WEIGHT = 64L << 20;
+
+    /** Approximate heap bytes per cached result, excluding its text and
+     *  rotor settings. */
+    private static final int ENTRY_BYTES = 120;
+
+    /** The key of a result: the first 128 bits of its SHA-256 hash. */
+    static final class Key {
+        /** The key whose halves are HI and LO. */
+        Key(long hi, long lo) {
+            this.hi = hi;
+            this.lo = lo;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).hi == hi
+                && ((Key) obj).lo == lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hi ^ lo);
+        }
+
+        /** The halves of the key. */
+        final long hi, lo;
+    }
+
+    /** A cached result. */
+    private static final class Entry {
+        /** A result whose converted line is OUTPUT and after which the
+         *  rotor settings are AFTER. */
+        Entry(String output, int[] after) {
+            this.output = output;
+            this.after = after;
+            this.weight = ENTRY_BYTES + 2L * output.length()
+                + 4L * after.length;
+        }
+
+        /** The converted line. */
+        final String output;
+        /** Rotor settings after the message (see Machine.snapshot). */
+        final int[] after;
+        /** Estimated size in bytes. */
+        final long weight;
+    }
+
+    /** A cache for results of machines built from CONFIG, holding at
+     *  most MAXWEIGHT bytes of results in memory, and also keeping them
+     *  in a ResultLog in DIR unless DIR is null. */
+    ResultCache(Config config, long maxWeight, Path dir) {
+        if (maxWeight <= 0) {
+            throw error("cache size must be positive");
+        }
+        _maxWeight = maxWeight;
+        try {
+            _prefix = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new AssertionError("SHA-256 is not available", excp);
+        }
+        update(_prefix, config.digest());
+        _log = dir == null
+            ? null : new ResultLog(dir, ResultLog.DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Return the settings line SETTINGS in a canonical form, so that
+     *  lines differing only in case and spacing have the same key. */
+    static String normalize(String settings) {
+        return String.join(" ", settings.trim().toUpperCase().split("\\s+"));
+    }
+
+    /** Return MSG converted by MACHINE, set up by the (normalized)
+     *  settings line SETTINGS, with characters classified by CHARS, as
+     *  by Metrics.convert, leaving MACHINE in the state that conversion
+     *  would.  The result is taken from the cache if present, and
+     *  otherwise computed and added to it. */
+    String convert(CharTable chars, Machine machine, String settings,
+                   String msg) {
+        Key key = key(chars.policy(), settings, machine.snapshot(null),
+                      msg);
+        Entry entry = lookup(key);
+        if (entry != null) {
+            machine.restore(entry.after);
+            return entry.output;
+        }
+        String output = Metrics.convert(chars, machine, msg);
+        store(key, new Entry(output, machine.snapshot(null)));
+        return output;
+    }
+
+    /** Return the key of MSG converted with character policy POLICY
+     *  under SETTINGS from the rotor settings STATE. */
+    private Key key(CharTable.Policy policy, String settings, int[] state,
+                    String msg) {
+        MessageDigest sha;
+        try {
+            sha = (MessageDigest) _prefix.clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError("SHA-256 cannot be cloned", excp);
+        }
+        update(sha, policy.name());
+        update(sha, settings);
+        ByteBuffer settingsBytes = ByteBuffer.allocate(4 * state.length);
+        for (int s : state) {
+            settingsBytes.putInt(s);
+        }
+        sha.update(settingsBytes.array());
+        update(sha, msg);
+        ByteBuffer hash = ByteBuffer.wrap(sha.digest());
+        return new Key(hash.getLong(), hash.getLong());
+    }
+
+    /** Add the UTF-8 encoding of TEXT, preceded by its length, to
+     *  SHA. */
+    private static void update(MessageDigest sha, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        sha.update(ByteBuffer.allocate(4).putInt(bytes.length).array());
+        sha.update(bytes);
+    }
+
+    /** Return the result with key KEY from memory or disk, or null if
+     *  there is none, counting the hit or miss. */
+    private synchronized Entry lookup(Key key) {
+        Entry entry = _entries.get(key);
+        if (entry != null) {
+            _memoryHits += 1;
+            return entry;
+        }
+        if (_log != null) {
+            byte[] payload = _log.get(key);
+            if (payload != null) {
+                entry = decode(payload);
+                _diskHits += 1;
+                add(key, entry);
+                return entry;
+            }
+        }
+        _misses += 1;
+        return null;
+    }
+
+    /** Add ENTRY with key KEY to memory and to disk. */
+    private synchronized void store(Key key, Entry entry) {
+        add(key, entry);
+        if (_log != null) {
+            _log.put(key, encode(entry));
+        }
+    }
+
+    /** Add ENTRY, whose key is KEY, to memory, evicting other entries
+     *  as needed to keep within my size limit.  An entry larger than the
+     *  limit by itself is not held. */
+    private void add(Key key, Entry entry) {
+        if (entry.weight > _maxWeight) {
+            return;
+        }
+        while (_weight + entry.weight > _maxWeight) {
+            Entry victim = _entries.values().iterator().next();
+            _entries.values().remove(victim);
+            _weight -= victim.weight;
+            _evictions += 1;
+        }
+        Entry old = _entries.put(key, entry);
+        _weight += entry.weight - (old == null ? 0 : old.weight);
+    }
+
+    /** Return ENTRY as a record payload: the number of rotor settings,
+     *  the settings, and the UTF-8 converted line. */
+    private static byte[] encode(Entry entry) {
+        byte[] text = entry.output.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer result =
+            ByteBuffer.allocate(4 + 4 * entry.after.length + text.length);
+        result.putInt(entry.after.length);
+        for (int s : entry.after) {
+            result.putInt(s);
+        }
+        return result.put(text).array();
+    }
+
+    /** Return the entry encoded in PAYLOAD by encode. */
+    private static Entry decode(byte[] payload) {
+        ByteBuffer buf = ByteBuffer.wrap(payload);
+        int[] after = new int[buf.getInt()];
+        for (int k = 0; k < after.length; k += 1) {
+            after[k] = buf.getInt();
+        }
+        return new Entry(new String(payload, buf.position(),
+                                    buf.remaining(), StandardCharsets.UTF_8),
+                         after);
+    }
+
+    @Override
+    public synchronized long getMemoryHits() {
+        return _memoryHits;
+    }
+
+    @Override
+    public synchronized long getDiskHits() {
+        return _diskHits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return _misses;
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        long total = _memoryHits + _diskHits + _misses;
+        return total == 0 ? 0 : (double) (_memoryHits + _diskHits) / total;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return _evictions;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return _entries.size();
+    }
+
+    @Override
+    public synchronized long getWeight() {
+        return _weight;
+    }
+
+    @Override
+    public long getMaxWeight() {
+        return _maxWeight;
+    }
+
+    @Override
+    public synchronized String getSummary() {
+        return String.format("results: %d cached (%d of %d bytes), "
+                             + "%d memory hits, %d disk hits, %d misses "
+                             + "(hit rate %.1f%%), %d evictions%n",
+                             _entries.size(), _weight, _maxWeight,
+                             _memoryHits, _diskHits, _misses,
+                             100 * getHitRate(), _evictions);
+    }
+
+    /** Register me with the platform MBean server under OBJECT_NAME,
+     *  replacing any cache registered before. */
+    void register() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register result cache: %s",
+                        excp.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (_log != null) {
+            _log.close();
+        }
+    }
+
+    /** Maximum total estimated size of results in memory. */
+    private final long _maxWeight;
+
+    /** Hash of the configuration, to be extended with the rest of a
+     *  key. */
+    private final MessageDigest _prefix;
+
+    /** The on-disk tier, or null if none. */
+    private final ResultLog _log;
+
+    /** Results in memory by key, least recently used first. */
+    private final LinkedHashMap<Key, Entry> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Total estimated size of _entries. */
+    private long _weight;
+
+    /** Statistics. */
+    private long _memoryHits, _diskHits, _misses, _evictions;
+}
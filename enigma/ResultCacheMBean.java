@@ -0,0 +1,36 @@
+package enigma;
+
+/** The management interface of ResultCache.
+ *  @author Florence Lau
+ */
+public interface ResultCacheMBean {
+
+    /** Return the number of messages answered from memory. */
+    long getMemoryHits();
+
+    /** Return the number of messages answered from disk. */
+    long getDiskHits();
+
+    /** Return the number of messages that were converted. */
+    long getMisses();
+
+    /** Return the fraction of messages answered from either tier, or 0
+     *  if there have been none. */
+    double getHitRate();
+
+    /** Return the number of results evicted from memory. */
+    long getEvictions();
+
+    /** Return the number of results held in memory. */
+    int getSize();
+
+    /** Return the total estimated size in bytes of the results held in
+     *  memory. */
+    long getWeight();
+
+    /** Return the limit on getWeight(). */
+    long getMaxWeight();
+
+    /** Return a human-readable summary of all the above. */
+    String getSummary();
+}
@@ -0,0 +1,191 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Comparator;
+import java.util.Scanner;
+import java.util.stream.Stream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ResultCache and ResultLog
+ *  classes.
+ *  @author Florence Lau
+ */
+public class ResultCacheTest {
+
+    /** A block of traffic that repeats messages, including the same
+     *  message twice in a row (which must convert differently). */
+    private static final String BLOCK =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "Took the camera of rosewood\n"
+        + "*   b beta III IV I  AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM his shoulder Hiawatha\n"
+        + "* B BETA III IV I AAAA\n"
+        + "FROM his shoulder Hiawatha\n";
+
+    /** The strict CharTable for the naval alphabet. */
+    private static final CharTable STRICT =
+        new CharTable(navalConfig().alphabet(), CharTable.Policy.STRICT);
+
+    /** Return the output of Main.process on INPUT with RESULTS. */
+    private static String run(ResultCache results, String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Main.process(navalConfig(), STRICT, results, null,
+                     new Scanner(input), new PrintStream(out), 0);
+        return out.toString();
+    }
+
+    /** Return a fresh temporary directory. */
+    private static Path tempDir() throws IOException {
+        return Files.createTempDirectory("enigma-results");
+    }
+
+    /** Delete DIR and its contents. */
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder())
+                .forEach(f -> f.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testSameOutput() {
+        String input = BLOCK + BLOCK.substring(BLOCK.indexOf('\n') + 1);
+        String expected = run(null, input);
+        ResultCache results =
+            new ResultCache(navalConfig(), 1 << 20, null);
+        assertEquals(expected, run(results, input));
+        String[] lines = expected.split("\n");
+        assertNotEquals(lines[0], lines[1]);
+        assertEquals(7, results.getMisses());
+        assertEquals(3, results.getMemoryHits());
+        assertEquals(expected, run(results, input));
+        assertEquals(7, results.getMisses());
+        assertEquals(13, results.getMemoryHits());
+        assertEquals(13.0 / 20, results.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testKeys() {
+        ResultCache results =
+            new ResultCache(navalConfig(), 1 << 20, null);
+        run(results, BLOCK);
+        long misses = results.getMisses();
+        CharTable pass =
+            new CharTable(navalConfig().alphabet(), CharTable.Policy.PASS);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Main.process(navalConfig(), pass, results, null, new Scanner(BLOCK),
+                     new PrintStream(out), 0);
+        assertEquals(misses * 2, results.getMisses());
+        Config other = Config.read(new Scanner(NAVAL_CONFIG + " X N (AB)"));
+        assertNotEquals(navalConfig().digest(), other.digest());
+        assertEquals(navalConfig().digest(), navalConfig().digest());
+    }
+
+    @Test
+    public void testEviction() {
+        ResultCache results = new ResultCache(navalConfig(), 300, null);
+        String expected = run(null, BLOCK);
+        assertEquals(expected, run(results, BLOCK));
+        assertTrue(results.getEvictions() > 0);
+        assertTrue(results.getWeight() <= 300);
+        assertEquals(expected, run(results, BLOCK));
+    }
+
+    @Test
+    public void testDiskTier() throws IOException {
+        Path dir = tempDir();
+        String expected = run(null, BLOCK);
+        try (ResultCache results =
+                 new ResultCache(navalConfig(), 1 << 20, dir)) {
+            assertEquals(expected, run(results, BLOCK));
+        }
+        try (ResultCache results =
+                 new ResultCache(navalConfig(), 1 << 20, dir)) {
+            assertEquals(expected, run(results, BLOCK));
+            assertEquals(0, results.getMisses());
+            assertEquals(4, results.getDiskHits());
+            assertEquals(1, results.getMemoryHits());
+        }
+        delete(dir);
+    }
+
+    @Test
+    public void testLogIndex() throws IOException {
+        Path dir = tempDir();
+        int n = 20000;
+        try (ResultLog log = new ResultLog(dir, 1 << 16)) {
+            for (int k = 0; k < n; k += 1) {
+                log.put(new ResultCache.Key(k >> 3, k & 7),
+                        Integer.toString(k).getBytes());
+            }
+            log.put(new ResultCache.Key(0, 5), "again".getBytes());
+            assertEquals(n, log.size());
+            assertEquals("again",
+                         new String(log.get(new ResultCache.Key(0, 5))));
+        }
+        try (ResultLog log = new ResultLog(dir, 1 << 16)) {
+            assertEquals(n, log.size());
+            for (int k = 6; k < n; k += 1) {
+                assertEquals(Integer.toString(k), new String(
+                    log.get(new ResultCache.Key(k >> 3, k & 7))));
+            }
+            assertEquals("again",
+                         new String(log.get(new ResultCache.Key(0, 5))));
+            assertNull(log.get(new ResultCache.Key(n, 0)));
+        }
+        delete(dir);
+    }
+
+    @Test
+    public void testLogSegmentsAndDamage() throws IOException {
+        Path dir = tempDir();
+        ResultCache.Key[] keys = new ResultCache.Key[50];
+        try (ResultLog log = new ResultLog(dir, 1000)) {
+            for (int k = 0; k < keys.length; k += 1) {
+                keys[k] = new ResultCache.Key(k, -k);
+                log.put(keys[k], ("record " + k).repeat(10).getBytes());
+            }
+            assertTrue(log.segments() > 1);
+            assertEquals("record 7", new String(log.get(keys[7]), 0, 8));
+            assertNull(log.get(new ResultCache.Key(1, 1)));
+        }
+        Path first = dir.resolve("segment-000000.log");
+        try (FileChannel f = FileChannel.open(first,
+                                              StandardOpenOption.WRITE)) {
+            f.write(ByteBuffer.wrap(new byte[] { 'X' }), 10);
+        }
+        Path last;
+        try (ResultLog log = new ResultLog(dir, 1000)) {
+            assertEquals(keys.length, log.size());
+            assertNull(log.get(keys[0]));
+            assertEquals("record 49", new String(log.get(keys[49]), 0, 9));
+            last = dir.resolve(String.format("segment-%06d.log",
+                                             log.segments() - 1));
+        }
+        try (FileChannel f = FileChannel.open(last,
+                                              StandardOpenOption.WRITE)) {
+            f.truncate(f.size() - 5);
+        }
+        try (ResultLog log = new ResultLog(dir, 1000)) {
+            assertNull(log.get(keys[49]));
+            assertNotNull(log.get(keys[1]));
+        }
+        delete(dir);
+    }
+}
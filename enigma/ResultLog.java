@@ -0,0 +1,311 @@
+package enigma;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** The on-disk tier of a ResultCache: a directory of append-only segment
+ *  files holding records, each with an index file of the keys and
+ *  offsets of its records.  Records are only ever appended to the newest
+ *  segment; when it reaches a given size, a new one is started.  On
+ *  opening, the index files are read (not the segments), and index
+ *  entries for records that were not completely written are ignored, as
+ *  are records whose checksums do not match when read, so that a crash
+ *  while writing loses at most the records being written.  The index is
+ *  held in memory as an open-addressed table of longs, three per slot
+ *  (the two key halves and the segment number and offset packed into
+ *  one), kept at most half full, so that it takes at most 48 bytes per
+ *  record and no objects.  A ResultLog is not thread-safe.
+ *  @author Florence Lau
+ */
+final class ResultLog implements AutoCloseable {
+
+    /** Default size at which a new segment is started. */
+    static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    /** Bytes in a record header: payload length and CRC-32. */
+    private static final int HEADER = 8;
+
+    /** Bytes in an index entry: two key halves and an offset. */
+    private static final int INDEX_ENTRY = 24;
+
+    /** Number of bits of a packed location holding the offset. */
+    private static final int OFFSET_BITS = 40;
+
+    /** Largest segment size accepted. */
+    private static final long MAX_SEGMENT_SIZE = 1L << (OFFSET_BITS - 1);
+
+    /** Largest number of segments. */
+    private static final int MAX_SEGMENTS = 1 << (63 - OFFSET_BITS);
+
+    /** Longs per slot of the index table. */
+    private static final int SLOT = 3;
+
+    /** A log in directory DIR, created if necessary, starting new
+     *  segments when the current one reaches SEGMENTSIZE bytes. */
+    ResultLog(Path dir, long segmentSize) {
+        if (segmentSize <= 0 || segmentSize > MAX_SEGMENT_SIZE) {
+            throw error("bad segment size: %d", segmentSize);
+        }
+        _dir = dir;
+        _segmentSize = segmentSize;
+        try {
+            Files.createDirectories(dir);
+            List<Integer> numbers = new ArrayList<>();
+            try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(dir, "segment-*.log")) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    numbers.add(Integer.parseInt(
+                        name.substring(8, name.length() - 4)));
+                }
+            }
+            numbers.sort(null);
+            for (int number : numbers) {
+                openSegment(number);
+                loadIndex(number);
+            }
+            if (_segments.isEmpty()) {
+                openSegment(0);
+            }
+        } catch (IOException | NumberFormatException excp) {
+            close();
+            throw error("could not open result log %s", dir);
+        }
+    }
+
+    /** Return the path of segment NUMBER's file with SUFFIX. */
+    private Path file(int number, String suffix) {
+        return _dir.resolve(String.format("segment-%06d.%s", number,
+                                          suffix));
+    }
+
+    /** Open segment NUMBER and its index, creating them if needed, and
+     *  make it the current segment. */
+    private void openSegment(int number) throws IOException {
+        if (number >= MAX_SEGMENTS) {
+            throw new IOException("too many segments");
+        }
+        while (_segments.size() < number) {
+            _segments.add(null);
+            _indexes.add(null);
+        }
+        _segments.add(FileChannel.open(file(number, "log"),
+                                       StandardOpenOption.CREATE,
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE));
+        _indexes.add(FileChannel.open(file(number, "idx"),
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.READ,
+                                      StandardOpenOption.WRITE));
+        _current = number;
+    }
+
+    /** Add the entries of segment NUMBER's index to _table, ignoring
+     *  any that refer past the end of the segment. */
+    private void loadIndex(int number) throws IOException {
+        FileChannel index = _indexes.get(number);
+        long segmentSize = _segments.get(number).size();
+        long entries = index.size() / INDEX_ENTRY;
+        ByteBuffer buf = ByteBuffer.allocate(INDEX_ENTRY * 1024);
+        index.position(0);
+        for (long k = 0; k < entries; k += buf.limit() / INDEX_ENTRY) {
+            buf.clear();
+            buf.limit((int) Math.min(buf.capacity(),
+                                     (entries - k) * INDEX_ENTRY));
+            while (buf.hasRemaining()) {
+                if (index.read(buf) < 0) {
+                    throw new IOException("index truncated");
+                }
+            }
+            buf.flip();
+            while (buf.hasRemaining()) {
+                long hi = buf.getLong(), lo = buf.getLong();
+                long offset = buf.getLong();
+                if (offset >= 0 && offset + HEADER <= segmentSize) {
+                    record(hi, lo, number, offset);
+                }
+            }
+        }
+        index.position(entries * INDEX_ENTRY);
+    }
+
+    /** Return the payload of the record with key KEY, or null if there
+     *  is none or it is damaged. */
+    byte[] get(ResultCache.Key key) {
+        int slot = slot(key.hi, key.lo);
+        long packed = _table[slot + 2];
+        if (packed == 0) {
+            return null;
+        }
+        long position = (packed - 1) & ((1L << OFFSET_BITS) - 1);
+        try {
+            FileChannel segment =
+                _segments.get((int) ((packed - 1) >>> OFFSET_BITS));
+            ByteBuffer header = ByteBuffer.allocate(HEADER);
+            readFully(segment, header, position);
+            int length = header.getInt(0);
+            long crc = header.getInt(4) & 0xffffffffL;
+            if (length < 0 || position + HEADER + length > segment.size()) {
+                return null;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(segment, payload, position + HEADER);
+            CRC32 check = new CRC32();
+            check.update(payload.array());
+            return check.getValue() == crc ? payload.array() : null;
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Fill BUF from CHANNEL starting at POSITION. */
+    private static void readFully(FileChannel channel, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position);
+            if (n < 0) {
+                throw new IOException("record truncated");
+            }
+            position += n;
+        }
+    }
+
+    /** Append a record with key KEY and payload PAYLOAD, starting a new
+     *  segment first if the current one is full. */
+    void put(ResultCache.Key key, byte[] payload) {
+        try {
+            FileChannel segment = _segments.get(_current);
+            if (segment.size() >= _segmentSize) {
+                openSegment(_current + 1);
+                segment = _segments.get(_current);
+            }
+            long offset = segment.size();
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(HEADER + payload.length);
+            record.putInt(payload.length).putInt((int) crc.getValue())
+                .put(payload).flip();
+            while (record.hasRemaining()) {
+                segment.write(record, offset + record.position());
+            }
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY);
+            entry.putLong(key.hi).putLong(key.lo).putLong(offset).flip();
+            FileChannel index = _indexes.get(_current);
+            while (entry.hasRemaining()) {
+                index.write(entry);
+            }
+            record(key.hi, key.lo, _current, offset);
+        } catch (IOException excp) {
+            throw error("could not write result log %s", _dir);
+        }
+    }
+
+    /** Return the index in _table of the slot for the key with halves
+     *  HI and LO: the one holding it, or else the empty one where it
+     *  would go. */
+    private int slot(long hi, long lo) {
+        int mask = _table.length / SLOT - 1;
+        int i = (int) Util.mix(hi ^ Util.mix(lo)) & mask;
+        while (true) {
+            int slot = SLOT * i;
+            if (_table[slot + 2] == 0
+                || (_table[slot] == hi && _table[slot + 1] == lo)) {
+                return slot;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    /** Note that the record with key halves HI and LO is at OFFSET in
+     *  segment number SEGMENT, replacing any earlier location. */
+    private void record(long hi, long lo, int segment, long offset) {
+        if (offset >= 1L << OFFSET_BITS) {
+            return;
+        }
+        int slot = slot(hi, lo);
+        if (_table[slot + 2] == 0) {
+            if (2 * (_size + 1) > _table.length / SLOT) {
+                grow();
+                slot = slot(hi, lo);
+            }
+            _size += 1;
+        }
+        _table[slot] = hi;
+        _table[slot + 1] = lo;
+        _table[slot + 2] = ((long) segment << OFFSET_BITS | offset) + 1;
+    }
+
+    /** Double the number of slots in _table. */
+    private void grow() {
+        long[] old = _table;
+        if (old.length > Integer.MAX_VALUE / 2 - SLOT) {
+            throw error("result log index too large");
+        }
+        _table = new long[2 * old.length];
+        for (int slot = 0; slot < old.length; slot += SLOT) {
+            if (old[slot + 2] != 0) {
+                int to = slot(old[slot], old[slot + 1]);
+                System.arraycopy(old, slot, _table, to, SLOT);
+            }
+        }
+    }
+
+    /** Return the number of records I can find. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of segments. */
+    int segments() {
+        return _current + 1;
+    }
+
+    @Override
+    public void close() {
+        List<FileChannel> channels = new ArrayList<>(_segments);
+        channels.addAll(_indexes);
+        for (FileChannel channel : channels) {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException excp) {
+                /* Ignore: nothing more can be lost. */
+            }
+        }
+    }
+
+    /** Directory holding my files. */
+    private final Path _dir;
+
+    /** Size at which a new segment is started. */
+    private final long _segmentSize;
+
+    /** Open segments and their indexes, by number. */
+    private final List<FileChannel> _segments = new ArrayList<>(),
+        _indexes = new ArrayList<>();
+
+    /** Number of the segment being appended to. */
+    private int _current;
+
+    /** Index of records: for each slot, the key halves and, if the slot
+     *  is used, one more than the segment number shifted left by
+     *  OFFSET_BITS plus the offset of the record (otherwise 0).  The
+     *  number of slots is a power of two. */
+    private long[] _table = new long[SLOT * 16];
+
+    /** Number of slots used in _table. */
+    private int _size;
+}
@@ -67,6 +67,12 @@ class Rotor {
         }
     }
 
+    /** Set setting() to POSN, which must be in the range 0..size()-1,
+     *  without checking it.  Used to restore saved states. */
+    final void restore(int posn) {
+        _setting = posn;
+    }
+
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
@@ -87,6 +93,12 @@ class Rotor {
         return false;
     }
 
+    /** Returns true iff I would be at a notch in setting POSN.  By
+     *  default, never. */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -0,0 +1,334 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+
+import static enigma.EnigmaException.*;
+
+/** A local Enigma conversion service.  The service listens on a TCP port
+ *  of the loopback interface or on a Unix domain socket and serves any
+ *  number of connections, each with its own machines built from a set of
+ *  shared, immutable Configs.  A client sends the id of a configuration
+ *  on its first line, followed by input in the same format Main accepts
+ *  (a settings line, then message lines and further settings lines).
+ *  Each converted message line is sent back in groups of five.  Errors
+ *  are reported as a single line "Error: MESSAGE", after which the
+ *  connection is closed.
+ *  @author Florence Lau
+ */
+public final class Server implements Closeable {
+
+    /** Default maximum number of simultaneous connections. */
+    static final int DEFAULT_MAX_CONNECTIONS = 64;
+
+    /** Default limit, in bytes, on the estimated size of the configurations
+     *  cached for --configs. */
+    static final long DEFAULT_CACHE_SIZE = 64L << 20;
+
+    /** Run a server as specified by ARGS, which has the form
+     *      [--port=N | --socket=PATH] [--max=N]
+     *      [--configs=DIR [--cache=BYTES] [--evict=lru|lfu]] ID=CONFIG ...
+     *  where each ID=CONFIG names a configuration file and the id by
+     *  which clients refer to it.  With --port, listens on port N of the
+     *  loopback interface; with --socket, on the Unix domain socket PATH.
+     *  --max limits the number of connections served at once.  With
+     *  --configs, clients may also use any id ID for which DIR/ID.conf
+     *  exists; those files are parsed on demand and kept in a
+     *  ConfigRegistry of at most BYTES bytes (default DEFAULT_CACHE_SIZE)
+     *  with the given eviction policy (default lru).  The server's Metrics
+     *  and registry are registered with JMX. */
+    public static void main(String... args) {
+        try {
+            SocketAddress address = null;
+            int max = DEFAULT_MAX_CONNECTIONS;
+            Map<String, Config> configs = new HashMap<>();
+            Path configDir = null;
+            long cacheSize = DEFAULT_CACHE_SIZE;
+            ConfigRegistry.Policy policy = ConfigRegistry.Policy.LRU;
+            for (String arg : args) {
+                if (arg.startsWith("--port=")) {
+                    address = new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(),
+                        parseInt(arg.substring(7)));
+                } else if (arg.startsWith("--socket=")) {
+                    address = UnixDomainSocketAddress.of(arg.substring(9));
+                } else if (arg.startsWith("--max=")) {
+                    max = parseInt(arg.substring(6));
+                } else if (arg.startsWith("--configs=")) {
+                    configDir = Path.of(arg.substring(10));
+                } else if (arg.startsWith("--cache=")) {
+                    cacheSize = parseLong(arg.substring(8));
+                } else if (arg.startsWith("--evict=")) {
+                    policy = parsePolicy(arg.substring(8));
+                } else if (arg.indexOf('=') > 0) {
+                    int k = arg.indexOf('=');
+                    configs.put(arg.substring(0, k),
+                                Metrics.readConfig(arg.substring(k + 1)));
+                } else {
+                    throw error("unknown argument: %s", arg);
+                }
+            }
+            if (address == null || (configs.isEmpty() && configDir == null)) {
+                throw error("usage: java enigma.Server [--port=N | "
+                            + "--socket=PATH] [--max=N] [--configs=DIR "
+                            + "[--cache=BYTES] [--evict=lru|lfu]] "
+                            + "ID=CONFIG ...");
+            }
+            Metrics.register();
+            Server server = new Server(configs, max);
+            if (configDir != null) {
+                ConfigRegistry registry =
+                    new ConfigRegistry(cacheSize, policy);
+                registry.register();
+                server.serveDirectory(configDir, registry);
+            }
+            System.err.printf("Listening on %s%n", server.start(address));
+            server.await();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (InterruptedException excp) {
+            System.err.println("Error: interrupted");
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of the decimal numeral S. */
+    private static int parseInt(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return the value of the decimal numeral S, which may exceed the
+     *  range of an int. */
+    private static long parseLong(String s) {
+        try {
+            return Long.parseLong(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return the eviction policy named S ("lru" or "lfu"). */
+    private static ConfigRegistry.Policy parsePolicy(String s) {
+        switch (s) {
+        case "lru":
+            return ConfigRegistry.Policy.LRU;
+        case "lfu":
+            return ConfigRegistry.Policy.LFU;
+        default:
+            throw error("unknown eviction policy: %s", s);
+        }
+    }
+
+    /** A server for the configurations in CONFIGS (keyed by id), which
+     *  serves at most MAXCONNECTIONS connections at once. */
+    Server(Map<String, Config> configs, int maxConnections) {
+        if (maxConnections < 1) {
+            throw error("connection limit must be positive");
+        }
+        _configs = Map.copyOf(configs);
+        _permits = new Semaphore(maxConnections);
+        _workers = Executors.newCachedThreadPool(
+            Util.daemons("enigma-connection"));
+    }
+
+    /** Also serve the configuration in DIR/ID.conf to clients asking for
+     *  any id ID not given to my constructor, loading it through
+     *  REGISTRY.  Must be called before start. */
+    void serveDirectory(Path dir, ConfigRegistry registry) {
+        _configDir = dir;
+        _registry = registry;
+    }
+
+    /** Return the configuration clients call ID. */
+    private Config config(String id) {
+        Config config = _configs.get(id);
+        if (config != null) {
+            return config;
+        }
+        if (_registry != null && CONFIG_ID.matcher(id).matches()) {
+            Path file = _configDir.resolve(id + ".conf");
+            if (Files.isRegularFile(file)) {
+                return _registry.load(file);
+            }
+        }
+        throw error("unknown configuration: %s", id);
+    }
+
+    /** Start listening on ADDRESS, which is either an InetSocketAddress
+     *  or a UnixDomainSocketAddress, and return the address actually
+     *  bound (useful when ADDRESS specifies port 0). */
+    SocketAddress start(SocketAddress address) throws IOException {
+        if (address instanceof UnixDomainSocketAddress) {
+            _socketPath = ((UnixDomainSocketAddress) address).getPath();
+            _listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _listener = ServerSocketChannel.open();
+        }
+        _listener.bind(address);
+        _acceptor = new Thread(this::acceptLoop, "enigma-acceptor");
+        _acceptor.setDaemon(true);
+        _acceptor.start();
+        return _listener.getLocalAddress();
+    }
+
+    /** Accept connections until closed, never holding more than the
+     *  permitted number at once.  Excess clients wait in the listen
+     *  backlog until a connection finishes. */
+    private void acceptLoop() {
+        while (_listener.isOpen()) {
+            try {
+                _permits.acquire();
+            } catch (InterruptedException excp) {
+                return;
+            }
+            SocketChannel channel;
+            try {
+                channel = _listener.accept();
+            } catch (IOException excp) {
+                _permits.release();
+                return;
+            }
+            _workers.execute(() -> {
+                try {
+                    serve(channel);
+                } finally {
+                    _permits.release();
+                }
+            });
+        }
+    }
+
+    /** Handle the single connection on CHANNEL. */
+    private void serve(SocketChannel channel) {
+        try (channel) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+                Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            try {
+                convert(in, out);
+            } catch (EnigmaException excp) {
+                Metrics.recordError();
+                out.write("Error: " + excp.getMessage());
+                out.newLine();
+            }
+            out.flush();
+        } catch (IOException excp) {
+            /* The client went away; nothing more to do. */
+            return;
+        }
+    }
+
+    /** Read a configuration id and then messages in Main's input format
+     *  from IN, writing the converted messages to OUT. */
+    private void convert(BufferedReader in, BufferedWriter out)
+        throws IOException {
+        String id = in.readLine();
+        if (id == null) {
+            return;
+        }
+        Config config = config(id.trim());
+        String settings = in.readLine();
+        if (settings == null) {
+            throw error("missing settings line");
+        }
+        SettingsParser parser = new SettingsParser(config);
+        Machine machine = config.newMachine();
+        CharTable chars =
+            new CharTable(config.alphabet(), CharTable.Policy.STRICT);
+        Metrics.setUp(parser, machine, settings.toUpperCase());
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            line = line.toUpperCase();
+            if (line.startsWith("*")) {
+                Metrics.setUp(parser, machine, line);
+            } else {
+                out.write(Metrics.convert(chars, machine, line));
+                out.newLine();
+                if (!in.ready()) {
+                    out.flush();
+                }
+            }
+        }
+    }
+
+    /** Wait until I stop accepting connections. */
+    void await() throws InterruptedException {
+        _acceptor.join();
+    }
+
+    /** Stop accepting connections.  Connections in progress are allowed
+     *  to finish. */
+    @Override
+    public void close() throws IOException {
+        if (_listener != null) {
+            _listener.close();
+        }
+        if (_acceptor != null) {
+            _acceptor.interrupt();
+        }
+        _workers.shutdown();
+        if (_socketPath != null) {
+            Files.deleteIfExists(_socketPath);
+        }
+    }
+
+    /** Form of the ids that may name files in _configDir. */
+    private static final Pattern CONFIG_ID =
+        Pattern.compile("[A-Za-z0-9_][-A-Za-z0-9_.]*");
+
+    /** Parsed configurations, keyed by id. */
+    private final Map<String, Config> _configs;
+
+    /** One permit for each connection that may still be served. */
+    private final Semaphore _permits;
+
+    /** Threads serving connections. */
+    private final ExecutorService _workers;
+
+    /** The listening channel, once started. */
+    private ServerSocketChannel _listener;
+
+    /** Thread accepting connections, once started. */
+    private Thread _acceptor;
+
+    /** Directory of configuration files served on demand, or null. */
+    private Path _configDir;
+
+    /** Cache of the configurations in _configDir. */
+    private ConfigRegistry _registry;
+
+    /** Path of my Unix domain socket, if I use one. */
+    private Path _socketPath;
+}
@@ -0,0 +1,149 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Map;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Florence Lau
+ */
+public class ServerTest {
+
+    /** Return a server for the naval configuration (id "naval") with at
+     *  most MAX connections, listening on an ephemeral loopback port. */
+    private Server startServer(int max) throws IOException {
+        Server server = new Server(Map.of("naval", navalConfig()), max);
+        _address = (InetSocketAddress) server.start(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return server;
+    }
+
+    /** Return a new client socket connected to the server. */
+    private Socket connect() throws IOException {
+        return new Socket(_address.getAddress(), _address.getPort());
+    }
+
+    /** Send REQUEST on S, close its output, and return its reply. */
+    private String exchange(Socket s, String request) throws IOException {
+        Writer out = new OutputStreamWriter(s.getOutputStream(),
+                                            StandardCharsets.UTF_8);
+        out.write(request);
+        out.flush();
+        s.shutdownOutput();
+        return readAll(s);
+    }
+
+    /** Return all remaining lines from S, each ending in a newline. */
+    private String readAll(Socket s) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+            s.getInputStream(), StandardCharsets.UTF_8));
+        StringBuilder result = new StringBuilder();
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testConvert() throws IOException {
+        try (Server server = startServer(4); Socket s = connect()) {
+            assertEquals("ILBDA AMTAZ \nHELLO WORLD \n",
+                         exchange(s, "naval\n* B BETA I II III AAAA\n"
+                                  + "Hello world\n"
+                                  + "* B BETA I II III AAAA\n"
+                                  + "ILBDA AMTAZ\n"));
+        }
+    }
+
+    @Test
+    public void testUnknownConfig() throws IOException {
+        try (Server server = startServer(4); Socket s = connect()) {
+            assertTrue(exchange(s, "army\n* B BETA I II III AAAA\n")
+                       .startsWith("Error: "));
+        }
+    }
+
+    @Test
+    public void testBadSettings() throws IOException {
+        try (Server server = startServer(4); Socket s = connect()) {
+            assertTrue(exchange(s, "naval\n* B BETA I I III AAAA\nHI\n")
+                       .startsWith("Error: "));
+        }
+    }
+
+    @Test
+    public void testConnectionCap() throws IOException {
+        try (Server server = startServer(1); Socket first = connect();
+             Socket second = connect()) {
+            second.getOutputStream().write(
+                "naval\n* B BETA I II III AAAA\nHELLO\n"
+                .getBytes(StandardCharsets.UTF_8));
+            second.shutdownOutput();
+            second.setSoTimeout(300);
+            try {
+                second.getInputStream().read();
+                fail("second connection served while first was open");
+            } catch (SocketTimeoutException excp) {
+                /* Expected: the second client is still waiting. */
+            }
+            first.close();
+            second.setSoTimeout(5000);
+            assertEquals("ILBDA \n", readAll(second));
+        }
+    }
+
+    @Test
+    public void testConfigDirectory() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path file = dir.resolve("fleet.conf");
+        Files.writeString(file, NAVAL_CONFIG);
+        Files.writeString(dir.resolve("other.conf"), NAVAL_CONFIG);
+        ConfigRegistry registry =
+            new ConfigRegistry(1 << 20, ConfigRegistry.Policy.LRU);
+        try (Server server = new Server(Map.of(), 4)) {
+            server.serveDirectory(dir, registry);
+            _address = (InetSocketAddress) server.start(
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            for (String id : new String[] { "fleet", "other", "fleet" }) {
+                try (Socket s = connect()) {
+                    assertEquals("ILBDA AMTAZ \n",
+                                 exchange(s, id + "\n* B BETA I II III AAAA\n"
+                                          + "HELLO WORLD\n"));
+                }
+            }
+            try (Socket s = connect()) {
+                assertTrue(exchange(s, "../fleet\n* B BETA I II III AAAA\n")
+                           .startsWith("Error: unknown configuration"));
+            }
+        } finally {
+            Files.delete(file);
+            Files.delete(dir.resolve("other.conf"));
+            Files.delete(dir);
+        }
+        assertEquals(1, registry.getMisses());
+        assertEquals(2, registry.getHits());
+    }
+
+    /** Address of the server under test. */
+    private InetSocketAddress _address;
+}
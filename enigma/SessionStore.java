@@ -0,0 +1,324 @@
+package enigma;
+
+import java.nio.ByteBuffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A store of suspended machine states for a large number of sessions
+ *  that share one Config.  Each session occupies a fixed-size slot in
+ *  direct (off-heap) memory holding, for every rotor slot, the number of
+ *  the rotor in it and its setting, plus the number of its plugboard.
+ *  Only the Config and a table of the distinct plugboards of open
+ *  sessions live on the heap; a plugboard leaves the table when the last
+ *  session using it is closed or suspended with another plugboard.
+ *  Slots are addressed directly by session id, so suspending and resuming
+ *  a session takes time proportional to the number of rotors.  Messages
+ *  are converted by a machine kept for each thread, which is loaded from
+ *  a slot by rotor number (see Machine.reset), so converting in a
+ *  session allocates no machine.
+ *
+ *  The store may be used from several threads, provided no two threads
+ *  use the same session at once.
+ *  @author Florence Lau
+ */
+class SessionStore {
+
+    /** Number of slots in each block of off-heap memory. */
+    private static final int SLOTS_PER_BLOCK = 1 << 16;
+
+    /** Plugboard field value marking a free slot. */
+    private static final int FREE = -1;
+
+    /** Plugboard field value for a session without a plugboard. */
+    private static final int NO_PLUGBOARD = 0;
+
+    /** A store for at most CAPACITY sessions using machines built from
+     *  CONFIG. */
+    SessionStore(Config config, int capacity) {
+        if (capacity <= 0) {
+            throw error("session capacity must be positive");
+        }
+        _config = config;
+        _capacity = capacity;
+        _nRotors = config.numRotors();
+        _slotSize = Integer.BYTES + 4 * _nRotors;
+        _blocks = new ByteBuffer[(capacity - 1) / SLOTS_PER_BLOCK + 1];
+        _free = new int[Math.min(capacity, SLOTS_PER_BLOCK)];
+        _scratch = ThreadLocal.withInitial(() -> new Scratch(config));
+    }
+
+    /** Return the number of bytes of off-heap memory used per session. */
+    int slotSize() {
+        return _slotSize;
+    }
+
+    /** Return the number of open sessions. */
+    synchronized int size() {
+        return _size;
+    }
+
+    /** Return the number of distinct plugboards I hold. */
+    synchronized int plugboards() {
+        return _plugboardIds.size();
+    }
+
+    /** Start a new session whose machine is set up according to SETTINGS
+     *  (a settings line as accepted by Config.setUp) and return its id. */
+    int open(String settings) {
+        Machine machine = _scratch.get().machine;
+        _config.setUp(machine, settings);
+        int id = allocate();
+        suspend(id, machine);
+        return id;
+    }
+
+    /** End session ID, making its slot available for reuse. */
+    synchronized void close(int id) {
+        checkOpen(id);
+        release(block(id).getInt(offset(id)));
+        block(id).putInt(offset(id), FREE);
+        if (_numFree == _free.length) {
+            _free = Arrays.copyOf(_free, 2 * _numFree);
+        }
+        _free[_numFree] = id;
+        _numFree += 1;
+        _size -= 1;
+    }
+
+    /** Return a new machine in the state saved for session ID. */
+    Machine resume(int id) {
+        return resume(id, _config.newMachine());
+    }
+
+    /** Set MACHINE, which must have been made by my Config, to the state
+     *  saved for session ID, and return it.  Allocates nothing. */
+    Machine resume(int id, Machine machine) {
+        checkOpen(id);
+        Scratch scratch = _scratch.get();
+        ByteBuffer block = block(id);
+        int off = offset(id);
+        int plugboard = block.getInt(off);
+        off += Integer.BYTES;
+        for (int k = 0; k < _nRotors; k += 1) {
+            scratch.rotors[k] = block.getShort(off + 2 * k);
+        }
+        off += 2 * _nRotors;
+        for (int k = 1; k < _nRotors; k += 1) {
+            scratch.settings[k - 1] = block.getChar(off + 2 * k);
+        }
+        machine.reset(scratch.rotors, scratch.settings,
+                      plugboard == NO_PLUGBOARD ? null : plugboard(plugboard));
+        return machine;
+    }
+
+    /** Save the state of MACHINE, which must have been set up from my
+     *  Config, as the state of session ID. */
+    void suspend(int id, Machine machine) {
+        ByteBuffer block = block(id);
+        int off = offset(id);
+        setPlugboard(id, machine.plugboard());
+        off += Integer.BYTES;
+        for (int k = 0; k < _nRotors; k += 1) {
+            String name = machine.rotor(k).name();
+            block.putShort(off + 2 * k, (short) _config.rotorIndex(name));
+        }
+        off += 2 * _nRotors;
+        for (int k = 0; k < _nRotors; k += 1) {
+            block.putChar(off + 2 * k, (char) machine.rotor(k).setting());
+        }
+    }
+
+    /** Convert MSG (as for Machine.convert(String)) in session ID,
+     *  advancing the session's saved state, and return the result. */
+    String convert(int id, String msg) {
+        Machine machine = resume(id, _scratch.get().machine);
+        String result = machine.convert(msg);
+        ByteBuffer block = block(id);
+        int off = offset(id) + Integer.BYTES + 2 * _nRotors;
+        for (int k = 1; k < _nRotors; k += 1) {
+            block.putChar(off + 2 * k, (char) machine.rotor(k).setting());
+        }
+        return result;
+    }
+
+    /** Return the number of a free slot, marking it in use. */
+    private synchronized int allocate() {
+        int id;
+        if (_numFree > 0) {
+            _numFree -= 1;
+            id = _free[_numFree];
+        } else if (_next < _capacity) {
+            id = _next;
+            _next += 1;
+            int b = id / SLOTS_PER_BLOCK;
+            if (_blocks[b] == null) {
+                _blocks[b] = ByteBuffer.allocateDirect(
+                    SLOTS_PER_BLOCK * _slotSize);
+            }
+        } else {
+            throw error("too many sessions");
+        }
+        block(id).putInt(offset(id), NO_PLUGBOARD);
+        _size += 1;
+        return id;
+    }
+
+    /** Check that ID names an open session. */
+    private void checkOpen(int id) {
+        if (id < 0 || id >= _next || block(id).getInt(offset(id)) == FREE) {
+            throw error("no such session: %d", id);
+        }
+    }
+
+    /** Return the block of memory holding slot ID. */
+    private ByteBuffer block(int id) {
+        return _blocks[id / SLOTS_PER_BLOCK];
+    }
+
+    /** Return the offset of slot ID in its block. */
+    private int offset(int id) {
+        return (id % SLOTS_PER_BLOCK) * _slotSize;
+    }
+
+    /** Return the plugboard numbered ID. */
+    private synchronized Permutation plugboard(int id) {
+        return _plugboards.get(id - 1);
+    }
+
+    /** Make PLUGBOARD (null for none) the plugboard of slot ID,
+     *  releasing the one it had. */
+    private synchronized void setPlugboard(int id, Permutation plugboard) {
+        int old = block(id).getInt(offset(id));
+        block(id).putInt(offset(id), acquire(plugboard));
+        release(old);
+    }
+
+    /** Return the number of PLUGBOARD (null for none), adding it to my
+     *  table of plugboards if no plugboard with the same mapping is
+     *  already there, and count one more use of it.  Only the first
+     *  plugboard with each mapping is kept. */
+    private int acquire(Permutation plugboard) {
+        if (plugboard == null) {
+            return NO_PLUGBOARD;
+        }
+        String key = key(plugboard);
+        Integer id = _plugboardIds.get(key);
+        if (id == null) {
+            if (_numFreePlugboards > 0) {
+                _numFreePlugboards -= 1;
+                id = _freePlugboards[_numFreePlugboards];
+                _plugboards.set(id - 1, plugboard);
+            } else {
+                _plugboards.add(plugboard);
+                id = _plugboards.size();
+                if (id > _uses.length) {
+                    _uses = Arrays.copyOf(_uses, 2 * _uses.length);
+                }
+            }
+            _plugboardIds.put(key, id);
+        }
+        _uses[id - 1] += 1;
+        return id;
+    }
+
+    /** Count one less use of the plugboard numbered ID (if it is one),
+     *  dropping it from my table when it is no longer used. */
+    private void release(int id) {
+        if (id == NO_PLUGBOARD || id == FREE) {
+            return;
+        }
+        _uses[id - 1] -= 1;
+        if (_uses[id - 1] == 0) {
+            _plugboardIds.remove(key(_plugboards.get(id - 1)));
+            _plugboards.set(id - 1, null);
+            if (_numFreePlugboards == _freePlugboards.length) {
+                _freePlugboards = Arrays.copyOf(_freePlugboards,
+                                                2 * _numFreePlugboards);
+            }
+            _freePlugboards[_numFreePlugboards] = id;
+            _numFreePlugboards += 1;
+        }
+    }
+
+    /** Return the image of the alphabet under PLUGBOARD as a string. */
+    private static String key(Permutation plugboard) {
+        char[] mapping = new char[plugboard.size()];
+        for (int i = 0; i < mapping.length; i += 1) {
+            mapping[i] = (char) plugboard.permute(i);
+        }
+        return new String(mapping);
+    }
+
+    /** A machine for converting in sessions, with space for the rotor
+     *  numbers and settings of a slot. */
+    private static final class Scratch {
+        /** Space for a machine made by CONFIG. */
+        Scratch(Config config) {
+            machine = config.newMachine();
+            rotors = new int[config.numRotors()];
+            settings = new int[config.numRotors() - 1];
+        }
+
+        /** The machine. */
+        final Machine machine;
+        /** Rotor numbers. */
+        final int[] rotors;
+        /** Rotor settings. */
+        final int[] settings;
+    }
+
+    /** The configuration shared by all sessions. */
+    private final Config _config;
+
+    /** Maximum number of sessions. */
+    private final int _capacity;
+
+    /** Number of rotor slots in each machine. */
+    private final int _nRotors;
+
+    /** Bytes per session: plugboard number, then rotor numbers, then
+     *  rotor settings. */
+    private final int _slotSize;
+
+    /** Off-heap blocks of SLOTS_PER_BLOCK slots each, allocated as
+     *  needed. */
+    private final ByteBuffer[] _blocks;
+
+    /** Ids of closed sessions available for reuse (a stack). */
+    private int[] _free;
+
+    /** Number of entries in _free. */
+    private int _numFree;
+
+    /** Lowest slot number never yet used. */
+    private int _next;
+
+    /** Number of open sessions. */
+    private int _size;
+
+    /** Distinct plugboards in use, numbered from 1 (null for numbers
+     *  not in use). */
+    private final List<Permutation> _plugboards = new ArrayList<>();
+
+    /** Number of sessions using each plugboard, by number - 1. */
+    private int[] _uses = new int[16];
+
+    /** Plugboard numbers available for reuse (a stack). */
+    private int[] _freePlugboards = new int[16];
+
+    /** Number of entries in _freePlugboards. */
+    private int _numFreePlugboards;
+
+    /** Maps the image of the alphabet under each plugboard to its
+     *  number. */
+    private final Map<String, Integer> _plugboardIds = new HashMap<>();
+
+    /** The machine and scratch space of each thread. */
+    private final ThreadLocal<Scratch> _scratch;
+}
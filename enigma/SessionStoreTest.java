@@ -0,0 +1,126 @@
+package enigma;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SessionStore class.
+ *  @author Florence Lau
+ */
+public class SessionStoreTest {
+
+    /** Testing whether errors are thrown when they are supposed to be. */
+    @Rule
+    public final ExpectedException exception = ExpectedException.none();
+
+    /** Settings lines used by the tests. */
+    private static final String[] SETTINGS = {
+        "* B BETA I II III AAAA",
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* C GAMMA VII IV VIII AJFC (BS) (ML) (UX)",
+    };
+
+    @Test
+    public void testInterleavedSessions() {
+        Config config = navalConfig();
+        SessionStore store = new SessionStore(config, 10);
+        Machine[] reference = new Machine[SETTINGS.length];
+        int[] ids = new int[SETTINGS.length];
+        for (int i = 0; i < SETTINGS.length; i += 1) {
+            reference[i] = config.newMachine(SETTINGS[i]);
+            ids[i] = store.open(SETTINGS[i]);
+        }
+        assertEquals(SETTINGS.length, store.size());
+        String[] words = { "HELLO", "WORLD", "FROM", "HIS SHOULDER",
+                           "HIAWATHA", "TOOK THE CAMERA" };
+        for (String word : words) {
+            for (int i = 0; i < SETTINGS.length; i += 1) {
+                assertEquals(reference[i].convert(word),
+                             store.convert(ids[i], word));
+            }
+        }
+    }
+
+    @Test
+    public void testResumeSuspend() {
+        Config config = navalConfig();
+        SessionStore store = new SessionStore(config, 1);
+        int id = store.open(SETTINGS[1]);
+        Machine machine = store.resume(id);
+        String first = machine.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        store.suspend(id, machine);
+        Machine reference = config.newMachine(SETTINGS[1]);
+        assertEquals(reference.convert("ABCDEFGHIJKLMNOPQRSTUVWXYZ"), first);
+        assertEquals(reference.convert("HELLO"), store.convert(id, "HELLO"));
+    }
+
+    @Test
+    public void testReuse() {
+        SessionStore store = new SessionStore(navalConfig(), 2);
+        int a = store.open(SETTINGS[0]);
+        int b = store.open(SETTINGS[1]);
+        store.close(a);
+        assertEquals(1, store.size());
+        assertEquals(a, store.open(SETTINGS[2]));
+        assertEquals(navalConfig().newMachine(SETTINGS[1]).convert("HELLO"),
+                     store.convert(b, "HELLO"));
+        exception.expect(EnigmaException.class);
+        store.open(SETTINGS[0]);
+    }
+
+    @Test
+    public void testPlugboardsShared() {
+        SessionStore store = new SessionStore(navalConfig(), 4);
+        for (int n = 0; n < 1000; n += 1) {
+            int id = store.open(SETTINGS[n % SETTINGS.length]);
+            store.convert(id, "HELLO");
+            store.close(id);
+        }
+        assertEquals(0, store.size());
+        assertEquals(0, store.plugboards());
+        Machine machine = navalConfig().newMachine(SETTINGS[2]);
+        store.open(SETTINGS[2]);
+        int other = store.open(SETTINGS[0]);
+        store.suspend(other, machine);
+        assertEquals(1, store.plugboards());
+        assertEquals(machine.convert("HELLO"), store.convert(other, "HELLO"));
+    }
+
+    @Test
+    public void testPlugboardsReleased() {
+        Config config = navalConfig();
+        SessionStore store = new SessionStore(config, 100);
+        int[] ids = new int[25];
+        for (int round = 0; round < 3; round += 1) {
+            for (int k = 0; k < ids.length; k += 1) {
+                ids[k] = store.open(SETTINGS[0] + " (A" + (char) ('B' + k)
+                                    + ")");
+            }
+            assertEquals(ids.length, store.plugboards());
+            store.suspend(ids[0], config.newMachine(SETTINGS[0]));
+            assertEquals(ids.length - 1, store.plugboards());
+            store.suspend(ids[1], config.newMachine(SETTINGS[1]));
+            assertEquals(ids.length - 1, store.plugboards());
+            assertEquals(config.newMachine(SETTINGS[0] + " (AZ)")
+                         .convert("HELLO"),
+                         store.convert(ids[24], "HELLO"));
+            for (int id : ids) {
+                store.close(id);
+            }
+            assertEquals(0, store.plugboards());
+        }
+    }
+
+    @Test
+    public void testClosed() {
+        SessionStore store = new SessionStore(navalConfig(), 2);
+        int a = store.open(SETTINGS[0]);
+        store.close(a);
+        exception.expect(EnigmaException.class);
+        store.resume(a);
+    }
+}
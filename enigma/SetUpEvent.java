@@ -0,0 +1,19 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event for setting up a machine from a settings line.
+ *  @author Florence Lau
+ */
+@Name("enigma.SetUp")
+@Label("Enigma Set Up")
+@Category("Enigma")
+class SetUpEvent extends Event {
+
+    /** The settings line. */
+    @Label("Settings")
+    String settings;
+}
@@ -0,0 +1,270 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Sets up Machines from settings lines without rebuilding them.  A
+ *  SettingsParser belongs to one Config and one thread.  It tokenizes
+ *  settings lines in place, checks for duplicate rotors and plugboard
+ *  letters with bit sets, and keeps a pool of the plugboards it has
+ *  built, so that a well-formed settings line whose plugboard has been
+ *  seen before is applied with Machine.reset without allocating.  Any
+ *  line it does not recognize as well-formed is handed to Config.setUp,
+ *  so the lines accepted, the resulting machine states, and the error
+ *  messages are exactly those of Config.setUp.
+ *  @author Florence Lau
+ */
+final class SettingsParser {
+
+    /** Number of entries in the plugboard pool (a power of 2). */
+    static final int POOL_SIZE = 256;
+
+    /** A parser for settings lines of machines built from CONFIG. */
+    SettingsParser(Config config) {
+        _config = config;
+        _alphabet = config.alphabet();
+        int nRotors = config.numRotors();
+        int size = _alphabet.size();
+        int maxTokens = nRotors + 2 + size / 2;
+        _starts = new int[maxTokens];
+        _ends = new int[maxTokens];
+        _rotors = new int[nRotors];
+        _settings = new int[nRotors - 1];
+        _usedRotors = new long[config.numAvailableRotors() / 64 + 1];
+        _usedLetters = new long[size / 64 + 1];
+        _image = new int[size];
+        _poolImages = new int[POOL_SIZE][];
+        _poolPlugboards = new Permutation[POOL_SIZE];
+        _reflecting = new boolean[config.numAvailableRotors()];
+        _rotates = new boolean[config.numAvailableRotors()];
+        _unique = new boolean[config.numAvailableRotors()];
+        int k = 0;
+        for (Rotor rotor : config.rotors()) {
+            _reflecting[k] = rotor.reflecting();
+            _rotates[k] = rotor.rotates();
+            _unique[k] = true;
+            int first = config.rotorIndex(rotor.name());
+            if (first != k) {
+                _unique[first] = _unique[k] = false;
+            }
+            k += 1;
+        }
+    }
+
+    /** Set up MACHINE, which must have been built by my Config, according
+     *  to SETTINGS, as for Config.setUp.  Unlike Config.setUp, this may be
+     *  applied any number of times to the same machine. */
+    void setUp(Machine machine, String settings) {
+        if (!parse(settings)) {
+            Machine fresh = _config.newMachine(settings);
+            for (int k = 0; k < _rotors.length; k += 1) {
+                _rotors[k] = _config.rotorIndex(fresh.rotor(k).name());
+            }
+            fresh.snapshot(_settings);
+            machine.reset(_rotors, _settings, fresh.plugboard());
+            return;
+        }
+        machine.reset(_rotors, _settings, _plugs == 0 ? null : plugboard());
+    }
+
+    /** Fill _rotors, _settings, _image and _plugs from the settings line
+     *  SETTINGS.  Returns false, leaving those fields in an unspecified
+     *  state, if SETTINGS is not well-formed or is anything other than
+     *  the common case. */
+    private boolean parse(String settings) {
+        int nTokens = tokenize(settings);
+        int nRotors = _rotors.length;
+        if (nTokens < nRotors + 2 || _ends[0] - _starts[0] != 1
+            || settings.charAt(_starts[0]) != '*') {
+            return false;
+        }
+        Arrays.fill(_usedRotors, 0);
+        for (int i = 0; i < nRotors; i += 1) {
+            int r = rotorIndex(settings, _starts[i + 1], _ends[i + 1]);
+            if (r < 0 || !_unique[r] || (i == 0 && !_reflecting[r])
+                || (_usedRotors[r >> 6] & (1L << r)) != 0
+                || (_rotates[r] && i < nRotors - _config.numPawls())) {
+                return false;
+            }
+            _usedRotors[r >> 6] |= 1L << r;
+            _rotors[i] = r;
+        }
+        int start = _starts[nRotors + 1];
+        if (_ends[nRotors + 1] - start != nRotors - 1) {
+            return false;
+        }
+        for (int k = 0; k < nRotors - 1; k += 1) {
+            char c = settings.charAt(start + k);
+            if (!_alphabet.contains(c)) {
+                return false;
+            }
+            _settings[k] = _alphabet.toInt(c);
+        }
+        Arrays.fill(_usedLetters, 0);
+        _plugs = 0;
+        for (int t = nRotors + 2; t < nTokens; t += 1) {
+            start = _starts[t];
+            if (_ends[t] - start != 4 || settings.charAt(start) != '('
+                || settings.charAt(start + 3) != ')') {
+                return false;
+            }
+            char a = settings.charAt(start + 1);
+            char b = settings.charAt(start + 2);
+            if (a == b || !_alphabet.contains(a) || !_alphabet.contains(b)) {
+                return false;
+            }
+            int i = _alphabet.toInt(a), j = _alphabet.toInt(b);
+            if (((_usedLetters[i >> 6] >>> i) & 1) != 0
+                || ((_usedLetters[j >> 6] >>> j) & 1) != 0) {
+                return false;
+            }
+            if (_plugs == 0) {
+                for (int k = 0; k < _image.length; k += 1) {
+                    _image[k] = k;
+                }
+            }
+            _usedLetters[i >> 6] |= 1L << i;
+            _usedLetters[j >> 6] |= 1L << j;
+            _image[i] = j;
+            _image[j] = i;
+            _plugs += 1;
+        }
+        return true;
+    }
+
+    /** Record the bounds of the whitespace-separated tokens of SETTINGS
+     *  in _starts and _ends, and return their number, or -1 if there are
+     *  more than those arrays hold. */
+    private int tokenize(String settings) {
+        int n = 0;
+        int len = settings.length();
+        int i = 0;
+        while (true) {
+            while (i < len && Character.isWhitespace(settings.charAt(i))) {
+                i += 1;
+            }
+            if (i == len) {
+                return n;
+            }
+            if (n == _starts.length) {
+                return -1;
+            }
+            _starts[n] = i;
+            while (i < len && !Character.isWhitespace(settings.charAt(i))) {
+                i += 1;
+            }
+            _ends[n] = i;
+            n += 1;
+        }
+    }
+
+    /** Return the number of the available rotor whose name, ignoring
+     *  case, is S[START .. END-1], or -1 if there is none. */
+    private int rotorIndex(String s, int start, int end) {
+        for (int r = 0; r < _reflecting.length; r += 1) {
+            String name = _config.rotorName(r);
+            if (name.length() != end - start) {
+                continue;
+            }
+            int k;
+            for (k = 0; k < name.length(); k += 1) {
+                if (Character.toUpperCase(s.charAt(start + k))
+                    != name.charAt(k)) {
+                    break;
+                }
+            }
+            if (k == name.length()) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the plugboard whose mapping is _image, taking it from the
+     *  pool if it is there, and otherwise building it and adding it. */
+    private Permutation plugboard() {
+        int h = Arrays.hashCode(_image) & (POOL_SIZE - 1);
+        for (int probe = 0; probe < POOL_SIZE; probe += 1) {
+            int slot = (h + probe) & (POOL_SIZE - 1);
+            if (_poolImages[slot] == null) {
+                if (_poolCount >= POOL_SIZE / 2) {
+                    Arrays.fill(_poolImages, null);
+                    Arrays.fill(_poolPlugboards, null);
+                    _poolCount = 0;
+                    slot = h;
+                }
+                _poolImages[slot] = _image.clone();
+                _poolPlugboards[slot] = newPlugboard();
+                _poolCount += 1;
+                return _poolPlugboards[slot];
+            }
+            if (Arrays.equals(_poolImages[slot], _image)) {
+                return _poolPlugboards[slot];
+            }
+        }
+        throw new AssertionError("plugboard pool is full");
+    }
+
+    /** Return a new plugboard whose mapping is _image. */
+    private Permutation newPlugboard() {
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i < _image.length; i += 1) {
+            if (_image[i] > i) {
+                cycles.append('(').append(_alphabet.toChar(i))
+                    .append(_alphabet.toChar(_image[i])).append(')');
+            }
+        }
+        return new Permutation(cycles.toString(), _alphabet);
+    }
+
+    /** Return the number of plugboards in my pool. */
+    int poolSize() {
+        return _poolCount;
+    }
+
+    /** The configuration of my machines. */
+    private final Config _config;
+
+    /** The alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Whether each available rotor reflects. */
+    private final boolean[] _reflecting;
+
+    /** Whether each available rotor rotates. */
+    private final boolean[] _rotates;
+
+    /** Whether each available rotor's name is unique.  Config.setUp
+     *  rejects rotors whose names are not. */
+    private final boolean[] _unique;
+
+    /** Start and end (exclusive) of each token of the current line. */
+    private final int[] _starts, _ends;
+
+    /** Numbers of the available rotors named on the current line. */
+    private final int[] _rotors;
+
+    /** Rotor settings named on the current line. */
+    private final int[] _settings;
+
+    /** Bit set of the rotors named so far on the current line. */
+    private final long[] _usedRotors;
+
+    /** Bit set of the letters plugged so far on the current line. */
+    private final long[] _usedLetters;
+
+    /** Mapping of the plugboard on the current line. */
+    private final int[] _image;
+
+    /** Number of plugboard pairs on the current line. */
+    private int _plugs;
+
+    /** The plugboard pool: an open-addressed hash table of mappings and
+     *  the plugboards that implement them. */
+    private final int[][] _poolImages;
+
+    /** Plugboards corresponding to _poolImages. */
+    private final Permutation[] _poolPlugboards;
+
+    /** Number of entries in the pool. */
+    private int _poolCount;
+}
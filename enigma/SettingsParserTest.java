@@ -0,0 +1,151 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsParser class.
+ *  @author Florence Lau
+ */
+public class SettingsParserTest {
+
+    /** Settings lines, valid and not, checked against Config.setUp. */
+    private static final String[] LINES = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* B BETA I II III AAAA",
+        "  *   C  gamma  VIII vi V  ZZZZ   (AB)",
+        "* B BETA III IV I AXLE (TR) (BY) (HQ) (IP) (EX)",
+        "* B BETA I II III AAAA (AA)",
+        "* B BETA I II III AAAA (AB) (BC)",
+        "* B BETA I II III AAAA (AB",
+        "* B BETA I II III AAAA (ABC)",
+        "* B BETA I II III AAA",
+        "* B BETA I II III",
+        "* BETA B I II III AAAA",
+        "* B BETA I I III AAAA",
+        "* B BETA I II NOPE AAAA",
+        "* B I BETA II III AAAA",
+        "B BETA I II III AAAA",
+        "* B BETA I II III aAAA",
+    };
+
+    /** Return the error message from setting up a new machine from
+     *  CONFIG with SETTINGS, or null if there is none. */
+    private static String error(Config config, String settings) {
+        try {
+            config.newMachine(settings);
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    @Test
+    public void testSameAsConfig() {
+        Config config = navalConfig();
+        SettingsParser parser = new SettingsParser(config);
+        Machine reused = config.newMachine();
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+        for (String line : LINES) {
+            String expected = error(config, line);
+            if (expected != null) {
+                try {
+                    parser.setUp(reused, line);
+                    fail("accepted " + line);
+                } catch (EnigmaException excp) {
+                    assertEquals(line, expected, excp.getMessage());
+                }
+                continue;
+            }
+            Machine fresh = config.newMachine(line);
+            parser.setUp(reused, line);
+            assertEquals(line, fresh.stateId(), reused.stateId());
+            assertEquals(line, fresh.convert(msg), reused.convert(msg));
+        }
+    }
+
+    @Test
+    public void testMovingRotorSlots() {
+        String misplaced =
+            "moving rotor is placed to the left of a fixed rotor";
+        String[][] cases = {
+            { " 4 1", "* B BETA GAMMA I AAA", null },
+            { " 4 1", "* B BETA I II AAA", misplaced },
+            { " 4 1", "* B I BETA GAMMA AAA", misplaced },
+            { " 3 2", "* B I II AA", null },
+            { " 3 2", "* B BETA I AA", null },
+            { " 3 2", "* B I BETA AA", null },
+            { " 5 2", "* B BETA GAMMA I II AAAA", null },
+            { " 5 2", "* B BETA I II III AAAA", misplaced },
+        };
+        for (String[] c : cases) {
+            Config config = Config.read(new java.util.Scanner(
+                NAVAL_CONFIG.replace(" 5 3", c[0])));
+            assertEquals(c[1], c[2], error(config, c[1]));
+            Machine machine = config.newMachine();
+            try {
+                new SettingsParser(config).setUp(machine, c[1]);
+                assertNull(c[1], c[2]);
+            } catch (EnigmaException excp) {
+                assertEquals(c[1], c[2], excp.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testPlugboardCleared() {
+        Config config = navalConfig();
+        SettingsParser parser = new SettingsParser(config);
+        Machine machine = config.newMachine();
+        parser.setUp(machine, "* B BETA I II III AAAA (AB) (CD)");
+        assertNotNull(machine.plugboard());
+        parser.setUp(machine, "* B BETA I II III AAAA");
+        assertNull(machine.plugboard());
+        assertEquals("ILBDA AMTAZ", machine.convert("HELLO WORLD"));
+    }
+
+    @Test
+    public void testPool() {
+        Config config = navalConfig();
+        SettingsParser parser = new SettingsParser(config);
+        Machine machine = config.newMachine();
+        parser.setUp(machine, "* B BETA III IV I AXLE (HQ) (EX) (IP)");
+        Permutation first = machine.plugboard();
+        parser.setUp(machine, "* C GAMMA I II III AAAA (IP) (XE) (QH)");
+        assertSame(first, machine.plugboard());
+        parser.setUp(machine, "* C GAMMA I II III AAAA (IP) (XE)");
+        assertNotSame(first, machine.plugboard());
+        assertEquals(2, parser.poolSize());
+        for (int k = 0; k < 3 * SettingsParser.POOL_SIZE; k += 1) {
+            parser.setUp(machine, String.format("* B BETA I II III AAAA "
+                                                + "(%c%c)", 'A' + k % 13,
+                                                'N' + k / 13 % 13));
+            assertTrue(parser.poolSize() <= SettingsParser.POOL_SIZE / 2);
+        }
+    }
+
+    @Test
+    public void testNoAllocation() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        Config config = navalConfig();
+        SettingsParser parser = new SettingsParser(config);
+        Machine machine = config.newMachine();
+        String line = LINES[0];
+        for (int k = 0; k < 100_000; k += 1) {
+            parser.setUp(machine, line);
+        }
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int k = 0; k < 10_000; k += 1) {
+            parser.setUp(machine, line);
+        }
+        long perLine =
+            (threads.getCurrentThreadAllocatedBytes() - start) / 10_000;
+        assertTrue(perLine + " bytes per settings line", perLine < 8);
+    }
+}
@@ -0,0 +1,383 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import static enigma.EnigmaException.*;
+
+/** A trace of the paths of characters through a machine (Main's
+ *  --trace), for debugging configurations.  Once a machine has a tracer
+ *  (see Machine.setTracer), each character it converts whose input
+ *  index lies in a given range is counted, and one in every N of those
+ *  is recorded in a ring buffer of fixed-size records allocated when
+ *  the tracer is made, so that tracing allocates nothing and keeps the
+ *  latest records.  A record holds the character's position (the number
+ *  of characters converted before it since the tracer was attached),
+ *  the rotor in each slot and its setting after advancing, and the
+ *  index of the character after each stage: the input, the plugboard,
+ *  each rotor forward from the rightmost, the reflector, each rotor
+ *  backward, and the plugboard again.  Records may be rendered as text
+ *  or saved to a file, which main renders:
+ *      java enigma.Tracer FILE
+ *  A tracer serves one machine at a time.
+ *  @author Florence Lau
+ */
+public final class Tracer {
+
+    /** Default number of records kept. */
+    static final int DEFAULT_CAPACITY = 4096;
+
+    /** First four bytes of a trace file ("ENGT"). */
+    private static final int MAGIC = 0x454e4754;
+
+    /** A tracer for machines built from CONFIG, counting characters
+     *  whose input indices are LOW..HIGH, recording one in every EVERY
+     *  of those, and keeping the last CAPACITY records. */
+    Tracer(Config config, int low, int high, int every, int capacity) {
+        this(chars(config.alphabet()), names(config), config.numRotors(),
+             low, high, every, capacity);
+    }
+
+    /** A tracer as for Tracer(CONFIG, LOW, HIGH, EVERY, CAPACITY), for
+     *  machines whose alphabet consists of CHARS in order, whose
+     *  available rotors are named NAMES, and which have NUMROTORS
+     *  slots. */
+    private Tracer(String chars, String[] names, int numRotors,
+                   int low, int high, int every, int capacity) {
+        if (low < 0 || low > high || high >= chars.length()) {
+            throw error("bad trace range");
+        }
+        if (every <= 0) {
+            throw error("trace sampling rate must be positive");
+        }
+        _recordSize = 4 * numRotors + 3;
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / _recordSize) {
+            throw error("bad trace size: %d", capacity);
+        }
+        _chars = chars;
+        _names = names;
+        _numRotors = numRotors;
+        _low = low;
+        _high = high;
+        _every = every;
+        _capacity = capacity;
+        _records = new int[capacity * _recordSize];
+        _path = new int[2 * numRotors + 2];
+        _countdown = 1;
+    }
+
+    /** Return the tracer for machines built from CONFIG described by
+     *  SPEC, a comma-separated list of
+     *      X-Y     record only input characters X through Y (in the order
+     *              of the alphabet) rather than all of them,
+     *      X       record only input character X,
+     *      every:N record one in every N of those characters, and
+     *      size:N  keep the last N records rather than DEFAULT_CAPACITY.
+     *  An empty SPEC records every character. */
+    static Tracer parse(String spec, Config config) {
+        Alphabet alpha = config.alphabet();
+        int low = 0, high = alpha.size() - 1;
+        int every = 1, capacity = DEFAULT_CAPACITY;
+        for (String item : spec.split(",")) {
+            if (item.isEmpty()) {
+                continue;
+            } else if (item.startsWith("every:")) {
+                every = number(item.substring(6));
+            } else if (item.startsWith("size:")) {
+                capacity = number(item.substring(5));
+            } else if (item.length() == 1 && alpha.contains(item.charAt(0))) {
+                low = high = alpha.toInt(item.charAt(0));
+            } else if (item.length() == 3 && item.charAt(1) == '-'
+                       && alpha.contains(item.charAt(0))
+                       && alpha.contains(item.charAt(2))) {
+                low = alpha.toInt(item.charAt(0));
+                high = alpha.toInt(item.charAt(2));
+            } else {
+                throw error("bad trace option: %s", item);
+            }
+        }
+        return new Tracer(config, low, high, every, capacity);
+    }
+
+    /** Return the value of the decimal numeral S. */
+    private static int number(String s) {
+        try {
+            return Integer.parseInt(s);
+        } catch (NumberFormatException excp) {
+            throw error("bad number: %s", s);
+        }
+    }
+
+    /** Return the characters of ALPHA in order. */
+    private static String chars(Alphabet alpha) {
+        StringBuilder result = new StringBuilder(alpha.size());
+        for (int i = 0; i < alpha.size(); i += 1) {
+            result.append(alpha.toChar(i));
+        }
+        return result.toString();
+    }
+
+    /** Return the names of the available rotors of CONFIG, by
+     *  number. */
+    private static String[] names(Config config) {
+        String[] result = new String[config.numAvailableRotors()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = config.rotorName(k);
+        }
+        return result;
+    }
+
+    /** Count the input character C, about to be converted, and return
+     *  true iff it is to be recorded, in which case its path is to be
+     *  stored in path() and then recorded by record. */
+    boolean select(int c) {
+        _position += 1;
+        if (c < _low || c > _high) {
+            return false;
+        }
+        _countdown -= 1;
+        if (_countdown > 0) {
+            return false;
+        }
+        _countdown = _every;
+        return true;
+    }
+
+    /** Return the array in which the machine stores the path of a
+     *  selected character: its index after each stage, as described
+     *  above. */
+    int[] path() {
+        return _path;
+    }
+
+    /** Record the selected character whose path is in path(), converted
+     *  by MACHINE, overwriting the oldest record if the buffer is
+     *  full. */
+    void record(Machine machine) {
+        int[] r = _records;
+        int k = (int) (_recorded % _capacity) * _recordSize;
+        long position = _position - 1;
+        r[k] = (int) (position >>> 32);
+        r[k + 1] = (int) position;
+        k += 2;
+        for (int slot = 0; slot < _numRotors; slot += 1) {
+            r[k] = machine.rotorNumber(slot);
+            k += 1;
+        }
+        for (int slot = 1; slot < _numRotors; slot += 1) {
+            r[k] = machine.rotor(slot).setting();
+            k += 1;
+        }
+        System.arraycopy(_path, 0, r, k, _path.length);
+        _recorded += 1;
+    }
+
+    /** Return the number of characters counted (whether or not in the
+     *  range). */
+    long position() {
+        return _position;
+    }
+
+    /** Return the number of characters recorded, including those whose
+     *  records have been overwritten. */
+    long recorded() {
+        return _recorded;
+    }
+
+    /** Return the number of records held. */
+    int size() {
+        return (int) Math.min(_recorded, _capacity);
+    }
+
+    /** Return the index in _records of the Kth oldest record held. */
+    private int start(int k) {
+        return (int) ((_recorded - size() + k) % _capacity) * _recordSize;
+    }
+
+    /** Write the records held to OUT, oldest first, one line each:
+     *  position, rotor names, rotor settings, and the character after
+     *  each stage, with the stage in between ("P" for the plugboard). */
+    void render(PrintStream out) {
+        out.printf("# %d characters, %d recorded, last %d shown%n",
+                   _position, _recorded, size());
+        StringBuilder line = new StringBuilder();
+        for (int n = 0; n < size(); n += 1) {
+            int k = start(n);
+            int[] r = _records;
+            line.setLength(0);
+            line.append(((long) r[k] << 32) | (r[k + 1] & 0xffffffffL));
+            String[] slots = new String[_numRotors];
+            line.append(" [");
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                slots[slot] = _names[r[k + 2 + slot]];
+                line.append(slot == 0 ? "" : " ").append(slots[slot]);
+            }
+            line.append("] ");
+            int p = k + 2 + _numRotors;
+            for (int slot = 1; slot < _numRotors; slot += 1) {
+                line.append(_chars.charAt(r[p]));
+                p += 1;
+            }
+            line.append("  ").append(_chars.charAt(r[p]));
+            p += 1;
+            stage(line, "P", r[p]);
+            for (int slot = _numRotors - 1; slot > 0; slot -= 1) {
+                p += 1;
+                stage(line, slots[slot], r[p]);
+            }
+            for (int slot = 0; slot < _numRotors; slot += 1) {
+                p += 1;
+                stage(line, slots[slot], r[p]);
+            }
+            p += 1;
+            stage(line, "P", r[p]);
+            out.println(line);
+        }
+    }
+
+    /** Append to LINE the passage through STAGE to character
+     *  number C. */
+    private void stage(StringBuilder line, String stage, int c) {
+        line.append(" -").append(stage).append("-> ")
+            .append(_chars.charAt(c));
+    }
+
+    /** Write my description and the records held to OUT in the format
+     *  read by load.  OUT is flushed but not closed. */
+    void save(OutputStream out) throws IOException {
+        DataOutputStream data =
+            new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeUTF(_chars);
+        data.writeInt(_names.length);
+        for (String name : _names) {
+            data.writeUTF(name);
+        }
+        data.writeInt(_numRotors);
+        data.writeInt(_low);
+        data.writeInt(_high);
+        data.writeInt(_every);
+        data.writeLong(_position);
+        data.writeLong(_recorded);
+        data.writeInt(size());
+        for (int n = 0; n < size(); n += 1) {
+            int k = start(n);
+            for (int i = k; i < k + _recordSize; i += 1) {
+                data.writeInt(_records[i]);
+            }
+        }
+        data.flush();
+    }
+
+    /** Return the tracer written to IN by save, holding the same
+     *  records. */
+    static Tracer load(InputStream in) throws IOException {
+        DataInputStream data =
+            new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw error("not a trace file");
+        }
+        String chars = data.readUTF();
+        String[] names = new String[data.readInt()];
+        for (int k = 0; k < names.length; k += 1) {
+            names[k] = data.readUTF();
+        }
+        int numRotors = data.readInt();
+        int low = data.readInt(), high = data.readInt();
+        int every = data.readInt();
+        long position = data.readLong(), recorded = data.readLong();
+        int size = data.readInt();
+        if (numRotors < 2 || numRotors > names.length || size < 0
+            || recorded < size) {
+            throw error("damaged trace file");
+        }
+        Tracer result = new Tracer(chars, names, numRotors, low, high,
+                                   every, Math.max(size, 1));
+        result._position = position;
+        result._recorded = recorded;
+        for (int n = 0; n < size; n += 1) {
+            int k = result.start(n);
+            for (int i = k; i < k + result._recordSize; i += 1) {
+                result._records[i] = data.readInt();
+            }
+            result.check(k);
+        }
+        return result;
+    }
+
+    /** Check that the record starting at index K of _records names only
+     *  rotors and characters I know. */
+    private void check(int k) {
+        for (int i = k + 2; i < k + _recordSize; i += 1) {
+            int limit = i < k + 2 + _numRotors
+                ? _names.length : _chars.length();
+            if (_records[i] < 0 || _records[i] >= limit) {
+                throw error("damaged trace file");
+            }
+        }
+    }
+
+    /** Render the trace file named ARGS[0] on the standard output. */
+    public static void main(String... args) {
+        if (args.length != 1) {
+            System.err.println("Usage: java enigma.Tracer FILE");
+            System.exit(1);
+        }
+        try (InputStream in = new FileInputStream(args[0])) {
+            load(in).render(System.out);
+            System.out.flush();
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: could not read %s%n", args[0]);
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Characters of the alphabet, in order. */
+    private final String _chars;
+
+    /** Names of the available rotors, by number. */
+    private final String[] _names;
+
+    /** Number of rotor slots. */
+    private final int _numRotors;
+
+    /** Range of input indices counted. */
+    private final int _low, _high;
+
+    /** One in every _every characters counted is recorded. */
+    private final int _every;
+
+    /** Maximum number of records held. */
+    private final int _capacity;
+
+    /** Number of ints in a record: two for the position, _numRotors for
+     *  the rotors, _numRotors - 1 for the settings and the length of
+     *  _path. */
+    private final int _recordSize;
+
+    /** The ring of records.  Record number N (counting from 0) starts at
+     *  index (N % _capacity) * _recordSize. */
+    private final int[] _records;
+
+    /** The path of the character being recorded. */
+    private final int[] _path;
+
+    /** Number of characters counted before the next is recorded. */
+    private int _countdown;
+
+    /** Number of characters seen. */
+    private long _position;
+
+    /** Number of characters recorded. */
+    private long _recorded;
+}
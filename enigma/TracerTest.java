@@ -0,0 +1,155 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Tracer class.
+ *  @author Florence Lau
+ */
+public class TracerTest {
+
+    /** Settings used throughout. */
+    private static final String SETTINGS =
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)";
+
+    /** Return a machine set up by SETTINGS, traced by TRACER. */
+    private static Machine machine(Tracer tracer) {
+        Machine result = navalConfig().newMachine(SETTINGS);
+        result.setTracer(tracer);
+        return result;
+    }
+
+    /** Return TRACER rendered as text. */
+    private static String render(Tracer tracer) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tracer.render(new PrintStream(out));
+        return out.toString();
+    }
+
+    @Test
+    public void testPath() {
+        Tracer tracer = Tracer.parse("", navalConfig());
+        Machine machine = machine(tracer);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW",
+                     Main.group(machine.convert("FROM his shoulder "
+                                                + "Hiawatha")));
+        assertEquals(23, tracer.position());
+        assertEquals(23, tracer.recorded());
+        String[] lines = render(tracer).split("\n");
+        assertEquals("# 23 characters, 23 recorded, last 23 shown",
+                     lines[0]);
+        assertEquals("0 [B BETA III IV I] AXLF  F -P-> F -I-> I -IV-> V "
+                     + "-III-> J -BETA-> W -B-> H -BETA-> X -III-> Z "
+                     + "-IV-> J -I-> H -P-> Q", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("1 [B BETA III IV I] AXLG"
+                                                 + "  R -P-> T -I-> "));
+        assertTrue(lines[4], lines[4].endsWith(" -I-> H -P-> Q"));
+        for (int k = 1; k < lines.length; k += 1) {
+            assertEquals(lines[k], 12, lines[k].split("->").length);
+        }
+    }
+
+    @Test
+    public void testSameOutput() {
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF "
+            + "ROSEWOOD";
+        String expected = machine(null).convert(msg);
+        assertEquals(expected,
+                     machine(Tracer.parse("A-F,every:3", navalConfig()))
+                     .convert(msg));
+        Machine machine = machine(Tracer.parse("", navalConfig()));
+        machine.setTracer(null);
+        assertEquals(expected, machine.convert(msg));
+    }
+
+    @Test
+    public void testSelection() {
+        Tracer tracer = Tracer.parse("A-E,every:2", navalConfig());
+        Machine machine = machine(tracer);
+        machine.convert("ABCDEFGHIJABCDE");
+        assertEquals(15, tracer.position());
+        assertEquals(5, tracer.recorded());
+        String[] lines = render(tracer).split("\n");
+        assertTrue(lines[1].startsWith("0 "));
+        assertTrue(lines[2].startsWith("2 "));
+        assertTrue(lines[3].startsWith("4 "));
+        assertTrue(lines[4].startsWith("11 "));
+        assertTrue(lines[5].startsWith("13 "));
+        tracer = Tracer.parse("Q", navalConfig());
+        machine(tracer).convert("QAQBQ");
+        assertEquals(3, tracer.recorded());
+        for (String bad : new String[] { "every:0", "size:0", "F-A",
+                                         "AB", "every:x", "1-3" }) {
+            try {
+                Tracer.parse(bad, navalConfig());
+                fail("accepted " + bad);
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        }
+    }
+
+    @Test
+    public void testRing() {
+        Tracer tracer = Tracer.parse("size:3", navalConfig());
+        Machine machine = machine(tracer);
+        machine.convert("ABCDEFGHIJ");
+        assertEquals(10, tracer.recorded());
+        assertEquals(3, tracer.size());
+        String[] lines = render(tracer).split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[1].startsWith("7 "));
+        assertTrue(lines[3].startsWith("9 "));
+        assertTrue(lines[3].contains("  J -P-> J "));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        for (String spec : new String[] { "size:4", "size:64", "Z" }) {
+            Tracer tracer = Tracer.parse(spec, navalConfig());
+            Machine machine = machine(tracer);
+            machine.convert("FROM HIS SHOULDER HIAWATHA");
+            Metrics.setUp(new SettingsParser(navalConfig()), machine,
+                          "* C GAMMA V VI VII QQQQ (AB)");
+            machine.convert("TOOK THE CAMERA OF ROSEWOOD");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            tracer.save(out);
+            Tracer copy =
+                Tracer.load(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(render(tracer), render(copy));
+        }
+        try {
+            Tracer.load(new ByteArrayInputStream(new byte[8]));
+            fail("loaded a bad trace file");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testMain() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Tracer tracer = Tracer.parse("H", navalConfig());
+        Main.process(navalConfig(),
+                     new CharTable(navalConfig().alphabet(),
+                                   CharTable.Policy.STRICT),
+                     null, tracer,
+                     new Scanner(SETTINGS + "\nFROM his shoulder Hiawatha\n"),
+                     new PrintStream(out), 0);
+        assertEquals("QVPQS OKOIL PUBKJ ZPISF XDW\n", out.toString());
+        assertEquals(23, tracer.position());
+        assertEquals(4, tracer.recorded());
+        assertTrue(render(tracer).contains("\n8 [B BETA III IV I] AXLN  H "
+                                           + "-P-> Q "));
+    }
+}
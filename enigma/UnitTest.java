@@ -12,7 +12,19 @@ public class UnitTest {
     public static void main(String[] ignored) {
         textui.runClasses(PermutationTest.class, MovingRotorTest.class,
                 MachineTest.class, RotorTest.class, ReflectorTest.class,
-                FixedRotorTest.class);
+                FixedRotorTest.class, ConfigTest.class,
+                ServerTest.class, MachineProcessorTest.class,
+                SessionStoreTest.class, ContainerTest.class,
+                MetricsTest.class, AllocationTest.class,
+                WorkloadTest.class, SettingsParserTest.class,
+                ConfigRegistryTest.class, BatchTest.class,
+                PipelineTest.class, CompressionTest.class,
+                CharTableTest.class, FlushPolicyTest.class,
+                ByteConverterTest.class, ResultCacheTest.class,
+                TracerTest.class, ValidatorTest.class,
+                FuzzerTest.class, KeySheetTest.class,
+                DepthFinderTest.class, IncrementalConverterTest.class,
+                FollowerTest.class);
     }
 
 }
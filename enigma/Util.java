@@ -0,0 +1,48 @@
+package enigma;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/** Small functions shared by several classes: hash scrambling, index
+ *  tables and the daemon threads on which parallel work is done.
+ *  @author Florence Lau
+ */
+final class Util {
+
+    /** Not instantiable. */
+    private Util() {
+    }
+
+    /** Return a well-scrambled function of X (the SplitMix64
+     *  finalizer). */
+    static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /** Return 0 .. N - 1 in order. */
+    static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = k;
+        }
+        return result;
+    }
+
+    /** Return a factory of daemon threads named NAME, which do not keep
+     *  the program running once the main thread is done. */
+    static ThreadFactory daemons(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** Return a pool of THREADS daemon threads named NAME. */
+    static ExecutorService pool(int threads, String name) {
+        return Executors.newFixedThreadPool(threads, daemons(name));
+    }
+}
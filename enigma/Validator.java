@@ -0,0 +1,315 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A check of a file of messages before it is converted (Main's
+ *  --validate), so that a job with a malformed line fails at once
+ *  rather than when conversion reaches it, and reports all such lines
+ *  rather than the first.  Settings lines are checked by the rules of
+ *  Config.setUp, through Config.settingsProblem, and message lines by
+ *  a CharTable, with no exceptions thrown for bad lines.  An
+ *  uncompressed file is divided into chunks at line boundaries, which
+ *  are checked in parallel; a compressed one is checked as it is
+ *  decompressed.  Lines are split as Main splits them, except that a
+ *  carriage return is taken as a line end only before a newline.  A
+ *  Validator may be shared between threads.
+ *  @author Florence Lau
+ */
+final class Validator {
+
+    /** Largest number of problems kept in a Report. */
+    static final int MAX_PROBLEMS = 1000;
+
+    /** Smallest chunk of a file checked by one thread. */
+    static final long MIN_CHUNK = 1 << 20;
+
+    /** Size of read buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** A bad line. */
+    static final class Problem {
+        /** The problem described by MESSAGE on line number LINE
+         *  (counting from 1). */
+        Problem(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("line %d: %s", line, message);
+        }
+
+        /** Line number. */
+        final long line;
+        /** Error message, as conversion would report it. */
+        final String message;
+    }
+
+    /** The result of checking a file or part of one. */
+    static final class Report {
+        /** Return the number of lines checked. */
+        long lines() {
+            return _lines;
+        }
+
+        /** Return the number of bad lines. */
+        long count() {
+            return _count;
+        }
+
+        /** Return the first MAX_PROBLEMS bad lines, in order. */
+        List<Problem> problems() {
+            return _problems;
+        }
+
+        /** Record MESSAGE as the problem with line number LINE, which
+         *  follows any recorded before. */
+        private void add(long line, String message) {
+            _count += 1;
+            if (_problems.size() < MAX_PROBLEMS) {
+                _problems.add(new Problem(line, message));
+            }
+        }
+
+        /** Add the lines and problems of OTHER, which covers the lines
+         *  following mine. */
+        private void append(Report other) {
+            for (Problem problem : other._problems) {
+                add(_lines + problem.line, problem.message);
+            }
+            _count += other._count - other._problems.size();
+            _lines += other._lines;
+        }
+
+        /** Number of lines. */
+        private long _lines;
+        /** Number of problems. */
+        private long _count;
+        /** The first problems. */
+        private final List<Problem> _problems = new ArrayList<>();
+    }
+
+    /** A validator for messages for machines built from CONFIG, whose
+     *  characters are classified by CHARS. */
+    Validator(Config config, CharTable chars) {
+        _config = config;
+        _chars = chars;
+        _machine = config.newMachine();
+    }
+
+    /** Return the message of the error that converting LINE would
+     *  report, or null if there is none.  LINE is a settings line if it
+     *  starts with "*" or if FIRST, since the first line of a file is
+     *  always taken as one, and otherwise a message line. */
+    String check(String line, boolean first) {
+        if (first || line.startsWith("*")) {
+            return _config.settingsProblem(_machine, line.toUpperCase());
+        }
+        for (int i = 0; i < line.length(); i += 1) {
+            if (_chars.classify(line.charAt(i)) == CharTable.REJECT) {
+                return "character not in alphabet";
+            }
+        }
+        return null;
+    }
+
+    /** Return the report on the messages in FILE, checked with up to
+     *  THREADS threads. */
+    Report check(Path file, int threads) {
+        try {
+            Compression.Format format;
+            try (BufferedInputStream in =
+                     new BufferedInputStream(Files.newInputStream(file))) {
+                format = Compression.detect(in);
+            }
+            long[] starts = chunks(file, threads);
+            Report result;
+            if (format != Compression.Format.NONE) {
+                try (InputStream in = Compression.decompress(
+                         new BufferedInputStream(Files.newInputStream(file)),
+                         format)) {
+                    result = scan(Channels.newChannel(in), Long.MAX_VALUE,
+                                  true);
+                }
+            } else if (starts.length == 2) {
+                try (FileChannel in = FileChannel.open(file)) {
+                    result = scan(in, starts[1], true);
+                }
+            } else {
+                result = scanChunks(file, starts);
+            }
+            if (result.lines() == 0) {
+                result.add(1, "missing settings line");
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not read %s", file);
+        }
+    }
+
+    /** Return the offsets at which the chunks of FILE checked by up to
+     *  THREADS threads start, followed by the size of FILE.  Each chunk
+     *  but the first starts just after a newline. */
+    private static long[] chunks(Path file, int threads) throws IOException {
+        try (FileChannel in = FileChannel.open(file)) {
+            long size = in.size();
+            int n = (int) Math.max(1, Math.min(threads, size / MIN_CHUNK));
+            long[] result = new long[n + 1];
+            ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+            for (int k = 1; k < n; k += 1) {
+                long p = Math.max(size / n * k, result[k - 1]);
+                result[k] = size;
+                while (p < size && result[k] == size) {
+                    buf.clear();
+                    int len = in.read(buf, p);
+                    for (int i = 0; i < len; i += 1) {
+                        if (buf.get(i) == '\n') {
+                            result[k] = p + i + 1;
+                            break;
+                        }
+                    }
+                    p += len;
+                }
+            }
+            result[n] = size;
+            return result;
+        }
+    }
+
+    /** Return the report on the chunks of FILE starting at STARTS (as
+     *  returned by chunks), checked in parallel. */
+    private Report scanChunks(Path file, long[] starts) throws IOException {
+        int n = starts.length - 1;
+        ExecutorService pool = Util.pool(n, "enigma-validate");
+        try {
+            List<Future<Report>> parts = new ArrayList<>();
+            for (int k = 0; k < n; k += 1) {
+                long start = starts[k], end = starts[k + 1];
+                boolean first = k == 0;
+                parts.add(pool.submit(() -> {
+                    try (FileChannel in = FileChannel.open(file)) {
+                        in.position(start);
+                        return scan(in, end - start, first);
+                    }
+                }));
+            }
+            Report result = new Report();
+            for (Future<Report> part : parts) {
+                result.append(part.get());
+            }
+            return result;
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof IOException) {
+                throw (IOException) excp.getCause();
+            }
+            throw new AssertionError(excp.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the report on the lines in the next LENGTH bytes of IN
+     *  (or all of them, if fewer), numbered from 1.  The first is a
+     *  settings line if FIRST. */
+    private Report scan(ReadableByteChannel in, long length, boolean first)
+        throws IOException {
+        Report result = new Report();
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+        byte[] bytes = buf.array();
+        byte[] line = new byte[256];
+        int len = 0;
+        while (length > 0) {
+            buf.clear();
+            if (length < buf.capacity()) {
+                buf.limit((int) length);
+            }
+            int n = in.read(buf);
+            if (n < 0) {
+                break;
+            }
+            length -= n;
+            for (int i = 0; i < n; i += 1) {
+                byte b = bytes[i];
+                if (b == '\n') {
+                    checkLine(line, len, first, result);
+                    first = false;
+                    len = 0;
+                } else {
+                    if (len == line.length) {
+                        line = Arrays.copyOf(line, 2 * len);
+                    }
+                    line[len] = b;
+                    len += 1;
+                }
+            }
+        }
+        if (len > 0) {
+            checkLine(line, len, first, result);
+        }
+        return result;
+    }
+
+    /** Check the line in LINE[0 .. LEN-1], a settings line if FIRST, as
+     *  the next line of REPORT. */
+    private void checkLine(byte[] line, int len, boolean first,
+                           Report report) {
+        report._lines += 1;
+        if (len > 0 && line[len - 1] == '\r') {
+            len -= 1;
+        }
+        String problem = null;
+        if (first || len > 0 && line[0] == '*') {
+            problem = check(new String(line, 0, len, CHARSET), true);
+        } else {
+            for (int i = 0; i < len; i += 1) {
+                if (line[i] < 0) {
+                    problem = check(new String(line, 0, len, CHARSET), false);
+                    break;
+                }
+                if (_chars.classify((char) line[i]) == CharTable.REJECT) {
+                    problem = "character not in alphabet";
+                    break;
+                }
+            }
+        }
+        if (problem != null) {
+            report.add(report._lines, problem);
+        }
+    }
+
+    /** Character set in which Main reads messages. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Configuration of the machines. */
+    private final Config _config;
+
+    /** Classification of message characters. */
+    private final CharTable _chars;
+
+    /** A machine used only to check settings lines, which is never
+     *  changed. */
+    private final Machine _machine;
+}
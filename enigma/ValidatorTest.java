@@ -0,0 +1,158 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Validator class.
+ *  @author Florence Lau
+ */
+public class ValidatorTest {
+
+    /** Settings lines, good and bad, and a line that is bad only as a
+     *  settings line. */
+    private static final String[] SETTINGS = {
+        "* B BETA III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+        "* b beta iii iv i axle",
+        "* B GAMMA I V I YDFV (HI)",
+        "* B BETA III IV I AXLE (HQ) (EH)",
+        "* B BETA III IV AXLE",
+        "* B BETA III IV I",
+        "* B BETA III IV XI AXLE",
+        "* BETA B III IV I AXLE",
+        "* B BETA III IV I AXL",
+        "* B BETA III IV I AXL? (HQ)",
+        "* B BETA III IV I AXLE (HQX)",
+        "* B BETA III IV I AXLE (H?)",
+        "* B I BETA II III AXLE",
+        "B BETA III IV I AXLE",
+    };
+
+    /** Messages, with the first bad one (for the strict policy) last. */
+    private static final String[] MESSAGES = {
+        "FROM his shoulder Hiawatha", "", "   ", "Took the camera",
+        "HYIHL BKOML", "1984",
+    };
+
+    /** The validator used throughout. */
+    private static final Validator VALIDATOR =
+        new Validator(navalConfig(),
+                      new CharTable(navalConfig().alphabet(),
+                                    CharTable.Policy.STRICT));
+
+    /** Return the message of the exception Config.setUp throws for
+     *  SETTINGS, or null if it throws none. */
+    private static String setUpError(String settings) {
+        try {
+            navalConfig().newMachine(settings.toUpperCase());
+            return null;
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+    }
+
+    @Test
+    public void testSameErrors() {
+        int bad = 0;
+        for (String settings : SETTINGS) {
+            String expected = setUpError(settings);
+            assertEquals(settings, expected, VALIDATOR.check(settings, true));
+            bad += expected == null ? 0 : 1;
+        }
+        assertEquals(SETTINGS.length - 2, bad);
+        for (String msg : MESSAGES) {
+            assertEquals(setUpError(msg), VALIDATOR.check(msg, true));
+        }
+        for (int k = 0; k < MESSAGES.length - 1; k += 1) {
+            assertNull(VALIDATOR.check(MESSAGES[k], false));
+        }
+        assertEquals("character not in alphabet",
+                     VALIDATOR.check("1984", false));
+        assertNull(VALIDATOR.check(SETTINGS[SETTINGS.length - 1], false));
+    }
+
+    /** Write the lines of a test file to OUT, REPEATS times over, and
+     *  return the number of bad lines. */
+    private static int write(OutputStream out, int repeats)
+        throws IOException {
+        StringBuilder block = new StringBuilder();
+        int bad = 0;
+        for (String settings : SETTINGS) {
+            block.append(settings).append("\r\n");
+            if (settings.startsWith("*") && setUpError(settings) != null) {
+                bad += 1;
+            }
+            for (String msg : MESSAGES) {
+                block.append(msg).append('\n');
+            }
+            bad += 1;
+        }
+        byte[] bytes = block.toString().getBytes();
+        for (int k = 0; k < repeats; k += 1) {
+            out.write(bytes);
+        }
+        out.close();
+        return bad * repeats;
+    }
+
+    /** Check that REPORT lists the bad lines of a file written by write
+     *  with REPEATS repeats. */
+    private static void check(Validator.Report report, int bad,
+                              int repeats) {
+        int perBlock = SETTINGS.length * (MESSAGES.length + 1);
+        assertEquals((long) perBlock * repeats, report.lines());
+        assertEquals(bad, report.count());
+        List<Validator.Problem> problems = report.problems();
+        assertEquals(Math.min(bad, Validator.MAX_PROBLEMS), problems.size());
+        assertEquals(7, problems.get(0).line);
+        assertEquals("character not in alphabet", problems.get(0).message);
+        assertEquals(14, problems.get(1).line);
+        assertEquals(15, problems.get(2).line);
+        assertEquals(setUpError(SETTINGS[2]), problems.get(2).message);
+        Validator.Problem last = problems.get(problems.size() - 1);
+        if (bad <= Validator.MAX_PROBLEMS) {
+            assertEquals((long) perBlock * repeats, last.line);
+        }
+        for (int k = 1; k < problems.size(); k += 1) {
+            assertTrue(problems.get(k).line > problems.get(k - 1).line);
+        }
+    }
+
+    @Test
+    public void testFiles() throws IOException {
+        Path file = Files.createTempFile("enigma-validate", ".inp");
+        Path gz = Files.createTempFile("enigma-validate", ".inp.gz");
+        try {
+            int bad = write(Files.newOutputStream(file), 1);
+            check(VALIDATOR.check(file, 4), bad, 1);
+            int repeats = (int) (4 * Validator.MIN_CHUNK / Files.size(file));
+            bad = write(Files.newOutputStream(file), repeats);
+            Validator.Report one = VALIDATOR.check(file, 1);
+            check(one, bad, repeats);
+            Validator.Report four = VALIDATOR.check(file, 4);
+            check(four, bad, repeats);
+            for (int k = 0; k < Validator.MAX_PROBLEMS; k += 1) {
+                assertEquals(one.problems().get(k).toString(),
+                             four.problems().get(k).toString());
+            }
+            write(new GZIPOutputStream(Files.newOutputStream(gz)), 3);
+            check(VALIDATOR.check(gz, 4), bad / repeats * 3, 3);
+            Files.write(file, new byte[0]);
+            assertEquals(1, VALIDATOR.check(file, 4).count());
+        } finally {
+            Files.delete(file);
+            Files.delete(gz);
+        }
+    }
+}
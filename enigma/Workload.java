@@ -0,0 +1,487 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+import static enigma.EnigmaException.*;
+
+/** Synthetic workloads for throughput and latency measurements.  A
+ *  workload is a random configuration (alphabet, rotor catalog, notches,
+ *  reflectors) and a random input file of a given shape, generated
+ *  deterministically from a seed.
+ *  @author Florence Lau
+ */
+public final class Workload {
+
+    /** Characters that may appear in generated alphabets: those the
+     *  configuration reader accepts and that Main's upper-casing of input
+     *  lines leaves alone. */
+    static final String ALPHABET_POOL =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789!\"#$%&'+,-./:;<=>?@[\\]^_{|}~";
+
+    /** The shape of a workload. */
+    static final class Shape {
+        /** A shape with an alphabet of ALPHABETSIZE characters (even),
+         *  NROTORS rotor slots of which NPAWLS move, a catalog of
+         *  CATALOG rotors of each kind, SECTIONS settings lines, each
+         *  followed by LINES message lines of LENGTH characters, and
+         *  PLUGS plugboard pairs per settings line. */
+        Shape(int alphabetSize, int nRotors, int nPawls, int catalog,
+              int sections, int lines, int length, int plugs) {
+            this.alphabetSize = alphabetSize;
+            this.nRotors = nRotors;
+            this.nPawls = nPawls;
+            this.catalog = catalog;
+            this.sections = sections;
+            this.lines = lines;
+            this.length = length;
+            this.plugs = plugs;
+        }
+
+        /** Number of characters in the alphabet. */
+        final int alphabetSize;
+        /** Number of rotor slots. */
+        final int nRotors;
+        /** Number of moving rotors. */
+        final int nPawls;
+        /** Number of rotors of each kind in the catalog. */
+        final int catalog;
+        /** Number of settings lines. */
+        final int sections;
+        /** Number of message lines after each settings line. */
+        final int lines;
+        /** Number of characters in each message line. */
+        final int length;
+        /** Number of plugboard pairs in each settings line. */
+        final int plugs;
+    }
+
+    /** The standard shapes, by name. */
+    static final Map<String, Shape> SHAPES = new LinkedHashMap<>();
+    static {
+        SHAPES.put("naval", new Shape(26, 5, 3, 4, 20, 200, 80, 5));
+        SHAPES.put("short-sections",
+                   new Shape(26, 5, 3, 4, 20000, 2, 40, 5));
+        SHAPES.put("huge-lines", new Shape(26, 5, 3, 4, 1, 4, 2000000, 5));
+        SHAPES.put("no-plugboard", new Shape(26, 5, 3, 4, 20, 200, 80, 0));
+        SHAPES.put("dense-plugboard",
+                   new Shape(26, 5, 3, 4, 20, 200, 80, 13));
+        SHAPES.put("wide-alphabet",
+                   new Shape(64, 8, 3, 8, 20, 200, 80, 16));
+    }
+
+    /** Usage message. */
+    private static final String USAGE =
+        "usage: java enigma.Workload generate SHAPE SEED DIR\n"
+        + "       java enigma.Workload run CONFIG INPUT\n"
+        + "       java enigma.Workload latency CONFIG INPUT POLICY MICROS "
+        + "[pipeline]\n"
+        + "       java enigma.Workload shapes";
+
+    /** Perform the operation given by ARGS, one of
+     *      generate SHAPE SEED DIR
+     *  which writes DIR/SHAPE.conf and DIR/SHAPE.inp for the named
+     *  shape (see SHAPES), generated from the numeral SEED;
+     *      run CONFIG INPUT
+     *  which runs Main on CONFIG and INPUT twice, discarding the output,
+     *  and prints the characters converted per second on the second run
+     *  and the peak resident set size of this process in kilobytes (0 if
+     *  unknown);
+     *      latency CONFIG INPUT POLICY MICROS [pipeline]
+     *  which feeds the lines of INPUT to a conversion with CONFIG, one
+     *  every MICROS microseconds, with its output flushed according to
+     *  the FlushPolicy POLICY, and prints the 50th and 99th percentile
+     *  latencies in microseconds from the arrival of a message line to
+     *  the flushing of its output, followed by the messages per second
+     *  (with "pipeline", the conversion is by a Pipeline rather than
+     *  Main.process); or
+     *      shapes
+     *  which lists the names of the standard shapes. */
+    public static void main(String... args) {
+        try {
+            if (args.length == 4 && args[0].equals("generate")) {
+                Shape shape = SHAPES.get(args[1]);
+                if (shape == null) {
+                    throw error("unknown shape: %s", args[1]);
+                }
+                generate(shape, Long.parseLong(args[2]),
+                         new File(args[3], args[1] + ".conf"),
+                         new File(args[3], args[1] + ".inp"));
+            } else if (args.length == 3 && args[0].equals("run")) {
+                run(args[1], args[2]);
+            } else if ((args.length == 5 || args.length == 6
+                        && args[5].equals("pipeline"))
+                       && args[0].equals("latency")) {
+                latency(args[1], args[2], FlushPolicy.parse(args[3]),
+                        Long.parseLong(args[4]), args.length == 6);
+            } else if (args.length == 1 && args[0].equals("shapes")) {
+                System.out.println(String.join(" ", SHAPES.keySet()));
+            } else {
+                throw error(USAGE);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number%n");
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write a configuration to CONFIG and an input file to INPUT of the
+     *  given SHAPE, generated from SEED. */
+    static void generate(Shape shape, long seed, File config, File input)
+        throws IOException {
+        if (shape.alphabetSize % 2 != 0
+            || shape.alphabetSize > ALPHABET_POOL.length()
+            || 2 * shape.plugs > shape.alphabetSize
+            || shape.nPawls >= shape.nRotors) {
+            throw error("invalid shape");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        String alphabet =
+            new String(shuffle(random, ALPHABET_POOL.toCharArray()), 0,
+                       shape.alphabetSize);
+        List<String> reflectors = new ArrayList<>();
+        List<String> fixed = new ArrayList<>();
+        List<String> moving = new ArrayList<>();
+        try (PrintWriter out =
+                 new PrintWriter(new BufferedWriter(new FileWriter(config)))) {
+            out.println(alphabet);
+            out.printf(" %d %d%n", shape.nRotors, shape.nPawls);
+            for (int k = 0; k < shape.catalog; k += 1) {
+                reflectors.add("R" + k);
+                out.printf(" R%d R %s%n", k, reflector(random, alphabet));
+            }
+            for (int k = 0; k < shape.catalog
+                     + shape.nRotors - shape.nPawls - 1; k += 1) {
+                fixed.add("N" + k);
+                out.printf(" N%d N %s%n", k, cycles(random, alphabet));
+            }
+            for (int k = 0; k < shape.catalog + shape.nPawls; k += 1) {
+                moving.add("M" + k);
+                String notches =
+                    new String(shuffle(random, alphabet.toCharArray()), 0,
+                               1 + random.nextInt(3));
+                out.printf(" M%d M%s %s%n", k, notches,
+                           cycles(random, alphabet));
+            }
+        }
+        try (PrintWriter out =
+                 new PrintWriter(new BufferedWriter(new FileWriter(input)))) {
+            char[] line = new char[shape.length];
+            for (int s = 0; s < shape.sections; s += 1) {
+                out.println(settings(random, shape, alphabet, reflectors,
+                                     fixed, moving));
+                for (int n = 0; n < shape.lines; n += 1) {
+                    for (int i = 0; i < line.length; i += 1) {
+                        line[i] = random.nextInt(8) == 0 ? ' '
+                            : alphabet.charAt(random.nextInt(
+                                  alphabet.length()));
+                    }
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    /** Return a random settings line for SHAPE over ALPHABET drawn with
+     *  RANDOM, choosing rotors from REFLECTORS, FIXED and MOVING. */
+    private static String settings(SplittableRandom random, Shape shape,
+                                   String alphabet, List<String> reflectors,
+                                   List<String> fixed, List<String> moving) {
+        StringBuilder result = new StringBuilder("*");
+        result.append(' ')
+            .append(reflectors.get(random.nextInt(reflectors.size())));
+        String[] f = shuffle(random, fixed.toArray(new String[0]));
+        for (int k = 0; k < shape.nRotors - shape.nPawls - 1; k += 1) {
+            result.append(' ').append(f[k]);
+        }
+        String[] m = shuffle(random, moving.toArray(new String[0]));
+        for (int k = 0; k < shape.nPawls; k += 1) {
+            result.append(' ').append(m[k]);
+        }
+        result.append(' ');
+        for (int k = 1; k < shape.nRotors; k += 1) {
+            result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        char[] letters = shuffle(random, alphabet.toCharArray());
+        for (int k = 0; k < shape.plugs; k += 1) {
+            result.append(" (").append(letters[2 * k])
+                .append(letters[2 * k + 1]).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of ALPHABET in cycle notation, drawn
+     *  with RANDOM. */
+    private static String cycles(SplittableRandom random, String alphabet) {
+        char[] image = shuffle(random, alphabet.toCharArray());
+        boolean[] seen = new boolean[image.length];
+        StringBuilder result = new StringBuilder();
+        for (int start = 0; start < image.length; start += 1) {
+            if (seen[start]) {
+                continue;
+            }
+            result.append('(');
+            for (int i = start; !seen[i];
+                 i = alphabet.indexOf(image[i])) {
+                seen[i] = true;
+                result.append(alphabet.charAt(i));
+            }
+            result.append(')');
+        }
+        return result.toString();
+    }
+
+    /** Return a random pairing of the characters of ALPHABET in cycle
+     *  notation, drawn with RANDOM. */
+    private static String reflector(SplittableRandom random,
+                                    String alphabet) {
+        char[] letters = shuffle(random, alphabet.toCharArray());
+        StringBuilder result = new StringBuilder();
+        for (int k = 0; k + 1 < letters.length; k += 2) {
+            result.append('(').append(letters[k]).append(letters[k + 1])
+                .append(") ");
+        }
+        return result.toString().trim();
+    }
+
+    /** Shuffle A in place with RANDOM and return it. */
+    private static char[] shuffle(SplittableRandom random, char[] a) {
+        for (int i = a.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            char t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+
+    /** Shuffle A in place with RANDOM and return it. */
+    private static String[] shuffle(SplittableRandom random, String[] a) {
+        for (int i = a.length - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            String t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+        return a;
+    }
+
+    /** Run Main on the files named CONFIG and INPUT, discarding the
+     *  output, and print the rate of conversion in characters per second
+     *  and the peak resident set size in kilobytes.  The rate is measured
+     *  on a second run, so that it reflects compiled code. */
+    static void run(String config, String input) throws IOException {
+        long chars = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(input))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (!line.startsWith("*")) {
+                    chars += line.length();
+                }
+            }
+        }
+        File output = File.createTempFile("enigma", ".out");
+        output.deleteOnExit();
+        Main.main(config, input, output.getPath());
+        long start = System.nanoTime();
+        Main.main(config, input, output.getPath());
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%d %d%n", (long) (chars * 1e9 / nanos), peakRss());
+    }
+
+    /** Feed the lines of the file named INPUT to a conversion with the
+     *  configuration in the file named CONFIG, one line every MICROS
+     *  microseconds, with output flushed according to POLICY, and print
+     *  the 50th and 99th percentile latencies of message lines in
+     *  microseconds and the number of messages per second.  The latency
+     *  of a message line runs from when it is written to the conversion's
+     *  input to when its output is flushed.  The conversion is by
+     *  Pipeline if PIPELINE, and otherwise by Main.process. */
+    static void latency(String config, String input, FlushPolicy policy,
+                        long micros, boolean pipeline) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(input))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                lines.add(line);
+            }
+        }
+        Config conf;
+        try (Scanner in = new Scanner(new File(config))) {
+            conf = Metrics.readConfig(in, config);
+        }
+        CharTable chars =
+            new CharTable(conf.alphabet(), CharTable.Policy.STRICT);
+        long[] sent = new long[lines.size()];
+        ArrivalStream sink = new ArrivalStream(lines.size());
+        PrintStream out = policy.wrap(sink);
+        PipedOutputStream feed = new PipedOutputStream();
+        PipedInputStream source = new PipedInputStream(feed, 1 << 16);
+        RuntimeException[] failure = new RuntimeException[1];
+        Thread converter = new Thread(() -> {
+            try {
+                if (pipeline) {
+                    Pipeline p =
+                        new Pipeline(conf, chars,
+                                     new InputStreamReader(source),
+                                     FlushPolicy.writer(out),
+                                     Pipeline.DEFAULT_BUFFERS,
+                                     Pipeline.DEFAULT_BUFFER_SIZE);
+                    p.handOnEachLine(policy.eachMessage());
+                    p.run();
+                } else {
+                    Main.process(conf, chars, new Scanner(source), out, 0);
+                }
+                out.flush();
+            } catch (RuntimeException excp) {
+                failure[0] = excp;
+            }
+        }, "enigma-latency");
+        converter.start();
+        int messages = 0;
+        long start = System.nanoTime();
+        try (Writer feeder = new OutputStreamWriter(feed)) {
+            long next = start;
+            for (int i = 0; i < lines.size(); i += 1) {
+                String line = lines.get(i);
+                if (i > 0 && !line.startsWith("*")) {
+                    sent[messages] = System.nanoTime();
+                    messages += 1;
+                }
+                feeder.write(line);
+                feeder.write('\n');
+                feeder.flush();
+                next += micros * 1000;
+                while (System.nanoTime() < next) {
+                    LockSupport.parkNanos(next - System.nanoTime());
+                }
+            }
+        }
+        try {
+            converter.join();
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        long nanos = System.nanoTime() - start;
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        long[] latencies = sink.latencies(sent, messages);
+        Arrays.sort(latencies);
+        System.out.printf("%d %d %d%n",
+                          percentile(latencies, 50) / 1000,
+                          percentile(latencies, 99) / 1000,
+                          (long) (messages * 1e9 / nanos));
+    }
+
+    /** Return the P-th percentile of the sorted values in SORTED, or 0
+     *  if there are none. */
+    static long percentile(long[] sorted, int p) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int k = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, k)];
+    }
+
+    /** An output stream that discards its contents, recording the time
+     *  at which each line terminator arrives. */
+    static final class ArrivalStream extends OutputStream {
+        /** A stream expecting about LINES lines. */
+        ArrivalStream(int lines) {
+            _arrivals = new long[Math.max(1, lines)];
+        }
+
+        @Override
+        public synchronized void write(int b) {
+            if (b == '\n') {
+                arrive(System.nanoTime());
+            }
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            long now = System.nanoTime();
+            for (int i = off; i < off + len; i += 1) {
+                if (b[i] == '\n') {
+                    arrive(now);
+                }
+            }
+        }
+
+        /** Record the arrival of a line at time NOW. */
+        private void arrive(long now) {
+            if (_count == _arrivals.length) {
+                _arrivals = Arrays.copyOf(_arrivals, 2 * _count);
+            }
+            _arrivals[_count] = now;
+            _count += 1;
+        }
+
+        /** Return the differences between the arrival times of the
+         *  first N lines and the times in SENT. */
+        synchronized long[] latencies(long[] sent, int n) {
+            if (_count < n) {
+                throw error("%d lines written, %d expected", _count, n);
+            }
+            long[] result = new long[n];
+            for (int i = 0; i < n; i += 1) {
+                result[i] = _arrivals[i] - sent[i];
+            }
+            return result;
+        }
+
+        /** Arrival times of lines. */
+        private long[] _arrivals;
+
+        /** Number of lines that have arrived. */
+        private int _count;
+    }
+
+    /** Return the peak resident set size of this process in kilobytes,
+     *  or 0 if it is not available. */
+    static long peakRss() {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) {
+            return 0;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(status))) {
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(
+                        line.substring(6).replace("kB", "").trim());
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,64 @@
+package enigma;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import java.util.List;
+
+/** The suite of all JUnit tests for the Workload class.
+ *  @author Florence Lau
+ */
+public class WorkloadTest {
+
+    /** Generate a small workload of SHAPE from SEED and check that Main's
+     *  configuration reader and settings-line parser accept it, and that
+     *  every message converts.  Returns the generated input lines. */
+    private List<String> check(Workload.Shape shape, long seed)
+        throws IOException {
+        File dir = Files.createTempDirectory("enigma").toFile();
+        File config = new File(dir, "w.conf");
+        File input = new File(dir, "w.inp");
+        try {
+            Workload.generate(shape, seed, config, input);
+            Config parsed = Config.read(config.getPath());
+            assertEquals(shape.alphabetSize, parsed.alphabet().size());
+            List<String> lines = Files.readAllLines(input.toPath());
+            Machine machine = null;
+            int sections = 0;
+            for (String line : lines) {
+                if (line.startsWith("*")) {
+                    machine = parsed.newMachine(line);
+                    sections += 1;
+                } else {
+                    assertEquals(shape.length, machine.convert(line).length());
+                }
+            }
+            assertEquals(shape.sections, sections);
+            assertEquals(shape.sections * (shape.lines + 1), lines.size());
+            return lines;
+        } finally {
+            config.delete();
+            input.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testShapes() throws IOException {
+        check(new Workload.Shape(26, 5, 3, 4, 3, 4, 50, 13), 1);
+        check(new Workload.Shape(64, 8, 3, 8, 10, 1, 10, 0), 2);
+        check(new Workload.Shape(2, 2, 1, 1, 2, 2, 7, 1), 3);
+    }
+
+    @Test
+    public void testDeterministic() throws IOException {
+        Workload.Shape shape = new Workload.Shape(40, 6, 3, 5, 4, 3, 30, 6);
+        assertEquals(check(shape, 61), check(shape, 61));
+        assertNotEquals(check(shape, 61), check(shape, 62));
+    }
+}